@@ -0,0 +1,610 @@
+package com.gioviok;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The AccessAudit class records every decision on the access to a floor: who
+ * asked, with which key, for which floor, when, and whether it was granted.
+ * The decisions are made on the request path of the elevators, so recording one
+ * must cost next to nothing: the events are written into a ring of slots
+ * allocated once, as references to the names the building already holds, and a
+ * background thread drains the ring to a stream. Recording an event claims a
+ * slot with an atomic increment, fills it and publishes it; nothing is allocated
+ * and no lock is taken. Several threads can record at the same time. If the
+ * writer falls a whole ring behind, recording waits for it to free a slot: an
+ * audit doesn't drop events while it can still write them.
+ * The stream is compact: every name is written once, the first time it appears,
+ * and the events refer to it by its index. An event takes 21 bytes, encoded by
+ * the writer in a buffer of its own and written out a block at a time.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setAccessAudit(AccessAudit)
+ * @see #read(InputStream)
+ */
+public class AccessAudit implements Closeable {
+    /**
+     * The first bytes of an audit stream.
+     */
+    private static final int MAGIC = 0x41554454;
+
+    /**
+     * The tag of a name definition in the stream.
+     */
+    private static final byte NAME = 0;
+
+    /**
+     * The tag of a granted access in the stream.
+     */
+    private static final byte GRANTED = 1;
+
+    /**
+     * The tag of a denied access in the stream.
+     */
+    private static final byte DENIED = 2;
+
+    /**
+     * The index written for a missing name (no person or no key).
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The longest time the writer sleeps when the ring is empty (in nanoseconds).
+     */
+    private static final long IDLE_NANOS = 1000000;
+
+    /**
+     * The size of the buffer of the writer (in bytes).
+     */
+    private static final int BLOCK = 1 << 16;
+
+    /**
+     * The encoding of the names.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The number of slots of the ring, a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * The times of the events in the slots (in seconds).
+     */
+    private final double[] times;
+
+    /**
+     * The names of the persons of the events in the slots.
+     */
+    private final String[] persons;
+
+    /**
+     * The names of the keys of the events in the slots.
+     */
+    private final String[] keys;
+
+    /**
+     * The names of the floors of the events in the slots.
+     */
+    private final String[] floors;
+
+    /**
+     * The decisions of the events in the slots.
+     */
+    private final boolean[] decisions;
+
+    /**
+     * The sequence number of the event in every slot, once it is filled: the
+     * writer reads a slot only when it holds the event it expects.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The number of slots claimed so far. Closing the audit sets the CLOSED bit
+     * in it, so that no slot can be claimed once the writer may have stopped.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The bit of the claim counter telling the audit is closed.
+     */
+    private static final long CLOSED = 1L << 62;
+
+    /**
+     * The number of events the writer took out of the ring.
+     */
+    private volatile long drained;
+
+    /**
+     * The number of events which couldn't be written, because the audit was
+     * closed or its stream failed.
+     */
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * Whether the audit was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The error which stopped the writer, null if there was none.
+     */
+    private volatile IOException failure;
+
+    /**
+     * The stream the events are written to.
+     */
+    private final OutputStream out;
+
+    /**
+     * The buffer the writer encodes the events in.
+     */
+    private final byte[] buffer = new byte[BLOCK];
+
+    /**
+     * The number of bytes in the buffer.
+     */
+    private int buffered;
+
+    /**
+     * The thread draining the ring to the stream.
+     */
+    private final Thread writer;
+
+    /**
+     * The event class is an access decision, as read back from an audit stream.
+     */
+    public static final class Event {
+        /** The time of the request (in seconds). */
+        private final double time;
+        /** The name of the person, null if unknown. */
+        private final String person;
+        /** The name of the key, null if there was none. */
+        private final String key;
+        /** The name of the floor. */
+        private final String floor;
+        /** Whether the access was granted. */
+        private final boolean granted;
+
+        /**
+         * The constructor of the event.
+         *
+         * @param time    The time of the request (in seconds).
+         * @param person  The name of the person, null if unknown.
+         * @param key     The name of the key, null if there was none.
+         * @param floor   The name of the floor.
+         * @param granted Whether the access was granted.
+         */
+        private Event(double time, String person, String key, String floor, boolean granted) {
+            this.time = time;
+            this.person = person;
+            this.key = key;
+            this.floor = floor;
+            this.granted = granted;
+        }
+
+        /**
+         * Time getter.
+         *
+         * @return The time of the request (in seconds).
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Person getter.
+         *
+         * @return The name of the person, null if unknown.
+         */
+        public String getPerson() {
+            return person;
+        }
+
+        /**
+         * Key getter.
+         *
+         * @return The name of the key, null if there was none.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Floor getter.
+         *
+         * @return The name of the floor.
+         */
+        public String getFloor() {
+            return floor;
+        }
+
+        /**
+         * Granted getter.
+         *
+         * @return True if the access was granted, false if it was denied.
+         */
+        public boolean isGranted() {
+            return granted;
+        }
+
+        /**
+         * The toString method returns a line of the audit.
+         *
+         * @return A string representation of the event.
+         */
+        @Override
+        public String toString() {
+            return String.format("%.1f", time) + "s " + person + " [" + key + "] -> " + floor + ": "
+                    + (granted ? "granted" : "denied");
+        }
+    }
+
+    /**
+     * The constructor of the audit, with a ring of 8192 slots. The writer starts
+     * at once.
+     *
+     * @param out The stream to write the events to. It is closed with the audit.
+     * @throws IOException              If the header can't be written.
+     * @throws IllegalArgumentException If the stream is null.
+     */
+    public AccessAudit(OutputStream out) throws IOException, IllegalArgumentException {
+        this(out, 8192);
+    }
+
+    /**
+     * The constructor of the audit. The writer starts at once.
+     *
+     * @param out      The stream to write the events to. It is closed with the
+     *                 audit.
+     * @param capacity The number of slots of the ring, rounded up to a power of
+     *                 two.
+     * @throws IOException              If the header can't be written.
+     * @throws IllegalArgumentException If the stream is null, or the capacity is
+     *                                  not positive or above 2^30.
+     */
+    public AccessAudit(OutputStream out, int capacity) throws IOException, IllegalArgumentException {
+        if (out == null) {
+            throw new IllegalArgumentException("The stream cannot be null.");
+        }
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+        }
+        this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        times = new double[this.capacity];
+        persons = new String[this.capacity];
+        keys = new String[this.capacity];
+        floors = new String[this.capacity];
+        decisions = new boolean[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        // No slot holds an event yet, not even the first one.
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+        this.out = out;
+        putInt(MAGIC);
+        flush();
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "access-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The record method records an access decision. It can be called from any
+     * thread.
+     *
+     * @param time    The time of the request (in seconds).
+     * @param person  The person asking, null if unknown.
+     * @param key     The key used, null if there was none.
+     * @param floor   The floor asked for, null if unknown.
+     * @param granted Whether the access was granted.
+     * @return True if the event was recorded, false if it was lost because the
+     *         audit was closed or its stream failed.
+     */
+    public boolean record(double time, Person person, Key key, Floor floor, boolean granted) {
+        // Nothing may fail once a slot is claimed: the writer would wait for it forever.
+        String personName = (person == null) ? null : person.getName();
+        String keyName = (key == null) ? null : key.getName();
+        String floorName = (floor == null) ? null : floor.getName();
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0 || failure != null) {
+                lost.incrementAndGet();
+                return false;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        // We wait for the writer to free the slot, as long as it runs.
+        while (sequence - drained >= capacity) {
+            if (!writer.isAlive()) {
+                lost.incrementAndGet();
+                return false;
+            }
+            Thread.yield();
+        }
+        int slot = (int) sequence & (capacity - 1);
+        times[slot] = time;
+        persons[slot] = personName;
+        keys[slot] = keyName;
+        floors[slot] = floorName;
+        decisions[slot] = granted;
+        // The ordered store makes the slot visible to the writer after its fields.
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * The drain method is the loop of the writer: it writes the events in order,
+     * flushing the stream whenever the ring is empty, until the audit is closed
+     * and every claimed slot was written.
+     */
+    private void drain() {
+        HashMap<String, Integer> names = new HashMap<String, Integer>();
+        long next = 0;
+        try {
+            while (true) {
+                int slot = (int) next & (capacity - 1);
+                if (published.get(slot) == next) {
+                    write(names, slot);
+                    // The references are dropped, so the ring doesn't keep names alive.
+                    persons[slot] = null;
+                    keys[slot] = null;
+                    floors[slot] = null;
+                    drained = ++next;
+                    continue;
+                }
+                // Once closed, no slot is claimed any more: the last one is known.
+                if (closed && next == (claimed.get() & ~CLOSED)) {
+                    break;
+                }
+                // The ring is empty: the stream catches up with the events.
+                if (buffered > 0) {
+                    flush();
+                }
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            flush();
+            out.close();
+        } catch (IOException e) {
+            failure = e;
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The first error is the one reported.
+            }
+        }
+    }
+
+    /**
+     * The write method writes the event of a slot, and the names it uses for the
+     * first time.
+     *
+     * @param names The index of every name already written.
+     * @param slot  The slot.
+     * @throws IOException If the stream fails.
+     */
+    private void write(HashMap<String, Integer> names, int slot) throws IOException {
+        int person = index(names, persons[slot]);
+        int key = index(names, keys[slot]);
+        int floor = index(names, floors[slot]);
+        if (buffered + 21 > BLOCK) {
+            flush();
+        }
+        buffer[buffered++] = decisions[slot] ? GRANTED : DENIED;
+        putLong(Double.doubleToLongBits(times[slot]));
+        putInt(person);
+        putInt(key);
+        putInt(floor);
+    }
+
+    /**
+     * The putInt method encodes an int in the buffer, high byte first.
+     *
+     * @param value The value.
+     */
+    private void putInt(int value) {
+        buffer[buffered++] = (byte) (value >>> 24);
+        buffer[buffered++] = (byte) (value >>> 16);
+        buffer[buffered++] = (byte) (value >>> 8);
+        buffer[buffered++] = (byte) value;
+    }
+
+    /**
+     * The putLong method encodes a long in the buffer, high byte first.
+     *
+     * @param value The value.
+     */
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * The flush method writes the buffer to the stream.
+     *
+     * @throws IOException If the stream fails.
+     */
+    private void flush() throws IOException {
+        out.write(buffer, 0, buffered);
+        out.flush();
+        buffered = 0;
+    }
+
+    /**
+     * The index method returns the index of a name in the stream, writing it the
+     * first time.
+     *
+     * @param names The index of every name already written.
+     * @param name  The name, null for none.
+     * @return The index of the name, NONE for none.
+     * @throws IOException If the stream fails.
+     */
+    private int index(HashMap<String, Integer> names, String name) throws IOException {
+        if (name == null) {
+            return NONE;
+        }
+        Integer index = names.get(name);
+        if (index == null) {
+            index = names.size();
+            names.put(name, index);
+            byte[] bytes = name.getBytes(UTF8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("The name " + name.substring(0, 20) + "... is too long.");
+            }
+            if (buffered + 3 + bytes.length > BLOCK) {
+                flush();
+            }
+            buffer[buffered++] = NAME;
+            buffer[buffered++] = (byte) (bytes.length >>> 8);
+            buffer[buffered++] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, buffer, buffered, bytes.length);
+            buffered += bytes.length;
+        }
+        return index;
+    }
+
+    /**
+     * The close method stops the audit: the events recorded so far are written,
+     * then the stream is closed. Events recorded afterwards are lost.
+     *
+     * @throws IOException If the stream failed.
+     */
+    @Override
+    public void close() throws IOException {
+        long current;
+        do {
+            current = claimed.get();
+        } while ((current & CLOSED) == 0 && !claimed.compareAndSet(current, current | CLOSED));
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The read method reads the events of an audit stream.
+     *
+     * @param in The stream. It is not closed.
+     * @return The events, in the order they were recorded.
+     * @throws IOException If the stream fails, or doesn't hold an audit.
+     */
+    public static List<Event> read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an access audit.");
+        }
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Event> events = new ArrayList<Event>();
+        while (true) {
+            int tag = data.read();
+            if (tag < 0) {
+                return events;
+            }
+            try {
+                if (tag == NAME) {
+                    byte[] bytes = new byte[data.readUnsignedShort()];
+                    data.readFully(bytes);
+                    names.add(new String(bytes, UTF8));
+                } else if (tag == GRANTED || tag == DENIED) {
+                    double time = data.readDouble();
+                    String person = name(names, data.readInt());
+                    String key = name(names, data.readInt());
+                    String floor = name(names, data.readInt());
+                    events.add(new Event(time, person, key, floor, tag == GRANTED));
+                } else {
+                    throw new IOException("Corrupted audit: unknown tag " + tag + ".");
+                }
+            } catch (EOFException e) {
+                throw new IOException("Corrupted audit: truncated event.");
+            }
+        }
+    }
+
+    /**
+     * The name method returns a name of an audit stream from its index.
+     *
+     * @param names The names read so far.
+     * @param index The index.
+     * @return The name, null for none.
+     * @throws IOException If the index is not a name read so far.
+     */
+    private static String name(List<String> names, int index) throws IOException {
+        if (index == NONE) {
+            return null;
+        }
+        if (index < 0 || index >= names.size()) {
+            throw new IOException("Corrupted audit: unknown name " + index + ".");
+        }
+        return names.get(index);
+    }
+
+    /**
+     * Capacity getter.
+     *
+     * @return The number of slots of the ring.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Recorded getter.
+     *
+     * @return The number of events recorded so far.
+     */
+    public long getRecorded() {
+        return claimed.get() & ~CLOSED;
+    }
+
+    /**
+     * Written getter.
+     *
+     * @return The number of events the writer took out of the ring.
+     */
+    public long getWritten() {
+        return drained;
+    }
+
+    /**
+     * Lost getter.
+     *
+     * @return The number of events lost because the audit was closed or its
+     *         stream failed.
+     */
+    public long getLost() {
+        return lost.get();
+    }
+}
@@ -0,0 +1,212 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ActorDispatcher class runs the elevators of a building as actors, and
+ * dispatches the hall calls to them by message only. Every car is an
+ * ElevatorActor: the dispatcher never reads or changes an elevator, it chooses
+ * a car from the last status the actors published and the commands still in
+ * their mailboxes, then sends it the call. The cars handle their commands on the
+ * threads of an executor, side by side, without sharing anything.
+ * The cost of a car for a call is the time to get there, as seen from its
+ * status: the travel at full speed, plus a stop for every floor it has to visit
+ * or command it has to handle first, plus the whole height of the building if
+ * it is moving away.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see ElevatorActor
+ */
+public class ActorDispatcher {
+    /**
+     * The actors of the cars, in the order of the elevators of the building.
+     */
+    private final ArrayList<ElevatorActor> actors = new ArrayList<ElevatorActor>();
+
+    /**
+     * The speed of every car (in millimeters per second), read once.
+     */
+    private final double[] speeds;
+
+    /**
+     * The time of a stop of every car (in seconds), read once.
+     */
+    private final double[] stopTimes;
+
+    /**
+     * The height between the lowest and the highest floor (in millimeters).
+     */
+    private final int span;
+
+    /**
+     * The number of calls dispatched.
+     */
+    private long calls;
+
+    /**
+     * The constructor of the dispatcher. From now on, only the actors may touch
+     * the elevators of the building.
+     *
+     * @param building The building.
+     * @param executor The executor the actors run on.
+     * @param capacity The number of slots of the mailbox of every actor.
+     * @throws IllegalArgumentException If the building or the executor is null,
+     *                                  the building has no elevator or publishes
+     *                                  to an event bus, or the capacity is not
+     *                                  valid.
+     */
+    public ActorDispatcher(Building building, Executor executor, int capacity) throws IllegalArgumentException {
+        if (building == null) {
+            throw new IllegalArgumentException("The building cannot be null.");
+        }
+        List<Elevator> elevators = building.getElevators();
+        if (elevators.isEmpty()) {
+            throw new IllegalArgumentException("The building has no elevator.");
+        }
+        speeds = new double[elevators.size()];
+        stopTimes = new double[elevators.size()];
+        for (int i = 0; i < elevators.size(); i++) {
+            actors.add(new ElevatorActor(elevators.get(i), executor, capacity));
+            speeds[i] = elevators.get(i).getSpeed();
+            stopTimes[i] = elevators.get(i).getStopTime();
+        }
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        for (Floor floor : building.getFloors()) {
+            lowest = Math.min(lowest, floor.getDistance());
+            highest = Math.max(highest, floor.getDistance());
+        }
+        span = building.getFloors().isEmpty() ? 0 : highest - lowest;
+    }
+
+    /**
+     * The call method dispatches a hall call to the car which gets there first,
+     * among those serving the floor. It waits if the mailbox of the car is full.
+     *
+     * @param floor The floor of the call.
+     * @param key   The key of the caller (can be null): it gives the priority
+     *              class of the call.
+     * @return The actor of the car chosen, null if no car serves the floor.
+     * @throws IllegalArgumentException If the floor is null.
+     */
+    public ElevatorActor call(Floor floor, Key key) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        ElevatorActor best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < actors.size(); i++) {
+            ElevatorActor actor = actors.get(i);
+            // The floors a car serves are part of its settings, not of its state.
+            if (!actor.getElevator().serves(floor)) {
+                continue;
+            }
+            double cost = cost(i, actor.getStatus(), actor.getPending(), floor);
+            if (cost < bestCost) {
+                best = actor;
+                bestCost = cost;
+            }
+        }
+        if (best != null) {
+            best.sendCall(floor, (key == null) ? Key.Priority.STANDARD : key.getPriority());
+            calls++;
+        }
+        return best;
+    }
+
+    /**
+     * The cost method estimates the time a car needs to reach a floor.
+     *
+     * @param index   The index of the car.
+     * @param status  The last status of the car.
+     * @param pending The number of commands in its mailbox.
+     * @param floor   The floor.
+     * @return The estimated time (in seconds).
+     */
+    private double cost(int index, ElevatorActor.Status status, long pending, Floor floor) {
+        if (status.getFloor() == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int offset = floor.getDistance() - status.getFloor().getDistance();
+        double travel = Math.abs(offset);
+        // A car moving away comes back after its run.
+        if ((status.getDirection() == Elevator.MovingDirection.UP && offset < 0)
+                || (status.getDirection() == Elevator.MovingDirection.DOWN && offset > 0)) {
+            travel += span;
+        }
+        return travel / speeds[index] + (status.getStops() + pending) * stopTimes[index];
+    }
+
+    /**
+     * The tick method sends a step to every car, waiting for room in the
+     * mailboxes.
+     */
+    public void tick() {
+        for (ElevatorActor actor : actors) {
+            actor.sendTick();
+        }
+    }
+
+    /**
+     * The awaitIdle method waits until every car handled every command sent to
+     * it.
+     *
+     * @param timeout The longest time to wait (in milliseconds).
+     * @return True if every car is idle, false if the time ran out.
+     */
+    public boolean awaitIdle(long timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000;
+        while (true) {
+            boolean idle = true;
+            for (ElevatorActor actor : actors) {
+                idle &= actor.isIdle();
+            }
+            if (idle) {
+                return true;
+            }
+            if (System.nanoTime() >= deadline || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(100000);
+        }
+    }
+
+    /**
+     * The isBusy method checks, from the last statuses, if a car has floors to
+     * visit.
+     *
+     * @return True if a car is busy or has commands to handle, false otherwise.
+     */
+    public boolean isBusy() {
+        for (ElevatorActor actor : actors) {
+            if (actor.getStatus().isBusy() || actor.getPending() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Actors getter.
+     *
+     * @return The actors of the cars, in the order of the elevators.
+     */
+    public List<ElevatorActor> getActors() {
+        return Collections.unmodifiableList(actors);
+    }
+
+    /**
+     * Calls getter.
+     *
+     * @return The number of calls dispatched.
+     */
+    public long getCalls() {
+        return calls;
+    }
+}
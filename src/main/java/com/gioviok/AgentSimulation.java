@@ -0,0 +1,774 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The AgentSimulation class runs trips through a building as independent
+ * agents: every passenger is a person deciding on their own when to call an
+ * elevator, when to board, which floor to choose, when to get off, and when to
+ * give up waiting. They act through the methods of Person, as a user would.
+ * An agent spends most of its life waiting: for its time to arrive, for an
+ * elevator, for its floor. A waiting agent holds no thread: it is parked on
+ * what it waits for (a timer, a floor, an elevator) and only resumed when that
+ * happens (the timer goes off, an elevator opens its doors there), so tens of
+ * thousands of agents run on the few threads of a pool.
+ * The clock moves in ticks. At every tick, the agents woken up decide what to
+ * do in parallel on the pool, reading the building without changing it; then
+ * their decisions are applied one agent at a time, in a fixed order, and the
+ * elevators run. The building and the elevators are only ever changed by the
+ * thread running the simulation, so they need no lock, and a run gives the
+ * same results whatever the number of threads.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see TrafficSimulation
+ * @see Person
+ */
+public class AgentSimulation {
+    /**
+     * The number of threads of the default pool.
+     */
+    public static final int CARRIERS = 4;
+
+    /**
+     * The number of agents decided by the same task.
+     */
+    private static final int CHUNK = 256;
+
+    /**
+     * The states of an agent.
+     */
+    private enum State {
+        /** Not in the building yet. */
+        ARRIVING,
+        /** Waiting on a floor for an elevator. */
+        WAITING,
+        /** In an elevator. */
+        RIDING,
+        /** Out of the simulation. */
+        GONE
+    }
+
+    /**
+     * The decisions of an agent.
+     */
+    private enum Action {
+        /** Nothing to do yet. */
+        NONE,
+        /** Enter the building and call an elevator. */
+        ARRIVE,
+        /** Get on the elevator at the floor. */
+        BOARD,
+        /** Choose the floor, once on board. */
+        CHOOSE,
+        /** Get off the elevator. */
+        ALIGHT,
+        /** Stop waiting and leave. */
+        GIVE_UP
+    }
+
+    /**
+     * The agent class is a passenger, with what it waits for.
+     */
+    private static final class Agent {
+        /** The number of the agent, in the order of the trips. */
+        private final int id;
+        /** The trip of the agent. */
+        private final Trip trip;
+        /** The person acting for the agent, null until it arrives. */
+        private Person person;
+        /** The state of the agent. */
+        private State state = State.ARRIVING;
+        /** The next decision to apply. */
+        private Action action = Action.NONE;
+        /** Whether the agent is already woken up at this tick. */
+        private boolean awake;
+        /** The elevator the agent rides, null if none. */
+        private Elevator elevator;
+        /** The time the agent started waiting for the current leg (in seconds). */
+        private double since;
+        /** The time the agent gives up waiting (in seconds). */
+        private double deadline;
+
+        /**
+         * The constructor of the agent.
+         *
+         * @param id   The number of the agent.
+         * @param trip The trip of the agent.
+         */
+        private Agent(int id, Trip trip) {
+            this.id = id;
+            this.trip = trip;
+        }
+    }
+
+    /**
+     * The timer class is the time a waiting agent gives up. Timers are never
+     * removed: a timer whose agent stopped waiting, or waits for another leg, is
+     * skipped when it goes off.
+     */
+    private static final class Timer {
+        /** The time the timer goes off (in seconds). */
+        private final double time;
+        /** The agent to wake up. */
+        private final Agent agent;
+
+        /**
+         * The constructor of the timer.
+         *
+         * @param time  The time the timer goes off (in seconds).
+         * @param agent The agent to wake up.
+         */
+        private Timer(double time, Agent agent) {
+            this.time = time;
+            this.agent = agent;
+        }
+    }
+
+    /**
+     * The building the simulation runs in.
+     */
+    private final Building building;
+
+    /**
+     * The pool the agents decide on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The length of a tick (in seconds).
+     */
+    private double tick = 0.5;
+
+    /**
+     * How long an agent waits for an elevator before leaving (in seconds).
+     */
+    private double patience = Double.POSITIVE_INFINITY;
+
+    /**
+     * How long the simulation goes on after the last arrival (in seconds).
+     */
+    private double horizon = 3600;
+
+    /**
+     * The agents waiting, by floor.
+     */
+    private IdentityHashMap<Floor, ArrayList<Agent>> waiting = new IdentityHashMap<Floor, ArrayList<Agent>>();
+
+    /**
+     * The agents riding, by elevator.
+     */
+    private IdentityHashMap<Elevator, ArrayList<Agent>> riding = new IdentityHashMap<Elevator, ArrayList<Agent>>();
+
+    /**
+     * The time every elevator last opened its doors at, when the agents it
+     * concerns were woken up.
+     */
+    private IdentityHashMap<Elevator, Double> opened = new IdentityHashMap<Elevator, Double>();
+
+    /**
+     * The agents who started waiting where an elevator already stands: they look
+     * at it at the next tick.
+     */
+    private ArrayList<Agent> soon = new ArrayList<Agent>();
+
+    /**
+     * The times the waiting agents give up, the earliest first.
+     */
+    private PriorityQueue<Timer> deadlines = new PriorityQueue<Timer>(16, new Comparator<Timer>() {
+        @Override
+        public int compare(Timer a, Timer b) {
+            int byTime = Double.compare(a.time, b.time);
+            return (byTime != 0) ? byTime : Integer.compare(a.agent.id, b.agent.id);
+        }
+    });
+
+    /**
+     * The number of agents in the building.
+     */
+    private int present;
+
+    /**
+     * The number of agents who reached their destination.
+     */
+    private int served;
+
+    /**
+     * The number of agents who gave up waiting.
+     */
+    private int balked;
+
+    /**
+     * The number of agents whose key didn't open the floor they chose.
+     */
+    private int denied;
+
+    /**
+     * The number of agents who boarded an elevator.
+     */
+    private int boarded;
+
+    /**
+     * The total time agents waited before boarding (in seconds).
+     */
+    private double totalWait;
+
+    /**
+     * The total time from arriving to reaching the destination (in seconds).
+     */
+    private double totalJourney;
+
+    /**
+     * The number of decisions the agents took.
+     */
+    private long steps;
+
+    /**
+     * The largest number of agents woken up at the same tick.
+     */
+    private int peakAwake;
+
+    /**
+     * The time the simulation stopped at (in seconds).
+     */
+    private double endTime;
+
+    /**
+     * The constructor of the simulation. The agents decide on a pool of its own,
+     * with a few threads.
+     *
+     * @param building The building to run the simulation in.
+     * @throws IllegalArgumentException If the building is null.
+     */
+    public AgentSimulation(Building building) throws IllegalArgumentException {
+        this(building, new ForkJoinPool(CARRIERS));
+    }
+
+    /**
+     * The constructor of the simulation.
+     *
+     * @param building The building to run the simulation in.
+     * @param pool     The pool the agents decide on.
+     * @throws IllegalArgumentException If the building or the pool is null.
+     */
+    public AgentSimulation(Building building, ForkJoinPool pool) throws IllegalArgumentException {
+        if (building == null || pool == null) {
+            throw new IllegalArgumentException("The building and the pool cannot be null.");
+        }
+        this.building = building;
+        this.pool = pool;
+    }
+
+    /**
+     * The run method runs the trips, until every agent is gone or the horizon
+     * after the last arrival is over.
+     *
+     * @param trips The trips, sorted by time.
+     * @return this, to allow concatenation.
+     * @throws IllegalStateException If an agent fails to decide.
+     */
+    public AgentSimulation run(List<Trip> trips) throws IllegalStateException {
+        ArrayList<Agent> awake = new ArrayList<Agent>();
+        double last = trips.isEmpty() ? 0 : trips.get(trips.size() - 1).getTime();
+        double now = trips.isEmpty() ? 0 : trips.get(0).getTime();
+        int next = 0;
+        while (next < trips.size() || present > 0) {
+            if (now > last + horizon) {
+                break;
+            }
+            for (Elevator e : building.getElevators()) {
+                if (!e.isBusy()) {
+                    e.advanceTime(now);
+                }
+            }
+            if (building.getBatchDeadline() <= now) {
+                building.flushCalls();
+            }
+            // The agents whose time has come, or who lost patience.
+            while (next < trips.size() && trips.get(next).getTime() <= now) {
+                wake(new Agent(next, trips.get(next)), awake);
+                next++;
+            }
+            while (!deadlines.isEmpty() && deadlines.peek().time <= now) {
+                Timer timer = deadlines.poll();
+                if (timer.agent.state == State.WAITING && timer.agent.deadline == timer.time) {
+                    wake(timer.agent, awake);
+                }
+            }
+            for (Agent agent : soon) {
+                if (agent.state == State.WAITING) {
+                    wake(agent, awake);
+                }
+            }
+            soon.clear();
+            // The agents on the floors and in the elevators which just opened their doors.
+            for (Elevator e : building.getElevators()) {
+                if (e.getArrivalTime() > now || e.getCurrentFloor() == null) {
+                    continue;
+                }
+                Double before = opened.put(e, e.getArrivalTime());
+                if (before != null && before == e.getArrivalTime()) {
+                    continue;
+                }
+                ArrayList<Agent> inside = riding.get(e);
+                if (inside != null) {
+                    for (Agent agent : inside) {
+                        wake(agent, awake);
+                    }
+                }
+                for (Floor floor : e.getDeckFloors()) {
+                    ArrayList<Agent> here = (floor == null) ? null : waiting.get(floor);
+                    if (here != null) {
+                        for (Agent agent : here) {
+                            wake(agent, awake);
+                        }
+                    }
+                }
+            }
+            peakAwake = Math.max(peakAwake, awake.size());
+            decide(awake, now);
+            for (Agent agent : awake) {
+                apply(agent, now);
+                agent.awake = false;
+            }
+            steps += awake.size();
+            awake.clear();
+            for (Elevator e : building.getElevators()) {
+                if (e.isBusy() && e.getTime() <= now) {
+                    e.run();
+                }
+            }
+            endTime = now;
+            now += tick;
+        }
+        return this;
+    }
+
+    /**
+     * The wake method resumes a parked agent at this tick.
+     *
+     * @param agent The agent.
+     * @param awake The agents woken up so far.
+     */
+    private static void wake(Agent agent, List<Agent> awake) {
+        if (!agent.awake) {
+            agent.awake = true;
+            awake.add(agent);
+        }
+    }
+
+    /**
+     * The decide method lets the agents woken up decide what to do, in parallel.
+     * They only read the building.
+     *
+     * @param awake The agents woken up.
+     * @param now   The current time (in seconds).
+     * @throws IllegalStateException If an agent fails to decide.
+     */
+    private void decide(final List<Agent> awake, final double now) throws IllegalStateException {
+        if (awake.size() <= CHUNK) {
+            for (Agent agent : awake) {
+                agent.action = decide(agent, now);
+            }
+            return;
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < awake.size(); start += CHUNK) {
+            final List<Agent> chunk = awake.subList(start, Math.min(awake.size(), start + CHUNK));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (Agent agent : chunk) {
+                        agent.action = decide(agent, now);
+                    }
+                    return null;
+                }
+            });
+        }
+        // Getting the results makes the decisions visible to this thread.
+        for (Future<Void> result : pool.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while the agents decide.");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("An agent failed to decide: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The decide method returns what an agent does now. It doesn't change
+     * anything.
+     *
+     * @param agent The agent.
+     * @param now   The current time (in seconds).
+     * @return The decision of the agent.
+     */
+    private Action decide(Agent agent, double now) {
+        switch (agent.state) {
+            case ARRIVING:
+                return Action.ARRIVE;
+            case WAITING:
+                // The agent may have been let in from the queue of a full elevator.
+                if (building.getElevatorOf(agent.person) != null) {
+                    return Action.CHOOSE;
+                }
+                if (agent.person.getNextLeg() == null) {
+                    return Action.NONE;
+                }
+                Elevator here = building.getElevatorAt(agent.person.getCurrentFloor(), agent.person.getNextLeg());
+                if (here != null && here.getArrivalTime() <= now) {
+                    return Action.BOARD;
+                }
+                return (now >= agent.deadline) ? Action.GIVE_UP : Action.NONE;
+            case RIDING:
+                return (agent.person.getCurrentFloor() == agent.person.getNextLeg()) ? Action.ALIGHT : Action.NONE;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * The apply method carries out the decision of an agent.
+     *
+     * @param agent The agent.
+     * @param now   The current time (in seconds).
+     */
+    private void apply(Agent agent, double now) {
+        switch (agent.action) {
+            case ARRIVE:
+                agent.person = new Person("Agent #" + agent.id, agent.trip.getWeight());
+                building.registerPerson(agent.person, null, agent.trip.getOrigin());
+                agent.person.setKey(agent.trip.getKey());
+                present++;
+                call(agent, now);
+                break;
+            case BOARD:
+                if (agent.person.board()) {
+                    choose(agent, now);
+                }
+                break;
+            case CHOOSE:
+                choose(agent, now);
+                break;
+            case ALIGHT:
+                agent.person.disembark();
+                riding.get(agent.elevator).remove(agent);
+                agent.elevator = null;
+                if (agent.person.getCurrentFloor() == agent.trip.getDestination()) {
+                    served++;
+                    totalJourney += now - agent.trip.getTime();
+                    leave(agent);
+                } else {
+                    // A transfer: the agent waits for the elevator of the next leg.
+                    call(agent, now);
+                }
+                break;
+            case GIVE_UP:
+                balked++;
+                unpark(agent);
+                leave(agent);
+                break;
+            default:
+                break;
+        }
+        agent.action = Action.NONE;
+    }
+
+    /**
+     * The call method makes an agent plan the rest of the journey and call an
+     * elevator, then park on the floor until one comes.
+     *
+     * @param agent The agent, on a floor.
+     * @param now   The current time (in seconds).
+     */
+    private void call(Agent agent, double now) {
+        Person person = agent.person;
+        if (!person.planJourney(agent.trip.getDestination())) {
+            // No elevator goes there: the agent waits until the end.
+            agent.deadline = Double.POSITIVE_INFINITY;
+            park(agent, now);
+            return;
+        }
+        // The other level of a double-deck stop is a walk away.
+        while (person.getNextLeg() != null && building.linksLevels(person.getCurrentFloor(), person.getNextLeg())) {
+            person.setCurrentFloor(person.getNextLeg());
+            if (person.getCurrentFloor() == agent.trip.getDestination()) {
+                served++;
+                totalJourney += now - agent.trip.getTime();
+                leave(agent);
+                return;
+            }
+            person.planJourney(agent.trip.getDestination());
+        }
+        person.callElevatorRide();
+        agent.deadline = now + patience;
+        park(agent, now);
+    }
+
+    /**
+     * The park method parks an agent on its floor, waiting for an elevator.
+     *
+     * @param agent The agent.
+     * @param now   The current time (in seconds).
+     */
+    private void park(Agent agent, double now) {
+        agent.state = State.WAITING;
+        agent.since = now;
+        Floor floor = agent.person.getCurrentFloor();
+        ArrayList<Agent> here = waiting.get(floor);
+        if (here == null) {
+            here = new ArrayList<Agent>();
+            waiting.put(floor, here);
+        }
+        here.add(agent);
+        if (building.getElevatorAt(floor) != null) {
+            soon.add(agent);
+        }
+        if (agent.deadline != Double.POSITIVE_INFINITY) {
+            deadlines.add(new Timer(agent.deadline, agent));
+        }
+    }
+
+    /**
+     * The unpark method takes an agent off the floor it waits on.
+     *
+     * @param agent The agent.
+     */
+    private void unpark(Agent agent) {
+        ArrayList<Agent> here = waiting.get(agent.person.getCurrentFloor());
+        if (here != null) {
+            here.remove(agent);
+        }
+    }
+
+    /**
+     * The choose method makes an agent who got on choose the floor of the next
+     * leg, then park in the elevator until it gets there. An agent whose key
+     * doesn't open the floor gets off and leaves.
+     *
+     * @param agent The agent, in an elevator.
+     * @param now   The current time (in seconds).
+     */
+    private void choose(Agent agent, double now) {
+        unpark(agent);
+        Elevator elevator = building.getElevatorOf(agent.person);
+        try {
+            agent.person.chooseFloor(agent.person.getNextLeg());
+        } catch (IllegalArgumentException e) {
+            elevator.disembark(agent.person);
+            denied++;
+            leave(agent);
+            return;
+        }
+        boarded++;
+        totalWait += now - agent.since;
+        agent.state = State.RIDING;
+        agent.elevator = elevator;
+        ArrayList<Agent> inside = riding.get(elevator);
+        if (inside == null) {
+            inside = new ArrayList<Agent>();
+            riding.put(elevator, inside);
+        }
+        inside.add(agent);
+    }
+
+    /**
+     * The leave method takes an agent out of the building and of the simulation.
+     *
+     * @param agent The agent.
+     */
+    private void leave(Agent agent) {
+        building.removePerson(agent.person.getName());
+        agent.state = State.GONE;
+        present--;
+    }
+
+    /**
+     * Tick getter.
+     *
+     * @return The length of a tick (in seconds).
+     */
+    public double getTick() {
+        return tick;
+    }
+
+    /**
+     * Tick setter.
+     *
+     * @param tick The length of a tick (in seconds).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the length is not positive.
+     */
+    public AgentSimulation setTick(double tick) throws IllegalArgumentException {
+        if (!(tick > 0)) {
+            throw new IllegalArgumentException("The tick must be positive.");
+        }
+        this.tick = tick;
+        return this;
+    }
+
+    /**
+     * Patience getter.
+     *
+     * @return How long an agent waits for an elevator before leaving (in
+     *         seconds).
+     */
+    public double getPatience() {
+        return patience;
+    }
+
+    /**
+     * Patience setter.
+     *
+     * @param patience How long an agent waits for an elevator before leaving (in
+     *                 seconds), infinite to wait forever.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the patience is not positive.
+     */
+    public AgentSimulation setPatience(double patience) throws IllegalArgumentException {
+        if (!(patience > 0)) {
+            throw new IllegalArgumentException("The patience must be positive.");
+        }
+        this.patience = patience;
+        return this;
+    }
+
+    /**
+     * Horizon getter.
+     *
+     * @return How long the simulation goes on after the last arrival (in
+     *         seconds).
+     */
+    public double getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Horizon setter.
+     *
+     * @param horizon How long the simulation goes on after the last arrival (in
+     *                seconds).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the horizon is negative.
+     */
+    public AgentSimulation setHorizon(double horizon) throws IllegalArgumentException {
+        if (!(horizon >= 0)) {
+            throw new IllegalArgumentException("The horizon cannot be negative.");
+        }
+        this.horizon = horizon;
+        return this;
+    }
+
+    /**
+     * The getServed method returns the number of agents who reached their
+     * destination.
+     *
+     * @return The number of served agents.
+     */
+    public int getServed() {
+        return served;
+    }
+
+    /**
+     * The getUnserved method returns the number of agents still in the building
+     * when the simulation stopped.
+     *
+     * @return The number of agents waiting or riding.
+     */
+    public int getUnserved() {
+        return present;
+    }
+
+    /**
+     * The getBalked method returns the number of agents who gave up waiting.
+     *
+     * @return The number of agents who left without a ride.
+     * @see #setPatience(double)
+     */
+    public int getBalked() {
+        return balked;
+    }
+
+    /**
+     * The getDenied method returns the number of agents whose key didn't open the
+     * floor they chose.
+     *
+     * @return The number of denied agents.
+     */
+    public int getDenied() {
+        return denied;
+    }
+
+    /**
+     * The getAverageWait method returns the average time agents waited before
+     * boarding.
+     *
+     * @return The average wait (in seconds), 0 if nobody boarded.
+     */
+    public double getAverageWait() {
+        return boarded == 0 ? 0 : totalWait / boarded;
+    }
+
+    /**
+     * The getAverageJourney method returns the average time from arriving to
+     * reaching the destination.
+     *
+     * @return The average journey (in seconds), 0 if nobody was served.
+     */
+    public double getAverageJourney() {
+        return served == 0 ? 0 : totalJourney / served;
+    }
+
+    /**
+     * The getSteps method returns the number of decisions the agents took.
+     *
+     * @return The number of agent steps.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * The getPeakAwake method returns the largest number of agents woken up at
+     * the same tick. The others were parked, and cost nothing.
+     *
+     * @return The peak of awake agents.
+     */
+    public int getPeakAwake() {
+        return peakAwake;
+    }
+
+    /**
+     * The getEndTime method returns the time the simulation stopped at.
+     *
+     * @return The end time (in seconds).
+     */
+    public double getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * The toString method returns a report of the simulation.
+     *
+     * @return A string representation of the results.
+     */
+    @Override
+    public String toString() {
+        return "Served: " + served + " (unserved " + present + ", balked " + balked + ", denied " + denied
+                + ") - Wait: avg " + String.format("%.1f", getAverageWait()) + "s - Journey: avg "
+                + String.format("%.1f", getAverageJourney()) + "s - Steps: " + steps + " (peak " + peakAwake
+                + " awake)";
+    }
+}
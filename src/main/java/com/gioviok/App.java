@@ -26,6 +26,11 @@ public class App {
                 .addNewRole("Security", "Ground floor", "First floor", "Second floor", "Third floor", "Vault")
                 .addNewRole("Manager", "Ground floor", "First floor", "Second floor", "Third floor", "Fourth floor",
                         "Vault")
+                .setupElevator(600, 1600)
+                .addNewElevator(600, 1600)
+                .useForecaster("forecast.dat")
+                .setRolePriority("Security", Key.Priority.SECURITY)
+                .setRolePriority("Manager", Key.Priority.VIP)
                 .addModelPerson("Dayanand Portolese", 60)
                 .addModelPerson("Sayres Saulsbery", 75)
                 .addModelPerson("Milo Schop ", 80)
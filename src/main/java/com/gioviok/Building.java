@@ -1,13 +1,24 @@
 package com.gioviok;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 /**
  * The building is a facade class to manage the relationship between a set of
  * floors, A group of persons and A set of keys.
  * The building has an internal catalog of keys. Keys can be assigned to a
  * person, which will become a part of the building.
+ * The building has a group of elevators. The first one is the main elevator;
+ * hall calls are given to the closest elevator in group service which serves
+ * the floor. Elevators can skip floors, like express shuttles; in tall
+ * buildings, they can be split into zones around sky lobbies, and people
+ * change elevator there. Double-deck elevators serve a pair of adjacent floors
+ * at every stop: the calls from both floors of a pair become one stop, and
+ * people walk between the two levels of a stop to reach the other deck.
+ * Several cars can share a shaft, one above the other, to save hoistways.
  * 
  * @see Person
  * @see Elevator
@@ -53,12 +64,123 @@ public class Building {
     private ArrayList<Person> persons = new ArrayList<Person>();
 
     /**
-     * The internal elevator. Must be initialized before use.
+     * The internal elevator. Must be initialized before use. It is the main
+     * elevator of the group.
      *
      * @see Elevator
      */
     private Elevator elevator;
 
+    /**
+     * The group of elevators of the building. The main elevator is always the
+     * first one.
+     *
+     * @see Elevator
+     */
+    private ArrayList<Elevator> elevators = new ArrayList<Elevator>();
+
+    /**
+     * The hall calls which couldn't be given to any elevator, because none was in
+     * group service. They are given out as soon as an elevator is back.
+     *
+     * @see Request
+     */
+    private ArrayList<Request> pendingCalls = new ArrayList<Request>();
+
+    /**
+     * The length of the batch window (in seconds). Hall calls made within the
+     * window are assigned together. 0 means every call is assigned as soon as it
+     * is made.
+     */
+    private double batchWindow;
+
+    /**
+     * The hall calls collected in the current batch window.
+     *
+     * @see Request
+     */
+    private ArrayList<Request> batchCalls = new ArrayList<Request>();
+
+    /**
+     * The elevators taking part in the current batch assignment. Kept to avoid
+     * allocating a list for every batch.
+     */
+    private ArrayList<Elevator> batchElevators = new ArrayList<Elevator>();
+
+    /**
+     * The solver of the batch assignments.
+     *
+     * @see HungarianSolver
+     */
+    private HungarianSolver solver = new HungarianSolver();
+
+    /**
+     * The dispatcher simulating the future of the group to choose the elevator of
+     * a hall call. Null if calls go to the earliest estimated arrival.
+     *
+     * @see LookAheadDispatcher
+     */
+    private LookAheadDispatcher lookAhead;
+
+    /**
+     * The policy moving the idle elevators to the floors where calls are
+     * expected.
+     *
+     * @see ParkingPolicy
+     */
+    private ParkingPolicy parkingPolicy;
+
+    /**
+     * The forecaster learning from the hall calls of the building and the car
+     * calls of its elevators.
+     *
+     * @see DemandForecaster
+     */
+    private DemandForecaster forecaster;
+
+    /**
+     * The audit recording the access decisions of the elevators of the building,
+     * null if there is none.
+     *
+     * @see AccessAudit
+     */
+    private AccessAudit audit;
+
+    /**
+     * The bus the elevators of the building publish their events to, null if
+     * there is none.
+     *
+     * @see EventBus
+     */
+    private EventBus bus;
+
+    /**
+     * The weight of energy against wait when dispatching hall calls (in seconds
+     * per kilowatt-hour), 0 to only care about the wait.
+     *
+     * @see Elevator#getEnergyCost(Floor)
+     */
+    private double energyWeight;
+
+    /**
+     * The cost of giving a batched hall call to an elevator which doesn't serve
+     * it (in seconds). It keeps the assignment away from such elevators.
+     */
+    private static final double UNSERVED_COST = 1e9;
+
+    /**
+     * The floors where people change zone, from bottom to top. Empty if the
+     * elevators are not zoned by the building.
+     */
+    private ArrayList<Floor> skyLobbies = new ArrayList<Floor>();
+
+    /**
+     * The shafts shared by several elevators of the group.
+     *
+     * @see Shaft
+     */
+    private ArrayList<Shaft> shafts = new ArrayList<Shaft>();
+
     /**
      * The getPersons method returns the list of persons registered in the building.
      * 
@@ -131,7 +253,8 @@ public class Building {
     public Building setupElevator(Floor floor, Elevator.MovingDirection direction, double elevatorWeight,
             double elevatorMaxWeight) {
         if (this.elevator == null) {
-            this.elevator = new Elevator();
+            // We register the new elevator as if it had been set.
+            setElevator(new Elevator());
         }
         elevator.setup((floor == null) ? entranceFloor : floor,
                 direction,
@@ -247,8 +370,9 @@ public class Building {
         if (person == null) {
             return null;
         }
-        // Remove the person from the list.
+        // Remove the person from the list, and from the elevator queues.
         persons.remove(person);
+        cancelWaiting(person);
         return person;
     }
 
@@ -287,14 +411,19 @@ public class Building {
         int index = Collections.binarySearch(floors, floor);
         // We expect the index to be negative since we are inserting a new floor.
         index = -index - 1; // We get the insertion index.
-        // Add the floor to the list.
+        // Add the floor to the list. The served floors of the elevators are bits at
+        // the positions of the floors, so we set them again.
+        ArrayList<ArrayList<Floor>> served = servedFloors();
         floors.add(index, floor);
+        restoreServedFloors(served);
         // If the building has no entrance floor, the new floor is the entrance floor.
         if (entranceFloor == null) {
             entranceFloor = floor;
-            // If the elevator is on null floor, it is on the entrance floor.
-            if (elevator.getCurrentFloor() == null) {
-                elevator.setCurrentFloor(entranceFloor);
+            // If an elevator is on null floor, it is on the entrance floor.
+            for (Elevator e : elevators) {
+                if (e.getCurrentFloor() == null) {
+                    e.setCurrentFloor(entranceFloor);
+                }
             }
         }
         return this;
@@ -307,7 +436,41 @@ public class Building {
      * @return True if the floor was removed, false otherwise.
      */
     public boolean removeFloor(Floor floor) {
-        return floors.remove(floor);
+        ArrayList<ArrayList<Floor>> served = servedFloors();
+        if (!floors.remove(floor)) {
+            return false;
+        }
+        restoreServedFloors(served);
+        return true;
+    }
+
+    /**
+     * The servedFloors method returns the floors every elevator serves, before
+     * the floors of the building change.
+     *
+     * @return The floors served by every elevator, in the order of the elevators.
+     * @see #restoreServedFloors(ArrayList)
+     */
+    private ArrayList<ArrayList<Floor>> servedFloors() {
+        ArrayList<ArrayList<Floor>> served = new ArrayList<ArrayList<Floor>>();
+        for (Elevator e : elevators) {
+            served.add(e.getServedFloors());
+        }
+        return served;
+    }
+
+    /**
+     * The restoreServedFloors method gives every elevator back the floors it
+     * served, at their new positions.
+     *
+     * @param served The floors served by every elevator, in the order of the
+     *               elevators.
+     * @see Elevator#restoreServedFloors(List)
+     */
+    private void restoreServedFloors(ArrayList<ArrayList<Floor>> served) {
+        for (int i = 0; i < elevators.size(); i++) {
+            elevators.get(i).restoreServedFloors(served.get(i));
+        }
     }
 
     /**
@@ -318,6 +481,8 @@ public class Building {
     public Building(String name) {
         this.name = name;
         this.elevator = new Elevator();
+        this.elevators.add(elevator);
+        elevator.setBuildingFloors(floors);
     }
 
     /**
@@ -325,6 +490,8 @@ public class Building {
      */
     public Building() {
         this.elevator = new Elevator();
+        this.elevators.add(elevator);
+        elevator.setBuildingFloors(floors);
     };
 
     /**
@@ -364,13 +531,351 @@ public class Building {
     }
 
     /**
-     * The setElevator method sets the elevator.
+     * The setElevator method sets the elevator. It replaces the main elevator in
+     * the group, at its head; a null elevator only removes the main elevator.
      *
      * @param elevator The elevator.
      * @see Elevator
      */
     public void setElevator(Elevator elevator) {
+        elevators.remove(this.elevator);
         this.elevator = elevator;
+        if (elevator != null) {
+            // We don't want the elevator twice if it was already in the group.
+            elevators.remove(elevator);
+            elevators.add(0, elevator);
+            elevator.setForecaster(forecaster);
+            elevator.setAudit(audit);
+            elevator.setEventBus(bus);
+            elevator.setBuildingFloors(floors);
+        }
+    }
+
+    /**
+     * The getElevators method returns the group of elevators. The main elevator is
+     * the first one.
+     *
+     * @return The list of elevators.
+     * @see Elevator
+     */
+    public ArrayList<Elevator> getElevators() {
+        return elevators;
+    }
+
+    /**
+     * The addElevator method adds an elevator to the group. If the elevator has
+     * no floor, it is placed on the entrance floor.
+     *
+     * @param elevator The elevator to add.
+     * @return this.
+     * @throws IllegalArgumentException If the elevator is null or already in the
+     *                                  group.
+     * @see Elevator
+     */
+    public Building addElevator(Elevator elevator) throws IllegalArgumentException {
+        if (elevator == null) {
+            throw new IllegalArgumentException("Elevator is null.");
+        }
+        if (elevators.contains(elevator)) {
+            throw new IllegalArgumentException("Elevator already in the building.");
+        }
+        if (elevator.getCurrentFloor() == null) {
+            elevator.setCurrentFloor(entranceFloor);
+        }
+        elevators.add(elevator);
+        elevator.setForecaster(forecaster);
+        elevator.setAudit(audit);
+        elevator.setEventBus(bus);
+        elevator.setBuildingFloors(floors);
+        return this;
+    }
+
+    /**
+     * The removeElevator method removes an elevator from the group. Its hall calls
+     * are given to the other elevators. The main elevator and the elevators
+     * sharing a shaft can't be removed.
+     *
+     * @param elevator The elevator to remove.
+     * @return True if the elevator was removed, false otherwise.
+     * @see Elevator
+     */
+    public boolean removeElevator(Elevator elevator) {
+        if (elevator == this.elevator || (elevator != null && elevator.getShaft() != null)
+                || !elevators.remove(elevator)) {
+            return false;
+        }
+        elevator.setForecaster(null);
+        elevator.setAudit(null);
+        elevator.setEventBus(null);
+        for (Request request : elevator.releaseHallCalls()) {
+            dispatch(request);
+        }
+        return true;
+    }
+
+    /**
+     * The setServiceMode method changes the service mode of an elevator of the
+     * group. When the elevator leaves group service, its hall calls are given to
+     * the other elevators (or kept by the building until one is available), so
+     * that no call is lost. When it comes back, it takes the calls nobody could
+     * serve. In fire recall mode, the elevator goes to the entrance floor.
+     *
+     * @param elevator The elevator.
+     * @param mode     The service mode to set.
+     * @throws IllegalArgumentException If the elevator is not in the building, or
+     *                                  the mode is null.
+     * @see Elevator.ServiceMode
+     */
+    public void setServiceMode(Elevator elevator, Elevator.ServiceMode mode) throws IllegalArgumentException {
+        if (!elevators.contains(elevator)) {
+            throw new IllegalArgumentException("Elevator is not in the building.");
+        }
+        elevator.setServiceMode(mode, entranceFloor);
+        if (mode != Elevator.ServiceMode.NORMAL) {
+            // The elevator leaves group service: its hall calls go to the others.
+            for (Request request : elevator.releaseHallCalls()) {
+                dispatch(request);
+            }
+        } else if (!pendingCalls.isEmpty()) {
+            // The elevator is back: it takes the calls nobody could serve.
+            ArrayList<Request> calls = new ArrayList<Request>(pendingCalls);
+            pendingCalls.clear();
+            for (Request request : calls) {
+                dispatch(request);
+            }
+        }
+    }
+
+    /**
+     * The numberOfPendingCalls method returns the number of hall calls waiting for
+     * an elevator in group service.
+     *
+     * @return The number of hall calls not given to any elevator.
+     */
+    public int numberOfPendingCalls() {
+        return pendingCalls.size();
+    }
+
+    /**
+     * The dispatch method gives a hall call to the elevator in group service which
+     * is estimated to reach the floor first (counting its extra energy, if the
+     * building has an energy weight), or to the one chosen by the
+     * look-ahead dispatcher if there is one. Only the elevators serving the floor,
+     * and the next floor of the caller if it is known, are considered. If there is
+     * none, the building keeps it.
+     *
+     * @param request The hall call.
+     * @return True if the call was given to an elevator or kept, false if it was
+     *         already to visit.
+     * @see Request
+     */
+    private boolean dispatch(Request request) {
+        Floor floor = request.getFloor();
+        Elevator closest = null;
+        double closestArrival = Double.POSITIVE_INFINITY;
+        ArrayList<Elevator> candidates = (lookAhead == null) ? null : new ArrayList<Elevator>();
+        for (Elevator e : elevators) {
+            if (!e.isInGroupService() || !serves(e, request)) {
+                continue;
+            }
+            // If someone already has to go there, we don't call a second elevator.
+            if (e.hasRequest(floor)) {
+                return e.adoptRequest(request);
+            }
+            // An idle elevator leaves when the call is made, not when it last moved.
+            double arrival = cost(e, request);
+            if (arrival < closestArrival) {
+                closest = e;
+                closestArrival = arrival;
+            }
+            if (candidates != null) {
+                candidates.add(e);
+            }
+        }
+        if (closest != null && candidates != null) {
+            Elevator chosen = lookAhead.choose(elevators, candidates, request);
+            if (chosen != null) {
+                closest = chosen;
+            }
+        }
+        if (closest == null) {
+            for (Request pending : pendingCalls) {
+                if (sameElevators(pending, request)) {
+                    return false;
+                }
+            }
+            pendingCalls.add(request);
+            return true;
+        }
+        return closest.adoptRequest(request);
+    }
+
+    /**
+     * The serves method checks if an elevator serves a hall call: the floor of
+     * the call, and the next floor of the caller if it is known.
+     *
+     * @param elevator The elevator.
+     * @param request  The hall call.
+     * @return True if the elevator can take the call, false otherwise.
+     */
+    private static boolean serves(Elevator elevator, Request request) {
+        return elevator.serves(request.getFloor())
+                && (request.getDestination() == null
+                        || elevator.connects(request.getFloor(), request.getDestination()));
+    }
+
+    /**
+     * The sameElevators method checks if two hall calls come from the same floor
+     * and can be served by the same elevators, so that one elevator answers both.
+     *
+     * @param a A hall call.
+     * @param b Another hall call.
+     * @return True if the calls are the same for the group, false otherwise.
+     */
+    private boolean sameElevators(Request a, Request b) {
+        if (a.getFloor() != b.getFloor()) {
+            return false;
+        }
+        for (Elevator e : elevators) {
+            if (serves(e, a) != serves(e, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The cost method returns the cost of giving a hall call to an elevator: the
+     * time it is estimated to get there, plus its extra energy weighted by the
+     * energy weight of the building.
+     *
+     * @param elevator The elevator.
+     * @param request  The hall call.
+     * @return The cost (in seconds).
+     */
+    private double cost(Elevator elevator, Request request) {
+        double arrival = Math.max(elevator.getTime(), request.getTime()) + elevator.getEta(request.getFloor());
+        if (energyWeight <= 0) {
+            return arrival;
+        }
+        return arrival + energyWeight * elevator.getEnergyCost(request.getFloor());
+    }
+
+    /**
+     * The getTime method returns the simulated time of the building, that is the
+     * time of its most advanced elevator.
+     *
+     * @return The simulated time (in seconds).
+     */
+    public double getTime() {
+        double time = 0;
+        for (Elevator e : elevators) {
+            time = Math.max(time, e.getTime());
+        }
+        return time;
+    }
+
+    /**
+     * The runElevators method runs every elevator of the group once. The hall
+     * calls waiting for the end of the batch window are assigned first, and the
+     * elevators left idle are parked last.
+     *
+     * @return True if no elevator has more floors to visit, false otherwise.
+     * @throws IllegalStateException If an elevator is overloaded. The other
+     *                               elevators still run.
+     */
+    public boolean runElevators() throws IllegalStateException {
+        // The elevators must know where to go before they move.
+        flushCalls();
+        boolean done = true;
+        IllegalStateException overload = null;
+        for (Elevator e : elevators) {
+            try {
+                done &= e.run();
+            } catch (IllegalStateException ex) {
+                done = false;
+                overload = ex;
+            }
+        }
+        parkIdleElevators();
+        if (overload != null) {
+            throw overload;
+        }
+        return done;
+    }
+
+    /**
+     * The getElevatorOf method returns the elevator a person is in.
+     *
+     * @param person The person.
+     * @return The elevator the person is in, null if the person is in none.
+     */
+    public Elevator getElevatorOf(Person person) {
+        for (Elevator e : elevators) {
+            if (e.hasPerson(person)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The getElevatorAt method returns an elevator in group service which is on
+     * the given floor. The main elevator is preferred.
+     *
+     * @param floor The floor.
+     * @return An elevator on the floor, null if there is none.
+     */
+    public Elevator getElevatorAt(Floor floor) {
+        return getElevatorAt(floor, null);
+    }
+
+    /**
+     * The getElevatorAt method returns an elevator in group service which is on
+     * the given floor and goes to the given destination from there (on the same
+     * deck, for a double-deck elevator). The main elevator is preferred.
+     *
+     * @param floor       The floor.
+     * @param destination The floor to go to (can be null, for any).
+     * @return An elevator on the floor, null if there is none.
+     */
+    public Elevator getElevatorAt(Floor floor, Floor destination) {
+        for (Elevator e : elevators) {
+            if (e.isAt(floor) && e.isInGroupService() && (destination == null || e.connects(floor, destination))) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The cancelWaiting method removes a person from the boarding queue of every
+     * elevator.
+     *
+     * @param person The person.
+     */
+    void cancelWaiting(Person person) {
+        for (Elevator e : elevators) {
+            e.cancelWaiting(person);
+        }
+    }
+
+    /**
+     * The cancelHallCalls method removes a hall call from every elevator, when
+     * nobody is left waiting on the floor.
+     *
+     * @param floor The floor.
+     */
+    void cancelHallCalls(Floor floor) {
+        for (Elevator e : elevators) {
+            e.cancelHallCall(floor);
+        }
+        for (int i = 0; i < batchCalls.size(); i++) {
+            if (batchCalls.get(i).getFloor() == floor) {
+                batchCalls.remove(i);
+                break;
+            }
+        }
     }
 
     /**
@@ -383,12 +888,614 @@ public class Building {
      * @throws IllegalArgumentException If the floor is null.
      */
     public boolean callElevator(Floor floor) throws IllegalArgumentException {
+        return callElevator(floor, null);
+    }
+
+    /**
+     * The callElevator method calls the elevator to a given floor on behalf of a
+     * key holder. The key is not checked, but it gives the priority class of the
+     * call.
+     *
+     * @param floor The floor to visit.
+     * @param key   The key of the caller (can be null).
+     * @return true if the floor was added to the list of floors to visit, false
+     *         otherwise.
+     * @throws IllegalArgumentException If the floor is null.
+     * @see Key.Priority
+     */
+    public boolean callElevator(Floor floor, Key key) throws IllegalArgumentException {
+        return callElevator(floor, key, null);
+    }
+
+    /**
+     * The callElevator method calls an elevator to a given floor on behalf of a
+     * key holder who goes to the given floor next. Only an elevator serving both
+     * floors answers the call: in a zoned building, the next floor is the end of
+     * the current leg of the journey.
+     *
+     * @param floor       The floor to visit.
+     * @param key         The key of the caller (can be null).
+     * @param destination The floor the caller goes to next (can be null).
+     * @return true if the floor was added to the list of floors to visit, false
+     *         otherwise.
+     * @throws IllegalArgumentException If the floor is null.
+     * @see #planJourney(Floor, Floor, Key)
+     */
+    public boolean callElevator(Floor floor, Key key, Floor destination) throws IllegalArgumentException {
         // Check if the floor is null.
         if (floor == null) {
             throw new IllegalArgumentException("Floor is null.");
         }
+        // Every call tells where the next ones may come from.
+        if (parkingPolicy != null) {
+            parkingPolicy.recordCall(floor, getTime());
+        }
+        if (forecaster != null) {
+            forecaster.recordHallCall(floor, getTime());
+        }
+        // If an elevator in service is already there, there is nothing to do.
+        if (getElevatorAt(floor, destination) != null) {
+            return false;
+        }
         // Add the floor to the list of floors to visit without checking the key.
-        return elevator.requestHere(floor);
+        Request request = new Request(floor, getTime(), (key == null) ? Key.Priority.STANDARD : key.getPriority(),
+                destination);
+        if (batchWindow <= 0) {
+            return dispatch(request);
+        }
+        // The window is over: the calls collected so far are assigned first.
+        if (request.getTime() >= getBatchDeadline()) {
+            flushCalls();
+        }
+        return batch(request);
+    }
+
+    /**
+     * The batch method adds a hall call to the current batch window, unless an
+     * elevator already has to go there or the floor is already in the batch.
+     *
+     * @param request The hall call.
+     * @return True if the call was added to an elevator or to the batch, false
+     *         otherwise.
+     */
+    private boolean batch(Request request) {
+        Floor floor = request.getFloor();
+        for (Elevator e : elevators) {
+            if (e.isInGroupService() && serves(e, request) && e.hasRequest(floor)) {
+                return e.adoptRequest(request);
+            }
+        }
+        for (int i = 0; i < batchCalls.size(); i++) {
+            Request batched = batchCalls.get(i);
+            if (sameElevators(batched, request)) {
+                // We keep the age of the call, and the highest priority.
+                if (request.getPriority().compareTo(batched.getPriority()) < 0) {
+                    batchCalls.set(i,
+                            new Request(floor, batched.getTime(), request.getPriority(), batched.getDestination()));
+                }
+                return false;
+            }
+        }
+        batchCalls.add(request);
+        return true;
+    }
+
+    /**
+     * The flushCalls method assigns the hall calls collected in the batch window
+     * to the elevators in group service, all at once, so that the total time to
+     * reach the calls is minimal. Every elevator can take several calls: each
+     * call it takes before another costs one more stop. The assignment is solved
+     * with the Hungarian algorithm over the estimated arrival times. A call no
+     * chosen elevator serves is dispatched on its own.
+     *
+     * @see HungarianSolver
+     * @see Elevator#getEta(Floor)
+     */
+    public void flushCalls() {
+        if (batchCalls.isEmpty()) {
+            return;
+        }
+        batchElevators.clear();
+        for (Elevator e : elevators) {
+            if (e.isInGroupService()) {
+                batchElevators.add(e);
+            }
+        }
+        if (batchElevators.isEmpty()) {
+            // Nobody can take the calls: the building keeps them.
+            for (Request request : batchCalls) {
+                dispatch(request);
+            }
+            batchCalls.clear();
+            return;
+        }
+        int calls = batchCalls.size();
+        int slots = (calls + batchElevators.size() - 1) / batchElevators.size();
+        int n = slots * batchElevators.size();
+        double[][] cost = solver.getMatrix(n);
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < batchElevators.size(); c++) {
+                Elevator e = batchElevators.get(c);
+                for (int slot = 0; slot < slots; slot++) {
+                    // The rows after the calls are placeholders, which cost nothing.
+                    if (i >= calls) {
+                        cost[i][c * slots + slot] = 0;
+                        continue;
+                    }
+                    Request request = batchCalls.get(i);
+                    double base = serves(e, request) ? cost(e, request) : UNSERVED_COST;
+                    cost[i][c * slots + slot] = base + slot * e.getStopTime();
+                }
+            }
+        }
+        int[] assignment = solver.solve(n);
+        for (int i = 0; i < calls; i++) {
+            Elevator e = batchElevators.get(assignment[i] / slots);
+            Request request = batchCalls.get(i);
+            if (serves(e, request)) {
+                e.adoptRequest(request);
+            } else {
+                dispatch(request);
+            }
+        }
+        batchCalls.clear();
+    }
+
+    /**
+     * The setSkyLobbies method splits the elevators into zones. The floors are
+     * cut at the sky lobbies into contiguous bands, from the lowest floor to the
+     * highest: every band gets an equal share of the elevators, in the order of
+     * the group, and the sky lobbies are served by the bands above and below
+     * them, so that people can change elevator there. An idle elevator outside
+     * its new zone is moved to the bottom of the zone. The floors served by every
+     * elevator are replaced.
+     *
+     * @param lobbies The sky lobbies, none to let every elevator serve every
+     *                floor again.
+     * @throws IllegalArgumentException If a lobby is not a floor of the building,
+     *                                  is the lowest or highest floor, or is given
+     *                                  twice, or if there are more zones than
+     *                                  elevators.
+     * @throws IllegalStateException    If an elevator is busy or carries people,
+     *                                  or elevators share shafts.
+     * @see Elevator#setServedFloors(Floor...)
+     */
+    public void setSkyLobbies(Floor... lobbies) throws IllegalArgumentException, IllegalStateException {
+        Floor[] sorted = (lobbies == null) ? new Floor[0] : lobbies.clone();
+        for (Floor lobby : sorted) {
+            if (lobby == null) {
+                throw new IllegalArgumentException("A sky lobby is null.");
+            }
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (!floors.contains(sorted[i])) {
+                throw new IllegalArgumentException("A sky lobby is not a floor of the building.");
+            }
+            if (sorted[i] == floors.get(0) || sorted[i] == floors.get(floors.size() - 1)) {
+                throw new IllegalArgumentException("A sky lobby cannot be the lowest or highest floor.");
+            }
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("Sky lobby " + sorted[i].getName() + " is given twice.");
+            }
+        }
+        int zones = sorted.length + 1;
+        if (zones > 1 && zones > elevators.size()) {
+            throw new IllegalArgumentException("There are more zones than elevators.");
+        }
+        for (Elevator e : elevators) {
+            if (e.isBusy() || e.numberOfPeople() > 0) {
+                throw new IllegalStateException("Zones can only be changed while the elevators are idle.");
+            }
+        }
+        if (!shafts.isEmpty()) {
+            throw new IllegalStateException("Zones can't be set while elevators share shafts.");
+        }
+        skyLobbies = new ArrayList<Floor>(Arrays.asList(sorted));
+        if (zones == 1) {
+            for (Elevator e : elevators) {
+                e.serveAllFloors();
+            }
+            return;
+        }
+        // Zone z goes from the floor bounds[z] to the floor bounds[z + 1], both included.
+        int[] bounds = new int[zones + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            bounds[i + 1] = floors.indexOf(sorted[i]);
+        }
+        bounds[zones] = floors.size() - 1;
+        for (int i = 0; i < elevators.size(); i++) {
+            Elevator e = elevators.get(i);
+            int zone = i * zones / elevators.size();
+            e.setServedFloors(floors.subList(bounds[zone], bounds[zone + 1] + 1).toArray(new Floor[0]));
+            if (!e.serves(e.getCurrentFloor())) {
+                e.setCurrentFloor(floors.get(bounds[zone]));
+            }
+        }
+    }
+
+    /**
+     * The getSkyLobbies method returns the floors where people change zone.
+     *
+     * @return The sky lobbies, from bottom to top. Empty if the elevators are not
+     *         zoned by the building.
+     */
+    public List<Floor> getSkyLobbies() {
+        return Collections.unmodifiableList(skyLobbies);
+    }
+
+    /**
+     * The planJourney method plans the legs of a journey between two floors, with
+     * as few changes of elevator as possible. A leg goes between two floors served
+     * by the same elevator (whatever its service mode), on the same deck of a
+     * double-deck elevator; a leg can also be a walk between the two levels of
+     * one of its stops. People only change elevator on floors their key gives
+     * access to.
+     *
+     * @param from The floor the journey starts from.
+     * @param to   The floor the journey ends on.
+     * @param key  The key of the traveller (can be null).
+     * @return The end of every leg, the last one being the destination (empty if
+     *         the floors are the same), null if no elevator goes there.
+     * @throws IllegalArgumentException If a floor is null.
+     * @see #linksLevels(Floor, Floor)
+     */
+    public ArrayList<Floor> planJourney(Floor from, Floor to, Key key) throws IllegalArgumentException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        // A breadth-first search over the floors, one elevator ride per step. Floors
+        // are compared by identity, as in the elevators.
+        IdentityHashMap<Floor, Floor> previous = new IdentityHashMap<Floor, Floor>();
+        ArrayList<Floor> frontier = new ArrayList<Floor>();
+        previous.put(from, from);
+        frontier.add(from);
+        for (int next = 0; next < frontier.size() && !previous.containsKey(to); next++) {
+            Floor floor = frontier.get(next);
+            for (Elevator e : elevators) {
+                if (!e.serves(floor)) {
+                    continue;
+                }
+                for (Floor reached : floors) {
+                    if (previous.containsKey(reached)
+                            || !(e.connects(floor, reached) || e.sharesLanding(floor, reached))
+                            || (reached != to && !reached.requestAccess(key))) {
+                        continue;
+                    }
+                    previous.put(reached, floor);
+                    frontier.add(reached);
+                }
+            }
+        }
+        if (!previous.containsKey(to)) {
+            return null;
+        }
+        ArrayList<Floor> legs = new ArrayList<Floor>();
+        for (Floor floor = to; floor != from; floor = previous.get(floor)) {
+            legs.add(0, floor);
+        }
+        return legs;
+    }
+
+    /**
+     * The addShaft method puts several elevators of the group in one shaft. The
+     * elevators are stacked by the height of their current floor, and each one
+     * then only serves the floors it can reach with the others at the ends of the
+     * shaft.
+     *
+     * @param separation The minimum separation between two cars (in
+     *                   millimeters).
+     * @param cars       The elevators sharing the shaft.
+     * @return The shaft.
+     * @throws IllegalArgumentException If there is no elevator, one is not in the
+     *                                  group or already shares a shaft, or the
+     *                                  floors can't hold the elevators apart.
+     * @throws IllegalStateException    If an elevator is busy or carries people.
+     * @see Shaft
+     */
+    public Shaft addShaft(int separation, Elevator... cars) throws IllegalArgumentException, IllegalStateException {
+        if (cars != null) {
+            for (Elevator car : cars) {
+                if (!elevators.contains(car)) {
+                    throw new IllegalArgumentException("Elevator not in the building.");
+                }
+                if (car.getShaft() != null) {
+                    throw new IllegalArgumentException("The elevator already shares a shaft.");
+                }
+            }
+        }
+        Shaft shaft = new Shaft(floors, separation, cars);
+        shafts.add(shaft);
+        return shaft;
+    }
+
+    /**
+     * The getShafts method returns the shafts shared by several elevators.
+     *
+     * @return The shared shafts.
+     */
+    public List<Shaft> getShafts() {
+        return Collections.unmodifiableList(shafts);
+    }
+
+    /**
+     * The numberOfHoistways method returns the number of shafts the elevators of
+     * the group need.
+     *
+     * @return The number of shared shafts, plus one for every elevator with a
+     *         shaft of its own.
+     */
+    public int numberOfHoistways() {
+        int hoistways = shafts.size();
+        for (Elevator e : elevators) {
+            if (e.getShaft() == null) {
+                hoistways++;
+            }
+        }
+        return hoistways;
+    }
+
+    /**
+     * The linksLevels method checks if two floors are the two levels of a stop of
+     * a double-deck elevator, so that people walk from one to the other.
+     *
+     * @param a A floor.
+     * @param b Another floor.
+     * @return True if an elevator serves both floors at the same stop, false
+     *         otherwise.
+     * @see Elevator#sharesLanding(Floor, Floor)
+     */
+    public boolean linksLevels(Floor a, Floor b) {
+        for (Elevator e : elevators) {
+            if (e.sharesLanding(a, b)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The setDecks method gives an elevator of the group several decks, one floor
+     * apart. The floors of the building are paired from the bottom: the lowest
+     * deck serves the first floor of every pair, and the upper deck the second.
+     * Floors added later are not served until the decks are set again.
+     *
+     * @param elevator The elevator.
+     * @param decks    The number of decks (1 for a single-deck elevator).
+     * @throws IllegalArgumentException If the elevator is not in the group, or the
+     *                                  number of decks is not positive.
+     * @throws IllegalStateException    If the elevator is busy or carries people.
+     * @see Elevator#setDecks(int, List)
+     */
+    public void setDecks(Elevator elevator, int decks) throws IllegalArgumentException, IllegalStateException {
+        if (!elevators.contains(elevator)) {
+            throw new IllegalArgumentException("Elevator not in the building.");
+        }
+        elevator.setDecks(decks, floors);
+    }
+
+    /**
+     * The getLookAhead method returns the look-ahead dispatcher of the building.
+     *
+     * @return The look-ahead dispatcher, null if hall calls go to the earliest
+     *         estimated arrival.
+     */
+    public LookAheadDispatcher getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * The setLookAhead method sets the dispatcher choosing the elevator of every
+     * hall call by simulating the future of the group. Batched calls are still
+     * assigned together.
+     *
+     * @param lookAhead The look-ahead dispatcher, null to give calls to the
+     *                  earliest estimated arrival.
+     * @see LookAheadDispatcher
+     */
+    public void setLookAhead(LookAheadDispatcher lookAhead) {
+        this.lookAhead = lookAhead;
+    }
+
+    /**
+     * The getEnergyWeight method returns the weight of energy against wait when
+     * dispatching hall calls.
+     *
+     * @return The energy weight (in seconds per kilowatt-hour).
+     */
+    public double getEnergyWeight() {
+        return energyWeight;
+    }
+
+    /**
+     * The setEnergyWeight method sets the weight of energy against wait when
+     * dispatching hall calls: a call goes to the elevator with the lowest
+     * estimated arrival time plus its extra energy times the weight. The
+     * look-ahead dispatcher, if any, still only cares about the wait.
+     *
+     * @param energyWeight The energy weight (in seconds per kilowatt-hour), 0 to
+     *                     only care about the wait.
+     * @throws IllegalArgumentException If the weight is negative.
+     * @see Elevator#getEnergyCost(Floor)
+     */
+    public void setEnergyWeight(double energyWeight) throws IllegalArgumentException {
+        if (energyWeight < 0) {
+            throw new IllegalArgumentException("The energy weight cannot be negative.");
+        }
+        this.energyWeight = energyWeight;
+    }
+
+    /**
+     * The getParkingPolicy method returns the parking policy of the building.
+     *
+     * @return The parking policy, null if idle elevators stay where they stopped.
+     */
+    public ParkingPolicy getParkingPolicy() {
+        return parkingPolicy;
+    }
+
+    /**
+     * The setParkingPolicy method sets the policy moving the idle elevators to
+     * the floors where calls are expected. The policy learns from the hall calls
+     * made from then on.
+     *
+     * @param parkingPolicy The parking policy, null to leave idle elevators where
+     *                      they stopped.
+     * @see ParkingPolicy
+     */
+    public void setParkingPolicy(ParkingPolicy parkingPolicy) {
+        this.parkingPolicy = parkingPolicy;
+    }
+
+    /**
+     * The getForecaster method returns the demand forecaster of the building.
+     *
+     * @return The forecaster, null if the demand is not forecast.
+     */
+    public DemandForecaster getForecaster() {
+        return forecaster;
+    }
+
+    /**
+     * The setForecaster method sets the forecaster learning from the hall calls of
+     * the building and from the car calls of its elevators.
+     *
+     * @param forecaster The forecaster, null to forecast nothing.
+     * @see DemandForecaster
+     */
+    public void setForecaster(DemandForecaster forecaster) {
+        this.forecaster = forecaster;
+        for (Elevator e : elevators) {
+            e.setForecaster(forecaster);
+        }
+    }
+
+    /**
+     * The getAccessAudit method returns the audit of the access decisions of the
+     * building.
+     *
+     * @return The audit, null if the decisions are not recorded.
+     */
+    public AccessAudit getAccessAudit() {
+        return audit;
+    }
+
+    /**
+     * The setAccessAudit method sets the audit recording the access decisions of
+     * the elevators of the building. The building doesn't close it.
+     *
+     * @param audit The audit, null to record nothing.
+     * @see AccessAudit
+     */
+    public void setAccessAudit(AccessAudit audit) {
+        this.audit = audit;
+        for (Elevator e : elevators) {
+            e.setAudit(audit);
+        }
+    }
+
+    /**
+     * The getEventBus method returns the bus the elevators publish their events
+     * to.
+     *
+     * @return The bus, null if the events are not published to one.
+     */
+    public EventBus getEventBus() {
+        return bus;
+    }
+
+    /**
+     * The setEventBus method sets the bus the elevators of the building publish
+     * their events to. The elevators must all run on the same thread: the bus
+     * has a single producer. Closing the bus detaches it from the building.
+     *
+     * @param bus The bus, null to publish to none.
+     * @see EventBus
+     */
+    public void setEventBus(EventBus bus) {
+        this.bus = bus;
+        if (bus != null) {
+            bus.attach(this);
+        }
+        for (Elevator e : elevators) {
+            e.setEventBus(bus);
+        }
+    }
+
+    /**
+     * The parkIdleElevators method moves the idle elevators to the floors where
+     * calls are expected now, if the building has a parking policy.
+     *
+     * @return The number of elevators moved.
+     */
+    public int parkIdleElevators() {
+        return parkIdleElevators(getTime());
+    }
+
+    /**
+     * The parkIdleElevators method moves the idle elevators to the floors where
+     * calls are expected at the given time, if the building has a parking policy.
+     * The elevators leave at that time.
+     *
+     * @param time The current time (in seconds).
+     * @return The number of elevators moved.
+     */
+    public int parkIdleElevators(double time) {
+        if (parkingPolicy == null) {
+            return 0;
+        }
+        return parkingPolicy.park(elevators, floors, time);
+    }
+
+    /**
+     * The getBatchDeadline method returns the time the hall calls of the current
+     * batch window must be assigned at.
+     *
+     * @return The end of the current batch window (in seconds), infinity if no
+     *         call is waiting to be assigned.
+     */
+    public double getBatchDeadline() {
+        return batchCalls.isEmpty() ? Double.POSITIVE_INFINITY : batchCalls.get(0).getTime() + batchWindow;
+    }
+
+    /**
+     * The numberOfBatchedCalls method returns the number of hall calls waiting for
+     * the end of the batch window.
+     *
+     * @return The number of hall calls in the current batch.
+     */
+    public int numberOfBatchedCalls() {
+        return batchCalls.size();
+    }
+
+    /**
+     * The getBatchWindow method returns the length of the batch window.
+     *
+     * @return The batch window (in seconds), 0 if hall calls are assigned one at
+     *         a time.
+     */
+    public double getBatchWindow() {
+        return batchWindow;
+    }
+
+    /**
+     * The setBatchWindow method sets the length of the batch window. Hall calls
+     * made within the window are assigned together when it ends. Setting it to 0
+     * assigns the calls of the current batch, and every new call as soon as it is
+     * made.
+     *
+     * @param batchWindow The batch window (in seconds).
+     * @throws IllegalArgumentException If the window is negative.
+     * @see Building#flushCalls()
+     */
+    public void setBatchWindow(double batchWindow) throws IllegalArgumentException {
+        if (batchWindow < 0) {
+            throw new IllegalArgumentException("The batch window cannot be negative.");
+        }
+        this.batchWindow = batchWindow;
+        if (batchWindow == 0) {
+            flushCalls();
+        }
     }
 
     /**
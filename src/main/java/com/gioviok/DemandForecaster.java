@@ -0,0 +1,413 @@
+package com.gioviok;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The DemandForecaster class forecasts the rate of calls from every floor, a
+ * few minutes ahead. It is fed online: by the hall calls of the building, and by
+ * the car calls of its elevators. A car call is made by a passenger who just got
+ * on, so it tells which way the passengers of the floor go: the forecaster keeps
+ * a series of hall calls per floor, and a series of departures per floor and
+ * direction.
+ * Every series is smoothed with the additive Holt-Winters method, over time
+ * buckets: the calls of a bucket are counted, and when the bucket is over its
+ * rate updates the level, the trend and the seasonal term of its time of day.
+ * The state lives in primitive arrays indexed by series (and by bucket for the
+ * seasonal terms): recording a call and forecasting are O(1), except when a
+ * series was silent for a while and the buckets it missed are caught up (at
+ * most a day of them).
+ * Floors are known by their name, so that the forecaster can be saved and loaded
+ * again in a later run. Only what is learned about the time of day is saved
+ * (the levels, the trends and the seasonal terms): the clock of a new run starts
+ * again, so the buckets in progress are not.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setForecaster(DemandForecaster)
+ */
+public class DemandForecaster {
+    /**
+     * The length of a day (in seconds).
+     */
+    public static final double DAY = 86400;
+
+    /**
+     * The first bytes of a saved forecaster.
+     */
+    private static final int MAGIC = 0x454C4447;
+
+    /**
+     * The first bytes of a forecaster saved with its buckets in progress, by
+     * earlier versions. They are still loaded, without those buckets.
+     */
+    private static final int MAGIC_WITH_BUCKETS = 0x454C4446;
+
+    /**
+     * The kinds of series of a floor: hall calls, departures up and departures
+     * down.
+     */
+    private static final int KINDS = 3;
+
+    /**
+     * The length of a time bucket (in seconds).
+     */
+    private final double bucketLength;
+
+    /**
+     * The number of time buckets in a day (the season).
+     */
+    private final int buckets;
+
+    /**
+     * The smoothing factor of the level.
+     */
+    private double alpha = 0.3;
+
+    /**
+     * The smoothing factor of the trend.
+     */
+    private double beta = 0.05;
+
+    /**
+     * The smoothing factor of the seasonal terms.
+     */
+    private double gamma = 0.2;
+
+    /**
+     * The index of every floor ever called from, by name.
+     */
+    private HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+
+    /**
+     * The names of the floors, by index.
+     */
+    private String[] names = new String[0];
+
+    /**
+     * The smoothed level of every series (calls per hour).
+     */
+    private double[] level = new double[0];
+
+    /**
+     * The smoothed trend of every series (calls per hour, per bucket).
+     */
+    private double[] trend = new double[0];
+
+    /**
+     * The seasonal terms of every series, by bucket of the day (series * buckets
+     * + bucket).
+     */
+    private double[] season = new double[0];
+
+    /**
+     * The number of calls of every series in its current bucket.
+     */
+    private int[] count = new int[0];
+
+    /**
+     * The current bucket of every series (since time 0), -1 if the series never
+     * had a call.
+     */
+    private long[] current = new long[0];
+
+    /**
+     * The constructor of the forecaster, with buckets of five minutes.
+     */
+    public DemandForecaster() {
+        this(300);
+    }
+
+    /**
+     * The constructor of the forecaster.
+     *
+     * @param bucketLength The length of a time bucket (in seconds).
+     * @throws IllegalArgumentException If the length is not positive, or longer
+     *                                  than a day.
+     */
+    public DemandForecaster(double bucketLength) throws IllegalArgumentException {
+        if (bucketLength <= 0 || bucketLength > DAY) {
+            throw new IllegalArgumentException("The bucket length must be positive and at most a day.");
+        }
+        this.bucketLength = bucketLength;
+        this.buckets = (int) Math.ceil(DAY / bucketLength);
+    }
+
+    /**
+     * The recordHallCall method records a hall call.
+     *
+     * @param floor The floor of the call.
+     * @param time  The time of the call (in seconds).
+     * @throws IllegalArgumentException If the floor is null.
+     */
+    public void recordHallCall(Floor floor, double time) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        record(index(floor.getName()) * KINDS, time);
+    }
+
+    /**
+     * The recordCarCall method records a car call, as a departure from the floor
+     * of the elevator in the direction of the destination.
+     *
+     * @param from The floor the call is made from.
+     * @param to   The destination.
+     * @param time The time of the call (in seconds).
+     * @throws IllegalArgumentException If a floor is null.
+     */
+    public void recordCarCall(Floor from, Floor to, double time) throws IllegalArgumentException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        if (from.getDistance() == to.getDistance()) {
+            return;
+        }
+        record(index(from.getName()) * KINDS + kind(to.getDistance() > from.getDistance()
+                ? Elevator.MovingDirection.UP : Elevator.MovingDirection.DOWN), time);
+    }
+
+    /**
+     * The forecast method forecasts the rate of calls from a floor at a given
+     * time.
+     *
+     * @param floor     The floor.
+     * @param direction UP or DOWN for the departures in that direction, null or
+     *                  STATIONARY for the hall calls.
+     * @param time      The time of the forecast (in seconds).
+     * @return The forecast rate (in calls per hour), 0 if nobody ever called from
+     *         the floor.
+     */
+    public double forecast(Floor floor, Elevator.MovingDirection direction, double time) {
+        Integer index = (floor == null) ? null : indexes.get(floor.getName());
+        if (index == null) {
+            return 0;
+        }
+        int series = index * KINDS + kind(direction);
+        // The bucket in progress is not smoothed yet. A series loaded, and not
+        // called since, has none.
+        long bucket = bucket(time);
+        long ahead = (current[series] < 0) ? 0 : Math.max(0, bucket - current[series]);
+        double rate = level[series] + ahead * trend[series] + season[series * buckets + (int) (bucket % buckets)];
+        return Math.max(0, rate);
+    }
+
+    /**
+     * The record method counts a call in a series, closing the buckets which are
+     * over first.
+     *
+     * @param series The series.
+     * @param time   The time of the call (in seconds).
+     */
+    private void record(int series, double time) {
+        long bucket = bucket(time);
+        if (current[series] < 0) {
+            current[series] = bucket;
+        } else if (bucket > current[series]) {
+            close(series, bucket);
+        }
+        // Late calls are counted in the bucket in progress.
+        count[series]++;
+    }
+
+    /**
+     * The close method smooths the rate of the current bucket of a series, and of
+     * the silent buckets which followed, up to the given bucket.
+     *
+     * @param series The series.
+     * @param bucket The new current bucket.
+     */
+    private void close(int series, long bucket) {
+        update(series, current[series], count[series] * 3600 / bucketLength);
+        // A day of silence teaches everything a longer one would.
+        long silent = Math.min(bucket - current[series] - 1, buckets);
+        for (long b = bucket - silent; b < bucket; b++) {
+            update(series, b, 0);
+        }
+        current[series] = bucket;
+        count[series] = 0;
+    }
+
+    /**
+     * The update method applies the Holt-Winters equations to a series, with the
+     * rate observed in a bucket.
+     *
+     * @param series The series.
+     * @param bucket The bucket (since time 0).
+     * @param rate   The observed rate (in calls per hour).
+     */
+    private void update(int series, long bucket, double rate) {
+        int s = series * buckets + (int) (bucket % buckets);
+        double previous = level[series];
+        level[series] = alpha * (rate - season[s]) + (1 - alpha) * (previous + trend[series]);
+        trend[series] = beta * (level[series] - previous) + (1 - beta) * trend[series];
+        season[s] = gamma * (rate - level[series]) + (1 - gamma) * season[s];
+    }
+
+    /**
+     * The index method returns the index of a floor, making room for its series
+     * if the floor is new.
+     *
+     * @param name The name of the floor.
+     * @return The index of the floor.
+     */
+    private int index(String name) {
+        Integer index = indexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        index = indexes.size();
+        indexes.put(name, index);
+        names = Arrays.copyOf(names, index + 1);
+        names[index] = name;
+        int series = (index + 1) * KINDS;
+        level = Arrays.copyOf(level, series);
+        trend = Arrays.copyOf(trend, series);
+        season = Arrays.copyOf(season, series * buckets);
+        count = Arrays.copyOf(count, series);
+        current = Arrays.copyOf(current, series);
+        Arrays.fill(current, index * KINDS, series, -1);
+        return index;
+    }
+
+    /**
+     * The kind method returns the kind of series of a direction.
+     *
+     * @param direction The direction.
+     * @return 1 for UP, 2 for DOWN, 0 (hall calls) otherwise.
+     */
+    private static int kind(Elevator.MovingDirection direction) {
+        if (direction == Elevator.MovingDirection.UP) {
+            return 1;
+        }
+        return (direction == Elevator.MovingDirection.DOWN) ? 2 : 0;
+    }
+
+    /**
+     * The bucket method returns the bucket a time falls in.
+     *
+     * @param time The time (in seconds).
+     * @return The bucket, since time 0.
+     */
+    private long bucket(double time) {
+        return (long) Math.floor(Math.max(0, time) / bucketLength);
+    }
+
+    /**
+     * The save method writes the forecaster to a stream, to be loaded in a later
+     * run. The buckets in progress are not saved: they belong to the clock of
+     * this run.
+     *
+     * @param out The stream. It is not closed.
+     * @throws IOException If the stream fails.
+     * @see #load(InputStream)
+     */
+    public void save(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeDouble(bucketLength);
+        data.writeDouble(alpha);
+        data.writeDouble(beta);
+        data.writeDouble(gamma);
+        data.writeInt(names.length);
+        for (String name : names) {
+            data.writeUTF(name);
+        }
+        for (int i = 0; i < level.length; i++) {
+            data.writeDouble(level[i]);
+            data.writeDouble(trend[i]);
+        }
+        for (double term : season) {
+            data.writeDouble(term);
+        }
+        data.flush();
+    }
+
+    /**
+     * The load method reads a forecaster written by save. Its series start with
+     * no bucket in progress, whatever the time of the first call of the new run.
+     *
+     * @param in The stream. It is not closed.
+     * @return The forecaster.
+     * @throws IOException If the stream fails, or doesn't hold a forecaster.
+     * @see #save(OutputStream)
+     */
+    public static DemandForecaster load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int magic = data.readInt();
+        if (magic != MAGIC && magic != MAGIC_WITH_BUCKETS) {
+            throw new IOException("Not a saved forecaster.");
+        }
+        DemandForecaster forecaster;
+        try {
+            forecaster = new DemandForecaster(data.readDouble());
+            forecaster.setSmoothing(data.readDouble(), data.readDouble(), data.readDouble());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted forecaster: " + e.getMessage());
+        }
+        int floors = data.readInt();
+        if (floors < 0) {
+            throw new IOException("Corrupted forecaster: negative number of floors.");
+        }
+        for (int i = 0; i < floors; i++) {
+            forecaster.index(data.readUTF());
+        }
+        for (int i = 0; i < forecaster.level.length; i++) {
+            forecaster.level[i] = data.readDouble();
+            forecaster.trend[i] = data.readDouble();
+            // The buckets in progress of an older file were on the clock of its run.
+            if (magic == MAGIC_WITH_BUCKETS) {
+                data.readInt();
+                data.readLong();
+            }
+        }
+        for (int i = 0; i < forecaster.season.length; i++) {
+            forecaster.season[i] = data.readDouble();
+        }
+        return forecaster;
+    }
+
+    /**
+     * The setSmoothing method sets the smoothing factors. Higher factors follow
+     * the last buckets more closely.
+     *
+     * @param alpha The smoothing factor of the level.
+     * @param beta  The smoothing factor of the trend.
+     * @param gamma The smoothing factor of the seasonal terms.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If a factor is not in (0, 1].
+     */
+    public DemandForecaster setSmoothing(double alpha, double beta, double gamma) throws IllegalArgumentException {
+        if (alpha <= 0 || alpha > 1 || beta <= 0 || beta > 1 || gamma <= 0 || gamma > 1) {
+            throw new IllegalArgumentException("The smoothing factors must be in (0, 1].");
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        return this;
+    }
+
+    /**
+     * Bucket length getter.
+     *
+     * @return The length of a time bucket (in seconds).
+     */
+    public double getBucketLength() {
+        return bucketLength;
+    }
+
+    /**
+     * The numberOfFloors method returns the number of floors ever called from.
+     *
+     * @return The number of floors.
+     */
+    public int numberOfFloors() {
+        return names.length;
+    }
+}
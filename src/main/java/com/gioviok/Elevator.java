@@ -1,10 +1,19 @@
 package com.gioviok;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * The elevator class has a current floor, a moving direction and a list of
  * floors to visit. It has also information about his weight.
+ * A cabin can have several decks, stacked one floor apart: it then stops at
+ * landings, the floors of its lowest deck, and every deck serves its own floor
+ * at each stop.
  *
  * @author gioviok
  * @version 1.0
@@ -12,10 +21,11 @@ import java.util.ArrayList;
  * @see Floor
  * @see Key
  */
-public class Elevator {
+public class Elevator implements Cloneable {
 
     /**
-     * The current floor of the elevator.
+     * The current floor of the elevator. For a multi-deck cabin, the floor of its
+     * lowest deck.
      */
     private Floor currentFloor;
 
@@ -39,11 +49,283 @@ public class Elevator {
      */
     private MovingDirection movingDirection;
 
+    /**
+     * The enum of all the service modes an Elevator can be in.
+     *
+     * @see Elevator
+     * @see Building#setServiceMode(Elevator, ServiceMode)
+     * @author Gioviok
+     */
+    public enum ServiceMode {
+        /** The elevator is in group service: it serves hall calls and car calls. */
+        NORMAL,
+        /**
+         * Fire recall: the elevator goes non stop to the recall floor and stays
+         * there. Car calls are kept for when it is back in service.
+         */
+        FIRE_RECALL,
+        /** Maintenance: the elevator doesn't move. Car calls are kept. */
+        MAINTENANCE,
+        /** Independent service: the elevator only serves car calls. */
+        INDEPENDENT
+    }
+
+    /**
+     * The service mode of the elevator.
+     */
+    private ServiceMode serviceMode = ServiceMode.NORMAL;
+
+    /**
+     * The floor the elevator goes to in fire recall mode.
+     */
+    private Floor recallFloor;
+
     /**
      * The internal list of floors that the elevator was called to.
      */
     private ArrayList<Floor> floorsToVisit = new ArrayList<>();
 
+    /**
+     * The floors to visit, sorted by height, used to estimate arrival times.
+     *
+     * @see EtaTable
+     */
+    private EtaTable etaTable = new EtaTable();
+
+    /**
+     * The Zobrist hash of the car calls.
+     *
+     * @see Elevator#getStateHash()
+     */
+    private long carCallHash;
+
+    /**
+     * The Zobrist hash of the priority classes of the pending requests.
+     *
+     * @see Elevator#getStateHash()
+     */
+    private long priorityHash;
+
+    /**
+     * The number of age buckets of the requests within the maximum wait, in the
+     * state hash. Requests in the same bucket count as of the same age.
+     *
+     * @see Elevator#getStateHash()
+     */
+    private static final int AGE_BUCKETS = 8;
+
+    /**
+     * The internal list of floors requested from inside the cabin (car calls). The
+     * other floors to visit are hall calls. A floor can be both.
+     *
+     * @see Elevator#requestRide(Floor, Key)
+     */
+    private ArrayList<Floor> carCalls = new ArrayList<>();
+
+    /**
+     * The pending request of every floor to visit, used to know how long a floor
+     * has been waiting. Floors are compared by identity, as everywhere else.
+     *
+     * @see Request
+     */
+    private IdentityHashMap<Floor, Request> requests = new IdentityHashMap<>();
+
+    /**
+     * The pending requests, from the oldest to the newest. Served requests are
+     * removed lazily, when they reach the head of the queue.
+     *
+     * @see Elevator#oldestRequest()
+     */
+    private PriorityQueue<Request> requestsByAge = new PriorityQueue<>(11, Request.OLDEST_FIRST);
+
+    /**
+     * The maximum time a request should wait (in seconds). When the oldest request
+     * would exceed it, it is served before anything else. A non positive value
+     * disables the aging.
+     *
+     * @see Elevator#nextFloor()
+     */
+    private double maxWait = 180;
+
+    /**
+     * The pending requests of every priority class, each from the oldest to the
+     * newest. It is indexed by the ordinal of the priority class. Served requests
+     * are removed lazily, when they reach the head of their queue.
+     *
+     * @see Key.Priority
+     */
+    private ArrayList<PriorityQueue<Request>> requestsByPriority = new ArrayList<>();
+
+    /**
+     * The number of pending requests of every priority class, indexed by the
+     * ordinal of the priority class.
+     *
+     * @see Key.Priority
+     */
+    private int[] pendingByPriority = new int[Key.Priority.values().length];
+
+    /**
+     * The lowest priority class whose requests preempt the normal scheduling. Null
+     * if no class preempts. Classes below STANDARD are only served when nothing
+     * else is pending, whatever this value is.
+     *
+     * @see Key.Priority
+     */
+    private Key.Priority preemptivePriority = Key.Priority.VIP;
+
+    /**
+     * The maximum number of consecutive stops made for preempting requests. After
+     * that, the elevator makes a stop following the normal scheduling, so that
+     * lower classes don't starve. A non positive value means no limit.
+     */
+    private int starvationLimit = 3;
+
+    /**
+     * The number of consecutive stops made for preempting requests.
+     */
+    private int consecutivePreemptions;
+
+    /**
+     * The fraction of the rated load (maxWeight minus the cabin weight) above which
+     * the elevator ignores hall calls and only serves car calls. A non positive
+     * value disables the bypass.
+     *
+     * @see Elevator#isBypassing()
+     */
+    private double bypassLoadFraction = 0.8;
+
+    /**
+     * The speed of the elevator (in millimeters per second).
+     */
+    private double speed = 1500;
+
+    /**
+     * The time spent at every stop to open and close the doors (in seconds).
+     */
+    private double stopTime = 10;
+
+    /**
+     * The simulated time of the elevator (in seconds). It is advanced by the run
+     * method.
+     */
+    private double time;
+
+    /**
+     * The simulated time the elevator reached its current floor at (in seconds).
+     */
+    private double arrivalTime;
+
+    /**
+     * The forecaster learning from the car calls, null if there is none. Clones
+     * and copies don't feed it.
+     *
+     * @see DemandForecaster
+     */
+    private DemandForecaster forecaster;
+
+    /**
+     * The audit recording the access decisions on the car calls, null if there is
+     * none. Clones and copies don't record.
+     *
+     * @see AccessAudit
+     */
+    private AccessAudit audit;
+
+    /**
+     * The queue other threads submit requests to. Clones and copies have their
+     * own, empty one.
+     *
+     * @see RequestIntake
+     */
+    private final RequestIntake intake = new RequestIntake(this);
+
+    /**
+     * The publisher of the changes of state of the elevator. Clones and copies
+     * have their own, with nobody subscribed.
+     *
+     * @see ElevatorEvents
+     */
+    private final ElevatorEvents events = new ElevatorEvents();
+
+    /**
+     * The bus the events are published to in batch runs, null if there is none.
+     * Clones and copies don't publish.
+     *
+     * @see EventBus
+     */
+    private EventBus bus;
+
+    /**
+     * The last snapshot of the state of the elevator, for the observers on other
+     * threads.
+     *
+     * @see ElevatorSnapshot
+     */
+    private volatile ElevatorSnapshot snapshot;
+
+    /**
+     * The version of the last snapshot. Only the thread running the elevator
+     * uses it.
+     */
+    private long snapshotVersion;
+
+    /**
+     * The moving direction last told to the subscribers of the events.
+     */
+    private MovingDirection announcedDirection = MovingDirection.STATIONARY;
+
+    /**
+     * The model of the energy the elevator uses.
+     *
+     * @see EnergyModel
+     */
+    private EnergyModel energyModel = new EnergyModel();
+
+    /**
+     * The floors the elevator serves, one bit per position of the floor in the
+     * floors of its building, null if it serves every floor. The array is never
+     * changed once set, so that copies can share it.
+     *
+     * @see #indexOf(Floor)
+     */
+    private long[] servedFloors;
+
+    /**
+     * The floors of the building of the elevator, sorted by height, which the
+     * bits of the served floors stand for. The list belongs to the building.
+     */
+    private List<Floor> buildingFloors = new ArrayList<Floor>();
+
+    /**
+     * The position of every floor of the building, made again whenever its
+     * floors change, so that finding the bit of a floor is one lookup. The map is
+     * never changed once made, so that copies can share it.
+     *
+     * @see #indexOf(Floor)
+     */
+    private IdentityHashMap<Floor, Integer> floorIndexes = new IdentityHashMap<Floor, Integer>();
+
+    /**
+     * The time the current round trip started at. Negative if no round trip is in
+     * progress.
+     *
+     * @see RunMetrics
+     */
+    private double roundTripStart = -1;
+
+    /**
+     * The direction of the last move of the elevator. STATIONARY if the elevator
+     * has been idle since.
+     */
+    private MovingDirection lastMoveDirection = MovingDirection.STATIONARY;
+
+    /**
+     * The statistics collected while the elevator runs.
+     *
+     * @see RunMetrics
+     */
+    private RunMetrics metrics = new RunMetrics();
+
     /**
      * The weight of the elevator cabin.
      *
@@ -66,6 +348,59 @@ public class Elevator {
      */
     private ArrayList<Person> persons = new ArrayList<>();
 
+    /**
+     * The people on every deck, from the lowest deck up. The single list of a
+     * single-deck cabin holds everyone.
+     */
+    private ArrayList<ArrayList<Person>> rosters = newRosters(1);
+
+    /**
+     * The number of decks of the cabin.
+     */
+    private int decks = 1;
+
+    /**
+     * For a multi-deck cabin, the landing of every floor it serves: the floor its
+     * lowest deck stops at for that floor to be served. Null for a single deck.
+     * The map is never changed once set, so that copies can share it.
+     */
+    private IdentityHashMap<Floor, Floor> landings;
+
+    /**
+     * For a multi-deck cabin, the floor of every deck at each landing, from the
+     * lowest deck up. Null for a single deck. The map is never changed once set.
+     */
+    private IdentityHashMap<Floor, Floor[]> deckFloors;
+
+    /**
+     * The shaft the elevator shares with other cars, null if it has its own.
+     */
+    private Shaft shaft;
+
+    /**
+     * The maximum number of people that the elevator can carry. A value of 0 means
+     * no limit.
+     *
+     * @see Elevator#canBoard(Person)
+     */
+    private int maxPersons;
+
+    /**
+     * The internal queue of people who tried to board while the elevator was full.
+     * They are kept in arrival order and offered a place again every time the
+     * elevator stops at their floor.
+     *
+     * @see Person
+     */
+    private ArrayList<Person> waitingPersons = new ArrayList<>();
+
+    // We create a queue for every priority class.
+    {
+        for (int i = 0; i < Key.Priority.values().length; i++) {
+            requestsByPriority.add(new PriorityQueue<>(11, Request.OLDEST_FIRST));
+        }
+    }
+
     /**
      * Current floor getter.
      *
@@ -86,6 +421,7 @@ public class Elevator {
         this.movingDirection = MovingDirection.STATIONARY;
         this.elevatorWeight = 0;
         this.maxWeight = 0;
+        publishSnapshot();
     }
 
     /**
@@ -101,6 +437,7 @@ public class Elevator {
         this.movingDirection = movingDirection;
         this.elevatorWeight = weight;
         this.maxWeight = maxWeight;
+        publishSnapshot();
     }
 
     /**
@@ -117,10 +454,12 @@ public class Elevator {
         this.movingDirection = movingDirection;
         this.elevatorWeight = weight;
         this.maxWeight = maxWeight;
+        publishSnapshot();
     }
 
     /**
-     * The requestRide method requests a ride to the floor.
+     * The requestRide method requests a ride to the floor. The priority of the
+     * request is the one of the key.
      *
      * @param floor The floor to go to.
      * @param key   The key to use.
@@ -128,27 +467,69 @@ public class Elevator {
      *         otherwise.
      * @throws IllegalArgumentException If the key is not valid.
      * @throws IllegalArgumentException If the floor is null.
+     * @throws IllegalArgumentException If the elevator doesn't serve the floor.
      */
     boolean requestRide(Floor floor, Key key) {
+        return requestRide(floor, key, null);
+    }
+
+    /**
+     * The requestRide method requests a ride to the floor for a person. The
+     * priority of the request is the one of the key. The access decision is
+     * recorded by the audit, if there is one.
+     *
+     * @param floor  The floor to go to.
+     * @param key    The key to use.
+     * @param person The person asking, null if unknown.
+     * @return True if the floor was added to the list of floors to visit, false
+     *         otherwise.
+     * @throws IllegalArgumentException If the key is not valid.
+     * @throws IllegalArgumentException If the floor is null.
+     * @throws IllegalArgumentException If the elevator doesn't serve the floor.
+     * @see AccessAudit#record(double, Person, Key, Floor, boolean)
+     */
+    boolean requestRide(Floor floor, Key key, Person person) {
         if (floor == null) {
             throw new IllegalArgumentException("The floor cannot be null.");
         }
+        if (!serves(floor)) {
+            throw new IllegalArgumentException("The elevator doesn't serve floor " + floor.getName() + ".");
+        }
+        Floor chosen = floor;
+        // A multi-deck cabin stops where the deck of the floor gets there.
+        floor = landing(floor);
         if (floor == currentFloor) {
             return false;
         }
-        // We check if the floor is accessible with the keys currently in the elevator.
-        if (floor.requestAccess(key)) {
+        // We check if the floor is accessible with the keys currently in the elevator, at this time.
+        boolean granted = chosen.requestAccess(key, time);
+        if (audit != null) {
+            audit.record(time, person, key, chosen, granted);
+        }
+        if (granted) {
+            // A car call tells which way the passengers of this floor go.
+            if (forecaster != null) {
+                forecaster.recordCarCall(currentFloor, chosen, time);
+            }
+            // It is a car call, even if the floor was already called from the hall.
+            if (!carCalls.contains(floor)) {
+                carCalls.add(floor);
+                carCallHash ^= Zobrist.hash(floor, Zobrist.CAR_CALL);
+            }
+            Key.Priority priority = (key == null) ? Key.Priority.STANDARD : key.getPriority();
             // We check if the floor isn't already in the list of floors to visit.
-            if (floorsToVisit.contains(floor)) {
+            if (requests.containsKey(floor)) {
+                upgradeRequest(floor, priority);
                 return false;
             }
             // We add the floor to the list of floors to visit.
-            floorsToVisit.add(floor);
+            addRequest(floor, priority);
             // If stationary, we set the moving direction.
             if (movingDirection == MovingDirection.STATIONARY) {
                 movingDirection = (floor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
                         : MovingDirection.DOWN;
             }
+            publishSnapshot();
             // print(2);
             return true;
         }
@@ -165,22 +546,46 @@ public class Elevator {
      * @throws IllegalArgumentException If the floor is null.
      */
     boolean requestHere(Floor floor) {
+        return requestHere(floor, Key.Priority.STANDARD);
+    }
+
+    /**
+     * The requestHere method requests the elevator to stop at the current floor,
+     * with the given priority class. It won't check for the key.
+     *
+     * @param floor    The floor to stop at.
+     * @param priority The priority class of the request.
+     * @return True if the floor was added to the list of floors to visit, false
+     *         otherwise (or if the elevator doesn't serve it).
+     * @throws IllegalArgumentException If the floor or the priority is null.
+     * @see Key.Priority
+     */
+    boolean requestHere(Floor floor, Key.Priority priority) {
         if (floor == null) {
             throw new IllegalArgumentException("The floor cannot be null.");
         }
+        if (priority == null) {
+            throw new IllegalArgumentException("The priority cannot be null.");
+        }
+        if (!serves(floor)) {
+            return false;
+        }
+        floor = landing(floor);
         if (floor == currentFloor) {
             return false;
         }
         // We add the floor to the list of floors to visit.
-        if (floorsToVisit.contains(floor)) {
+        if (requests.containsKey(floor)) {
+            upgradeRequest(floor, priority);
             return false;
         }
-        floorsToVisit.add(floor);
+        addRequest(floor, priority);
         // If stationary, we set the moving direction.
         if (movingDirection == MovingDirection.STATIONARY) {
             movingDirection = (floor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
                     : MovingDirection.DOWN;
         }
+        publishSnapshot();
         // print(2);
         return true;
     }
@@ -193,7 +598,15 @@ public class Elevator {
      * unauthorized persons to the current floor.
      */
     public void halt() {
+        // Going idle ends the current round trip.
+        if (roundTripStart >= 0) {
+            metrics.recordRoundTrip(time - roundTripStart);
+            roundTripStart = -1;
+        }
         movingDirection = MovingDirection.STATIONARY;
+        lastMoveDirection = MovingDirection.STATIONARY;
+        announceDirection();
+        publishSnapshot();
         // We clear the list of floors to visit. We do this since we don't know if a
         // floor accessible with the keys is present in the list.
         // It could in fact happen that the person using the key will be forced to exit
@@ -204,161 +617,1276 @@ public class Elevator {
     }
 
     /**
-     * The isOverloaded method checks if the elevator is overloaded.
+     * The isOverloaded method checks if the elevator is overloaded. As when
+     * boarding, a non positive maximum weight is considered not set.
      *
      * @return True if the elevator is overloaded, false otherwise.
+     * @see #canBoard(Person)
      */
     public boolean isOverloaded() {
-        return getCurrentLoad() > maxWeight;
+        return maxWeight > 0 && getCurrentLoad() > maxWeight;
+    }
+
+    /**
+     * The canBoard method checks if a person fits in the elevator, both by weight
+     * and by number of people. A non positive limit is considered not set, and
+     * will not be checked.
+     *
+     * @param person The person who wants to board.
+     * @return True if the person can board without overloading the elevator, false
+     *         otherwise.
+     * @see Person
+     */
+    public boolean canBoard(Person person) {
+        if (maxPersons > 0 && persons.size() >= maxPersons) {
+            return false;
+        }
+        if (maxWeight > 0 && getCurrentLoad() + person.getWeight() > maxWeight) {
+            return false;
+        }
+        if (decks == 1) {
+            return true;
+        }
+        // Every deck only holds its share of the cabin.
+        int deck = deckOf(person.getCurrentFloor());
+        if (deck < 0) {
+            return false;
+        }
+        if (maxPersons > 0 && rosters.get(deck).size() >= Math.max(1, maxPersons / decks)) {
+            return false;
+        }
+        return maxWeight <= 0 || getDeckLoad(deck) + person.getWeight() <= (maxWeight - elevatorWeight) / decks;
     }
 
     /**
      * The clearRequests method clears the list of floors to visit.
      */
     private void clearRequests() {
+        for (Request request : requests.values()) {
+            request.markDone();
+        }
         floorsToVisit.clear();
+        etaTable.clear();
+        carCalls.clear();
+        carCallHash = 0;
+        priorityHash = 0;
+        requests.clear();
+        requestsByAge.clear();
+        for (PriorityQueue<Request> queue : requestsByPriority) {
+            queue.clear();
+        }
+        pendingByPriority = new int[pendingByPriority.length];
+        consecutivePreemptions = 0;
     }
 
     /**
-     * The run method runs the elevator.
+     * The addRequest method adds a floor to the list of floors to visit, and
+     * starts aging its request.
      *
-     * @return True if the elevator has no more floors to visit, false otherwise.
+     * @param floor    The floor to visit.
+     * @param priority The priority class of the request.
+     * @see Request
      */
-    public boolean run() throws IllegalStateException {
-
-        // If the elevator is overloaded, we throw an exception.
-        if (isOverloaded()) {
-            // We halt the elevator.
-            halt();
-            throw new IllegalStateException("The elevator is overloaded. (Weight: " + getCurrentLoad()
-                    + "kg, Max weight: " + maxWeight + "kg)");
-        }
-        // We get the next floor.
-        Floor nextFloor = nextFloor();
-        // We check if the next floor is null.
-        if (nextFloor == null) {
-            // We halt the elevator.
-            halt();
-            return true;
-        }
+    private void addRequest(Floor floor, Key.Priority priority) {
+        floorsToVisit.add(floor);
+        etaTable.addStop(floor);
+        queueRequest(new Request(floor, time, priority));
+    }
 
-        // For now, we just move to the next floor.
-        currentFloor = nextFloor;
-        // We move every person on the elevator.
-        for (Person person : persons) {
-            person.setCurrentFloor(currentFloor);
+    /**
+     * The queueRequest method puts a request in the queues it belongs to.
+     *
+     * @param request The request to queue.
+     * @see Request
+     */
+    private void queueRequest(Request request) {
+        Request replaced = requests.put(request.getFloor(), request);
+        if (replaced != null) {
+            priorityHash ^= priorityKey(replaced);
         }
-        // We remove the floor from the list of floors to visit.
-        floorsToVisit.remove(nextFloor);
-
-        // print(2);
+        priorityHash ^= priorityKey(request);
+        requestsByAge.add(request);
+        requestsByPriority.get(request.getPriority().ordinal()).add(request);
+        pendingByPriority[request.getPriority().ordinal()]++;
+    }
 
-        if (floorsToVisit.isEmpty()) {
-            // We halt the elevator.
-            halt();
-            return true;
+    /**
+     * The upgradeRequest method raises the priority class of the request of a
+     * floor which is already to visit. The request keeps its age.
+     *
+     * @param floor    The floor to visit.
+     * @param priority The priority class of the new request.
+     * @see Request
+     */
+    private void upgradeRequest(Floor floor, Key.Priority priority) {
+        Request request = requests.get(floor);
+        if (request == null || priority.compareTo(request.getPriority()) >= 0) {
+            return;
         }
-        return false;
+        request.markDone();
+        pendingByPriority[request.getPriority().ordinal()]--;
+        queueRequest(new Request(floor, request.getTime(), priority, request.getDestination()));
     }
 
     /**
-     * The nextFloor method returns the next floor to visit.
+     * The highestPriorityRequest method returns the oldest pending request of the
+     * highest non empty priority class which preempts the normal scheduling.
      *
-     * @return The next floor to visit. Null if there is no next floor.
-     * @see Floor
-     * @see Key
+     * @return The request to serve first. Null if there is none.
+     * @see Key.Priority
      */
-    private Floor nextFloor() {
-        // We check if there is a next floor.
-        if (floorsToVisit.size() > 0) {
-            // We look for the closest floor to the current floor, in the current moving
-            // direction.
-            Floor closestFloor = null;
-            int closestFloorDistance = Integer.MAX_VALUE;
-            for (Floor floor : floorsToVisit) {
-                int distance;
-                // Are we going up or down?
-                if (movingDirection == MovingDirection.UP) {
-                    distance = floor.getDistance() - currentFloor.getDistance();
-                } else {
-                    distance = currentFloor.getDistance() - floor.getDistance();
-                }
-                // If distance is negative or 0, the floor is in the wrong direction or the same
-                // floor (shouldn't happen).
-                if (distance <= 0)
-                    continue;
-                // If the distance is smaller than the closest floor distance, we update the
-                // closest floor.
-                if (distance < closestFloorDistance) {
-                    closestFloor = floor;
-                    closestFloorDistance = distance;
-                }
+    private Request highestPriorityRequest() {
+        if (preemptivePriority == null) {
+            return null;
+        }
+        for (int i = 0; i <= preemptivePriority.ordinal(); i++) {
+            if (pendingByPriority[i] == 0) {
+                continue;
             }
-            // If we didn't find a floor, we can inverse the direction.
-            if (closestFloor == null) {
-                movingDirection = (movingDirection == MovingDirection.UP) ? MovingDirection.DOWN : MovingDirection.UP;
-                return nextFloor();
+            PriorityQueue<Request> queue = requestsByPriority.get(i);
+            while (queue.peek().isDone()) {
+                queue.poll();
             }
-            return closestFloor;
+            return queue.peek();
         }
-        // We return null.
-        movingDirection = MovingDirection.STATIONARY;
         return null;
     }
 
     /**
-     * The getCurrentLoad method returns the current load of the elevator.
-     * It calculates it by adding the weight of the elevator and the weight of every
-     * person in the elevator.
+     * The isDeferred method checks if the request of a floor belongs to a class
+     * below STANDARD while requests of higher classes are pending.
      *
-     * @return The current load of the elevator.
-     * @see Person
+     * @param floor The floor to check.
+     * @return True if the floor must wait for the higher classes, false otherwise.
+     * @see Key.Priority
      */
-    public double getCurrentLoad() {
-        double currentLoad = elevatorWeight;
+    private boolean isDeferred(Floor floor) {
+        Request request = requests.get(floor);
+        if (request == null || request.getPriority().compareTo(Key.Priority.STANDARD) <= 0) {
+            return false;
+        }
+        for (int i = 0; i <= Key.Priority.STANDARD.ordinal(); i++) {
+            if (pendingByPriority[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The serveRequest method removes a floor from the floors to visit, and
+     * records how long it waited.
+     *
+     * @param floor The floor that was reached.
+     * @see Request
+     */
+    private void serveRequest(Floor floor) {
+        floorsToVisit.remove(floor);
+        etaTable.removeStop(floor);
+        if (carCalls.remove(floor)) {
+            carCallHash ^= Zobrist.hash(floor, Zobrist.CAR_CALL);
+        }
+        Request request = requests.remove(floor);
+        if (request != null) {
+            priorityHash ^= priorityKey(request);
+            request.markDone();
+            pendingByPriority[request.getPriority().ordinal()]--;
+            metrics.recordWait(time - request.getTime());
+        }
+    }
+
+    /**
+     * The oldestRequest method returns the oldest pending request, dropping the
+     * served ones from the head of the queue.
+     *
+     * @return The oldest pending request. Null if there is none.
+     * @see Request
+     */
+    private Request oldestRequest() {
+        while (!requestsByAge.isEmpty() && requestsByAge.peek().isDone()) {
+            requestsByAge.poll();
+        }
+        return requestsByAge.peek();
+    }
+
+    /**
+     * The travelTime method returns the time needed to reach a floor from the
+     * current one, without intermediate stops.
+     *
+     * @param floor The floor to reach.
+     * @return The travel time (in seconds).
+     */
+    private double travelTime(Floor floor) {
+        return Math.abs(floor.getDistance() - currentFloor.getDistance()) / speed;
+    }
+
+    /**
+     * The isBypassing method checks if the elevator is loaded enough to skip hall
+     * calls: nobody could get on anyway, so it only stops for car calls.
+     *
+     * @return True if the load is above the bypass fraction of the rated load,
+     *         false otherwise.
+     */
+    public boolean isBypassing() {
+        double ratedLoad = maxWeight - elevatorWeight;
+        if (bypassLoadFraction <= 0 || ratedLoad <= 0) {
+            return false;
+        }
+        return getCurrentLoad() - elevatorWeight >= bypassLoadFraction * ratedLoad;
+    }
+
+    /**
+     * The run method runs the elevator. The requests submitted to its intake are
+     * applied first.
+     *
+     * @return True if the elevator has no more floors to visit, false otherwise.
+     * @see #getIntake()
+     * @see #getSnapshot()
+     */
+    public boolean run() throws IllegalStateException {
+        try {
+            return step();
+        } finally {
+            // Observers see the state once the run is over, never halfway.
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * The step method moves the elevator to its next stop, for the run method.
+     *
+     * @return True if the elevator has no more floors to visit, false otherwise.
+     * @throws IllegalStateException If the elevator is overloaded.
+     */
+    private boolean step() throws IllegalStateException {
+        // We take the requests other threads submitted since the last run.
+        if (intake.hasPending()) {
+            intake.drain();
+        }
+
+        // Out of group service, the elevator may not move at all.
+        switch (serviceMode) {
+            case MAINTENANCE:
+                return true;
+            case FIRE_RECALL:
+                // We go straight to the recall floor, ignoring every request.
+                if (recallFloor != null && currentFloor != recallFloor) {
+                    movingDirection = (recallFloor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
+                            : MovingDirection.DOWN;
+                    moveTo(recallFloor);
+                }
+                movingDirection = MovingDirection.STATIONARY;
+                announceDirection();
+                return true;
+            default:
+                break;
+        }
+        // If the elevator is overloaded, we throw an exception. We don't halt the
+        // elevator, since that would throw away every pending request: the elevator
+        // just refuses to move until someone gets off.
+        if (isOverloaded()) {
+            emit(ElevatorEvent.Type.OVERLOAD, time, null);
+            throw new IllegalStateException("The elevator is overloaded. (Weight: " + getCurrentLoad()
+                    + "kg, Max weight: " + maxWeight + "kg)");
+        }
+        // A car moved out of the way in its shaft may stand on a floor to visit: it
+        // opens its doors there first.
+        if (requests.containsKey(currentFloor)) {
+            arrivalTime = time;
+            time += stopTime;
+            announceDirection();
+            emit(ElevatorEvent.Type.DOORS_OPENED, arrivalTime, null);
+            serveRequest(currentFloor);
+            boardWaitingPersons();
+            return floorsToVisit.isEmpty();
+        }
+        // We get the next floor.
+        Floor nextFloor = nextFloor();
+        // We check if the next floor is null.
+        if (nextFloor == null) {
+            // We halt the elevator.
+            halt();
+            return true;
+        }
+
+        // We move to the next floor.
+        Floor previousFloor = currentFloor;
+        moveTo(nextFloor);
+        // We remove the floor from the list of floors to visit.
+        serveRequest(nextFloor);
+        // If someone was left waiting on the floor we just left, we have to come back.
+        if (hasWaitingPersons(previousFloor)) {
+            requestHere(previousFloor);
+        }
+        // We offer a place to the people waiting on the new floor.
+        boardWaitingPersons();
+
+        // print(2);
+
+        if (floorsToVisit.isEmpty()) {
+            // We halt the elevator.
+            halt();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The moveTo method moves the elevator and every person on it to a floor,
+     * advancing the simulated time.
+     *
+     * @param floor The floor to move to.
+     */
+    private void moveTo(Floor floor) {
+        // In a shared shaft, the car may have to wait for the others.
+        if (shaft != null) {
+            time = shaft.depart(this, floor, time);
+        }
+        int travelled = floor.getDistance() - currentFloor.getDistance();
+        announceDirection();
+        time += Math.abs(travelled) / speed;
+        arrivalTime = time;
+        time += stopTime;
+        metrics.recordStop(travelled);
+        metrics.recordEnergy(energyModel.travelEnergy(getCurrentLoad(), getCounterweight(), travelled));
+        metrics.recordEnergy(energyModel.getStopEnergy());
+        place(floor);
+        emit(ElevatorEvent.Type.FLOOR_REACHED, arrivalTime, null);
+        emit(ElevatorEvent.Type.DOORS_OPENED, arrivalTime, null);
+    }
+
+    /**
+     * The emit method publishes a change of state of the elevator, to the bus in
+     * place and to the subscribers of the events. Nothing is made if nobody is
+     * subscribed.
+     *
+     * @param type   The kind of event.
+     * @param at     The simulated time of the event (in seconds).
+     * @param person The person who got on or off, null for the other events.
+     * @see ElevatorEvents
+     */
+    private void emit(ElevatorEvent.Type type, double at, Person person) {
+        if (bus != null) {
+            long sequence = bus.next();
+            if (sequence >= 0) {
+                bus.get(sequence).set(type, this, at, currentFloor, movingDirection, person);
+                bus.publish(sequence);
+            }
+        }
+        if (events.isActive()) {
+            events.publish(new ElevatorEvent(type, this, at, currentFloor, movingDirection, person));
+        }
+    }
+
+    /**
+     * The announceDirection method publishes the moving direction, if it changed
+     * since it was last published.
+     */
+    private void announceDirection() {
+        if (movingDirection != announcedDirection) {
+            announcedDirection = movingDirection;
+            emit(ElevatorEvent.Type.DIRECTION_CHANGED, time, null);
+        }
+    }
+
+    /**
+     * The place method puts the elevator and every person on it on a floor.
+     *
+     * @param floor The floor.
+     */
+    private void place(Floor floor) {
+        currentFloor = floor;
+        // We move every person on the elevator, each to the floor of their deck.
+        Floor[] levels = (deckFloors == null) ? null : deckFloors.get(currentFloor);
+        for (int deck = 0; deck < decks; deck++) {
+            Floor level = (levels == null) ? currentFloor : levels[deck];
+            // A deck above the top floor stays out of the building: its people keep their floor.
+            if (level == null) {
+                continue;
+            }
+            for (Person person : rosters.get(deck)) {
+                person.setCurrentFloor(level);
+            }
+        }
+    }
+
+    /**
+     * The isBusy method checks if the elevator has somewhere to go in its current
+     * service mode.
+     *
+     * @return True if the next call to run would move the elevator, false
+     *         otherwise.
+     */
+    public boolean isBusy() {
+        switch (serviceMode) {
+            case MAINTENANCE:
+                return false;
+            case FIRE_RECALL:
+                return recallFloor != null && currentFloor != recallFloor;
+            default:
+                return !floorsToVisit.isEmpty();
+        }
+    }
+
+    /**
+     * The hasRequest method checks if a floor is to visit.
+     *
+     * @param floor The floor to check.
+     * @return True if the floor is to visit, false otherwise.
+     */
+    public boolean hasRequest(Floor floor) {
+        return requests.containsKey(landing(floor));
+    }
+
+    /**
+     * The getEta method estimates how long the elevator needs to reach a floor,
+     * from its current position and clock, following its current sweep and
+     * counting the stops on the way. It doesn't go through the floors to visit:
+     * the estimate is kept up to date as stops are added, served or cleared.
+     *
+     * @param floor The floor to reach.
+     * @return The estimated time (in seconds).
+     * @throws IllegalArgumentException If the floor is null.
+     * @throws IllegalStateException    If the elevator has no current floor.
+     * @see EtaTable
+     */
+    public double getEta(Floor floor) throws IllegalArgumentException, IllegalStateException {
+        if (floor == null) {
+            throw new IllegalArgumentException("The floor cannot be null.");
+        }
+        if (currentFloor == null) {
+            throw new IllegalStateException("The elevator has no current floor.");
+        }
+        return etaTable.estimate(currentFloor.getDistance(), movingDirection, landing(floor), speed, stopTime);
+    }
+
+    /**
+     * The getEnergyCost method estimates the extra energy the elevator needs to
+     * serve a call: the trip from the closest floor it goes to anyway, with its
+     * current load, and one more stop.
+     *
+     * @param floor The floor of the call.
+     * @return The estimated energy (in kilowatt-hours), negative if the trip
+     *         gives back more than the stop uses.
+     * @throws IllegalArgumentException If the floor is null.
+     * @throws IllegalStateException    If the elevator has no current floor.
+     * @see EnergyModel
+     */
+    public double getEnergyCost(Floor floor) throws IllegalArgumentException, IllegalStateException {
+        if (floor == null) {
+            throw new IllegalArgumentException("The floor cannot be null.");
+        }
+        if (currentFloor == null) {
+            throw new IllegalStateException("The elevator has no current floor.");
+        }
+        floor = landing(floor);
+        int from = etaTable.closestStop(currentFloor.getDistance(), floor.getDistance());
+        if (from == floor.getDistance()) {
+            return 0;
+        }
+        return (energyModel.travelEnergy(getCurrentLoad(), getCounterweight(), floor.getDistance() - from)
+                + energyModel.getStopEnergy()) / EnergyModel.JOULES_PER_KWH;
+    }
+
+    /**
+     * The getCounterweight method returns the mass of the counterweight of the
+     * elevator.
+     *
+     * @return The mass of the counterweight (in kilograms).
+     */
+    public double getCounterweight() {
+        return energyModel.counterweight(elevatorWeight, maxWeight);
+    }
+
+    /**
+     * The getEnergyModel method returns the model of the energy the elevator
+     * uses.
+     *
+     * @return The energy model.
+     */
+    public EnergyModel getEnergyModel() {
+        return energyModel;
+    }
+
+    /**
+     * The setEnergyModel method sets the model of the energy the elevator uses.
+     *
+     * @param energyModel The energy model.
+     * @throws IllegalArgumentException If the model is null.
+     */
+    public void setEnergyModel(EnergyModel energyModel) throws IllegalArgumentException {
+        if (energyModel == null) {
+            throw new IllegalArgumentException("The energy model cannot be null.");
+        }
+        this.energyModel = energyModel;
+    }
+
+    /**
+     * The serves method checks if the elevator serves a floor. It only tests the
+     * bit of the floor in the mask of served floors, and for a multi-deck cabin
+     * that one of its decks gets to the floor.
+     *
+     * @param floor The floor.
+     * @return True if the elevator stops at the floor, false otherwise (or if the
+     *         floor is null).
+     */
+    public boolean serves(Floor floor) {
+        if (floor == null || (landings != null && !landings.containsKey(floor))) {
+            return false;
+        }
+        if (servedFloors == null) {
+            return true;
+        }
+        int index = indexOf(floor);
+        return index >= 0 && (index >>> 6) < servedFloors.length
+                && (servedFloors[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * The indexOf method finds the position of a floor in the floors of the
+     * building, its bit in the mask of served floors. The floors of the building
+     * are looked up directly. A copy of one of them has its position too: as the
+     * floors are sorted by height, we search it by height, then check it is the
+     * same floor.
+     *
+     * @param floor The floor.
+     * @return The position of the floor, -1 if it is not in the building.
+     */
+    private int indexOf(Floor floor) {
+        Integer known = floorIndexes.get(floor);
+        if (known != null) {
+            return known;
+        }
+        int index = Collections.binarySearch(buildingFloors, floor);
+        return (index >= 0 && buildingFloors.get(index).equals(floor)) ? index : -1;
+    }
+
+    /**
+     * The setServedFloors method limits the elevator to a subset of floors, for
+     * express shuttles or restricted cars. Hall calls from or to the other floors
+     * are given to other elevators, and car calls to them are refused.
+     *
+     * @param floors The floors the elevator stops at.
+     * @throws IllegalArgumentException If no floor is given, or a floor is null
+     *                                  or not in the building of the elevator.
+     * @see #serveAllFloors()
+     * @see Building#setSkyLobbies(Floor...)
+     */
+    public void setServedFloors(Floor... floors) throws IllegalArgumentException {
+        if (floors == null || floors.length == 0) {
+            throw new IllegalArgumentException("The elevator must serve at least one floor.");
+        }
+        for (Floor floor : floors) {
+            if (floor == null) {
+                throw new IllegalArgumentException("The floor cannot be null.");
+            }
+            if (indexOf(floor) < 0) {
+                throw new IllegalArgumentException("Floor " + floor.getName() + " is not in the building.");
+            }
+        }
+        servedFloors = mask(Arrays.asList(floors));
+    }
+
+    /**
+     * The mask method makes the mask of served floors of some floors. The floors
+     * not in the building are left out.
+     *
+     * @param floors The floors.
+     * @return The mask of the floors, one bit per floor of the building.
+     */
+    private long[] mask(List<Floor> floors) {
+        long[] mask = new long[(buildingFloors.size() >>> 6) + 1];
+        for (Floor floor : floors) {
+            int index = indexOf(floor);
+            if (index >= 0) {
+                mask[index >>> 6] |= 1L << index;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The getServedFloors method returns the floors of the building the elevator
+     * serves.
+     *
+     * @return The floors served, sorted by height.
+     */
+    public ArrayList<Floor> getServedFloors() {
+        ArrayList<Floor> served = new ArrayList<Floor>();
+        for (int i = 0; i < buildingFloors.size(); i++) {
+            if (servedFloors == null || ((i >>> 6) < servedFloors.length
+                    && (servedFloors[i >>> 6] & (1L << i)) != 0)) {
+                served.add(buildingFloors.get(i));
+            }
+        }
+        return served;
+    }
+
+    /**
+     * The setBuildingFloors method sets the floors of the building of the
+     * elevator. The floors it serves keep being served, at their position in
+     * the new floors.
+     *
+     * @param floors The floors of the building, sorted by height.
+     * @see Building#addElevator(Elevator)
+     */
+    void setBuildingFloors(List<Floor> floors) {
+        ArrayList<Floor> served = getServedFloors();
+        buildingFloors = floors;
+        restoreServedFloors(served);
+    }
+
+    /**
+     * The restoreServedFloors method sets the positions of the floors and the
+     * mask of served floors again after the floors of the building changed, from
+     * the floors served before. A floor which left the building is not served
+     * any more.
+     *
+     * @param served The floors served before the change.
+     * @see Building#addFloor(Floor)
+     */
+    void restoreServedFloors(List<Floor> served) {
+        IdentityHashMap<Floor, Integer> indexes = new IdentityHashMap<Floor, Integer>();
+        for (int i = 0; i < buildingFloors.size(); i++) {
+            indexes.put(buildingFloors.get(i), i);
+        }
+        floorIndexes = indexes;
+        if (servedFloors != null) {
+            servedFloors = mask(served);
+        }
+    }
+
+    /**
+     * The serveAllFloors method lets the elevator serve every floor again.
+     */
+    public void serveAllFloors() {
+        servedFloors = null;
+    }
+
+    /**
+     * The servesAllFloors method checks if the elevator serves every floor.
+     *
+     * @return True if the elevator has no subset of served floors, false
+     *         otherwise.
+     */
+    public boolean servesAllFloors() {
+        return servedFloors == null;
+    }
+
+    /**
+     * The setZone method limits the elevator to a contiguous band of floors: the
+     * floors of the building between two heights. Hall calls from outside the
+     * band are given to other elevators, and car calls outside of it are refused.
+     *
+     * @param lowest  The height of the bottom of the band (in millimeters).
+     * @param highest The height of the top of the band (in millimeters).
+     * @throws IllegalArgumentException If the lowest height is above the highest,
+     *                                  or no floor of the building is in the band.
+     * @see #setServedFloors(Floor...)
+     */
+    public void setZone(int lowest, int highest) throws IllegalArgumentException {
+        if (lowest > highest) {
+            throw new IllegalArgumentException("The bottom of the zone cannot be above its top.");
+        }
+        ArrayList<Floor> band = new ArrayList<Floor>();
+        for (Floor floor : buildingFloors) {
+            if (floor.getDistance() >= lowest && floor.getDistance() <= highest) {
+                band.add(floor);
+            }
+        }
+        if (band.isEmpty()) {
+            throw new IllegalArgumentException("The zone has no floor of the building.");
+        }
+        servedFloors = mask(band);
+    }
+
+    /**
+     * The clearZone method lets the elevator serve every floor again.
+     *
+     * @see #serveAllFloors()
+     */
+    public void clearZone() {
+        serveAllFloors();
+    }
+
+    /**
+     * The getZoneLowest method returns the bottom of the zone of the elevator.
+     *
+     * @return The height of the lowest floor served (in millimeters),
+     *         Integer.MIN_VALUE if the elevator serves every floor or none.
+     */
+    public int getZoneLowest() {
+        ArrayList<Floor> served = getServedFloors();
+        return (servedFloors == null || served.isEmpty()) ? Integer.MIN_VALUE : served.get(0).getDistance();
+    }
+
+    /**
+     * The getZoneHighest method returns the top of the zone of the elevator.
+     *
+     * @return The height of the highest floor served (in millimeters),
+     *         Integer.MAX_VALUE if the elevator serves every floor or none.
+     */
+    public int getZoneHighest() {
+        ArrayList<Floor> served = getServedFloors();
+        return (servedFloors == null || served.isEmpty()) ? Integer.MAX_VALUE
+                : served.get(served.size() - 1).getDistance();
+    }
+
+    /**
+     * The setDecks method sets the number of decks of the cabin. The decks are
+     * one floor apart: the floors, sorted by height, are grouped by as many as
+     * there are decks, and the cabin stops at the lowest floor of every group,
+     * its landing, where each deck serves its own floor of the group. With two
+     * decks, one deck serves the floors of even rank from the bottom, and the
+     * other those of odd rank. A cabin outside the building's floors stays where
+     * it is; one on a floor goes to its landing.
+     *
+     * @param decks  The number of decks (1 for a single-deck cabin).
+     * @param floors The floors of the building.
+     * @throws IllegalArgumentException If the number of decks is not positive, or
+     *                                  the floors are null.
+     * @throws IllegalStateException    If the elevator has people on board or
+     *                                  floors to visit.
+     * @see Building#setDecks(Elevator, int)
+     */
+    public void setDecks(int decks, List<Floor> floors) throws IllegalArgumentException, IllegalStateException {
+        if (decks < 1) {
+            throw new IllegalArgumentException("The elevator must have at least one deck.");
+        }
+        if (floors == null) {
+            throw new IllegalArgumentException("The floors cannot be null.");
+        }
+        if (!persons.isEmpty() || !waitingPersons.isEmpty() || !floorsToVisit.isEmpty()) {
+            throw new IllegalStateException("The elevator must be empty and idle to change its decks.");
+        }
+        this.decks = decks;
+        rosters = newRosters(decks);
+        if (decks == 1) {
+            landings = null;
+            deckFloors = null;
+            return;
+        }
+        Floor[] sorted = floors.toArray(new Floor[0]);
+        Arrays.sort(sorted, new Comparator<Floor>() {
+            @Override
+            public int compare(Floor a, Floor b) {
+                return Integer.compare(a.getDistance(), b.getDistance());
+            }
+        });
+        IdentityHashMap<Floor, Floor> newLandings = new IdentityHashMap<>();
+        IdentityHashMap<Floor, Floor[]> newDeckFloors = new IdentityHashMap<>();
+        for (int first = 0; first < sorted.length; first += decks) {
+            Floor[] levels = new Floor[decks];
+            for (int deck = 0; deck < decks && first + deck < sorted.length; deck++) {
+                levels[deck] = sorted[first + deck];
+                newLandings.put(levels[deck], sorted[first]);
+            }
+            newDeckFloors.put(sorted[first], levels);
+        }
+        landings = newLandings;
+        deckFloors = newDeckFloors;
+        if (landings.containsKey(currentFloor)) {
+            currentFloor = landings.get(currentFloor);
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Decks getter.
+     *
+     * @return The number of decks of the cabin.
+     */
+    public int getDecks() {
+        return decks;
+    }
+
+    /**
+     * The getDeckFloors method returns the floor every deck is at.
+     *
+     * @return The floors of the decks, from the lowest deck up (null for a deck
+     *         above the top floor), empty if the elevator has no current floor.
+     */
+    public Floor[] getDeckFloors() {
+        if (currentFloor == null) {
+            return new Floor[0];
+        }
+        if (deckFloors == null) {
+            return new Floor[] { currentFloor };
+        }
+        return deckFloors.get(currentFloor).clone();
+    }
+
+    /**
+     * The isAt method checks if one of the decks of the elevator is at a floor.
+     *
+     * @param floor The floor.
+     * @return True if the doors of a deck open on the floor, false otherwise.
+     */
+    public boolean isAt(Floor floor) {
+        if (floor == null || currentFloor == null) {
+            return false;
+        }
+        return (landings == null) ? floor == currentFloor : landings.get(floor) == currentFloor;
+    }
+
+    /**
+     * The connects method checks if a passenger can ride the elevator between two
+     * floors: it must serve both, and on a multi-deck cabin the same deck must
+     * get to both, at two different landings.
+     *
+     * @param from The floor of departure.
+     * @param to   The destination.
+     * @return True if the ride is possible, false otherwise.
+     */
+    public boolean connects(Floor from, Floor to) {
+        if (!serves(from) || !serves(to)) {
+            return false;
+        }
+        if (decks == 1) {
+            return from != to;
+        }
+        return landing(from) != landing(to) && deckOf(from) == deckOf(to);
+    }
+
+    /**
+     * The sharesLanding method checks if two floors are served by two decks of
+     * the cabin at the same stop, so that people can walk from one to the other
+     * in the lobby instead of riding.
+     *
+     * @param a A floor.
+     * @param b Another floor.
+     * @return True if the floors are different and share a landing, false
+     *         otherwise (always false for a single-deck cabin).
+     */
+    public boolean sharesLanding(Floor a, Floor b) {
+        return landings != null && a != b && serves(a) && serves(b) && landing(a) == landing(b);
+    }
+
+    /**
+     * The getDeckRoster method returns the people on a deck.
+     *
+     * @param deck The deck, 0 being the lowest.
+     * @return A copy of the people on the deck.
+     * @throws IllegalArgumentException If the cabin has no such deck.
+     */
+    public List<Person> getDeckRoster(int deck) throws IllegalArgumentException {
+        if (deck < 0 || deck >= decks) {
+            throw new IllegalArgumentException("The elevator has no deck " + deck + ".");
+        }
+        return new ArrayList<>(rosters.get(deck));
+    }
+
+    /**
+     * The getDeckLoad method returns the weight of the people on a deck.
+     *
+     * @param deck The deck, 0 being the lowest.
+     * @return The weight of the people on the deck, without the cabin.
+     * @throws IllegalArgumentException If the cabin has no such deck.
+     */
+    public double getDeckLoad(int deck) throws IllegalArgumentException {
+        if (deck < 0 || deck >= decks) {
+            throw new IllegalArgumentException("The elevator has no deck " + deck + ".");
+        }
+        double load = 0;
+        for (Person person : rosters.get(deck)) {
+            load += person.getWeight();
+        }
+        return load;
+    }
+
+    /**
+     * The landing method returns the floor the cabin stops at for a floor to be
+     * served.
+     *
+     * @param floor The floor.
+     * @return The landing of the floor, the floor itself for a single-deck cabin
+     *         or a floor the cabin doesn't get to.
+     */
+    private Floor landing(Floor floor) {
+        if (landings == null) {
+            return floor;
+        }
+        Floor landing = landings.get(floor);
+        return (landing == null) ? floor : landing;
+    }
+
+    /**
+     * The deckOf method returns the deck which gets to a floor.
+     *
+     * @param floor The floor.
+     * @return The deck, 0 for a single-deck cabin, -1 if no deck gets to the
+     *         floor.
+     */
+    private int deckOf(Floor floor) {
+        if (deckFloors == null) {
+            return 0;
+        }
+        Floor[] levels = deckFloors.get(landing(floor));
+        if (levels != null) {
+            for (int deck = 0; deck < levels.length; deck++) {
+                if (levels[deck] == floor) {
+                    return deck;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The newRosters method creates the empty rosters of the decks.
+     *
+     * @param decks The number of decks.
+     * @return One empty list per deck.
+     */
+    private static ArrayList<ArrayList<Person>> newRosters(int decks) {
+        ArrayList<ArrayList<Person>> rosters = new ArrayList<>(decks);
+        for (int deck = 0; deck < decks; deck++) {
+            rosters.add(new ArrayList<Person>());
+        }
+        return rosters;
+    }
+
+    /**
+     * The releaseHallCalls method removes every hall call from the floors to
+     * visit, and returns them so that they can be given to another elevator. Car
+     * calls are kept.
+     *
+     * @return The released hall calls, with their age and priority.
+     * @see Request
+     */
+    ArrayList<Request> releaseHallCalls() {
+        ArrayList<Request> released = new ArrayList<>();
+        for (int i = 0; i < floorsToVisit.size();) {
+            Floor floor = floorsToVisit.get(i);
+            if (carCalls.contains(floor)) {
+                i++;
+                continue;
+            }
+            Request request = requests.remove(floor);
+            priorityHash ^= priorityKey(request);
+            request.markDone();
+            pendingByPriority[request.getPriority().ordinal()]--;
+            floorsToVisit.remove(i);
+            etaTable.removeStop(floor);
+            released.add(request);
+        }
+        if (!released.isEmpty()) {
+            publishSnapshot();
+        }
+        return released;
+    }
+
+    /**
+     * The adoptRequest method takes a hall call released by another elevator. The
+     * request keeps its age and its priority.
+     *
+     * @param request The request to adopt.
+     * @return True if the floor was added to the list of floors to visit, false
+     *         otherwise (or if the elevator doesn't serve it).
+     * @see Request
+     */
+    boolean adoptRequest(Request request) {
+        if (!serves(request.getFloor())) {
+            return false;
+        }
+        Floor floor = landing(request.getFloor());
+        if (floor == currentFloor) {
+            return false;
+        }
+        if (requests.containsKey(floor)) {
+            upgradeRequest(floor, request.getPriority());
+            return false;
+        }
+        floorsToVisit.add(floor);
+        etaTable.addStop(floor);
+        queueRequest(new Request(floor, request.getTime(), request.getPriority(), request.getDestination()));
+        if (movingDirection == MovingDirection.STATIONARY) {
+            movingDirection = (floor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
+                    : MovingDirection.DOWN;
+        }
+        publishSnapshot();
+        return true;
+    }
+
+    /**
+     * The cancelHallCall method removes a floor from the floors to visit, unless
+     * it is a car call. It is used when the people waiting there were picked up by
+     * another elevator.
+     *
+     * @param floor The floor to cancel.
+     * @return True if the hall call was cancelled, false otherwise.
+     */
+    boolean cancelHallCall(Floor floor) {
+        floor = landing(floor);
+        if (!requests.containsKey(floor) || carCalls.contains(floor)) {
+            return false;
+        }
+        Request request = requests.remove(floor);
+        priorityHash ^= priorityKey(request);
+        request.markDone();
+        pendingByPriority[request.getPriority().ordinal()]--;
+        floorsToVisit.remove(floor);
+        etaTable.removeStop(floor);
+        publishSnapshot();
+        return true;
+    }
+
+    /**
+     * The nextFloor method returns the next floor to visit, and updates the moving
+     * direction accordingly. If the elevator is bypassing, hall calls are skipped
+     * as long as there is a car call to serve.
+     * Requests age: if the oldest request would wait more than the maximum wait,
+     * it is served first, whatever the direction. This bounds the wait of far away
+     * floors which keep being overtaken by closer calls.
+     * Otherwise, the oldest request of the highest preempting priority class is
+     * served first, up to a number of consecutive stops. Requests of classes below
+     * STANDARD are only considered when no other request is pending.
+     *
+     * @return The next floor to visit. Null if there is no next floor.
+     * @see Floor
+     * @see Key
+     */
+    private Floor nextFloor() {
+        // We check if there is a next floor.
+        if (floorsToVisit.isEmpty()) {
+            movingDirection = MovingDirection.STATIONARY;
+            return null;
+        }
+        // A stationary elevator looks downwards first.
+        MovingDirection direction = (movingDirection == MovingDirection.UP) ? MovingDirection.UP
+                : MovingDirection.DOWN;
+        MovingDirection opposite = (direction == MovingDirection.UP) ? MovingDirection.DOWN : MovingDirection.UP;
+        // The floor we would go to without the bypass.
+        Floor closestFloor = closestFloor(direction, false);
+        MovingDirection closestDirection = direction;
+        if (closestFloor == null) {
+            closestFloor = closestFloor(opposite, false);
+            closestDirection = opposite;
+        }
+        boolean bypassing = isBypassing();
+        Request oldest = oldestRequest();
+        Request preempting = null;
+        if (maxWait > 0 && oldest != null && oldest.getFloor() != currentFloor
+                && time + travelTime(oldest.getFloor()) >= oldest.getTime() + maxWait
+                && (!bypassing || carCalls.contains(oldest.getFloor()))) {
+            // The oldest request is overdue: we go straight to it.
+            if (oldest.getFloor() != closestFloor) {
+                metrics.recordAgingPromotion();
+            }
+            closestFloor = oldest.getFloor();
+            closestDirection = (closestFloor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
+                    : MovingDirection.DOWN;
+            consecutivePreemptions = 0;
+        } else if ((preempting = highestPriorityRequest()) != null
+                && (starvationLimit <= 0 || consecutivePreemptions < starvationLimit)
+                && preempting.getFloor() != currentFloor
+                && (!bypassing || carCalls.contains(preempting.getFloor()))) {
+            // A request of a preempting class is pending: we go straight to it.
+            if (preempting.getFloor() != closestFloor) {
+                metrics.recordPreemption();
+            }
+            closestFloor = preempting.getFloor();
+            closestDirection = (closestFloor.getDistance() > currentFloor.getDistance()) ? MovingDirection.UP
+                    : MovingDirection.DOWN;
+            consecutivePreemptions++;
+        } else if (bypassing) {
+            // We only look at car calls, in the current direction first.
+            Floor carCallFloor = closestFloor(direction, true);
+            MovingDirection carCallDirection = direction;
+            if (carCallFloor == null) {
+                carCallFloor = closestFloor(opposite, true);
+                carCallDirection = opposite;
+            }
+            // If there is no car call, we serve the hall calls anyway.
+            if (carCallFloor != null) {
+                if (carCallFloor != closestFloor) {
+                    metrics.recordBypass();
+                }
+                closestFloor = carCallFloor;
+                closestDirection = carCallDirection;
+            }
+        }
+        // A stop which didn't preempt gives the lower classes their turn.
+        if (preempting == null || closestFloor != preempting.getFloor()) {
+            consecutivePreemptions = 0;
+        }
+        // Upon leaving upwards after going down or being idle, a new round trip begins.
+        if (closestFloor != null && closestDirection == MovingDirection.UP
+                && lastMoveDirection != MovingDirection.UP) {
+            if (roundTripStart >= 0) {
+                metrics.recordRoundTrip(time - roundTripStart);
+            }
+            roundTripStart = time;
+        }
+        movingDirection = (closestFloor == null) ? MovingDirection.STATIONARY : closestDirection;
+        lastMoveDirection = movingDirection;
+        return closestFloor;
+    }
+
+    /**
+     * The closestFloor method looks for the closest floor to visit in the given
+     * direction.
+     *
+     * @param direction    The direction to look in (UP or DOWN).
+     * @param carCallsOnly True if only car calls should be considered.
+     * @return The closest floor in the given direction. Null if there is none.
+     */
+    private Floor closestFloor(MovingDirection direction, boolean carCallsOnly) {
+        Floor closestFloor = null;
+        int closestFloorDistance = Integer.MAX_VALUE;
+        for (Floor floor : (carCallsOnly ? carCalls : floorsToVisit)) {
+            // Low priority floors wait for the others, unless they are in the cabin.
+            if (!carCallsOnly && isDeferred(floor))
+                continue;
+            int distance;
+            // Are we going up or down?
+            if (direction == MovingDirection.UP) {
+                distance = floor.getDistance() - currentFloor.getDistance();
+            } else {
+                distance = currentFloor.getDistance() - floor.getDistance();
+            }
+            // If distance is negative or 0, the floor is in the wrong direction or the same
+            // floor (shouldn't happen).
+            if (distance <= 0)
+                continue;
+            // If the distance is smaller than the closest floor distance, we update the
+            // closest floor.
+            if (distance < closestFloorDistance) {
+                closestFloor = floor;
+                closestFloorDistance = distance;
+            }
+        }
+        return closestFloor;
+    }
+
+    /**
+     * The getCurrentLoad method returns the current load of the elevator.
+     * It calculates it by adding the weight of the elevator and the weight of every
+     * person in the elevator.
+     *
+     * @return The current load of the elevator.
+     * @see Person
+     */
+    public double getCurrentLoad() {
+        double currentLoad = elevatorWeight;
         for (Person person : persons) {
             currentLoad += person.getWeight();
         }
-        return currentLoad;
+        return currentLoad;
+    }
+
+    /**
+     * The getCurrentMovingDirection method returns the current moving direction of
+     * the elevator.
+     *
+     * @return The current moving direction of the elevator.
+     */
+    public MovingDirection getCurrentMovingDirection() {
+        return movingDirection;
+    }
+
+    /**
+     * The board method adds a person to the elevator. If the person doesn't fit,
+     * they are queued at the floor and will board on a later visit.
+     *
+     * @param person The person to add.
+     * @return True if the person was added, false otherwise (the person has been
+     *         queued).
+     * @throws IllegalArgumentException If the person is not on the same floor as
+     *                                  the elevator.
+     * @throws IllegalArgumentException If the person is already in the elevator.
+     * @throws IllegalArgumentException If the person is null.
+     * @see Person
+     */
+    public boolean board(Person person) {
+        if (person == null) {
+            throw new IllegalArgumentException("The person cannot be null.");
+        }
+        // We check if the person is on the same floor as the elevator.
+        if (!isAt(person.getCurrentFloor())) {
+            throw new IllegalArgumentException(
+                    "The person is not on the same floor as the elevator: Person is on floor "
+                            + person.getCurrentFloor().getName() + ", elevator is on floor " + currentFloor.getName());
+        }
+        // We check if the person is not already in the elevator.
+        if (persons.contains(person)) {
+            throw new IllegalArgumentException("The person is already in the elevator.");
+        }
+        // If the person doesn't fit, we queue it at the floor.
+        if (!canBoard(person)) {
+            if (!waitingPersons.contains(person)) {
+                waitingPersons.add(person);
+            }
+            return false;
+        }
+        // We add the person to the elevator, on the deck of their floor.
+        waitingPersons.remove(person);
+        rosters.get(deckOf(person.getCurrentFloor())).add(person);
+        persons.add(person);
+        emit(ElevatorEvent.Type.BOARDED, time, person);
+        publishSnapshot();
+        return true;
+    }
+
+    /**
+     * The boardWaitingPersons method boards, in arrival order, the queued people on
+     * the current floor who fit in the elevator. The others keep waiting.
+     *
+     * @return The number of people who boarded.
+     * @see Person
+     */
+    private int boardWaitingPersons() {
+        int boarded = 0;
+        for (int i = 0; i < waitingPersons.size();) {
+            Person person = waitingPersons.get(i);
+            if (isAt(person.getCurrentFloor()) && canBoard(person)) {
+                waitingPersons.remove(i);
+                rosters.get(deckOf(person.getCurrentFloor())).add(person);
+                persons.add(person);
+                emit(ElevatorEvent.Type.BOARDED, time, person);
+                boarded++;
+            } else {
+                i++;
+            }
+        }
+        return boarded;
+    }
+
+    /**
+     * The hasWaitingPersons method checks if someone is queued at the given floor.
+     *
+     * @param floor The floor to check.
+     * @return True if at least one person is waiting on the floor, false otherwise.
+     */
+    private boolean hasWaitingPersons(Floor floor) {
+        for (Person person : waitingPersons) {
+            if (person.getCurrentFloor() != null && landing(person.getCurrentFloor()) == floor) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * The getCurrentMovingDirection method returns the current moving direction of
-     * the elevator.
+     * The cancelWaiting method removes a person from the queue of people waiting
+     * to board.
      *
-     * @return The current moving direction of the elevator.
+     * @param person The person to remove.
+     * @return True if the person was waiting, false otherwise.
      */
-    public MovingDirection getCurrentMovingDirection() {
-        return movingDirection;
+    boolean cancelWaiting(Person person) {
+        return waitingPersons.remove(person);
     }
 
     /**
-     * The board method adds a person to the elevator.
+     * The numberOfWaitingPeople method returns the number of people queued to
+     * board the elevator.
      *
-     * @param person The person to add.
-     * @return True if the person was added, false otherwise.
-     * @throws IllegalArgumentException If the person is not on the same floor as
-     *                                  the elevator.
-     * @throws IllegalArgumentException If the person is already in the elevator.
-     * @throws IllegalArgumentException If the person is null.
+     * @return The number of people waiting for a place in the elevator.
      * @see Person
      */
-    public boolean board(Person person) {
-        if (person == null) {
-            throw new IllegalArgumentException("The person cannot be null.");
-        }
-        // We check if the person is on the same floor as the elevator.
-        if (person.getCurrentFloor() != currentFloor) {
-            throw new IllegalArgumentException(
-                    "The person is not on the same floor as the elevator: Person is on floor "
-                            + person.getCurrentFloor().getName() + ", elevator is on floor " + currentFloor.getName());
-        }
-        // We check if the person is not already in the elevator.
-        if (persons.contains(person)) {
-            throw new IllegalArgumentException("The person is already in the elevator.");
-        }
-        // We add the person to the elevator.
-        return persons.add(person);
+    public int numberOfWaitingPeople() {
+        return waitingPersons.size();
     }
 
     /**
@@ -379,7 +1907,13 @@ public class Elevator {
             throw new IllegalArgumentException("The person is not in the elevator.");
         }
         // We remove the person from the elevator.
-        return persons.remove(person);
+        for (ArrayList<Person> roster : rosters) {
+            roster.remove(person);
+        }
+        persons.remove(person);
+        emit(ElevatorEvent.Type.ALIGHTED, time, person);
+        publishSnapshot();
+        return true;
     }
 
     /**
@@ -401,6 +1935,559 @@ public class Elevator {
         return maxWeight;
     }
 
+    /**
+     * The getBypassLoadFraction method returns the fraction of the rated load above
+     * which hall calls are bypassed.
+     *
+     * @return The bypass load fraction (non positive if the bypass is disabled).
+     */
+    public double getBypassLoadFraction() {
+        return bypassLoadFraction;
+    }
+
+    /**
+     * The setBypassLoadFraction method sets the fraction of the rated load above
+     * which hall calls are bypassed.
+     *
+     * @param bypassLoadFraction The bypass load fraction to set (0 disables the
+     *                           bypass).
+     * @throws IllegalArgumentException If the fraction is greater than 1.
+     */
+    public void setBypassLoadFraction(double bypassLoadFraction) throws IllegalArgumentException {
+        if (bypassLoadFraction > 1) {
+            throw new IllegalArgumentException("The bypass load fraction cannot be greater than 1.");
+        }
+        this.bypassLoadFraction = bypassLoadFraction;
+    }
+
+    /**
+     * The getSpeed method returns the speed of the elevator.
+     *
+     * @return The speed of the elevator (in millimeters per second).
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * The setSpeed method sets the speed of the elevator.
+     *
+     * @param speed The speed to set (in millimeters per second).
+     * @throws IllegalArgumentException If the speed is not positive.
+     */
+    public void setSpeed(double speed) throws IllegalArgumentException {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("The speed must be positive.");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * The getStopTime method returns the time spent at every stop.
+     *
+     * @return The stop time (in seconds).
+     */
+    public double getStopTime() {
+        return stopTime;
+    }
+
+    /**
+     * The setStopTime method sets the time spent at every stop.
+     *
+     * @param stopTime The stop time to set (in seconds).
+     * @throws IllegalArgumentException If the stop time is negative.
+     */
+    public void setStopTime(double stopTime) throws IllegalArgumentException {
+        if (stopTime < 0) {
+            throw new IllegalArgumentException("The stop time cannot be negative.");
+        }
+        this.stopTime = stopTime;
+    }
+
+    /**
+     * The getTime method returns the simulated time of the elevator.
+     *
+     * @return The time elapsed since the elevator started running (in seconds).
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * The getArrivalTime method returns the time the elevator reached its current
+     * floor at. After a stop, the doors opened then.
+     *
+     * @return The arrival time (in seconds).
+     */
+    public double getArrivalTime() {
+        return arrivalTime;
+    }
+
+    /**
+     * The getMaxWait method returns the maximum time a request should wait.
+     *
+     * @return The maximum wait (in seconds, non positive if the aging is
+     *         disabled).
+     */
+    public double getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * The setMaxWait method sets the maximum time a request should wait before it
+     * is served first.
+     *
+     * @param maxWait The maximum wait to set (in seconds, 0 disables the aging).
+     */
+    public void setMaxWait(double maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * The getPreemptivePriority method returns the lowest priority class whose
+     * requests preempt the normal scheduling.
+     *
+     * @return The lowest preempting priority class, null if no class preempts.
+     * @see Key.Priority
+     */
+    public Key.Priority getPreemptivePriority() {
+        return preemptivePriority;
+    }
+
+    /**
+     * The setPreemptivePriority method sets the lowest priority class whose
+     * requests preempt the normal scheduling.
+     *
+     * @param preemptivePriority The lowest preempting priority class (null to
+     *                           disable the preemption).
+     * @see Key.Priority
+     */
+    public void setPreemptivePriority(Key.Priority preemptivePriority) {
+        this.preemptivePriority = preemptivePriority;
+    }
+
+    /**
+     * The getStarvationLimit method returns the maximum number of consecutive
+     * stops made for preempting requests.
+     *
+     * @return The starvation limit (non positive if there is no limit).
+     */
+    public int getStarvationLimit() {
+        return starvationLimit;
+    }
+
+    /**
+     * The setStarvationLimit method sets the maximum number of consecutive stops
+     * made for preempting requests, before a stop is given to the lower classes.
+     *
+     * @param starvationLimit The starvation limit to set (0 for no limit).
+     */
+    public void setStarvationLimit(int starvationLimit) {
+        this.starvationLimit = starvationLimit;
+    }
+
+    /**
+     * The getServiceMode method returns the service mode of the elevator.
+     *
+     * @return The service mode of the elevator.
+     * @see ServiceMode
+     */
+    public ServiceMode getServiceMode() {
+        return serviceMode;
+    }
+
+    /**
+     * The setServiceMode method changes the service mode of the elevator. It is a
+     * constant time operation: pending requests are kept. Use
+     * Building.setServiceMode to also give the hall calls to other elevators.
+     *
+     * @param serviceMode The service mode to set.
+     * @param recallFloor The floor to go to in fire recall mode (ignored in the
+     *                    other modes).
+     * @throws IllegalArgumentException If the mode is null, or if the recall floor
+     *                                  is null in fire recall mode.
+     * @see ServiceMode
+     * @see Building#setServiceMode(Elevator, ServiceMode)
+     */
+    void setServiceMode(ServiceMode serviceMode, Floor recallFloor) throws IllegalArgumentException {
+        if (serviceMode == null) {
+            throw new IllegalArgumentException("The service mode cannot be null.");
+        }
+        if (serviceMode == ServiceMode.FIRE_RECALL && recallFloor == null) {
+            throw new IllegalArgumentException("The recall floor cannot be null.");
+        }
+        this.serviceMode = serviceMode;
+        // A car sharing a shaft goes as close to the recall floor as it can.
+        this.recallFloor = (shaft == null) ? landing(recallFloor) : shaft.closestReachable(this, recallFloor);
+        publishSnapshot();
+    }
+
+    /**
+     * The isInGroupService method checks if the elevator can be given hall calls.
+     *
+     * @return True if the elevator is in normal service, false otherwise.
+     */
+    public boolean isInGroupService() {
+        return serviceMode == ServiceMode.NORMAL;
+    }
+
+    /**
+     * The advanceTime method brings the simulated time of an idle elevator
+     * forward. The time never goes backwards.
+     *
+     * @param time The time to advance to (in seconds).
+     */
+    void advanceTime(double time) {
+        if (time > this.time) {
+            this.time = time;
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * The setForecaster method sets the forecaster learning from the car calls.
+     *
+     * @param forecaster The forecaster, null to feed none.
+     * @see Building#setForecaster(DemandForecaster)
+     */
+    void setForecaster(DemandForecaster forecaster) {
+        this.forecaster = forecaster;
+    }
+
+    /**
+     * The setAudit method sets the audit recording the access decisions on the car
+     * calls.
+     *
+     * @param audit The audit, null to record nothing.
+     * @see Building#setAccessAudit(AccessAudit)
+     */
+    void setAudit(AccessAudit audit) {
+        this.audit = audit;
+    }
+
+    /**
+     * The setEventBus method sets the bus the events are published to.
+     *
+     * @param bus The bus, null to publish to none.
+     * @see Building#setEventBus(EventBus)
+     */
+    void setEventBus(EventBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * The getEventBus method returns the bus the events are published to.
+     *
+     * @return The bus, null if there is none.
+     */
+    EventBus getEventBus() {
+        return bus;
+    }
+
+    /**
+     * The getIntake method returns the queue other threads submit requests to.
+     * The elevator itself is not thread-safe: the requests are applied by the
+     * thread running it, at its next run.
+     *
+     * @return The intake of the elevator.
+     * @see RequestIntake
+     */
+    public RequestIntake getIntake() {
+        return intake;
+    }
+
+    /**
+     * The getEvents method returns the publisher of the changes of state of the
+     * elevator: floors reached, changes of direction, doors opened, people getting
+     * on and off, and overloads. The events are made by the thread running the
+     * elevator, and only if somebody is subscribed.
+     *
+     * @return The publisher of the events of the elevator.
+     * @see ElevatorEvents
+     */
+    public ElevatorEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * The getSnapshot method returns the last snapshot of the state of the
+     * elevator. It can be called from any thread without holding the elevator
+     * back: the snapshot is made whole by the thread running the elevator, after
+     * every change, and published at once.
+     *
+     * @return The last snapshot of the elevator.
+     * @see ElevatorSnapshot
+     */
+    public ElevatorSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The publishSnapshot method makes a snapshot of the state of the elevator and
+     * publishes it to the observers.
+     */
+    private void publishSnapshot() {
+        snapshot = new ElevatorSnapshot(++snapshotVersion, time, currentFloor, movingDirection, serviceMode,
+                persons.size(), getCurrentLoad(), isBusy());
+    }
+
+    /**
+     * The park method moves an idle elevator to a floor, to wait there for the
+     * next hall call. It takes the time of a stop, but serves nobody.
+     *
+     * @param floor The floor to wait on.
+     * @return True if the elevator moved, false if it is not idle, not empty, out
+     *         of group service, already there or if it doesn't serve the floor.
+     * @throws IllegalArgumentException If the floor is null.
+     * @see ParkingPolicy
+     */
+    public boolean park(Floor floor) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        if (currentFloor == null || isBusy() || !isInGroupService() || !persons.isEmpty() || !serves(floor)) {
+            return false;
+        }
+        floor = landing(floor);
+        if (currentFloor == floor) {
+            return false;
+        }
+        // The doors stay closed: the elevator only travels.
+        if (shaft != null) {
+            time = shaft.depart(this, floor, time);
+        }
+        int travelled = floor.getDistance() - currentFloor.getDistance();
+        time += Math.abs(travelled) / speed;
+        arrivalTime = time;
+        metrics.recordParking(travelled);
+        metrics.recordEnergy(energyModel.travelEnergy(getCurrentLoad(), getCounterweight(), travelled));
+        currentFloor = floor;
+        publishSnapshot();
+        return true;
+    }
+
+    /**
+     * The makeWay method moves the elevator out of the way of another car of its
+     * shaft, with the doors closed. The people on board ride along, and the floors
+     * to visit are kept.
+     *
+     * @param floor     The floor to move to.
+     * @param departure The time the elevator leaves (in seconds).
+     * @see Shaft
+     */
+    void makeWay(Floor floor, double departure) {
+        int travelled = floor.getDistance() - currentFloor.getDistance();
+        // A car held at a stop keeps its clock.
+        time = Math.max(time, departure + Math.abs(travelled) / speed);
+        metrics.recordShaftMove(travelled);
+        metrics.recordEnergy(energyModel.travelEnergy(getCurrentLoad(), getCounterweight(), travelled));
+        place(floor);
+        // The car is moved by another one: it must not wait for its own run to show it.
+        publishSnapshot();
+    }
+
+    /**
+     * The getShaft method returns the shaft the elevator shares with other cars.
+     *
+     * @return The shaft, null if the elevator has its own.
+     * @see Building#addShaft(int, Elevator...)
+     */
+    public Shaft getShaft() {
+        return shaft;
+    }
+
+    /**
+     * The setShaft method sets the shaft the elevator shares with other cars.
+     *
+     * @param shaft The shaft, null for a shaft of its own.
+     */
+    void setShaft(Shaft shaft) {
+        this.shaft = shaft;
+    }
+
+    /**
+     * The copySettings method creates a new, empty elevator with the same
+     * settings as this one, on the same floor.
+     *
+     * @return A new elevator with the same settings.
+     */
+    Elevator copySettings() {
+        Elevator copy = new Elevator(currentFloor, MovingDirection.STATIONARY, elevatorWeight, maxWeight);
+        copy.maxPersons = maxPersons;
+        copy.bypassLoadFraction = bypassLoadFraction;
+        copy.speed = speed;
+        copy.stopTime = stopTime;
+        copy.maxWait = maxWait;
+        copy.preemptivePriority = preemptivePriority;
+        copy.starvationLimit = starvationLimit;
+        copy.energyModel = energyModel;
+        copy.servedFloors = servedFloors;
+        copy.buildingFloors = buildingFloors;
+        copy.floorIndexes = floorIndexes;
+        copy.decks = decks;
+        copy.rosters = newRosters(decks);
+        copy.landings = landings;
+        copy.deckFloors = deckFloors;
+        return copy;
+    }
+
+    /**
+     * The clone method creates a copy of the elevator and of its state: position,
+     * direction, clock, pending requests with their age and priority, queues and
+     * statistics. The people on board and in the queue are cloned too, so that the
+     * copy can run without moving anyone in the building.
+     * It is used to simulate what the elevator would do, without touching it.
+     *
+     * @return A copy of the elevator.
+     * @see Person#clone()
+     */
+    public Elevator clone() {
+        Elevator copy = copySettings();
+        copy.movingDirection = movingDirection;
+        copy.serviceMode = serviceMode;
+        copy.recallFloor = recallFloor;
+        copy.time = time;
+        copy.arrivalTime = arrivalTime;
+        copy.roundTripStart = roundTripStart;
+        copy.lastMoveDirection = lastMoveDirection;
+        copy.announcedDirection = announcedDirection;
+        copy.consecutivePreemptions = consecutivePreemptions;
+        copy.metrics = metrics.clone();
+        for (Person person : persons) {
+            Person clone = person.clone();
+            copy.persons.add(clone);
+            for (int deck = 0; deck < decks; deck++) {
+                if (rosters.get(deck).contains(person)) {
+                    copy.rosters.get(deck).add(clone);
+                }
+            }
+        }
+        for (Person person : waitingPersons) {
+            copy.waitingPersons.add(person.clone());
+        }
+        copy.carCalls.addAll(carCalls);
+        copy.carCallHash = carCallHash;
+        // Requests are marked when served: the copy needs its own.
+        for (Floor floor : floorsToVisit) {
+            copy.floorsToVisit.add(floor);
+            copy.etaTable.addStop(floor);
+            Request request = requests.get(floor);
+            if (request != null) {
+                copy.queueRequest(
+                        new Request(floor, request.getTime(), request.getPriority(), request.getDestination()));
+            }
+        }
+        copy.publishSnapshot();
+        return copy;
+    }
+
+    /**
+     * The numberOfRequests method returns the number of floors to visit.
+     *
+     * @return The number of pending requests.
+     */
+    int numberOfRequests() {
+        return requests.size();
+    }
+
+    /**
+     * The getStateHash method returns a Zobrist hash of the dispatch state of the
+     * elevator: its floor, direction and service mode, the floors to visit, the
+     * car calls, the priority class of every request, the number of people on
+     * board and their load, and the number of consecutive preemptions. The floors
+     * to visit, the car calls and the priority classes are hashed as they change.
+     * When requests age, their ages are part of it too, by buckets of a fraction
+     * of the maximum wait. The ages are not hashed as they change: they all
+     * change with the clock, so we hash them from the pending requests.
+     *
+     * @return The hash of the dispatch state.
+     * @see Zobrist
+     */
+    public long getStateHash() {
+        long hash = etaTable.getHash() ^ carCallHash ^ priorityHash ^ Zobrist.hash(currentFloor, Zobrist.POSITION)
+                ^ Zobrist.mix(Zobrist.DIRECTION + ((movingDirection == null) ? -1 : movingDirection.ordinal()))
+                ^ Zobrist.mix(Zobrist.MODE + serviceMode.ordinal())
+                ^ Zobrist.mix(Zobrist.OCCUPANCY + persons.size())
+                ^ Zobrist.mix(Zobrist.LOAD + Math.round(getCurrentLoad()))
+                ^ Zobrist.mix(Zobrist.PREEMPTIONS + consecutivePreemptions);
+        // Only overdue requests are served out of turn, so ages matter only with a maximum wait.
+        if (maxWait > 0) {
+            for (Request request : requests.values()) {
+                hash ^= ageKey(request);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * The getRequestHash method returns what a new request changes in the state
+     * hash, besides its floor to visit: its priority class and its age.
+     *
+     * @param request The request.
+     * @return The hash of the request.
+     * @see #getStateHash()
+     */
+    long getRequestHash(Request request) {
+        return priorityKey(request) ^ ((maxWait > 0) ? ageKey(request) : 0);
+    }
+
+    /**
+     * The ageKey method returns the Zobrist key of a request with its age bucket,
+     * the buckets past the maximum wait being one.
+     *
+     * @param request The request.
+     * @return The key of the floor of the request, in the role of its age.
+     */
+    private long ageKey(Request request) {
+        long bucket = (long) Math.floor(Math.max(0, time - request.getTime()) * AGE_BUCKETS / maxWait);
+        return Zobrist.mix(Zobrist.hash(request.getFloor(), Zobrist.AGE) + Math.min(bucket, AGE_BUCKETS));
+    }
+
+    /**
+     * The priorityKey method returns the Zobrist key of a request with its
+     * priority class.
+     *
+     * @param request The request.
+     * @return The key of the floor of the request, in the role of its class.
+     */
+    private static long priorityKey(Request request) {
+        return Zobrist.hash(request.getFloor(), Zobrist.PRIORITY + request.getPriority().ordinal());
+    }
+
+    /**
+     * The getMetrics method returns the statistics collected while running.
+     *
+     * @return The run metrics of the elevator.
+     * @see RunMetrics
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The getMaxPersons method returns the maximum number of people the elevator
+     * can carry.
+     *
+     * @return The person limit of the elevator, 0 if there is no limit.
+     */
+    public int getMaxPersons() {
+        return maxPersons;
+    }
+
+    /**
+     * The setMaxPersons method sets the maximum number of people the elevator can
+     * carry.
+     *
+     * @param maxPersons The person limit to set (0 means no limit).
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    public void setMaxPersons(int maxPersons) throws IllegalArgumentException {
+        if (maxPersons < 0) {
+            throw new IllegalArgumentException("The person limit cannot be negative.");
+        }
+        this.maxPersons = maxPersons;
+    }
+
     /**
      * The numberOfPeople method returns the number of people in the elevator.
      *
@@ -418,6 +2505,7 @@ public class Elevator {
      */
     public void setWeight(double weight) {
         elevatorWeight = weight;
+        publishSnapshot();
     }
 
     /**
@@ -439,7 +2527,8 @@ public class Elevator {
      *              floor.
      */
     void setCurrentFloor(Floor floor) {
-        currentFloor = floor;
+        currentFloor = landing(floor);
+        publishSnapshot();
     }
 
     /**
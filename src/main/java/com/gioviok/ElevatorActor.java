@@ -0,0 +1,587 @@
+package com.gioviok;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The ElevatorActor class runs an elevator as an actor: nothing but the actor
+ * touches the elevator, and everyone else talks to it by sending commands to
+ * its mailbox. The commands are handled one at a time, in the order they were
+ * sent, on a thread of an executor: an actor with mail is scheduled once, and
+ * handles a batch of commands before giving the thread back, so many actors
+ * share a few threads without ever running twice at the same time.
+ * The mailbox is bounded. Sending to a full mailbox either fails (offer) or
+ * waits for the actor to make room (send): a car which falls behind slows its
+ * senders down instead of piling up commands.
+ * After every batch, the actor publishes a status of the elevator: the floor,
+ * the direction, the load... The dispatcher chooses cars from the statuses
+ * alone, without reading the elevators.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see ActorDispatcher
+ */
+public class ElevatorActor {
+    /**
+     * The kinds of commands.
+     */
+    private enum Command {
+        /** A hall call: stop at a floor, without any key. */
+        CALL,
+        /** A car call, checked against the key. */
+        RIDE,
+        /** A person getting on. */
+        BOARD,
+        /** A person getting off. */
+        ALIGHT,
+        /** A step of the elevator: it goes to the next floor to visit. */
+        TICK
+    }
+
+    /**
+     * The status class is what an actor tells about its elevator after a batch
+     * of commands. It never changes.
+     */
+    public static final class Status {
+        /** The current floor. */
+        private final Floor floor;
+        /** The moving direction. */
+        private final Elevator.MovingDirection direction;
+        /** Whether the elevator has floors to visit. */
+        private final boolean busy;
+        /** The number of floors to visit. */
+        private final int stops;
+        /** The number of people on board. */
+        private final int people;
+        /** The simulated time of the elevator (in seconds). */
+        private final double time;
+
+        /**
+         * The constructor of the status.
+         *
+         * @param elevator The elevator.
+         */
+        private Status(Elevator elevator) {
+            floor = elevator.getCurrentFloor();
+            direction = elevator.getCurrentMovingDirection();
+            busy = elevator.isBusy();
+            stops = elevator.numberOfRequests();
+            people = elevator.numberOfPeople();
+            time = elevator.getTime();
+        }
+
+        /**
+         * Floor getter.
+         *
+         * @return The current floor of the elevator.
+         */
+        public Floor getFloor() {
+            return floor;
+        }
+
+        /**
+         * Direction getter.
+         *
+         * @return The moving direction of the elevator.
+         */
+        public Elevator.MovingDirection getDirection() {
+            return direction;
+        }
+
+        /**
+         * Busy getter.
+         *
+         * @return True if the elevator has floors to visit, false otherwise.
+         */
+        public boolean isBusy() {
+            return busy;
+        }
+
+        /**
+         * Stops getter.
+         *
+         * @return The number of floors the elevator has to visit.
+         */
+        public int getStops() {
+            return stops;
+        }
+
+        /**
+         * People getter.
+         *
+         * @return The number of people on board.
+         */
+        public int getPeople() {
+            return people;
+        }
+
+        /**
+         * Time getter.
+         *
+         * @return The simulated time of the elevator (in seconds).
+         */
+        public double getTime() {
+            return time;
+        }
+    }
+
+    /**
+     * The elevator of the actor. Only the actor touches it.
+     */
+    private final Elevator elevator;
+
+    /**
+     * The executor the actor runs on.
+     */
+    private final Executor executor;
+
+    /**
+     * The number of slots of the mailbox, a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * The commands in the slots.
+     */
+    private final Command[] commands;
+
+    /**
+     * The floors of the commands in the slots.
+     */
+    private final Floor[] floors;
+
+    /**
+     * The keys of the commands in the slots.
+     */
+    private final Key[] keys;
+
+    /**
+     * The persons of the commands in the slots.
+     */
+    private final Person[] persons;
+
+    /**
+     * The priority classes of the commands in the slots.
+     */
+    private final Key.Priority[] priorities;
+
+    /**
+     * The sequence number of the command in every slot, once it is filled.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The number of slots claimed by the senders.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The number of commands the actor took out of the mailbox.
+     */
+    private volatile long handled;
+
+    /**
+     * Whether the actor is scheduled on the executor (or running).
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The largest number of commands handled before giving the thread back.
+     */
+    private volatile int throughput = 64;
+
+    /**
+     * The number of commands the elevator refused.
+     */
+    private volatile long rejected;
+
+    /**
+     * The number of commands sent while the mailbox was full.
+     */
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * The last status of the elevator.
+     */
+    private volatile Status status;
+
+    /**
+     * The task handling a batch of commands.
+     */
+    private final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            handleBatch();
+        }
+    };
+
+    /**
+     * The constructor of the actor. From now on, only the actor may touch the
+     * elevator.
+     *
+     * @param elevator The elevator.
+     * @param executor The executor to run on.
+     * @param capacity The number of slots of the mailbox, rounded up to a power
+     *                 of two.
+     * @throws IllegalArgumentException If the elevator or the executor is null,
+     *                                  the capacity is not positive or above
+     *                                  2^30, or the elevator publishes to an
+     *                                  event bus.
+     */
+    public ElevatorActor(Elevator elevator, Executor executor, int capacity) throws IllegalArgumentException {
+        if (elevator == null || executor == null) {
+            throw new IllegalArgumentException("The elevator and the executor cannot be null.");
+        }
+        // The actors of a group run on several threads, and a bus has a single producer.
+        if (elevator.getEventBus() != null) {
+            throw new IllegalArgumentException("An elevator publishing to an event bus cannot run as an actor.");
+        }
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+        }
+        this.elevator = elevator;
+        this.executor = executor;
+        this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        commands = new Command[this.capacity];
+        floors = new Floor[this.capacity];
+        keys = new Key[this.capacity];
+        persons = new Person[this.capacity];
+        priorities = new Key.Priority[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+        status = new Status(elevator);
+    }
+
+    /**
+     * The offerCall method sends a hall call, unless the mailbox is full.
+     *
+     * @param floor    The floor to stop at.
+     * @param priority The priority class of the call.
+     * @return True if the command was sent, false if the mailbox was full.
+     * @throws IllegalArgumentException If the floor or the priority is null.
+     * @see Elevator#requestHere(Floor, Key.Priority)
+     */
+    public boolean offerCall(Floor floor, Key.Priority priority) throws IllegalArgumentException {
+        if (floor == null || priority == null) {
+            throw new IllegalArgumentException("The floor and the priority cannot be null.");
+        }
+        return offer(Command.CALL, floor, null, null, priority, false);
+    }
+
+    /**
+     * The sendCall method sends a hall call, waiting for room in the mailbox.
+     *
+     * @param floor    The floor to stop at.
+     * @param priority The priority class of the call.
+     * @throws IllegalArgumentException If the floor or the priority is null.
+     * @see #offerCall(Floor, Key.Priority)
+     */
+    public void sendCall(Floor floor, Key.Priority priority) throws IllegalArgumentException {
+        if (floor == null || priority == null) {
+            throw new IllegalArgumentException("The floor and the priority cannot be null.");
+        }
+        offer(Command.CALL, floor, null, null, priority, true);
+    }
+
+    /**
+     * The sendRide method sends a car call, waiting for room in the mailbox. The
+     * key is checked when the actor handles it.
+     *
+     * @param floor  The floor to go to.
+     * @param key    The key to use.
+     * @param person The person asking, null if unknown.
+     * @throws IllegalArgumentException If the floor is null.
+     * @see Elevator#requestRide(Floor, Key, Person)
+     */
+    public void sendRide(Floor floor, Key key, Person person) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("The floor cannot be null.");
+        }
+        offer(Command.RIDE, floor, key, person, null, true);
+    }
+
+    /**
+     * The sendBoard method sends a person getting on, waiting for room in the
+     * mailbox.
+     *
+     * @param person The person.
+     * @throws IllegalArgumentException If the person is null.
+     * @see Elevator#board(Person)
+     */
+    public void sendBoard(Person person) throws IllegalArgumentException {
+        if (person == null) {
+            throw new IllegalArgumentException("The person cannot be null.");
+        }
+        offer(Command.BOARD, null, null, person, null, true);
+    }
+
+    /**
+     * The sendAlight method sends a person getting off, waiting for room in the
+     * mailbox.
+     *
+     * @param person The person.
+     * @throws IllegalArgumentException If the person is null.
+     * @see Elevator#disembark(Person)
+     */
+    public void sendAlight(Person person) throws IllegalArgumentException {
+        if (person == null) {
+            throw new IllegalArgumentException("The person cannot be null.");
+        }
+        offer(Command.ALIGHT, null, null, person, null, true);
+    }
+
+    /**
+     * The offerTick method sends a step of the elevator, unless the mailbox is
+     * full.
+     *
+     * @return True if the command was sent, false if the mailbox was full.
+     * @see Elevator#run()
+     */
+    public boolean offerTick() {
+        return offer(Command.TICK, null, null, null, null, false);
+    }
+
+    /**
+     * The sendTick method sends a step of the elevator, waiting for room in the
+     * mailbox.
+     *
+     * @see Elevator#run()
+     */
+    public void sendTick() {
+        offer(Command.TICK, null, null, null, null, true);
+    }
+
+    /**
+     * The offer method puts a command in the mailbox, and schedules the actor if
+     * it is not already.
+     *
+     * @param command  The command.
+     * @param floor    The floor of the command.
+     * @param key      The key of the command.
+     * @param person   The person of the command.
+     * @param priority The priority class of the command.
+     * @param wait     Whether to wait for room if the mailbox is full.
+     * @return True if the command was sent, false if the mailbox was full.
+     */
+    private boolean offer(Command command, Floor floor, Key key, Person person, Key.Priority priority,
+            boolean wait) {
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - handled >= capacity) {
+                if (!wait) {
+                    refused.incrementAndGet();
+                    return false;
+                }
+                // Backpressure: the actor must make room first.
+                schedule();
+                LockSupport.parkNanos(1000);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int slot = (int) sequence & (capacity - 1);
+        commands[slot] = command;
+        floors[slot] = floor;
+        keys[slot] = key;
+        persons[slot] = person;
+        priorities[slot] = priority;
+        // A full store: the actor checks for mail after it stops being scheduled.
+        published.set(slot, sequence);
+        schedule();
+        return true;
+    }
+
+    /**
+     * The schedule method puts the actor on the executor, unless it is already.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * The handleBatch method handles up to the throughput of commands, then
+     * publishes the status of the elevator and gives the thread back. If mail is
+     * left, the actor is scheduled again.
+     */
+    private void handleBatch() {
+        int limit = throughput;
+        int done = 0;
+        long next = handled;
+        try {
+            while (done < limit) {
+                int slot = (int) next & (capacity - 1);
+                if (published.get(slot) != next) {
+                    break;
+                }
+                handle(slot);
+                commands[slot] = null;
+                floors[slot] = null;
+                keys[slot] = null;
+                persons[slot] = null;
+                priorities[slot] = null;
+                handled = ++next;
+                done++;
+            }
+            status = new Status(elevator);
+        } finally {
+            // Whatever happened, the actor must be scheduled again for its mail, or
+            // the senders would wait for room forever.
+            scheduled.set(false);
+            // A command sent while we were finishing must not wait for the next one.
+            long last = handled;
+            if (published.get((int) last & (capacity - 1)) == last) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * The handle method applies a command to the elevator.
+     *
+     * @param slot The slot of the command.
+     */
+    private void handle(int slot) {
+        try {
+            switch (commands[slot]) {
+                case CALL:
+                    elevator.requestHere(floors[slot], priorities[slot]);
+                    break;
+                case RIDE:
+                    elevator.requestRide(floors[slot], keys[slot], persons[slot]);
+                    break;
+                case BOARD:
+                    if (!elevator.hasPerson(persons[slot])) {
+                        elevator.board(persons[slot]);
+                    }
+                    break;
+                case ALIGHT:
+                    elevator.disembark(persons[slot]);
+                    break;
+                case TICK:
+                    if (elevator.isBusy()) {
+                        elevator.run();
+                    }
+                    break;
+                default:
+                    throw new Error("Invalid command (" + commands[slot] + ")");
+            }
+        } catch (RuntimeException e) {
+            // A command the elevator refuses (an invalid key, an overload...) is
+            // dropped: its sender is no longer there to be told, and the actor must
+            // keep handling its mail.
+            rejected++;
+        }
+    }
+
+    /**
+     * The isIdle method checks if the mailbox is empty and the actor is not
+     * running.
+     *
+     * @return True if every command sent so far was handled, false otherwise.
+     */
+    public boolean isIdle() {
+        return handled == claimed.get() && !scheduled.get();
+    }
+
+    /**
+     * The getPending method returns the number of commands waiting in the
+     * mailbox.
+     *
+     * @return The number of commands sent but not handled yet.
+     */
+    public long getPending() {
+        return claimed.get() - handled;
+    }
+
+    /**
+     * Status getter. The status is published after every batch of commands.
+     *
+     * @return The last status of the elevator.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Elevator getter. The elevator may only be read once the actor is idle.
+     *
+     * @return The elevator of the actor.
+     * @see #isIdle()
+     */
+    public Elevator getElevator() {
+        return elevator;
+    }
+
+    /**
+     * Capacity getter.
+     *
+     * @return The number of slots of the mailbox.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Throughput getter.
+     *
+     * @return The largest number of commands handled before giving the thread
+     *         back.
+     */
+    public int getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Throughput setter.
+     *
+     * @param throughput The largest number of commands handled before giving the
+     *                   thread back.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the throughput is not positive.
+     */
+    public ElevatorActor setThroughput(int throughput) throws IllegalArgumentException {
+        if (throughput <= 0) {
+            throw new IllegalArgumentException("The throughput must be positive.");
+        }
+        this.throughput = throughput;
+        return this;
+    }
+
+    /**
+     * Handled getter.
+     *
+     * @return The number of commands handled.
+     */
+    public long getHandled() {
+        return handled;
+    }
+
+    /**
+     * Rejected getter.
+     *
+     * @return The number of commands the elevator refused.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Refused getter.
+     *
+     * @return The number of commands offered while the mailbox was full.
+     */
+    public long getRefused() {
+        return refused.get();
+    }
+}
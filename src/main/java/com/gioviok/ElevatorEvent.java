@@ -0,0 +1,147 @@
+package com.gioviok;
+
+/**
+ * The ElevatorEvent class contains a change of state of an elevator, as seen by
+ * the observers subscribed to its events: the kind of change, the simulated time
+ * it happened at, and the floor, direction and person it is about.
+ * Events are immutable, so that they can be handed to other threads.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see ElevatorEvents
+ * @see Elevator#getEvents()
+ */
+public class ElevatorEvent {
+    /**
+     * The kinds of events.
+     */
+    public enum Type {
+        /** The elevator reached a floor. */
+        FLOOR_REACHED,
+        /** The elevator changed its moving direction (or stopped). */
+        DIRECTION_CHANGED,
+        /** The elevator opened its doors at a floor. */
+        DOORS_OPENED,
+        /** A person got on. */
+        BOARDED,
+        /** A person got off. */
+        ALIGHTED,
+        /** The elevator refused to move, being overloaded. */
+        OVERLOAD
+    }
+
+    /**
+     * The kind of event.
+     */
+    private final Type type;
+
+    /**
+     * The elevator the event happened to.
+     */
+    private final Elevator elevator;
+
+    /**
+     * The simulated time of the event (in seconds).
+     */
+    private final double time;
+
+    /**
+     * The floor of the elevator.
+     */
+    private final Floor floor;
+
+    /**
+     * The moving direction of the elevator.
+     */
+    private final Elevator.MovingDirection direction;
+
+    /**
+     * The person who got on or off, null for the other events.
+     */
+    private final Person person;
+
+    /**
+     * The constructor of the event.
+     *
+     * @param type      The kind of event.
+     * @param elevator  The elevator.
+     * @param time      The simulated time of the event (in seconds).
+     * @param floor     The floor of the elevator.
+     * @param direction The moving direction of the elevator.
+     * @param person    The person who got on or off, null for the other events.
+     */
+    ElevatorEvent(Type type, Elevator elevator, double time, Floor floor, Elevator.MovingDirection direction,
+            Person person) {
+        this.type = type;
+        this.elevator = elevator;
+        this.time = time;
+        this.floor = floor;
+        this.direction = direction;
+        this.person = person;
+    }
+
+    /**
+     * Type getter.
+     *
+     * @return The kind of event.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Elevator getter.
+     *
+     * @return The elevator the event happened to.
+     */
+    public Elevator getElevator() {
+        return elevator;
+    }
+
+    /**
+     * Time getter.
+     *
+     * @return The simulated time of the event (in seconds).
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Floor getter.
+     *
+     * @return The floor of the elevator.
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Direction getter.
+     *
+     * @return The moving direction of the elevator.
+     */
+    public Elevator.MovingDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Person getter.
+     *
+     * @return The person who got on or off, null for the other events.
+     */
+    public Person getPerson() {
+        return person;
+    }
+
+    /**
+     * The toString method returns a string representation of the event.
+     *
+     * @return A string representation of the event.
+     */
+    public String toString() {
+        return "Event: " + type + " - Time: " + time + "s - Floor: " + ((floor == null) ? "none" : floor.getName())
+                + " - Direction: " + direction + ((person == null) ? "" : " - Person: " + person.getName());
+    }
+}
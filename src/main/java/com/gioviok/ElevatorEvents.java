@@ -0,0 +1,430 @@
+package com.gioviok;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ElevatorEvents class publishes the changes of state of an elevator to the
+ * observers subscribed to it (a renderer, metrics, a log...), so that they don't
+ * have to poll its getters. It follows the reactive streams protocol: a
+ * subscriber is handed a subscription, and only gets as many events as it
+ * requested through it. The events it didn't ask for yet wait in its own
+ * bounded buffer; when the buffer is full, the newest events are dropped for
+ * that subscriber only, and counted. The elevator never waits for a slow
+ * observer.
+ * Events are delivered in order, one at a time, on the thread running the
+ * elevator or on the thread requesting more of them. When nobody is subscribed,
+ * the elevator doesn't even make the events.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see ElevatorEvent
+ * @see Elevator#getEvents()
+ */
+public class ElevatorEvents {
+    /**
+     * The Subscriber interface is an observer of the events of an elevator.
+     */
+    public interface Subscriber {
+        /**
+         * The onSubscribe method is called once, when the subscriber is added. No
+         * event is delivered until it requests some.
+         *
+         * @param subscription The subscription to request events or cancel with.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * The onNext method delivers an event requested.
+         *
+         * @param event The event.
+         */
+        void onNext(ElevatorEvent event);
+
+        /**
+         * The onError method ends the subscription after an error, such as a non
+         * positive request.
+         *
+         * @param error The error.
+         */
+        void onError(Throwable error);
+
+        /**
+         * The onComplete method ends the subscription once the publisher is
+         * closed and every event left was delivered.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The Subscription interface links a subscriber to the publisher.
+     */
+    public interface Subscription {
+        /**
+         * The request method asks for more events.
+         *
+         * @param n The number of events, added to those requested already.
+         */
+        void request(long n);
+
+        /**
+         * The cancel method stops the delivery of events. Events may still be
+         * delivered while it takes effect.
+         */
+        void cancel();
+    }
+
+    /**
+     * The default number of events buffered for every subscriber.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * The subscriptions of nobody.
+     */
+    private static final Sink[] NONE = new Sink[0];
+
+    /**
+     * The subscriptions, copied whenever a subscriber comes or goes, so that
+     * publishing doesn't lock.
+     */
+    private volatile Sink[] sinks = NONE;
+
+    /**
+     * The number of events buffered for every new subscriber.
+     */
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Whether the publisher was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The subscribe method adds a subscriber, and hands it its subscription. A
+     * subscriber already there, or one coming after the publisher was closed, is
+     * told with an error or a completion.
+     *
+     * @param subscriber The subscriber.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the subscriber is null.
+     */
+    public ElevatorEvents subscribe(Subscriber subscriber) throws IllegalArgumentException {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("The subscriber cannot be null.");
+        }
+        Sink sink = new Sink(subscriber, bufferSize);
+        boolean added;
+        synchronized (this) {
+            added = !closed && indexOf(subscriber) < 0;
+            if (added) {
+                Sink[] grown = new Sink[sinks.length + 1];
+                System.arraycopy(sinks, 0, grown, 0, sinks.length);
+                grown[sinks.length] = sink;
+                sinks = grown;
+            }
+        }
+        subscriber.onSubscribe(sink);
+        if (!added) {
+            sink.cancelled = true;
+            if (closed) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(new IllegalStateException("The subscriber is already subscribed."));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The indexOf method finds the subscription of a subscriber.
+     *
+     * @param subscriber The subscriber.
+     * @return The index of its subscription, -1 if it is not subscribed.
+     */
+    private int indexOf(Subscriber subscriber) {
+        Sink[] current = sinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].subscriber == subscriber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The remove method removes a subscription.
+     *
+     * @param sink The subscription.
+     */
+    private synchronized void remove(Sink sink) {
+        Sink[] current = sinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sink) {
+                Sink[] shrunk = (current.length == 1) ? NONE : new Sink[current.length - 1];
+                System.arraycopy(current, 0, shrunk, 0, i);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                sinks = shrunk;
+                return;
+            }
+        }
+    }
+
+    /**
+     * The isActive method checks if anybody is subscribed. The elevator checks it
+     * before making an event.
+     *
+     * @return True if there is a subscriber, false otherwise.
+     */
+    boolean isActive() {
+        return sinks.length > 0;
+    }
+
+    /**
+     * The publish method hands an event to every subscriber.
+     *
+     * @param event The event.
+     */
+    void publish(ElevatorEvent event) {
+        for (Sink sink : sinks) {
+            sink.offer(event);
+        }
+    }
+
+    /**
+     * The close method ends every subscription: the subscribers are told once
+     * they got the events left for them. Later subscribers are told at once.
+     */
+    public void close() {
+        Sink[] current;
+        synchronized (this) {
+            closed = true;
+            current = sinks;
+            sinks = NONE;
+        }
+        for (Sink sink : current) {
+            sink.completed = true;
+            sink.drain();
+        }
+    }
+
+    /**
+     * The getSubscriberCount method returns the number of subscribers.
+     *
+     * @return The number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return sinks.length;
+    }
+
+    /**
+     * Buffer size getter.
+     *
+     * @return The number of events buffered for every new subscriber.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Buffer size setter. It applies to the subscribers coming next.
+     *
+     * @param bufferSize The number of events buffered for every new subscriber.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public ElevatorEvents setBufferSize(int bufferSize) throws IllegalArgumentException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size must be positive.");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * The getDropped method returns the number of events dropped for a
+     * subscriber, because it didn't request them in time.
+     *
+     * @param subscriber The subscriber.
+     * @return The number of events dropped, 0 if it is not subscribed.
+     */
+    public long getDropped(Subscriber subscriber) {
+        Sink[] current = sinks;
+        for (Sink sink : current) {
+            if (sink.subscriber == subscriber) {
+                return sink.dropped.get();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The Sink class is the subscription of a subscriber: its buffer, its demand
+     * and the delivery of its events.
+     */
+    private final class Sink implements Subscription {
+        /**
+         * The subscriber.
+         */
+        private final Subscriber subscriber;
+
+        /**
+         * The events waiting to be requested. It is guarded by itself.
+         */
+        private final ArrayDeque<ElevatorEvent> buffer = new ArrayDeque<ElevatorEvent>();
+
+        /**
+         * The largest number of events waiting.
+         */
+        private final int capacity;
+
+        /**
+         * The number of events requested and not delivered yet, Long.MAX_VALUE
+         * for no limit.
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * The number of reasons to deliver since the delivering thread looked;
+         * only the thread raising it from 0 delivers, so that the events are
+         * delivered one at a time.
+         */
+        private final AtomicInteger work = new AtomicInteger();
+
+        /**
+         * The number of events dropped because the buffer was full.
+         */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * Whether the subscription was cancelled or ended.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Whether the publisher was closed.
+         */
+        private volatile boolean completed;
+
+        /**
+         * The error to deliver, null if there is none.
+         */
+        private volatile Throwable error;
+
+        /**
+         * The constructor of the subscription.
+         *
+         * @param subscriber The subscriber.
+         * @param capacity   The largest number of events waiting.
+         */
+        private Sink(Subscriber subscriber, int capacity) {
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of events requested must be positive.");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = (current + n < 0) ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+            synchronized (buffer) {
+                buffer.clear();
+            }
+        }
+
+        /**
+         * The offer method buffers an event, then delivers what was requested.
+         *
+         * @param event The event.
+         */
+        private void offer(ElevatorEvent event) {
+            synchronized (buffer) {
+                if (buffer.size() >= capacity) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                buffer.add(event);
+            }
+            drain();
+        }
+
+        /**
+         * The drain method delivers the events requested, unless another thread is
+         * already delivering: that thread then looks again before it stops.
+         */
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                deliver();
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * The deliver method hands the subscriber the events requested, then an
+         * error or the completion if there is one to tell.
+         */
+        private void deliver() {
+            while (!cancelled && error == null && demand.get() > 0) {
+                ElevatorEvent event;
+                synchronized (buffer) {
+                    event = buffer.poll();
+                }
+                if (event == null) {
+                    break;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (RuntimeException e) {
+                    // A broken subscriber must not stop the elevator: it is just cut off.
+                    cancel();
+                    return;
+                }
+            }
+            if (cancelled) {
+                return;
+            }
+            if (error != null) {
+                cancel();
+                subscriber.onError(error);
+                return;
+            }
+            boolean empty;
+            synchronized (buffer) {
+                empty = buffer.isEmpty();
+            }
+            if (completed && empty) {
+                cancelled = true;
+                subscriber.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.gioviok;
+
+/**
+ * The ElevatorSnapshot class contains the state of an elevator at one moment:
+ * its floor, moving direction, service mode, the people on board and their
+ * load, and its clock. The elevator makes a new snapshot whenever that state
+ * changes, and publishes it as a whole, so that an observer on another thread
+ * (the view, metrics...) reads a consistent state without ever holding the
+ * elevator back, instead of calling its getters one at a time while it runs.
+ * Snapshots are immutable. Their version grows with every snapshot of the
+ * elevator, so that an observer can tell if anything changed since it last
+ * looked.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator#getSnapshot()
+ */
+public final class ElevatorSnapshot {
+    /**
+     * The version of the snapshot.
+     */
+    private final long version;
+
+    /**
+     * The simulated time of the elevator (in seconds).
+     */
+    private final double time;
+
+    /**
+     * The current floor of the elevator.
+     */
+    private final Floor floor;
+
+    /**
+     * The moving direction of the elevator.
+     */
+    private final Elevator.MovingDirection direction;
+
+    /**
+     * The service mode of the elevator.
+     */
+    private final Elevator.ServiceMode serviceMode;
+
+    /**
+     * The number of people on board.
+     */
+    private final int people;
+
+    /**
+     * The current load of the elevator, cabin included.
+     */
+    private final double load;
+
+    /**
+     * Whether the elevator has somewhere to go.
+     */
+    private final boolean busy;
+
+    /**
+     * The constructor of the snapshot.
+     *
+     * @param version     The version of the snapshot.
+     * @param time        The simulated time of the elevator (in seconds).
+     * @param floor       The current floor of the elevator.
+     * @param direction   The moving direction of the elevator.
+     * @param serviceMode The service mode of the elevator.
+     * @param people      The number of people on board.
+     * @param load        The current load of the elevator, cabin included.
+     * @param busy        Whether the elevator has somewhere to go.
+     */
+    ElevatorSnapshot(long version, double time, Floor floor, Elevator.MovingDirection direction,
+            Elevator.ServiceMode serviceMode, int people, double load, boolean busy) {
+        this.version = version;
+        this.time = time;
+        this.floor = floor;
+        this.direction = direction;
+        this.serviceMode = serviceMode;
+        this.people = people;
+        this.load = load;
+        this.busy = busy;
+    }
+
+    /**
+     * Version getter.
+     *
+     * @return The version of the snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Time getter.
+     *
+     * @return The simulated time of the elevator (in seconds).
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Floor getter.
+     *
+     * @return The current floor of the elevator, null if it has none.
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Direction getter.
+     *
+     * @return The moving direction of the elevator.
+     */
+    public Elevator.MovingDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Service mode getter.
+     *
+     * @return The service mode of the elevator.
+     */
+    public Elevator.ServiceMode getServiceMode() {
+        return serviceMode;
+    }
+
+    /**
+     * People getter.
+     *
+     * @return The number of people on board.
+     */
+    public int getPeople() {
+        return people;
+    }
+
+    /**
+     * Load getter.
+     *
+     * @return The current load of the elevator, cabin included.
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * The isBusy method checks if the elevator had somewhere to go.
+     *
+     * @return True if the elevator had floors to visit, false otherwise.
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * The toString method returns a string representation of the snapshot.
+     *
+     * @return A string representation of the snapshot.
+     */
+    public String toString() {
+        return "Snapshot " + version + ": " + ((floor == null) ? "none" : floor.getName()) + " - " + direction
+                + " - " + serviceMode + " - People: " + people + " - Load: " + load + "kg - Time: "
+                + String.format("%.1f", time) + "s";
+    }
+}
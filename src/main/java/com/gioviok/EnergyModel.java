@@ -0,0 +1,213 @@
+package com.gioviok;
+
+/**
+ * The EnergyModel class computes the energy a traction elevator uses. The cabin
+ * hangs against a counterweight, which weighs as much as the cabin plus a
+ * fraction of the rated load (usually half): the motor only lifts the imbalance
+ * between the two. A car heavier than its counterweight going up, or lighter
+ * going down, draws energy; the other way round, gravity does the work, and a
+ * regenerative drive gives part of it back to the grid.
+ * On top of that, every metre of travel loses some energy to friction, and every
+ * stop uses some to accelerate, brake and move the doors.
+ * Energies are in joules, masses in kilograms and distances in millimeters, like
+ * the heights of the floors.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator#getEnergyModel()
+ * @see RunMetrics#getEnergy()
+ */
+public class EnergyModel {
+    /**
+     * The standard gravity (in meters per second squared).
+     */
+    public static final double GRAVITY = 9.81;
+
+    /**
+     * The number of joules in a kilowatt-hour.
+     */
+    public static final double JOULES_PER_KWH = 3.6e6;
+
+    /**
+     * The fraction of the rated load the counterweight balances.
+     */
+    private double counterweightRatio = 0.5;
+
+    /**
+     * The fraction of the electric energy the motor turns into lifting.
+     */
+    private double motorEfficiency = 0.8;
+
+    /**
+     * The fraction of the released energy the drive gives back (0 without a
+     * regenerative drive).
+     */
+    private double regenerationEfficiency = 0.6;
+
+    /**
+     * The energy lost to friction for every meter of travel (in joules).
+     */
+    private double frictionPerMeter = 300;
+
+    /**
+     * The energy of a stop: acceleration, braking and doors (in joules).
+     */
+    private double stopEnergy = 2000;
+
+    /**
+     * The counterweight method returns the mass of the counterweight of an
+     * elevator.
+     *
+     * @param cabinWeight The weight of the cabin (in kilograms).
+     * @param maxWeight   The maximum weight the elevator can carry, cabin included
+     *                    (in kilograms).
+     * @return The mass of the counterweight (in kilograms).
+     */
+    public double counterweight(double cabinWeight, double maxWeight) {
+        return cabinWeight + counterweightRatio * Math.max(0, maxWeight - cabinWeight);
+    }
+
+    /**
+     * The travelEnergy method computes the energy of a trip, without the stop.
+     *
+     * @param load          The weight of the car, cabin included (in kilograms).
+     * @param counterweight The mass of the counterweight (in kilograms).
+     * @param travelled     The height travelled (in millimeters, positive going
+     *                      up).
+     * @return The energy drawn (in joules), negative if the trip gave back more
+     *         than it used.
+     */
+    public double travelEnergy(double load, double counterweight, int travelled) {
+        double meters = travelled / 1000.0;
+        // The work of gravity on the imbalance, positive if the motor has to do it.
+        double work = (load - counterweight) * GRAVITY * meters;
+        double energy = (work > 0) ? work / motorEfficiency : work * regenerationEfficiency;
+        return energy + frictionPerMeter * Math.abs(meters);
+    }
+
+    /**
+     * Counterweight ratio getter.
+     *
+     * @return The fraction of the rated load the counterweight balances.
+     */
+    public double getCounterweightRatio() {
+        return counterweightRatio;
+    }
+
+    /**
+     * Counterweight ratio setter.
+     *
+     * @param counterweightRatio The fraction of the rated load the counterweight
+     *                           balances.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the ratio is not between 0 and 1.
+     */
+    public EnergyModel setCounterweightRatio(double counterweightRatio) throws IllegalArgumentException {
+        if (counterweightRatio < 0 || counterweightRatio > 1) {
+            throw new IllegalArgumentException("The counterweight ratio must be between 0 and 1.");
+        }
+        this.counterweightRatio = counterweightRatio;
+        return this;
+    }
+
+    /**
+     * Motor efficiency getter.
+     *
+     * @return The fraction of the electric energy the motor turns into lifting.
+     */
+    public double getMotorEfficiency() {
+        return motorEfficiency;
+    }
+
+    /**
+     * Motor efficiency setter.
+     *
+     * @param motorEfficiency The fraction of the electric energy the motor turns
+     *                        into lifting.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the efficiency is not in (0, 1].
+     */
+    public EnergyModel setMotorEfficiency(double motorEfficiency) throws IllegalArgumentException {
+        if (motorEfficiency <= 0 || motorEfficiency > 1) {
+            throw new IllegalArgumentException("The motor efficiency must be in (0, 1].");
+        }
+        this.motorEfficiency = motorEfficiency;
+        return this;
+    }
+
+    /**
+     * Regeneration efficiency getter.
+     *
+     * @return The fraction of the released energy the drive gives back.
+     */
+    public double getRegenerationEfficiency() {
+        return regenerationEfficiency;
+    }
+
+    /**
+     * Regeneration efficiency setter.
+     *
+     * @param regenerationEfficiency The fraction of the released energy the drive
+     *                               gives back (0 without a regenerative drive).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the efficiency is not between 0 and 1.
+     */
+    public EnergyModel setRegenerationEfficiency(double regenerationEfficiency) throws IllegalArgumentException {
+        if (regenerationEfficiency < 0 || regenerationEfficiency > 1) {
+            throw new IllegalArgumentException("The regeneration efficiency must be between 0 and 1.");
+        }
+        this.regenerationEfficiency = regenerationEfficiency;
+        return this;
+    }
+
+    /**
+     * Friction getter.
+     *
+     * @return The energy lost to friction for every meter of travel (in joules).
+     */
+    public double getFrictionPerMeter() {
+        return frictionPerMeter;
+    }
+
+    /**
+     * Friction setter.
+     *
+     * @param frictionPerMeter The energy lost to friction for every meter of
+     *                         travel (in joules).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the energy is negative.
+     */
+    public EnergyModel setFrictionPerMeter(double frictionPerMeter) throws IllegalArgumentException {
+        if (frictionPerMeter < 0) {
+            throw new IllegalArgumentException("The friction cannot be negative.");
+        }
+        this.frictionPerMeter = frictionPerMeter;
+        return this;
+    }
+
+    /**
+     * Stop energy getter.
+     *
+     * @return The energy of a stop (in joules).
+     */
+    public double getStopEnergy() {
+        return stopEnergy;
+    }
+
+    /**
+     * Stop energy setter.
+     *
+     * @param stopEnergy The energy of a stop: acceleration, braking and doors (in
+     *                   joules).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the energy is negative.
+     */
+    public EnergyModel setStopEnergy(double stopEnergy) throws IllegalArgumentException {
+        if (stopEnergy < 0) {
+            throw new IllegalArgumentException("The stop energy cannot be negative.");
+        }
+        this.stopEnergy = stopEnergy;
+        return this;
+    }
+}
@@ -0,0 +1,216 @@
+package com.gioviok;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * The EtaTable class keeps the stops of an elevator sorted by height, so that
+ * the time the elevator needs to reach any floor can be estimated without going
+ * through its list of floors to visit.
+ * The stops are counted in a Fenwick tree indexed by height: adding, serving or
+ * clearing a stop updates the table in logarithmic time, and so does every
+ * estimate.
+ * The table also keeps a Zobrist hash of the set of stops, updated with them.
+ * The estimate follows the collective sweep of the elevator: it keeps going in
+ * its direction up to its last stop, then turns back. It doesn't account for
+ * aged or preempting requests, which may make the elevator turn earlier.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator
+ */
+public class EtaTable {
+    /**
+     * The stops of the elevator, by height.
+     */
+    private TreeMap<Integer, Floor> stops = new TreeMap<Integer, Floor>();
+
+    /**
+     * The sorted heights of the floors the elevator ever stopped at. They are the
+     * indexes of the Fenwick tree.
+     */
+    private int[] heights = new int[0];
+
+    /**
+     * The Fenwick tree counting the stops at each height (1-based).
+     */
+    private int[] tree = new int[1];
+
+    /**
+     * The Zobrist hash of the set of stops.
+     *
+     * @see Zobrist
+     */
+    private long hash;
+
+    /**
+     * The addStop method adds a stop to the table.
+     *
+     * @param floor The floor to stop at.
+     */
+    void addStop(Floor floor) {
+        int height = floor.getDistance();
+        if (stops.put(height, floor) != null) {
+            return;
+        }
+        hash ^= Zobrist.hash(floor, Zobrist.STOP);
+        int index = Arrays.binarySearch(heights, height);
+        if (index < 0) {
+            // We never stopped here: we make room for the height, and rebuild the tree.
+            index = -index - 1;
+            int[] newHeights = new int[heights.length + 1];
+            System.arraycopy(heights, 0, newHeights, 0, index);
+            newHeights[index] = height;
+            System.arraycopy(heights, index, newHeights, index + 1, heights.length - index);
+            heights = newHeights;
+            tree = new int[heights.length + 1];
+            for (Integer stop : stops.keySet()) {
+                update(Arrays.binarySearch(heights, stop), 1);
+            }
+            return;
+        }
+        update(index, 1);
+    }
+
+    /**
+     * The removeStop method removes a stop from the table, if present.
+     *
+     * @param floor The floor not to stop at anymore.
+     */
+    void removeStop(Floor floor) {
+        int height = floor.getDistance();
+        if (stops.remove(height) != null) {
+            hash ^= Zobrist.hash(floor, Zobrist.STOP);
+            update(Arrays.binarySearch(heights, height), -1);
+        }
+    }
+
+    /**
+     * The clear method removes every stop from the table.
+     */
+    void clear() {
+        stops.clear();
+        Arrays.fill(tree, 0);
+        hash = 0;
+    }
+
+    /**
+     * The update method adds a value to the count of a height.
+     *
+     * @param index The index of the height.
+     * @param delta The value to add.
+     */
+    private void update(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * The countBelow method counts the stops with an index lower than the given
+     * one.
+     *
+     * @param index The index (excluded).
+     * @return The number of stops.
+     */
+    private int countBelow(int index) {
+        int count = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * The countBetween method counts the stops strictly between two heights.
+     *
+     * @param low  The lower height (excluded).
+     * @param high The higher height (excluded).
+     * @return The number of stops between the heights.
+     */
+    int countBetween(int low, int high) {
+        if (low >= high) {
+            return 0;
+        }
+        // The first index above low, and the first index at or above high.
+        int from = Arrays.binarySearch(heights, low);
+        from = (from < 0) ? -from - 1 : from + 1;
+        int to = Arrays.binarySearch(heights, high);
+        to = (to < 0) ? -to - 1 : to;
+        return (from >= to) ? 0 : countBelow(to) - countBelow(from);
+    }
+
+    /**
+     * The closestStop method returns the height, among the stops and the position
+     * of the elevator, which is the closest to a given height.
+     *
+     * @param position The height of the elevator.
+     * @param height   The height to get close to.
+     * @return The closest height.
+     */
+    int closestStop(int position, int height) {
+        int closest = position;
+        Integer below = stops.floorKey(height);
+        if (below != null && Math.abs(height - below) < Math.abs(height - closest)) {
+            closest = below;
+        }
+        Integer above = stops.ceilingKey(height);
+        if (above != null && Math.abs(height - above) < Math.abs(height - closest)) {
+            closest = above;
+        }
+        return closest;
+    }
+
+    /**
+     * The getHash method returns the Zobrist hash of the set of stops.
+     *
+     * @return The hash of the stops, 0 if there are none.
+     */
+    long getHash() {
+        return hash;
+    }
+
+    /**
+     * The size method returns the number of stops in the table.
+     *
+     * @return The number of stops.
+     */
+    public int size() {
+        return stops.size();
+    }
+
+    /**
+     * The estimate method estimates the time an elevator needs to reach a floor,
+     * following its sweep: the travel time, plus the stops it makes on the way.
+     *
+     * @param position  The height of the elevator.
+     * @param direction The moving direction of the elevator.
+     * @param floor     The floor to reach.
+     * @param speed     The speed of the elevator (in millimeters per second).
+     * @param stopTime  The time of a stop (in seconds).
+     * @return The estimated time (in seconds).
+     */
+    double estimate(int position, Elevator.MovingDirection direction, Floor floor, double speed, double stopTime) {
+        int height = floor.getDistance();
+        if (stops.isEmpty() || direction == Elevator.MovingDirection.STATIONARY) {
+            direction = (height >= position) ? Elevator.MovingDirection.UP : Elevator.MovingDirection.DOWN;
+        }
+        if (direction == Elevator.MovingDirection.UP) {
+            if (height >= position) {
+                return (height - position) / speed + countBetween(position, height) * stopTime;
+            }
+            // We go up to the last stop, and come back down.
+            int top = stops.isEmpty() ? position : Math.max(stops.lastKey(), position);
+            int stopsOnTheWay = countBetween(position, Integer.MAX_VALUE) + countBetween(height, position);
+            return (2 * top - position - height) / speed + stopsOnTheWay * stopTime;
+        }
+        if (height <= position) {
+            return (position - height) / speed + countBetween(height, position) * stopTime;
+        }
+        // We go down to the last stop, and come back up.
+        int bottom = stops.isEmpty() ? position : Math.min(stops.firstKey(), position);
+        int stopsOnTheWay = countBetween(Integer.MIN_VALUE, position) + countBetween(position, height);
+        return (position + height - 2 * bottom) / speed + stopsOnTheWay * stopTime;
+    }
+}
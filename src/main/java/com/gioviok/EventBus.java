@@ -0,0 +1,567 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The EventBus class carries the events of a simulation run from the thread
+ * running the elevators to the consumers processing them (statistics, a trace
+ * writer, a renderer...), at the rate of a batch run. It is a ring of event
+ * slots made once: the producer fills the slot of the next sequence number in
+ * place and publishes it by moving the cursor, so publishing allocates nothing.
+ * Every consumer runs on its own thread and follows its own sequence: it
+ * processes every event published since it last looked in one batch, then
+ * moves its sequence. A consumer may follow others instead of the cursor, to
+ * only see the events they are done with. The producer doesn't overwrite a slot
+ * before every consumer is done with it: a slow consumer holds it back, so no
+ * event is lost.
+ * There must be a single producer: the elevators publishing to the bus must
+ * run on one thread, the first one to publish. Another thread trying to publish
+ * is refused, and elevators running as actors can't publish to a bus. The
+ * consumers are added, and the bus started, before anything is published: the
+ * events of a bus not started, or closed, are dropped and counted. Closing the
+ * bus detaches it from the buildings it was given to.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setEventBus(EventBus)
+ */
+public class EventBus {
+    /**
+     * The Slot class is a reusable event of the ring. Its fields are only valid
+     * while the consumer processes it.
+     */
+    public static final class Slot {
+        /** The kind of event. */
+        private ElevatorEvent.Type type;
+        /** The elevator the event happened to. */
+        private Elevator elevator;
+        /** The simulated time of the event (in seconds). */
+        private double time;
+        /** The floor of the elevator. */
+        private Floor floor;
+        /** The moving direction of the elevator. */
+        private Elevator.MovingDirection direction;
+        /** The person who got on or off, null for the other events. */
+        private Person person;
+
+        /**
+         * The set method fills the slot with an event.
+         *
+         * @param type      The kind of event.
+         * @param elevator  The elevator.
+         * @param time      The simulated time of the event (in seconds).
+         * @param floor     The floor of the elevator.
+         * @param direction The moving direction of the elevator.
+         * @param person    The person who got on or off, null for the other
+         *                  events.
+         */
+        void set(ElevatorEvent.Type type, Elevator elevator, double time, Floor floor,
+                Elevator.MovingDirection direction, Person person) {
+            this.type = type;
+            this.elevator = elevator;
+            this.time = time;
+            this.floor = floor;
+            this.direction = direction;
+            this.person = person;
+        }
+
+        /**
+         * Type getter.
+         *
+         * @return The kind of event.
+         */
+        public ElevatorEvent.Type getType() {
+            return type;
+        }
+
+        /**
+         * Elevator getter.
+         *
+         * @return The elevator the event happened to.
+         */
+        public Elevator getElevator() {
+            return elevator;
+        }
+
+        /**
+         * Time getter.
+         *
+         * @return The simulated time of the event (in seconds).
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Floor getter.
+         *
+         * @return The floor of the elevator.
+         */
+        public Floor getFloor() {
+            return floor;
+        }
+
+        /**
+         * Direction getter.
+         *
+         * @return The moving direction of the elevator.
+         */
+        public Elevator.MovingDirection getDirection() {
+            return direction;
+        }
+
+        /**
+         * Person getter.
+         *
+         * @return The person who got on or off, null for the other events.
+         */
+        public Person getPerson() {
+            return person;
+        }
+    }
+
+    /**
+     * The Handler interface processes the events of a consumer.
+     */
+    public interface Handler {
+        /**
+         * The onEvent method processes an event. The slot is reused once the
+         * batch is done: the handler copies what it keeps.
+         *
+         * @param slot       The event.
+         * @param sequence   The sequence number of the event.
+         * @param endOfBatch Whether it is the last event of the batch.
+         */
+        void onEvent(Slot slot, long sequence, boolean endOfBatch);
+    }
+
+    /**
+     * The Consumer class is a thread processing the events of the bus in
+     * batches.
+     */
+    public final class Consumer {
+        /**
+         * The name of the consumer, and of its thread.
+         */
+        private final String name;
+
+        /**
+         * The handler of the events.
+         */
+        private final Handler handler;
+
+        /**
+         * The consumers this one follows, empty if it follows the cursor.
+         */
+        private final Consumer[] after;
+
+        /**
+         * The sequence number of the last event processed.
+         */
+        private final AtomicLong sequence = new AtomicLong(-1);
+
+        /**
+         * The number of batches processed.
+         */
+        private volatile long batches;
+
+        /**
+         * The number of events the handler failed on.
+         */
+        private volatile long failures;
+
+        /**
+         * The thread of the consumer, null until the bus is started.
+         */
+        private Thread thread;
+
+        /**
+         * The constructor of the consumer.
+         *
+         * @param name    The name of the consumer.
+         * @param handler The handler of the events.
+         * @param after   The consumers it follows.
+         */
+        private Consumer(String name, Handler handler, Consumer[] after) {
+            this.name = name;
+            this.handler = handler;
+            this.after = after;
+        }
+
+        /**
+         * The available method returns the last sequence number the consumer may
+         * process: the cursor, or the slowest of the consumers it follows.
+         *
+         * @return The last sequence number available.
+         */
+        private long available() {
+            long available = cursor.get();
+            for (Consumer consumer : after) {
+                available = Math.min(available, consumer.sequence.get());
+            }
+            return available;
+        }
+
+        /**
+         * The process method runs the consumer until the bus is closed and every
+         * event was processed.
+         */
+        private void process() {
+            long next = sequence.get() + 1;
+            int idle = 0;
+            while (true) {
+                long available = available();
+                if (available >= next) {
+                    for (long s = next; s <= available; s++) {
+                        try {
+                            handler.onEvent(slots[(int) s & mask], s, s == available);
+                        } catch (RuntimeException e) {
+                            // A failing handler must not hold the producer back.
+                            failures++;
+                        }
+                    }
+                    sequence.lazySet(available);
+                    batches++;
+                    next = available + 1;
+                    idle = 0;
+                } else if (!running && available == cursor.get()) {
+                    return;
+                } else if (++idle < 100) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(50000);
+                }
+            }
+        }
+
+        /**
+         * Name getter.
+         *
+         * @return The name of the consumer.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Sequence getter.
+         *
+         * @return The sequence number of the last event processed, -1 if there is
+         *         none.
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * Batches getter.
+         *
+         * @return The number of batches processed.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * Failures getter.
+         *
+         * @return The number of events the handler failed on.
+         */
+        public long getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * The event slots, reused round the ring.
+     */
+    private final Slot[] slots;
+
+    /**
+     * The mask giving the slot of a sequence number.
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of the last event published.
+     */
+    private final AtomicLong cursor = new AtomicLong(-1);
+
+    /**
+     * The sequence number of the next event to claim. Only the producer uses it.
+     */
+    private long claimed;
+
+    /**
+     * The slowest consumer sequence seen by the producer. Only the producer uses
+     * it: it only looks at the consumers again when the ring seems full.
+     */
+    private long gate = -1;
+
+    /**
+     * The consumers.
+     */
+    private final ArrayList<Consumer> consumers = new ArrayList<Consumer>();
+
+    /**
+     * The consumers the producer waits for, copied whenever one is added.
+     */
+    private volatile Consumer[] gating = new Consumer[0];
+
+    /**
+     * Whether the consumers are running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Whether the bus was started.
+     */
+    private boolean started;
+
+    /**
+     * The thread publishing to the bus, null until the first event.
+     */
+    private volatile Thread producer;
+
+    /**
+     * The number of events dropped because the bus was not running. Only the
+     * producer changes it.
+     */
+    private volatile long dropped;
+
+    /**
+     * The buildings the bus was given to, detached when it is closed.
+     */
+    private final ArrayList<Building> buildings = new ArrayList<Building>();
+
+    /**
+     * The constructor of the bus.
+     *
+     * @param capacity The number of slots of the ring, rounded up to a power of
+     *                 two.
+     * @throws IllegalArgumentException If the capacity is not positive or above
+     *                                  2^30.
+     */
+    public EventBus(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+        }
+        int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * The addConsumer method adds a consumer of the events. Consumers are added
+     * before the bus is started.
+     *
+     * @param name    The name of the consumer, and of its thread.
+     * @param handler The handler of the events.
+     * @param after   The consumers it follows: it only sees the events they are
+     *                done with. None to follow the producer.
+     * @return The consumer.
+     * @throws IllegalArgumentException If the handler is null, or a consumer to
+     *                                  follow is not one of the bus.
+     * @throws IllegalStateException    If the bus was started.
+     */
+    public synchronized Consumer addConsumer(String name, Handler handler, Consumer... after)
+            throws IllegalArgumentException, IllegalStateException {
+        if (handler == null) {
+            throw new IllegalArgumentException("The handler cannot be null.");
+        }
+        if (started) {
+            throw new IllegalStateException("The bus was started.");
+        }
+        for (Consumer consumer : after) {
+            if (!consumers.contains(consumer)) {
+                throw new IllegalArgumentException("The consumer to follow is not on the bus.");
+            }
+        }
+        Consumer consumer = new Consumer(name, handler, after.clone());
+        consumers.add(consumer);
+        gating = consumers.toArray(new Consumer[consumers.size()]);
+        return consumer;
+    }
+
+    /**
+     * The start method starts the threads of the consumers.
+     *
+     * @return this, to allow concatenation.
+     * @throws IllegalStateException If the bus was started.
+     */
+    public synchronized EventBus start() throws IllegalStateException {
+        if (started) {
+            throw new IllegalStateException("The bus was started.");
+        }
+        started = true;
+        running = true;
+        for (final Consumer consumer : consumers) {
+            consumer.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    consumer.process();
+                }
+            }, consumer.name);
+            consumer.thread.setDaemon(true);
+            consumer.thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * The close method lets the consumers process every event published, then
+     * stops them.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting for
+     *                              the consumers.
+     */
+    public void close() throws InterruptedException {
+        ArrayList<Building> attached;
+        synchronized (this) {
+            running = false;
+            attached = new ArrayList<Building>(buildings);
+            buildings.clear();
+        }
+        for (Building building : attached) {
+            if (building.getEventBus() == this) {
+                building.setEventBus(null);
+            }
+        }
+        for (Consumer consumer : consumers) {
+            if (consumer.thread != null) {
+                consumer.thread.join();
+            }
+        }
+    }
+
+    /**
+     * The attach method records a building the bus was given to.
+     *
+     * @param building The building.
+     * @see Building#setEventBus(EventBus)
+     */
+    synchronized void attach(Building building) {
+        if (!buildings.contains(building)) {
+            buildings.add(building);
+        }
+    }
+
+    /**
+     * The next method claims the slot of the next event, waiting while the
+     * slowest consumer still needs it. Only the producer may call it. If the bus
+     * is not running, or is closed while waiting, the event is dropped.
+     *
+     * @return The sequence number of the event, -1 if it is dropped.
+     * @throws IllegalStateException If another thread already published to the
+     *                               bus.
+     */
+    long next() throws IllegalStateException {
+        Thread current = Thread.currentThread();
+        if (producer != current) {
+            synchronized (this) {
+                if (producer == null) {
+                    producer = current;
+                } else if (producer != current) {
+                    throw new IllegalStateException("The bus has a single producer thread.");
+                }
+            }
+        }
+        if (!running) {
+            dropped++;
+            return -1;
+        }
+        long sequence = claimed;
+        long wrap = sequence - slots.length;
+        if (wrap > gate) {
+            while (wrap > (gate = slowest(sequence - 1))) {
+                // The consumers are gone: nobody will make room.
+                if (!running) {
+                    dropped++;
+                    return -1;
+                }
+                LockSupport.parkNanos(1000);
+            }
+        }
+        claimed = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * The slowest method returns the sequence number of the slowest consumer.
+     *
+     * @param last The sequence number of the last event claimed, returned if
+     *             there is no consumer.
+     * @return The sequence number of the last event every consumer is done with.
+     */
+    private long slowest(long last) {
+        long slowest = last;
+        for (Consumer consumer : gating) {
+            slowest = Math.min(slowest, consumer.sequence.get());
+        }
+        return slowest;
+    }
+
+    /**
+     * The get method returns the slot of a sequence number claimed, to fill.
+     *
+     * @param sequence The sequence number.
+     * @return The slot.
+     */
+    Slot get(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * The publish method hands the event of a sequence number to the consumers.
+     * Only the producer may call it, in the order of the sequence numbers.
+     *
+     * @param sequence The sequence number.
+     */
+    void publish(long sequence) {
+        // The ordered store publishes the fields of the slot with the cursor.
+        cursor.lazySet(sequence);
+    }
+
+    /**
+     * The getCapacity method returns the number of slots of the ring.
+     *
+     * @return The number of slots.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Dropped getter.
+     *
+     * @return The number of events dropped because the bus was not running.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The isRunning method checks if the bus was started and not closed.
+     *
+     * @return True if the consumers are running, false otherwise.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The getCursor method returns the sequence number of the last event
+     * published.
+     *
+     * @return The sequence number, -1 if nothing was published.
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+}
@@ -26,6 +26,13 @@ public class Floor implements Comparable<Floor>, Cloneable {
      * used to sort floors.
      */
     private int distance;
+    /**
+     * The random key of the floor, used to hash the dispatch state of the
+     * elevators. Clones get a new one.
+     *
+     * @see Zobrist
+     */
+    private final long zobristKey = Zobrist.nextKey();
 
     /**
      * The clone method of the floor.
@@ -58,6 +65,16 @@ public class Floor implements Comparable<Floor>, Cloneable {
         this.distance = distance;
     }
 
+    /**
+     * The getZobristKey method returns the random key of the floor.
+     *
+     * @return The key used to hash the states in which the floor appears.
+     * @see Zobrist
+     */
+    long getZobristKey() {
+        return zobristKey;
+    }
+
     /**
      * The equals method of the floor.
      *
@@ -117,7 +134,8 @@ public class Floor implements Comparable<Floor>, Cloneable {
     }
 
     /**
-     * The requestAccess method requests access to the floor.
+     * The requestAccess method requests access to the floor. The access windows
+     * of the key are not checked: the key gives access at some time of the day.
      *
      * @param key The key to use.
      * @return True if the key can give access to the floor, false otherwise.
@@ -136,6 +154,23 @@ public class Floor implements Comparable<Floor>, Cloneable {
         return false;
     }
 
+    /**
+     * The requestAccess method requests access to the floor at a given time: the
+     * key must open the floor, within its access windows if it has any.
+     *
+     * @param key  The key to use.
+     * @param time The time of the request (in seconds).
+     * @return True if the key gives access to the floor at that time, false
+     *         otherwise.
+     * @see Key#checkAccess(int, double)
+     */
+    public boolean requestAccess(Key key, double time) {
+        if (!hasKey()) {
+            return true;
+        }
+        return key != null && key.checkAccess(this.key, time);
+    }
+
     /**
      * The toString method returns a the name of the floor. We declare it in order
      * to mantain compatibility.
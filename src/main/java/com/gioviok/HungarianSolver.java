@@ -0,0 +1,143 @@
+package com.gioviok;
+
+import java.util.Arrays;
+
+/**
+ * The HungarianSolver class solves the assignment problem: given a square
+ * matrix of costs, it assigns every row to a different column so that the
+ * total cost is minimal. It runs in O(n^3).
+ * The cost matrix and the working arrays are allocated once, and only grow
+ * when a larger problem comes: solving does not create garbage.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#flushCalls()
+ */
+public class HungarianSolver {
+    /**
+     * The cost matrix. Only the top left n x n corner is used.
+     */
+    private double[][] cost = new double[0][0];
+
+    /**
+     * The potentials of the rows (1-based).
+     */
+    private double[] u = new double[1];
+
+    /**
+     * The potentials of the columns (1-based).
+     */
+    private double[] v = new double[1];
+
+    /**
+     * The smallest reduced cost reaching each column in the current search.
+     */
+    private double[] minv = new double[1];
+
+    /**
+     * The row assigned to each column (1-based, 0 if none).
+     */
+    private int[] p = new int[1];
+
+    /**
+     * The previous column on the augmenting path of each column.
+     */
+    private int[] way = new int[1];
+
+    /**
+     * The columns visited in the current search.
+     */
+    private boolean[] used = new boolean[1];
+
+    /**
+     * The column assigned to each row.
+     */
+    private int[] assignment = new int[0];
+
+    /**
+     * The getMatrix method returns the cost matrix to fill, large enough for a
+     * problem of the given size.
+     *
+     * @param n The size of the problem.
+     * @return The cost matrix. Its size may be larger than n.
+     */
+    public double[][] getMatrix(int n) {
+        if (cost.length < n) {
+            cost = new double[n][n];
+            u = new double[n + 1];
+            v = new double[n + 1];
+            minv = new double[n + 1];
+            p = new int[n + 1];
+            way = new int[n + 1];
+            used = new boolean[n + 1];
+            assignment = new int[n];
+        }
+        return cost;
+    }
+
+    /**
+     * The solve method finds the assignment of minimal cost for the top left n x
+     * n corner of the cost matrix.
+     *
+     * @param n The size of the problem.
+     * @return The column assigned to each row. Only the first n elements are
+     *         meaningful, and the array is reused by the next call.
+     * @throws IllegalArgumentException If n is negative.
+     */
+    public int[] solve(int n) throws IllegalArgumentException {
+        if (n < 0) {
+            throw new IllegalArgumentException("The size of the problem cannot be negative.");
+        }
+        getMatrix(n);
+        Arrays.fill(u, 0, n + 1, 0);
+        Arrays.fill(v, 0, n + 1, 0);
+        Arrays.fill(p, 0, n + 1, 0);
+        for (int i = 1; i <= n; i++) {
+            // We add row i, and look for the cheapest augmenting path.
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, n + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, 0, n + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            // We flip the assignments along the path.
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        for (int j = 1; j <= n; j++) {
+            assignment[p[j] - 1] = j - 1;
+        }
+        return assignment;
+    }
+}
@@ -1,6 +1,9 @@
 package com.gioviok;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 
 /**
  * The Key class contains the information about a key.
@@ -10,6 +13,11 @@ import java.util.ArrayList;
  * The elevator manager can then create specific keys that can give access to
  * specific floors.
  * The key class implements the prototype design pattern.
+ * A value can be limited to windows of the day: the key then only opens the
+ * floors of that value within the windows. The windows of a value are kept
+ * merged and sorted, so finding the one around a time is a binary search; and
+ * since they rarely change from one request to the next, the values open at the
+ * current time are cached as a bit mask, valid until the next window boundary.
  *
  * @author gioviok
  * @version 1.0
@@ -28,6 +36,76 @@ public class Key implements Cloneable {
      */
     private ArrayList<Integer> values = new ArrayList<Integer>();
 
+    /**
+     * The enum of the priority classes of the requests made with a key, from the
+     * highest to the lowest.
+     *
+     * @see Key
+     * @see Elevator
+     * @author Gioviok
+     */
+    public enum Priority {
+        /** Security staff. Their requests are served before anyone else's. */
+        SECURITY,
+        /** Very important persons, like managers. */
+        VIP,
+        /** Everyone else. This is the default priority. */
+        STANDARD,
+        /** Freight. Served when nobody else is waiting. */
+        FREIGHT
+    }
+
+    /**
+     * The priority class of the requests made with this key.
+     */
+    private Priority priority = Priority.STANDARD;
+
+    /**
+     * The length of a day (in seconds).
+     */
+    public static final double DAY = 86400;
+
+    /**
+     * The access windows of the values limited in time: the sorted bounds of the
+     * merged windows, {start, end, start, end...} (in seconds of the day). Values
+     * not in the map open at any time. The arrays are never changed once set.
+     */
+    private HashMap<Integer, double[]> windows = new HashMap<Integer, double[]>();
+
+    /**
+     * The values open over a stretch of time: bit i is set if the value at index
+     * i of the list of values is open from the start of the stretch (included) to
+     * its end (excluded).
+     */
+    private static final class AccessCache {
+        /** The start of the stretch (in seconds). */
+        private final double from;
+        /** The end of the stretch (in seconds). */
+        private final double until;
+        /** The bits of the open values. */
+        private final long open;
+
+        /**
+         * The constructor of the cache.
+         *
+         * @param from  The start of the stretch (in seconds).
+         * @param until The end of the stretch (in seconds).
+         * @param open  The bits of the open values.
+         */
+        private AccessCache(double from, double until, long open) {
+            this.from = from;
+            this.until = until;
+            this.open = open;
+        }
+    }
+
+    /**
+     * The cache of the values open at the time of the last check, null if it must
+     * be computed again. It is replaced as a whole, so that keys shared by
+     * simulations running in parallel never see half of it.
+     */
+    private volatile AccessCache cache;
+
     /**
      * The constructor of the key.
      *
@@ -74,6 +152,30 @@ public class Key implements Cloneable {
         return new ArrayList<Integer>(values);
     }
 
+    /**
+     * The getter of the key's priority class.
+     *
+     * @return The priority class of the requests made with this key.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * The setter of the key's priority class.
+     *
+     * @param priority The new priority class.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the priority is null.
+     */
+    public Key setPriority(Priority priority) throws IllegalArgumentException {
+        if (priority == null) {
+            throw new IllegalArgumentException("The priority cannot be null.");
+        }
+        this.priority = priority;
+        return this;
+    }
+
     /**
      * The setter of the key's name.
      *
@@ -95,6 +197,7 @@ public class Key implements Cloneable {
     public Key setValues(ArrayList<Integer> values) {
         // Clone the values.
         this.values = new ArrayList<>(values);
+        cache = null;
         return this;
     }
 
@@ -116,7 +219,27 @@ public class Key implements Cloneable {
             return false;
         }
         Key otherKey = (Key) other;
-        return this.name.equals(otherKey.name) && this.values.equals(otherKey.values);
+        return this.name.equals(otherKey.name) && this.values.equals(otherKey.values)
+                && this.priority == otherKey.priority && sameWindows(otherKey);
+    }
+
+    /**
+     * The sameWindows method checks if two keys have the same access windows.
+     *
+     * @param other The other key.
+     * @return True if every value has the same windows in both keys, false
+     *         otherwise.
+     */
+    private boolean sameWindows(Key other) {
+        if (!windows.keySet().equals(other.windows.keySet())) {
+            return false;
+        }
+        for (Integer value : windows.keySet()) {
+            if (!Arrays.equals(windows.get(value), other.windows.get(value))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -127,6 +250,7 @@ public class Key implements Cloneable {
      */
     public Key addKeyValue(int value) {
         values.add(value);
+        cache = null;
         return this;
     }
 
@@ -141,6 +265,7 @@ public class Key implements Cloneable {
     public boolean removeKeyValue(int value) {
         // We must force the use of the ArrayList<>.remove(Object) method, so we must
         // convert the value to an object.
+        cache = null;
         return values.remove(Integer.valueOf(value));
     }
 
@@ -155,6 +280,188 @@ public class Key implements Cloneable {
         return values.contains(key);
     }
 
+    /**
+     * The checkAccess method checks if the key opens a keycode at a given time.
+     * A value without access windows opens at any time.
+     *
+     * @param key  The keycode to check.
+     * @param time The time (in seconds, from midnight of the first day).
+     * @return True if the key has the keycode and it is open at that time, false
+     *         otherwise.
+     * @see #addAccessWindow(int, double, double)
+     */
+    public boolean checkAccess(int key, double time) {
+        int index = values.indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        if (windows.isEmpty()) {
+            return true;
+        }
+        // The cache only has a bit for the first values.
+        if (index >= Long.SIZE) {
+            return isOpen(key, time);
+        }
+        AccessCache current = cache;
+        if (current == null || !(time >= current.from && time < current.until)) {
+            current = refresh(time);
+        }
+        return (current.open & (1L << index)) != 0;
+    }
+
+    /**
+     * The refresh method computes the values open at a given time, and how long
+     * they stay so.
+     *
+     * @param time The time (in seconds).
+     * @return The new cache.
+     */
+    private AccessCache refresh(double time) {
+        double dayStart = Math.floor(time / DAY) * DAY;
+        double ofDay = time - dayStart;
+        double from = dayStart;
+        double until = dayStart + DAY;
+        long open = 0;
+        for (int i = 0; i < Math.min(values.size(), Long.SIZE); i++) {
+            double[] bounds = windows.get(values.get(i));
+            if (bounds == null) {
+                open |= 1L << i;
+                continue;
+            }
+            // The number of bounds at or before the time: odd inside a window.
+            int passed = boundsUpTo(bounds, ofDay);
+            if (passed % 2 == 1) {
+                open |= 1L << i;
+            }
+            if (passed > 0) {
+                from = Math.max(from, dayStart + bounds[passed - 1]);
+            }
+            if (passed < bounds.length) {
+                until = Math.min(until, dayStart + bounds[passed]);
+            }
+        }
+        AccessCache fresh = new AccessCache(from, until, open);
+        cache = fresh;
+        return fresh;
+    }
+
+    /**
+     * The isOpen method checks if a value is open at a given time, without the
+     * cache.
+     *
+     * @param value The value.
+     * @param time  The time (in seconds).
+     * @return True if the value has no windows or the time is in one of them,
+     *         false otherwise.
+     */
+    private boolean isOpen(int value, double time) {
+        double[] bounds = windows.get(value);
+        if (bounds == null) {
+            return true;
+        }
+        return boundsUpTo(bounds, time - Math.floor(time / DAY) * DAY) % 2 == 1;
+    }
+
+    /**
+     * The boundsUpTo method counts, with a binary search, the bounds of the
+     * windows at or before a time of the day.
+     *
+     * @param bounds The sorted bounds of the windows.
+     * @param ofDay  The time of the day (in seconds).
+     * @return The number of bounds at or before the time.
+     */
+    private static int boundsUpTo(double[] bounds, double ofDay) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bounds[middle] <= ofDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The addAccessWindow method limits a value of the key to a window of the day,
+     * on top of the windows it already has. A window ending before it starts
+     * spans midnight.
+     *
+     * @param value The value to limit.
+     * @param from  The start of the window (in seconds of the day, included).
+     * @param to    The end of the window (in seconds of the day, excluded).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the key doesn't have the value, or the
+     *                                  bounds are not within a day or are equal.
+     */
+    public Key addAccessWindow(int value, double from, double to) throws IllegalArgumentException {
+        if (!values.contains(value)) {
+            throw new IllegalArgumentException("The key has no value " + value + ".");
+        }
+        if (from < 0 || from > DAY || to < 0 || to > DAY || from == to) {
+            throw new IllegalArgumentException("The window must be within a day and not empty.");
+        }
+        double[] bounds = windows.get(value);
+        ArrayList<double[]> all = new ArrayList<double[]>();
+        if (bounds != null) {
+            for (int i = 0; i < bounds.length; i += 2) {
+                all.add(new double[] { bounds[i], bounds[i + 1] });
+            }
+        }
+        if (from < to) {
+            all.add(new double[] { from, to });
+        } else {
+            all.add(new double[] { from, DAY });
+            all.add(new double[] { 0, to });
+        }
+        // We merge the windows which overlap or touch.
+        double[][] sorted = all.toArray(new double[0][]);
+        Arrays.sort(sorted, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                return Double.compare(a[0], b[0]);
+            }
+        });
+        double[] merged = new double[2 * sorted.length];
+        int size = 0;
+        for (double[] window : sorted) {
+            if (size > 0 && window[0] <= merged[size - 1]) {
+                merged[size - 1] = Math.max(merged[size - 1], window[1]);
+            } else {
+                merged[size++] = window[0];
+                merged[size++] = window[1];
+            }
+        }
+        windows.put(value, Arrays.copyOf(merged, size));
+        cache = null;
+        return this;
+    }
+
+    /**
+     * The clearAccessWindows method lets a value of the key open at any time
+     * again.
+     *
+     * @param value The value.
+     * @return True if the value had access windows, false otherwise.
+     */
+    public boolean clearAccessWindows(int value) {
+        cache = null;
+        return windows.remove(value) != null;
+    }
+
+    /**
+     * The hasAccessWindows method checks if a value of the key is limited in
+     * time.
+     *
+     * @param value The value.
+     * @return True if the value only opens within windows, false otherwise.
+     */
+    public boolean hasAccessWindows(int value) {
+        return windows.containsKey(value);
+    }
+
     /**
      * The clone method creates a copy of the key.
      *
@@ -163,6 +470,8 @@ public class Key implements Cloneable {
     public Key clone() {
         Key key = new Key(name);
         key.values = (ArrayList<Integer>) values.clone();
+        key.priority = priority;
+        key.windows = new HashMap<Integer, double[]>(windows);
         return key;
     }
 
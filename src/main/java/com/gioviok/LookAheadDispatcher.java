@@ -0,0 +1,444 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LookAheadDispatcher class chooses the elevator a hall call is given to by
+ * simulating what would happen next. For every candidate elevator, it clones the
+ * whole group, gives the call to the clone of the candidate and runs the clones
+ * for a number of stops. The candidate whose future has the smallest total wait
+ * (the time every request spends pending during the simulation) gets the call.
+ * The states the group would be in after each assignment are hashed, and their
+ * cost is kept in a transposition table: a state met again is not simulated
+ * again.
+ * The candidates are evaluated in parallel on a ForkJoinPool. A decision has a
+ * time budget: candidates which are not evaluated in time are left out, and if
+ * none is, the building falls back to the earliest estimated arrival. A
+ * decision can have a number of rollouts as budget instead: the first
+ * candidates are then always evaluated, whatever the speed of the machine, so
+ * that the same calls lead to the same decisions.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setLookAhead(LookAheadDispatcher)
+ * @see Elevator#clone()
+ * @see TranspositionTable
+ */
+public class LookAheadDispatcher {
+    /**
+     * The pool the candidates are evaluated on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of stops simulated for every candidate.
+     */
+    private int steps = 8;
+
+    /**
+     * The time budget of a decision (in nanoseconds).
+     */
+    private long budget = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * The largest number of candidates simulated for a decision, 0 to use the
+     * time budget instead.
+     */
+    private int rollouts;
+
+    /**
+     * The number of decisions taken.
+     */
+    private long decisions;
+
+    /**
+     * The number of candidates left out because they were not evaluated in time.
+     */
+    private long timeouts;
+
+    /**
+     * The number of decisions left to the estimated arrival times, because no
+     * candidate was evaluated in time.
+     */
+    private long fallbacks;
+
+    /**
+     * The costs of the states already simulated.
+     */
+    private TranspositionTable transpositions = new TranspositionTable(4096);
+
+    /**
+     * The constructor of the dispatcher. It evaluates the candidates on its own
+     * pool, with as many threads as processors.
+     */
+    public LookAheadDispatcher() {
+        this(new ForkJoinPool());
+    }
+
+    /**
+     * The constructor of the dispatcher.
+     *
+     * @param pool The pool to evaluate the candidates on.
+     * @throws IllegalArgumentException If the pool is null.
+     */
+    public LookAheadDispatcher(ForkJoinPool pool) throws IllegalArgumentException {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool cannot be null.");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * The choose method chooses the elevator to give a hall call to.
+     *
+     * @param group      The elevators of the building.
+     * @param candidates The elevators which can take the call, in order of
+     *                   preference when futures are equal.
+     * @param request    The hall call.
+     * @return The chosen elevator, null if no candidate could be evaluated in time.
+     */
+    Elevator choose(List<Elevator> group, List<Elevator> candidates, Request request) {
+        decisions++;
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        // With a rollout budget, the rollouts run to their end.
+        boolean timed = rollouts == 0;
+        long deadline = timed ? System.nanoTime() + budget : Long.MAX_VALUE;
+        // We hash the state of the group after each assignment, and look it up.
+        long[] keys = stateHashes(group, candidates, request);
+        double[] costs = new double[candidates.size()];
+        // The clones are made here, so that late evaluations never touch the group.
+        ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>(candidates.size());
+        ArrayList<Integer> simulated = new ArrayList<Integer>(candidates.size());
+        for (int c = 0; c < candidates.size(); c++) {
+            costs[c] = (transpositions == null) ? Double.NaN : transpositions.get(keys[c], steps);
+            if (!Double.isNaN(costs[c])) {
+                continue;
+            }
+            // The candidates past the rollout budget are left out, like those not evaluated in time.
+            if (!timed && tasks.size() >= rollouts) {
+                continue;
+            }
+            Elevator candidate = candidates.get(c);
+            ArrayList<Elevator> clones = new ArrayList<Elevator>(group.size());
+            Elevator chosen = null;
+            for (Elevator e : group) {
+                Elevator clone = e.clone();
+                clones.add(clone);
+                if (e == candidate) {
+                    chosen = clone;
+                }
+            }
+            tasks.add(new Rollout(clones, chosen, request, steps, deadline));
+            simulated.add(c);
+        }
+        if (!tasks.isEmpty()) {
+            List<Future<Double>> results;
+            try {
+                results = timed
+                        ? pool.invokeAll(tasks, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : pool.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fallbacks++;
+                return null;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                int c = simulated.get(i);
+                Double cost;
+                try {
+                    cost = results.get(i).get();
+                } catch (CancellationException e) {
+                    timeouts++;
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    continue;
+                }
+                if (cost != null) {
+                    costs[c] = cost;
+                    if (transpositions != null) {
+                        transpositions.put(keys[c], steps, cost);
+                    }
+                }
+            }
+        }
+        Elevator best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < candidates.size(); c++) {
+            // Candidates not evaluated in time have a NaN cost, and are left out.
+            if (costs[c] < bestCost) {
+                best = candidates.get(c);
+                bestCost = costs[c];
+            }
+        }
+        if (best == null) {
+            fallbacks++;
+        }
+        return best;
+    }
+
+    /**
+     * The stateHashes method hashes the state the group would be in after giving
+     * the call to each candidate. Every elevator contributes its own state hash,
+     * mixed with its place in the group and how far its clock is ahead of the
+     * call. Two decisions leading to the same configuration get the same hash,
+     * whatever the call and the candidate.
+     *
+     * @param group      The elevators of the building.
+     * @param candidates The elevators which can take the call.
+     * @param request    The hall call.
+     * @return The hash of the state after each assignment.
+     * @see Elevator#getStateHash()
+     */
+    private long[] stateHashes(List<Elevator> group, List<Elevator> candidates, Request request) {
+        long groupHash = 0;
+        for (int i = 0; i < group.size(); i++) {
+            groupHash ^= elevatorHash(group.get(i), i, 0, request);
+        }
+        long[] keys = new long[candidates.size()];
+        for (int c = 0; c < candidates.size(); c++) {
+            Elevator candidate = candidates.get(c);
+            int i = group.indexOf(candidate);
+            keys[c] = groupHash ^ elevatorHash(candidate, i, 0, request) ^ elevatorHash(candidate, i,
+                    Zobrist.hash(request.getFloor(), Zobrist.STOP) ^ candidate.getRequestHash(request), request);
+        }
+        return keys;
+    }
+
+    /**
+     * The elevatorHash method hashes the state of an elevator within the group.
+     *
+     * @param elevator The elevator.
+     * @param index    The place of the elevator in the group.
+     * @param change   The hash of the change to apply to the state.
+     * @param request  The hall call.
+     * @return The hash of the state of the elevator.
+     */
+    private static long elevatorHash(Elevator elevator, int index, long change, Request request) {
+        // Clocks are compared to the call to the second.
+        long ahead = Math.round(Math.max(0, elevator.getTime() - request.getTime()));
+        return Zobrist.mix(elevator.getStateHash() ^ change ^ Zobrist.mix(index + 1) ^ Zobrist.mix(~ahead));
+    }
+
+    /**
+     * The Rollout class simulates the future of the group when the call is given
+     * to one of the candidates.
+     */
+    private static class Rollout implements Callable<Double> {
+        /** The clones of the elevators of the group. */
+        private final ArrayList<Elevator> clones;
+        /** The clone of the candidate. */
+        private final Elevator chosen;
+        /** The hall call. */
+        private final Request request;
+        /** The number of stops to simulate. */
+        private final int steps;
+        /** The end of the time budget (System.nanoTime()). */
+        private final long deadline;
+
+        /**
+         * The constructor of the rollout.
+         *
+         * @param clones   The clones of the elevators of the group.
+         * @param chosen   The clone of the candidate.
+         * @param request  The hall call.
+         * @param steps    The number of stops to simulate.
+         * @param deadline The end of the time budget.
+         */
+        Rollout(ArrayList<Elevator> clones, Elevator chosen, Request request, int steps, long deadline) {
+            this.clones = clones;
+            this.chosen = chosen;
+            this.request = request;
+            this.steps = steps;
+            this.deadline = deadline;
+        }
+
+        /**
+         * The call method runs the clones, always moving the one with the earliest
+         * clock, and returns the time the requests spent pending, from the call to
+         * the clock of the latest clone.
+         *
+         * @return The total wait (in seconds), null if the time budget ran out.
+         */
+        @Override
+        public Double call() {
+            for (Elevator clone : clones) {
+                // An idle elevator leaves when the call is made.
+                clone.advanceTime(request.getTime());
+            }
+            chosen.adoptRequest(request);
+            double wait = 0;
+            for (int step = 0; step < steps; step++) {
+                if (System.nanoTime() > deadline) {
+                    return null;
+                }
+                Elevator next = null;
+                for (Elevator clone : clones) {
+                    if (clone.isBusy() && (next == null || clone.getTime() < next.getTime())) {
+                        next = clone;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                int pending = next.numberOfRequests();
+                double start = next.getTime();
+                try {
+                    next.run();
+                } catch (IllegalStateException e) {
+                    // An overloaded elevator doesn't move: this future is a dead end.
+                    return Double.POSITIVE_INFINITY;
+                }
+                wait += pending * (next.getTime() - start);
+            }
+            // The requests left wait until the latest clock.
+            double end = 0;
+            for (Elevator clone : clones) {
+                end = Math.max(end, clone.getTime());
+            }
+            for (Elevator clone : clones) {
+                wait += clone.numberOfRequests() * (end - clone.getTime());
+            }
+            return wait;
+        }
+    }
+
+    /**
+     * The getTranspositionTable method returns the table of the states already
+     * simulated.
+     *
+     * @return The transposition table, null if states are always simulated.
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositions;
+    }
+
+    /**
+     * The setTranspositionTable method sets the table of the states already
+     * simulated.
+     *
+     * @param transpositions The transposition table, null to always simulate.
+     * @return this, to allow concatenation.
+     */
+    public LookAheadDispatcher setTranspositionTable(TranspositionTable transpositions) {
+        this.transpositions = transpositions;
+        return this;
+    }
+
+    /**
+     * Steps getter.
+     *
+     * @return The number of stops simulated for every candidate.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Steps setter.
+     *
+     * @param steps The number of stops simulated for every candidate.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the number of steps is not positive.
+     */
+    public LookAheadDispatcher setSteps(int steps) throws IllegalArgumentException {
+        if (steps <= 0) {
+            throw new IllegalArgumentException("The number of steps must be positive.");
+        }
+        this.steps = steps;
+        return this;
+    }
+
+    /**
+     * Budget getter.
+     *
+     * @return The time budget of a decision (in milliseconds).
+     */
+    public long getBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(budget);
+    }
+
+    /**
+     * Budget setter.
+     *
+     * @param budget The time budget of a decision (in milliseconds).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the budget is not positive.
+     */
+    public LookAheadDispatcher setBudget(long budget) throws IllegalArgumentException {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The time budget must be positive.");
+        }
+        this.budget = TimeUnit.MILLISECONDS.toNanos(budget);
+        return this;
+    }
+
+    /**
+     * Rollouts getter.
+     *
+     * @return The largest number of candidates simulated for a decision, 0 if
+     *         decisions have a time budget.
+     */
+    public int getRollouts() {
+        return rollouts;
+    }
+
+    /**
+     * Rollouts setter. A rollout budget replaces the time budget, so that
+     * decisions don't depend on the speed of the machine: the candidates are
+     * simulated in their order of preference, and those past the budget are left
+     * out. States found in the transposition table don't count.
+     *
+     * @param rollouts The largest number of candidates simulated for a decision,
+     *                 0 to use the time budget.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the number of rollouts is negative.
+     */
+    public LookAheadDispatcher setRollouts(int rollouts) throws IllegalArgumentException {
+        if (rollouts < 0) {
+            throw new IllegalArgumentException("The number of rollouts cannot be negative.");
+        }
+        this.rollouts = rollouts;
+        return this;
+    }
+
+    /**
+     * Decisions getter.
+     *
+     * @return The number of decisions taken.
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Timeouts getter.
+     *
+     * @return The number of candidates left out because they were not evaluated
+     *         in time.
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Fallbacks getter.
+     *
+     * @return The number of decisions left to the estimated arrival times.
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+}
@@ -0,0 +1,248 @@
+package com.gioviok;
+
+import java.util.List;
+
+/**
+ * The OfflineScheduleSolver class computes a lower bound of the wait a single
+ * elevator can achieve on a recorded trace of trips, knowing all of them in
+ * advance. Comparing it with the wait of a simulated run tells how far the
+ * dispatching policy is from ideal.
+ * The trace is cut into windows of consecutive trips. In each window, the
+ * elevator is relaxed: it may start from any floor when the first passenger of
+ * the window shows up, it only has to pick passengers up (not to drop them off),
+ * and it has no load limit. The best pick-up order of the window is found by
+ * branch-and-bound. Since every real schedule gives a relaxed schedule of every
+ * window which is no worse, the sum (or the maximum) of the window optima is a
+ * lower bound of the optimum of the whole trace. Memory only depends on the
+ * size of the windows, whatever the length of the trace.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Trip
+ * @see TrafficSimulation
+ */
+public class OfflineScheduleSolver {
+
+    /**
+     * The enum of the quantities the solver can bound.
+     *
+     * @author Gioviok
+     */
+    public enum Objective {
+        /** The sum of the waits of every passenger. */
+        TOTAL_WAIT,
+        /** The longest wait of a passenger. */
+        MAX_WAIT
+    }
+
+    /**
+     * The largest window: the picked passengers of a window are kept in the bits of
+     * an int.
+     */
+    public static final int MAX_WINDOW = 20;
+
+    /**
+     * The speed of the elevator (in millimeters per second).
+     */
+    private final double speed;
+
+    /**
+     * The time of a stop (in seconds).
+     */
+    private final double stopTime;
+
+    /**
+     * The number of trips in a window.
+     */
+    private int window = 8;
+
+    /**
+     * The heights of the origin floors of the trips of the current window.
+     */
+    private int[] heights = new int[MAX_WINDOW];
+
+    /**
+     * The times of the trips of the current window.
+     */
+    private double[] arrivals = new double[MAX_WINDOW];
+
+    /**
+     * The number of trips in the current window.
+     */
+    private int size;
+
+    /**
+     * The objective of the current search.
+     */
+    private Objective objective;
+
+    /**
+     * The best cost found for the current window.
+     */
+    private double best;
+
+    /**
+     * The number of nodes explored by the searches.
+     */
+    private long nodes;
+
+    /**
+     * The constructor of the solver. It uses the speed and the stop time of an
+     * elevator.
+     *
+     * @param elevator The elevator.
+     * @throws IllegalArgumentException If the elevator is null.
+     */
+    public OfflineScheduleSolver(Elevator elevator) throws IllegalArgumentException {
+        if (elevator == null) {
+            throw new IllegalArgumentException("The elevator cannot be null.");
+        }
+        this.speed = elevator.getSpeed();
+        this.stopTime = elevator.getStopTime();
+    }
+
+    /**
+     * Window getter.
+     *
+     * @return The number of trips in a window.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Window setter. Larger windows give tighter bounds, and take longer.
+     *
+     * @param window The number of trips in a window.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the window is not between 1 and
+     *                                  MAX_WINDOW.
+     */
+    public OfflineScheduleSolver setWindow(int window) throws IllegalArgumentException {
+        if (window < 1 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("The window must be between 1 and " + MAX_WINDOW + ".");
+        }
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * Nodes getter.
+     *
+     * @return The number of nodes explored by the searches so far.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The lowerBound method computes a lower bound of the total or maximum wait a
+     * single elevator can achieve on the trips.
+     *
+     * @param trips     The trips, sorted by time.
+     * @param objective The quantity to bound.
+     * @return The lower bound (in seconds).
+     * @throws IllegalArgumentException If the trips are not sorted by time, or the
+     *                                  objective is null.
+     */
+    public double lowerBound(List<Trip> trips, Objective objective) throws IllegalArgumentException {
+        if (objective == null) {
+            throw new IllegalArgumentException("The objective cannot be null.");
+        }
+        this.objective = objective;
+        double bound = 0;
+        for (int from = 0; from < trips.size(); from += window) {
+            size = Math.min(window, trips.size() - from);
+            for (int i = 0; i < size; i++) {
+                Trip trip = trips.get(from + i);
+                if ((i > 0 || from > 0) && trip.getTime() < trips.get(from + i - 1).getTime()) {
+                    throw new IllegalArgumentException("The trips must be sorted by time.");
+                }
+                heights[i] = trip.getOrigin().getDistance();
+                arrivals[i] = trip.getTime();
+            }
+            // We start from the cost of serving the window in arrival order.
+            best = firstComeFirstServed();
+            search(0, true, arrivals[0], 0, 0);
+            bound = (objective == Objective.TOTAL_WAIT) ? bound + best : Math.max(bound, best);
+        }
+        return bound;
+    }
+
+    /**
+     * The firstComeFirstServed method computes the cost of picking the passengers
+     * of the window up in arrival order.
+     *
+     * @return The cost of the schedule (in seconds).
+     */
+    private double firstComeFirstServed() {
+        double cost = 0;
+        double time = arrivals[0];
+        int position = heights[0];
+        for (int i = 0; i < size; i++) {
+            double pickUp = Math.max(time + Math.abs(heights[i] - position) / speed, arrivals[i]);
+            cost = add(cost, pickUp - arrivals[i]);
+            time = pickUp + stopTime;
+            position = heights[i];
+        }
+        return cost;
+    }
+
+    /**
+     * The add method adds a wait to a cost, according to the objective.
+     *
+     * @param cost The cost so far.
+     * @param wait The wait to add.
+     * @return The new cost.
+     */
+    private double add(double cost, double wait) {
+        return (objective == Objective.TOTAL_WAIT) ? cost + wait : Math.max(cost, wait);
+    }
+
+    /**
+     * The search method tries every passenger as the next one to pick up, and
+     * prunes the branches which can't beat the best schedule found so far.
+     *
+     * @param position The height of the elevator.
+     * @param free     True if the elevator can be anywhere (before the first stop).
+     * @param time     The time the elevator can leave (in seconds).
+     * @param cost     The cost so far.
+     * @param picked   The passengers already picked up, as bits.
+     */
+    private void search(int position, boolean free, double time, double cost, int picked) {
+        nodes++;
+        if (picked == (1 << size) - 1) {
+            best = Math.min(best, cost);
+            return;
+        }
+        // Every passenger left waits at least until the elevator can get there.
+        double bound = cost;
+        for (int i = 0; i < size; i++) {
+            if ((picked & (1 << i)) == 0) {
+                double reach = free ? time : time + Math.abs(heights[i] - position) / speed;
+                bound = add(bound, Math.max(0, reach - arrivals[i]));
+            }
+        }
+        if (bound >= best) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if ((picked & (1 << i)) != 0) {
+                continue;
+            }
+            double reach = free ? time : time + Math.abs(heights[i] - position) / speed;
+            double pickUp = Math.max(reach, arrivals[i]);
+            // Everyone already waiting on the floor gets on at the same stop.
+            double newCost = cost;
+            int newPicked = picked;
+            for (int j = 0; j < size; j++) {
+                if ((picked & (1 << j)) == 0 && heights[j] == heights[i] && arrivals[j] <= pickUp) {
+                    newCost = add(newCost, pickUp - arrivals[j]);
+                    newPicked |= 1 << j;
+                }
+            }
+            search(heights[i], false, pickUp + stopTime, newCost, newPicked);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The ParkingPolicy class moves idle elevators to the floors where hall calls
+ * are expected, so that the next passengers find an elevator waiting for them.
+ * It learns the demand online: every hall call is counted on its floor, in the
+ * time bucket of the day it was made in. The counts of past days fade away: each
+ * day, the counts of a bucket keep a fraction of their weight (the decay), so
+ * the demand follows the habits of the building. The memory only grows with the
+ * number of floors, never with the number of calls.
+ * When elevators go idle, they are spread over the floors called from at the
+ * current time of day, so that the next call finds one close by. Floors nobody
+ * ever called from never get one.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setParkingPolicy(ParkingPolicy)
+ * @see Elevator#park(Floor)
+ */
+public class ParkingPolicy {
+    /**
+     * The length of a day (in seconds).
+     */
+    public static final double DAY = 86400;
+
+    /**
+     * The length of a time bucket (in seconds).
+     */
+    private final double bucketLength;
+
+    /**
+     * The number of time buckets in a day.
+     */
+    private final int buckets;
+
+    /**
+     * The fraction of the counts a bucket keeps from one day to the next.
+     */
+    private double decay = 0.5;
+
+    /**
+     * The index of every floor ever called from, in the order they were first
+     * seen. Floors are compared by identity, as in the elevators.
+     */
+    private IdentityHashMap<Floor, Integer> indexes = new IdentityHashMap<Floor, Integer>();
+
+    /**
+     * The counts of the calls, by floor and bucket (floor * buckets + bucket).
+     */
+    private double[] counts = new double[0];
+
+    /**
+     * The day each count was last updated on. Counts fade lazily, when they are
+     * read or updated.
+     */
+    private long[] days = new long[0];
+
+    /**
+     * The number of elevators moved to a parking floor.
+     */
+    private long moves;
+
+    /**
+     * The forecaster giving the demand instead of the counts, null if there is
+     * none.
+     */
+    private DemandForecaster forecaster;
+
+    /**
+     * The constructor of the policy, with buckets of a quarter of an hour.
+     */
+    public ParkingPolicy() {
+        this(900);
+    }
+
+    /**
+     * The constructor of the policy.
+     *
+     * @param bucketLength The length of a time bucket (in seconds).
+     * @throws IllegalArgumentException If the length is not positive, or longer
+     *                                  than a day.
+     */
+    public ParkingPolicy(double bucketLength) throws IllegalArgumentException {
+        if (bucketLength <= 0 || bucketLength > DAY) {
+            throw new IllegalArgumentException("The bucket length must be positive and at most a day.");
+        }
+        this.bucketLength = bucketLength;
+        this.buckets = (int) Math.ceil(DAY / bucketLength);
+    }
+
+    /**
+     * The recordCall method counts a hall call.
+     *
+     * @param floor The floor of the call.
+     * @param time  The time of the call (in seconds).
+     * @throws IllegalArgumentException If the floor is null.
+     */
+    public void recordCall(Floor floor, double time) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("Floor is null.");
+        }
+        Integer index = indexes.get(floor);
+        if (index == null) {
+            // A new floor: we make room for its buckets.
+            index = indexes.size();
+            indexes.put(floor, index);
+            counts = Arrays.copyOf(counts, counts.length + buckets);
+            days = Arrays.copyOf(days, days.length + buckets);
+        }
+        int cell = index * buckets + bucket(time);
+        counts[cell] = fade(cell, day(time)) + 1;
+        days[cell] = day(time);
+    }
+
+    /**
+     * The getDemand method returns the expected number of hall calls from a floor
+     * in the time bucket of the given time.
+     *
+     * @param floor The floor.
+     * @param time  The time (in seconds).
+     * @return The faded count of the calls from the floor in the bucket, 0 if
+     *         nobody ever called from there.
+     */
+    public double getDemand(Floor floor, double time) {
+        Integer index = indexes.get(floor);
+        if (index == null) {
+            return 0;
+        }
+        return fade(index * buckets + bucket(time), day(time));
+    }
+
+    /**
+     * The demand method returns the demand the elevators are parked for: the
+     * forecast rate of hall calls if there is a forecaster, the counts otherwise.
+     *
+     * @param floor The floor.
+     * @param time  The time (in seconds).
+     * @return The demand of the floor.
+     */
+    private double demand(Floor floor, double time) {
+        return (forecaster == null) ? getDemand(floor, time) : forecaster.forecast(floor, null, time);
+    }
+
+    /**
+     * The fade method returns a count, faded to the given day.
+     *
+     * @param cell The index of the count.
+     * @param day  The current day.
+     * @return The faded count.
+     */
+    private double fade(int cell, long day) {
+        long elapsed = day - days[cell];
+        return (elapsed <= 0) ? counts[cell] : counts[cell] * Math.pow(decay, elapsed);
+    }
+
+    /**
+     * The bucket method returns the time bucket of the day a time falls in.
+     *
+     * @param time The time (in seconds).
+     * @return The bucket.
+     */
+    private int bucket(double time) {
+        double ofDay = time - day(time) * DAY;
+        return Math.min(buckets - 1, (int) (ofDay / bucketLength));
+    }
+
+    /**
+     * The day method returns the day a time falls in.
+     *
+     * @param time The time (in seconds).
+     * @return The day, starting from 0.
+     */
+    private static long day(double time) {
+        return (long) Math.floor(time / DAY);
+    }
+
+    /**
+     * The park method moves the idle elevators of a group where they will be
+     * closest, on average, to the next hall calls. The floors called from are
+     * split, from bottom to top, into as many zones of equal demand as idle
+     * elevators, and every zone gets an elevator on its median floor (the floor
+     * which halves the demand of the zone). An idle elevator already on one of
+     * these floors stays there, and the others go to the closest floor left which
+     * they serve.
+     *
+     * @param elevators The elevators of the group.
+     * @param floors    The floors of the building.
+     * @param time      The current time (in seconds).
+     * @return The number of elevators moved.
+     */
+    public int park(List<Elevator> elevators, List<Floor> floors, double time) {
+        ArrayList<Elevator> idle = new ArrayList<Elevator>();
+        for (Elevator e : elevators) {
+            if (e.isInGroupService() && !e.isBusy() && e.numberOfPeople() == 0 && e.getCurrentFloor() != null) {
+                idle.add(e);
+            }
+        }
+        if (idle.isEmpty()) {
+            return 0;
+        }
+        // We sort the floors called from by height.
+        ArrayList<Floor> called = new ArrayList<Floor>();
+        double total = 0;
+        for (Floor floor : floors) {
+            double demand = demand(floor, time);
+            if (demand > 0) {
+                called.add(floor);
+                total += demand;
+            }
+        }
+        if (called.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(called, new Comparator<Floor>() {
+            @Override
+            public int compare(Floor a, Floor b) {
+                return Integer.compare(a.getDistance(), b.getDistance());
+            }
+        });
+        // The median of zone z is where the demand from the bottom reaches (z + 1/2) / zones.
+        int zones = Math.min(idle.size(), called.size());
+        ArrayList<Floor> targets = new ArrayList<Floor>();
+        double cumulated = 0;
+        int zone = 0;
+        for (Floor floor : called) {
+            cumulated += demand(floor, time);
+            while (zone < zones && cumulated >= (zone + 0.5) * total / zones) {
+                if (targets.isEmpty() || targets.get(targets.size() - 1) != floor) {
+                    targets.add(floor);
+                }
+                zone++;
+            }
+        }
+        // The elevators already on a target stay there.
+        for (int t = 0; t < targets.size();) {
+            Elevator here = null;
+            for (Elevator e : idle) {
+                if (e.isAt(targets.get(t))) {
+                    here = e;
+                    break;
+                }
+            }
+            if (here != null) {
+                idle.remove(here);
+                targets.remove(t);
+            } else {
+                t++;
+            }
+        }
+        // The targets left get the closest elevators left.
+        int moved = 0;
+        for (Floor target : targets) {
+            Elevator closest = null;
+            for (Elevator e : idle) {
+                if (!e.serves(target)) {
+                    continue;
+                }
+                if (closest == null || Math.abs(e.getCurrentFloor().getDistance() - target.getDistance()) < Math
+                        .abs(closest.getCurrentFloor().getDistance() - target.getDistance())) {
+                    closest = e;
+                }
+            }
+            // An elevator idle for a while leaves now, not when it stopped.
+            if (closest != null) {
+                closest.advanceTime(time);
+            }
+            if (closest != null && closest.park(target)) {
+                idle.remove(closest);
+                moved++;
+            }
+        }
+        moves += moved;
+        return moved;
+    }
+
+    /**
+     * Decay getter.
+     *
+     * @return The fraction of the counts a bucket keeps from one day to the next.
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Decay setter.
+     *
+     * @param decay The fraction of the counts a bucket keeps from one day to the
+     *              next.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the decay is not in (0, 1].
+     */
+    public ParkingPolicy setDecay(double decay) throws IllegalArgumentException {
+        if (decay <= 0 || decay > 1) {
+            throw new IllegalArgumentException("The decay must be in (0, 1].");
+        }
+        this.decay = decay;
+        return this;
+    }
+
+    /**
+     * Bucket length getter.
+     *
+     * @return The length of a time bucket (in seconds).
+     */
+    public double getBucketLength() {
+        return bucketLength;
+    }
+
+    /**
+     * Forecaster getter.
+     *
+     * @return The forecaster giving the demand, null if the counts of the policy
+     *         give it.
+     */
+    public DemandForecaster getForecaster() {
+        return forecaster;
+    }
+
+    /**
+     * Forecaster setter. With a forecaster, the elevators are parked for the
+     * forecast rate of hall calls, which follows the trend of the day instead of
+     * the past days only.
+     *
+     * @param forecaster The forecaster, null to use the counts of the policy.
+     * @return this, to allow concatenation.
+     * @see DemandForecaster
+     */
+    public ParkingPolicy setForecaster(DemandForecaster forecaster) {
+        this.forecaster = forecaster;
+        return this;
+    }
+
+    /**
+     * Moves getter.
+     *
+     * @return The number of elevators moved to a parking floor.
+     */
+    public long getMoves() {
+        return moves;
+    }
+}
@@ -82,6 +82,11 @@ public class Person implements Cloneable {
      * The key of this person. Can be null.
      */
     private Key key;
+    /**
+     * The end of every leg of the journey of the person, the next one first.
+     * Empty if the person has no journey planned.
+     */
+    private ArrayList<Floor> journey = new ArrayList<Floor>();
 
     /**
      * The Person constructor.
@@ -185,7 +190,9 @@ public class Person implements Cloneable {
 
     /**
      * The callElevatorRide function calls the elevator to the current floor. It
-     * ignores the key, since the person is already at the floor.
+     * doesn't check the key, since the person is already at the floor, but the
+     * key gives the priority of the call. If the person planned a journey, only
+     * an elevator going to the end of the next leg answers.
      *
      * @return True if the call was successful, false otherwise.
      * @throws IllegalStateException If the person's current floor is null.
@@ -194,12 +201,45 @@ public class Person implements Cloneable {
         if (currentFloor == null) {
             throw new IllegalStateException("The person's current floor is null.");
         }
-        return currentBuilding.callElevator(currentFloor);
+        return currentBuilding.callElevator(currentFloor, key, getNextLeg());
     }
 
     /**
-     * The chooseFloor function chooses a floor to go to. It checks the key to be
-     * valid for the floor.
+     * The planJourney function plans the legs of the journey of the person from
+     * the current floor to a destination, changing elevator at the sky lobbies of
+     * a zoned building. It replaces the journey planned before.
+     *
+     * @param destination The floor to go to.
+     * @return True if the journey was planned, false if no elevator goes there
+     *         (the person then has no journey).
+     * @throws IllegalStateException    If the person's current floor or building is
+     *                                  null.
+     * @throws IllegalArgumentException If the destination is null.
+     * @see Building#planJourney(Floor, Floor, Key)
+     */
+    public boolean planJourney(Floor destination) throws IllegalStateException, IllegalArgumentException {
+        if (currentFloor == null || currentBuilding == null) {
+            throw new IllegalStateException("The person's current floor or building is null.");
+        }
+        ArrayList<Floor> legs = currentBuilding.planJourney(currentFloor, destination, key);
+        journey = (legs == null) ? new ArrayList<Floor>() : legs;
+        return legs != null;
+    }
+
+    /**
+     * The getNextLeg function returns the floor the person goes to next.
+     *
+     * @return The end of the next leg of the journey, null if the person has no
+     *         journey planned.
+     */
+    public Floor getNextLeg() {
+        return journey.isEmpty() ? null : journey.get(0);
+    }
+
+    /**
+     * The chooseFloor function chooses a floor to go to, in the elevator the person
+     * is in (the main elevator if none). It checks the key to be valid for the
+     * floor.
      *
      * @param floor The floor to go to.
      * @return True if the floor was chosen, exception otherwise
@@ -213,7 +253,7 @@ public class Person implements Cloneable {
             throw new IllegalStateException("The person's current floor or building is null.");
         }
         // We request the ride
-        return currentBuilding.getElevator().requestRide(floor, key);
+        return elevator().requestRide(floor, key, this);
     }
 
     /**
@@ -300,7 +340,9 @@ public class Person implements Cloneable {
      * @see java.lang.Object#clone()
      */
     public Person clone() {
-        return new Person(name, weight, currentBuilding, currentFloor, key);
+        Person copy = new Person(name, weight, currentBuilding, currentFloor, key);
+        copy.journey.addAll(journey);
+        return copy;
     }
 
     /**
@@ -329,12 +371,13 @@ public class Person implements Cloneable {
         if (currentBuilding.getElevator() == null) {
             throw new IllegalStateException("The Elevator is not initialized.");
         }
-        return currentBuilding.getElevator().disembark(this);
+        return elevator().disembark(this);
 
     }
 
     /**
-     * The board method tries to board the person in the elevator of the building.
+     * The board method tries to board the person in an elevator of the building
+     * which is on the same floor (the main elevator if none).
      * 
      * @return true if boarded, false otherwise (would throw exception before
      *         return).
@@ -349,6 +392,27 @@ public class Person implements Cloneable {
         if (currentBuilding.getElevator() == null) {
             throw new IllegalStateException("The Elevator is not initialized.");
         }
-        return currentBuilding.getElevator().board(this);
+        Elevator elevator = currentBuilding.getElevatorAt(currentFloor, getNextLeg());
+        if (elevator == null) {
+            elevator = currentBuilding.getElevator();
+        }
+        if (!elevator.board(this)) {
+            return false;
+        }
+        // We don't wait for any other elevator anymore.
+        currentBuilding.cancelWaiting(this);
+        return true;
+    }
+
+    /**
+     * The elevator method returns the elevator the person is in, or the main
+     * elevator of the building if the person is in none.
+     *
+     * @return The elevator of the person.
+     * @see Elevator
+     */
+    private Elevator elevator() {
+        Elevator elevator = currentBuilding.getElevatorOf(this);
+        return (elevator == null) ? currentBuilding.getElevator() : elevator;
     }
 }
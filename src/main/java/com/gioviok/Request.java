@@ -0,0 +1,145 @@
+package com.gioviok;
+
+import java.util.Comparator;
+
+/**
+ * The Request class contains the information about a pending stop of an
+ * elevator: the requested floor, the time the request was made at and its
+ * priority class. A hall call may also know where the caller goes next, so
+ * that it is only given to an elevator serving both floors.
+ * Requests are used to age the stops of the elevator, so that no floor waits
+ * forever, and to serve important people first.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator
+ * @see Floor
+ */
+public class Request {
+    /**
+     * The comparator used to order requests from the oldest to the newest.
+     */
+    static final Comparator<Request> OLDEST_FIRST = new Comparator<Request>() {
+        @Override
+        public int compare(Request o1, Request o2) {
+            return Double.compare(o1.time, o2.time);
+        }
+    };
+
+    /**
+     * The requested floor.
+     */
+    private final Floor floor;
+
+    /**
+     * The time the request was made at (in seconds).
+     */
+    private final double time;
+
+    /**
+     * The priority class of the request.
+     *
+     * @see Key.Priority
+     */
+    private final Key.Priority priority;
+
+    /**
+     * The floor the caller goes to next, null if it is unknown.
+     */
+    private final Floor destination;
+
+    /**
+     * Whether the request was served or cleared. Served requests are removed
+     * lazily from the queues they are in.
+     */
+    private boolean done;
+
+    /**
+     * The constructor of the request.
+     *
+     * @param floor    The requested floor.
+     * @param time     The time the request was made at (in seconds).
+     * @param priority The priority class of the request.
+     */
+    Request(Floor floor, double time, Key.Priority priority) {
+        this(floor, time, priority, null);
+    }
+
+    /**
+     * The constructor of the request, for a caller who told where they go next.
+     *
+     * @param floor       The requested floor.
+     * @param time        The time the request was made at (in seconds).
+     * @param priority    The priority class of the request.
+     * @param destination The floor the caller goes to next (can be null).
+     */
+    Request(Floor floor, double time, Key.Priority priority, Floor destination) {
+        this.floor = floor;
+        this.time = time;
+        this.priority = priority;
+        this.destination = destination;
+    }
+
+    /**
+     * Floor getter.
+     *
+     * @return The requested floor.
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Time getter.
+     *
+     * @return The time the request was made at (in seconds).
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Priority getter.
+     *
+     * @return The priority class of the request.
+     * @see Key.Priority
+     */
+    public Key.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Destination getter.
+     *
+     * @return The floor the caller goes to next, null if it is unknown.
+     */
+    public Floor getDestination() {
+        return destination;
+    }
+
+    /**
+     * The isDone method returns true if the request was served or cleared.
+     *
+     * @return True if the request is no longer pending, false otherwise.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * The markDone method marks the request as served or cleared.
+     */
+    void markDone() {
+        done = true;
+    }
+
+    /**
+     * The toString method returns a string representation of the request.
+     *
+     * @return A string representation of the request.
+     */
+    public String toString() {
+        return "Request: " + floor + " - Time: " + time + "s - Priority: " + priority;
+    }
+}
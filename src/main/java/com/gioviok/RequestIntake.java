@@ -0,0 +1,321 @@
+package com.gioviok;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The RequestIntake class lets many threads hand requests to an elevator, which
+ * is not thread-safe itself. Producers (passenger agents, hall buttons...) submit
+ * car calls, stops, boardings and disembarkings from any thread; the thread
+ * running the elevator drains them in batches at every run, in the order they
+ * were submitted, and applies them as if they had been made on the spot.
+ * The queue is a linked list with a single consumer: submitting swaps the new
+ * node in as the tail with one atomic exchange, then links the old tail to it,
+ * so producers never wait for each other or for the consumer. The consumer
+ * walks the list from its head without any atomic operation. A node whose link
+ * is not written yet stops the batch: it is applied at the next run.
+ * A request the elevator refuses (a key not valid for the floor, a person not on
+ * the floor of the elevator...) is dropped and counted, since its producer is no
+ * longer there to be told.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator#getIntake()
+ * @see Elevator#run()
+ */
+public class RequestIntake {
+    /**
+     * The kinds of requests.
+     */
+    private enum Kind {
+        /** A car call, checked against the key. */
+        RIDE,
+        /** A stop, without checking any key. */
+        STOP,
+        /** A person getting on. */
+        BOARD,
+        /** A person getting off. */
+        DISEMBARK
+    }
+
+    /**
+     * The node class is a submitted request, linked to the next one.
+     */
+    private static final class Node {
+        /** The kind of request. */
+        private Kind kind;
+        /** The floor of a ride or a stop. */
+        private Floor floor;
+        /** The key of a ride. */
+        private Key key;
+        /** The person of a ride, a boarding or a disembarking. */
+        private Person person;
+        /** The priority class of a stop. */
+        private Key.Priority priority;
+        /**
+         * The next request, null if this is the tail or it is not linked yet. It is
+         * not private, so that the updater can reach it.
+         */
+        volatile Node next;
+    }
+
+    /**
+     * The updater linking a node to the next one with an ordered store.
+     */
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT = AtomicReferenceFieldUpdater
+            .newUpdater(Node.class, Node.class, "next");
+
+    /**
+     * The last request submitted (the empty node if there is none yet).
+     */
+    private final AtomicReference<Node> tail;
+
+    /**
+     * The last request drained: its successor is the next one to apply. Only the
+     * consumer uses it.
+     */
+    private Node head;
+
+    /**
+     * The elevator the requests are applied to.
+     */
+    private final Elevator elevator;
+
+    /**
+     * The largest number of requests applied by a drain.
+     */
+    private volatile int batchSize = 1024;
+
+    /**
+     * The number of requests applied.
+     */
+    private volatile long applied;
+
+    /**
+     * The number of requests the elevator refused.
+     */
+    private volatile long rejected;
+
+    /**
+     * The constructor of the intake.
+     *
+     * @param elevator The elevator the requests are applied to.
+     */
+    RequestIntake(Elevator elevator) {
+        this.elevator = elevator;
+        head = new Node();
+        tail = new AtomicReference<Node>(head);
+    }
+
+    /**
+     * The submitRide method submits a car call, checked against the key when it
+     * is applied. It can be called from any thread, and never blocks.
+     *
+     * @param floor  The floor to go to.
+     * @param key    The key to use.
+     * @param person The person asking, null if unknown.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the floor is null.
+     * @see Elevator#requestRide(Floor, Key, Person)
+     */
+    public RequestIntake submitRide(Floor floor, Key key, Person person) throws IllegalArgumentException {
+        if (floor == null) {
+            throw new IllegalArgumentException("The floor cannot be null.");
+        }
+        Node node = new Node();
+        node.kind = Kind.RIDE;
+        node.floor = floor;
+        node.key = key;
+        node.person = person;
+        return submit(node);
+    }
+
+    /**
+     * The submitStop method submits a stop, without any key (a hall button). It
+     * can be called from any thread, and never blocks.
+     *
+     * @param floor    The floor to stop at.
+     * @param priority The priority class of the stop.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the floor or the priority is null.
+     * @see Elevator#requestHere(Floor, Key.Priority)
+     */
+    public RequestIntake submitStop(Floor floor, Key.Priority priority) throws IllegalArgumentException {
+        if (floor == null || priority == null) {
+            throw new IllegalArgumentException("The floor and the priority cannot be null.");
+        }
+        Node node = new Node();
+        node.kind = Kind.STOP;
+        node.floor = floor;
+        node.priority = priority;
+        return submit(node);
+    }
+
+    /**
+     * The submitBoard method submits a person getting on. It can be called from
+     * any thread, and never blocks.
+     *
+     * @param person The person.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the person is null.
+     * @see Elevator#board(Person)
+     */
+    public RequestIntake submitBoard(Person person) throws IllegalArgumentException {
+        return submit(personNode(Kind.BOARD, person));
+    }
+
+    /**
+     * The submitDisembark method submits a person getting off. It can be called
+     * from any thread, and never blocks.
+     *
+     * @param person The person.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the person is null.
+     * @see Elevator#disembark(Person)
+     */
+    public RequestIntake submitDisembark(Person person) throws IllegalArgumentException {
+        return submit(personNode(Kind.DISEMBARK, person));
+    }
+
+    /**
+     * The personNode method makes the node of a request of a person.
+     *
+     * @param kind   The kind of request.
+     * @param person The person.
+     * @return The node.
+     * @throws IllegalArgumentException If the person is null.
+     */
+    private static Node personNode(Kind kind, Person person) throws IllegalArgumentException {
+        if (person == null) {
+            throw new IllegalArgumentException("The person cannot be null.");
+        }
+        Node node = new Node();
+        node.kind = kind;
+        node.person = person;
+        return node;
+    }
+
+    /**
+     * The submit method appends a node to the queue.
+     *
+     * @param node The node.
+     * @return this, to allow concatenation.
+     */
+    private RequestIntake submit(Node node) {
+        Node previous = tail.getAndSet(node);
+        // The ordered store publishes the fields of the node with the link.
+        NEXT.lazySet(previous, node);
+        return this;
+    }
+
+    /**
+     * The drain method applies the requests submitted so far, up to the batch
+     * size, in the order they were submitted. Only the thread running the
+     * elevator may call it.
+     *
+     * @return The number of requests taken from the queue, refused ones included.
+     */
+    int drain() {
+        int drained = 0;
+        int limit = batchSize;
+        Node next = head.next;
+        while (next != null && drained < limit) {
+            apply(next);
+            // The drained node becomes the empty head: it lets go of what it held.
+            next.floor = null;
+            next.key = null;
+            next.person = null;
+            head = next;
+            next = next.next;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * The apply method makes a request on the elevator.
+     *
+     * @param node The request.
+     */
+    private void apply(Node node) {
+        try {
+            switch (node.kind) {
+                case RIDE:
+                    elevator.requestRide(node.floor, node.key, node.person);
+                    break;
+                case STOP:
+                    elevator.requestHere(node.floor, node.priority);
+                    break;
+                case BOARD:
+                    if (!elevator.hasPerson(node.person)) {
+                        elevator.board(node.person);
+                    }
+                    break;
+                case DISEMBARK:
+                    elevator.disembark(node.person);
+                    break;
+                default:
+                    throw new Error("Invalid request kind (" + node.kind + ")");
+            }
+            applied++;
+        } catch (RuntimeException e) {
+            // A request the elevator refuses (an invalid key, a person who is not in
+            // the building...) is dropped: its producer is not waiting to be told,
+            // and the requests behind it must still be applied.
+            rejected++;
+        }
+    }
+
+    /**
+     * The hasPending method checks if requests are waiting to be applied. Only
+     * the thread running the elevator may call it.
+     *
+     * @return True if the next drain has requests to apply, false otherwise.
+     */
+    boolean hasPending() {
+        return head.next != null;
+    }
+
+    /**
+     * Batch size getter.
+     *
+     * @return The largest number of requests applied by a drain.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Batch size setter.
+     *
+     * @param batchSize The largest number of requests applied by a drain.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public RequestIntake setBatchSize(int batchSize) throws IllegalArgumentException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Applied getter.
+     *
+     * @return The number of requests applied.
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Rejected getter.
+     *
+     * @return The number of requests the elevator refused.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+}
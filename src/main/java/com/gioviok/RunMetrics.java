@@ -0,0 +1,392 @@
+package com.gioviok;
+
+/**
+ * The RunMetrics class collects the statistics of an elevator while it runs.
+ * It counts the stops, the travelled distance, the round trips and how many
+ * times the full-load bypass made the elevator skip a hall call. It also keeps
+ * the average and maximum time requests waited before being served.
+ * A round trip starts when the elevator leaves upwards after going down (or
+ * after being idle), and ends the next time it does so or goes idle.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator
+ */
+public class RunMetrics implements Cloneable {
+    /**
+     * The number of stops the elevator made.
+     */
+    private long stops;
+
+    /**
+     * The distance travelled by the elevator (in millimeters).
+     */
+    private long distance;
+
+    /**
+     * The number of times the idle elevator moved to a parking floor.
+     *
+     * @see Elevator#park(Floor)
+     */
+    private long parkings;
+
+    /**
+     * The number of times the elevator was moved out of the way of another car of
+     * its shaft.
+     *
+     * @see Shaft
+     */
+    private long shaftMoves;
+
+    /**
+     * The energy drawn by the elevator (in joules).
+     *
+     * @see EnergyModel
+     */
+    private double consumedEnergy;
+
+    /**
+     * The energy given back by the regenerative drive of the elevator (in
+     * joules).
+     *
+     * @see EnergyModel
+     */
+    private double regeneratedEnergy;
+
+    /**
+     * The number of times the elevator skipped a hall call because of the
+     * full-load bypass.
+     *
+     * @see Elevator#isBypassing()
+     */
+    private long bypasses;
+
+    /**
+     * The number of times an overdue request was served before the closest one.
+     *
+     * @see Elevator#getMaxWait()
+     */
+    private long agingPromotions;
+
+    /**
+     * The number of times a request of a preempting priority class was served
+     * before the closest one.
+     *
+     * @see Key.Priority
+     */
+    private long preemptions;
+
+    /**
+     * The number of served requests.
+     */
+    private long servedRequests;
+
+    /**
+     * The total time served requests waited (in seconds).
+     */
+    private double totalWait;
+
+    /**
+     * The longest time a served request waited (in seconds).
+     */
+    private double maxWait;
+
+    /**
+     * The number of completed round trips.
+     */
+    private long roundTrips;
+
+    /**
+     * The total time spent in completed round trips (in seconds).
+     */
+    private double roundTripTime;
+
+    /**
+     * The recordStop method records a stop of the elevator.
+     *
+     * @param distance The distance travelled to reach the stop (in millimeters).
+     */
+    void recordStop(int distance) {
+        stops++;
+        this.distance += Math.abs(distance);
+    }
+
+    /**
+     * The recordParking method records a move of the idle elevator to a parking
+     * floor.
+     *
+     * @param distance The distance travelled to reach the floor (in millimeters).
+     */
+    void recordParking(int distance) {
+        parkings++;
+        this.distance += Math.abs(distance);
+    }
+
+    /**
+     * The recordShaftMove method records a move out of the way of another car of
+     * the shaft.
+     *
+     * @param distance The distance travelled (in millimeters).
+     */
+    void recordShaftMove(int distance) {
+        shaftMoves++;
+        this.distance += Math.abs(distance);
+    }
+
+    /**
+     * The recordEnergy method records the energy of a trip or of a stop.
+     *
+     * @param energy The energy drawn (in joules), negative if it was given back.
+     */
+    void recordEnergy(double energy) {
+        if (energy >= 0) {
+            consumedEnergy += energy;
+        } else {
+            regeneratedEnergy -= energy;
+        }
+    }
+
+    /**
+     * The recordBypass method records a hall call skipped because of the
+     * full-load bypass.
+     */
+    void recordBypass() {
+        bypasses++;
+    }
+
+    /**
+     * The recordAgingPromotion method records an overdue request served before
+     * the closest one.
+     */
+    void recordAgingPromotion() {
+        agingPromotions++;
+    }
+
+    /**
+     * The recordPreemption method records a preempting request served before the
+     * closest one.
+     */
+    void recordPreemption() {
+        preemptions++;
+    }
+
+    /**
+     * The recordWait method records the wait of a served request.
+     *
+     * @param wait The time the request waited (in seconds).
+     */
+    void recordWait(double wait) {
+        servedRequests++;
+        totalWait += wait;
+        if (wait > maxWait) {
+            maxWait = wait;
+        }
+    }
+
+    /**
+     * The recordRoundTrip method records a completed round trip.
+     *
+     * @param time The duration of the round trip (in seconds).
+     */
+    void recordRoundTrip(double time) {
+        roundTrips++;
+        roundTripTime += time;
+    }
+
+    /**
+     * The reset method clears all the collected statistics.
+     */
+    public void reset() {
+        stops = 0;
+        distance = 0;
+        parkings = 0;
+        shaftMoves = 0;
+        consumedEnergy = 0;
+        regeneratedEnergy = 0;
+        bypasses = 0;
+        agingPromotions = 0;
+        preemptions = 0;
+        servedRequests = 0;
+        totalWait = 0;
+        maxWait = 0;
+        roundTrips = 0;
+        roundTripTime = 0;
+    }
+
+    /**
+     * The clone method creates a copy of the metrics.
+     *
+     * @return A copy of the metrics.
+     */
+    public RunMetrics clone() {
+        RunMetrics copy = new RunMetrics();
+        copy.stops = stops;
+        copy.distance = distance;
+        copy.parkings = parkings;
+        copy.shaftMoves = shaftMoves;
+        copy.consumedEnergy = consumedEnergy;
+        copy.regeneratedEnergy = regeneratedEnergy;
+        copy.bypasses = bypasses;
+        copy.agingPromotions = agingPromotions;
+        copy.preemptions = preemptions;
+        copy.servedRequests = servedRequests;
+        copy.totalWait = totalWait;
+        copy.maxWait = maxWait;
+        copy.roundTrips = roundTrips;
+        copy.roundTripTime = roundTripTime;
+        return copy;
+    }
+
+    /**
+     * Stops getter.
+     *
+     * @return The number of stops the elevator made.
+     */
+    public long getStops() {
+        return stops;
+    }
+
+    /**
+     * Distance getter.
+     *
+     * @return The distance travelled by the elevator (in millimeters).
+     */
+    public long getDistance() {
+        return distance;
+    }
+
+    /**
+     * Bypasses getter.
+     *
+     * @return The number of hall calls skipped because of the full-load bypass.
+     */
+    public long getBypasses() {
+        return bypasses;
+    }
+
+    /**
+     * Aging promotions getter.
+     *
+     * @return The number of overdue requests served before the closest one.
+     */
+    public long getAgingPromotions() {
+        return agingPromotions;
+    }
+
+    /**
+     * Preemptions getter.
+     *
+     * @return The number of preempting requests served before the closest one.
+     */
+    public long getPreemptions() {
+        return preemptions;
+    }
+
+    /**
+     * Served requests getter.
+     *
+     * @return The number of served requests.
+     */
+    public long getServedRequests() {
+        return servedRequests;
+    }
+
+    /**
+     * The getAverageWait method returns the average time a served request waited.
+     *
+     * @return The average wait (in seconds), 0 if no request was served.
+     */
+    public double getAverageWait() {
+        return servedRequests == 0 ? 0 : totalWait / servedRequests;
+    }
+
+    /**
+     * Max wait getter.
+     *
+     * @return The longest time a served request waited (in seconds).
+     */
+    public double getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Parkings getter.
+     *
+     * @return The number of times the idle elevator moved to a parking floor.
+     */
+    public long getParkings() {
+        return parkings;
+    }
+
+    /**
+     * Shaft moves getter.
+     *
+     * @return The number of times the elevator was moved out of the way of
+     *         another car of its shaft.
+     */
+    public long getShaftMoves() {
+        return shaftMoves;
+    }
+
+    /**
+     * Consumed energy getter.
+     *
+     * @return The energy drawn by the elevator (in kilowatt-hours).
+     */
+    public double getConsumedEnergy() {
+        return consumedEnergy / EnergyModel.JOULES_PER_KWH;
+    }
+
+    /**
+     * Regenerated energy getter.
+     *
+     * @return The energy given back by the elevator (in kilowatt-hours).
+     */
+    public double getRegeneratedEnergy() {
+        return regeneratedEnergy / EnergyModel.JOULES_PER_KWH;
+    }
+
+    /**
+     * The getEnergy method returns the net energy used by the elevator: what it
+     * drew, minus what it gave back.
+     *
+     * @return The net energy (in kilowatt-hours).
+     */
+    public double getEnergy() {
+        return (consumedEnergy - regeneratedEnergy) / EnergyModel.JOULES_PER_KWH;
+    }
+
+    /**
+     * Round trips getter.
+     *
+     * @return The number of completed round trips.
+     */
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * The getAverageRoundTripTime method returns the average duration of a round
+     * trip.
+     *
+     * @return The average round trip time (in seconds), 0 if no round trip was
+     *         completed.
+     */
+    public double getAverageRoundTripTime() {
+        return roundTrips == 0 ? 0 : roundTripTime / roundTrips;
+    }
+
+    /**
+     * The toString method returns a string representation of the metrics.
+     *
+     * @return A string representation of the metrics.
+     */
+    public String toString() {
+        return "Stops: " + stops + " - Distance: " + distance + "mm - Energy: "
+                + String.format("%.3f", getEnergy()) + "kWh - Bypasses: " + bypasses
+                + " - Round trips: " + roundTrips + " (avg " + String.format("%.1f", getAverageRoundTripTime())
+                + "s) - Wait: avg " + String.format("%.1f", getAverageWait()) + "s, max "
+                + String.format("%.1f", maxWait) + "s (" + agingPromotions + " aged, " + preemptions + " preempted)";
+    }
+}
@@ -0,0 +1,486 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The Shaft class models a hoistway shared by several cars, stacked one above
+ * the other, as in twin or ropeless multi-car systems. The cars can't pass each
+ * other and must always stay a minimum separation apart.
+ * The request picker of an elevator only knows its own car, so the separation is
+ * enforced when a car leaves: the shaft keeps the planned motion of every car,
+ * as a list of waypoints (time, height) between which the car moves at constant
+ * speed, and checks the new trip against the neighbours. The gap between two
+ * cars is then piecewise linear in time, so it only has to be checked at the
+ * waypoints of both plans: if it is too small at any of them, the trip waits
+ * for the next waypoint of a neighbour. A neighbour standing where the car goes
+ * is moved out of the way first, to the closest floor beyond it, and so on up
+ * or down the shaft.
+ * Every car only serves the floors it can reach with the others squeezed at the
+ * ends of the shaft: the lowest car never reaches the top floors, and the
+ * highest one never reaches the bottom floors.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#addShaft(int, Elevator...)
+ */
+public class Shaft {
+    /**
+     * The cars of the shaft, from the bottom up.
+     */
+    private final ArrayList<Elevator> cars;
+
+    /**
+     * The minimum separation between two cars (in millimeters).
+     */
+    private final int separation;
+
+    /**
+     * The floors along the shaft, sorted by height.
+     */
+    private final ArrayList<Floor> floors;
+
+    /**
+     * The lowest floor every car can reach.
+     */
+    private final Floor[] lowest;
+
+    /**
+     * The highest floor every car can reach.
+     */
+    private final Floor[] highest;
+
+    /**
+     * The planned motion of every car: waypoints {time, height}, sorted by time.
+     * Before the first waypoint and after the last one, the car stands still.
+     */
+    private final ArrayList<ArrayList<double[]>> plans;
+
+    /**
+     * The number of trips which had to wait for a neighbour.
+     */
+    private long delays;
+
+    /**
+     * The total time trips waited for a neighbour (in seconds).
+     */
+    private double delayTime;
+
+    /**
+     * The number of times a car was moved out of the way.
+     */
+    private long moves;
+
+    /**
+     * The constructor of the shaft. The cars are sorted by height, limited to the
+     * floors they can reach and moved, if needed, so that they start apart.
+     *
+     * @param floors     The floors of the building.
+     * @param separation The minimum separation between two cars (in
+     *                   millimeters).
+     * @param cars       The cars of the shaft.
+     * @throws IllegalArgumentException If there is no car, a car is null or given
+     *                                  twice, the separation is negative, or the
+     *                                  floors can't hold every car apart.
+     * @throws IllegalStateException    If a car has no current floor, is busy or
+     *                                  carries people.
+     */
+    Shaft(List<Floor> floors, int separation, Elevator... cars)
+            throws IllegalArgumentException, IllegalStateException {
+        if (cars == null || cars.length == 0) {
+            throw new IllegalArgumentException("A shaft needs at least one car.");
+        }
+        if (separation < 0) {
+            throw new IllegalArgumentException("The separation cannot be negative.");
+        }
+        this.separation = separation;
+        this.floors = new ArrayList<Floor>(floors);
+        Collections.sort(this.floors);
+        this.cars = new ArrayList<Elevator>();
+        for (Elevator car : cars) {
+            if (car == null) {
+                throw new IllegalArgumentException("A car is null.");
+            }
+            if (this.cars.contains(car)) {
+                throw new IllegalArgumentException("A car is given twice.");
+            }
+            if (car.getCurrentFloor() == null) {
+                throw new IllegalStateException("Every car needs a current floor.");
+            }
+            if (car.isBusy() || car.numberOfPeople() > 0) {
+                throw new IllegalStateException("The cars must be idle and empty to share a shaft.");
+            }
+            this.cars.add(car);
+        }
+        Collections.sort(this.cars, new Comparator<Elevator>() {
+            @Override
+            public int compare(Elevator a, Elevator b) {
+                return Integer.compare(a.getCurrentFloor().getDistance(), b.getCurrentFloor().getDistance());
+            }
+        });
+        // The reach of a car: the others squeezed below and above it.
+        int n = this.cars.size();
+        lowest = new Floor[n];
+        highest = new Floor[n];
+        for (int k = 0; k < n; k++) {
+            lowest[k] = (k == 0) ? first() : above(lowest[k - 1].getDistance() + separation);
+            if (lowest[k] == null) {
+                throw new IllegalArgumentException("The floors can't hold " + n + " cars apart.");
+            }
+        }
+        for (int k = n - 1; k >= 0; k--) {
+            highest[k] = (k == n - 1) ? last() : below(highest[k + 1].getDistance() - separation);
+            if (highest[k] == null || highest[k].getDistance() < lowest[k].getDistance()) {
+                throw new IllegalArgumentException("The floors can't hold " + n + " cars apart.");
+            }
+        }
+        // Every car serves its reach, and starts apart from the car below.
+        plans = new ArrayList<ArrayList<double[]>>();
+        for (int k = 0; k < n; k++) {
+            Elevator car = this.cars.get(k);
+            List<Floor> reach = this.floors.subList(this.floors.indexOf(lowest[k]),
+                    this.floors.indexOf(highest[k]) + 1);
+            car.setServedFloors(reach.toArray(new Floor[0]));
+            Floor start = car.getCurrentFloor();
+            if (start.getDistance() < lowest[k].getDistance()) {
+                start = lowest[k];
+            } else if (start.getDistance() > highest[k].getDistance()) {
+                start = highest[k];
+            }
+            if (k > 0 && start.getDistance() < finalHeight(k - 1) + separation) {
+                start = above(finalHeight(k - 1) + separation);
+            }
+            car.setCurrentFloor(start);
+            car.setShaft(this);
+            ArrayList<double[]> plan = new ArrayList<double[]>();
+            plan.add(new double[] { car.getTime(), start.getDistance() });
+            plans.add(plan);
+        }
+    }
+
+    /**
+     * The depart method schedules a trip of a car of the shaft. Neighbours in the
+     * way are moved out of it first, then the trip leaves as soon as it keeps the
+     * separation all along, and is added to the plan of the car.
+     *
+     * @param car      The car.
+     * @param to       The floor the car goes to.
+     * @param earliest The time the car is ready to leave (in seconds).
+     * @return The time the car leaves (in seconds).
+     * @throws IllegalArgumentException If the car is not in the shaft.
+     * @throws IllegalStateException    If the floor is out of the reach of the
+     *                                  car.
+     */
+    double depart(Elevator car, Floor to, double earliest) throws IllegalArgumentException, IllegalStateException {
+        int k = cars.indexOf(car);
+        if (k < 0) {
+            throw new IllegalArgumentException("The car is not in the shaft.");
+        }
+        if (to.getDistance() < lowest[k].getDistance() || to.getDistance() > highest[k].getDistance()) {
+            throw new IllegalStateException("Floor " + to.getName() + " is out of the reach of the car.");
+        }
+        double start = plan(k, to.getDistance(), earliest);
+        if (start > earliest) {
+            delays++;
+            delayTime += start - earliest;
+        }
+        return start;
+    }
+
+    /**
+     * The plan method plans a trip of a car, moving the neighbours in the way.
+     *
+     * @param k        The index of the car.
+     * @param to       The height the car goes to (in millimeters).
+     * @param earliest The time the car is ready to leave (in seconds).
+     * @return The time the car leaves (in seconds).
+     * @throws IllegalStateException If no departure keeps the separation.
+     */
+    private double plan(int k, int to, double earliest) throws IllegalStateException {
+        double from = finalHeight(k);
+        if (to > from && k + 1 < cars.size()) {
+            makeWay(k + 1, to + separation, earliest, true);
+        } else if (to < from && k > 0) {
+            makeWay(k - 1, to - separation, earliest, false);
+        }
+        ArrayList<double[]> plan = plans.get(k);
+        earliest = Math.max(earliest, plan.get(plan.size() - 1)[0]);
+        double travel = Math.abs(to - from) / cars.get(k).getSpeed();
+        // The trip can only become possible when a neighbour reaches a waypoint.
+        ArrayList<Double> starts = new ArrayList<Double>();
+        starts.add(earliest);
+        for (int j = k - 1; j <= k + 1; j += 2) {
+            if (j >= 0 && j < cars.size()) {
+                for (double[] waypoint : plans.get(j)) {
+                    if (waypoint[0] > earliest) {
+                        starts.add(waypoint[0]);
+                    }
+                }
+            }
+        }
+        Collections.sort(starts);
+        for (double start : starts) {
+            double[][] trip = { { start, from }, { start + travel, to } };
+            if ((k == 0 || clear(plans.get(k - 1), Arrays.asList(trip), start))
+                    && (k + 1 == cars.size() || clear(Arrays.asList(trip), plans.get(k + 1), start))) {
+                record(k, trip);
+                return start;
+            }
+        }
+        throw new IllegalStateException("The cars of the shaft can't keep their separation.");
+    }
+
+    /**
+     * The makeWay method moves a car, and the cars beyond it, so that it ends
+     * beyond a height.
+     *
+     * @param j        The index of the car.
+     * @param bound    The height the car must end above (or below) (in
+     *                 millimeters).
+     * @param earliest The time the car may leave (in seconds).
+     * @param up       True if the car must end above the bound, false if below.
+     * @throws IllegalStateException If there is no floor beyond the bound.
+     */
+    private void makeWay(int j, int bound, double earliest, boolean up) throws IllegalStateException {
+        double height = finalHeight(j);
+        if (up ? height >= bound : height <= bound) {
+            return;
+        }
+        Floor target = up ? above(bound) : below(bound);
+        if (target == null) {
+            throw new IllegalStateException("There is no room left in the shaft.");
+        }
+        double start = plan(j, target.getDistance(), earliest);
+        cars.get(j).makeWay(target, start);
+        moves++;
+    }
+
+    /**
+     * The clear method checks if two plans keep the separation from a given
+     * time on. The gap between the cars is linear between the waypoints of the
+     * two plans, so it is checked at every one of them.
+     *
+     * @param lower The plan of the lower car.
+     * @param upper The plan of the upper car.
+     * @param from  The time to check from (in seconds).
+     * @return True if the cars stay apart, false otherwise.
+     */
+    private boolean clear(List<double[]> lower, List<double[]> upper, double from) {
+        if (height(upper, from) - height(lower, from) < separation) {
+            return false;
+        }
+        for (List<double[]> plan : Arrays.asList(lower, upper)) {
+            for (double[] waypoint : plan) {
+                double t = waypoint[0];
+                if (t > from && height(upper, t) - height(lower, t) < separation) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The height method returns where a plan puts a car at a given time.
+     *
+     * @param plan The plan.
+     * @param time The time (in seconds).
+     * @return The height of the car (in millimeters).
+     */
+    private static double height(List<double[]> plan, double time) {
+        double[] previous = plan.get(0);
+        if (time <= previous[0]) {
+            return previous[1];
+        }
+        for (double[] waypoint : plan) {
+            if (time <= waypoint[0]) {
+                double fraction = (waypoint[0] == previous[0]) ? 1
+                        : (time - previous[0]) / (waypoint[0] - previous[0]);
+                return previous[1] + fraction * (waypoint[1] - previous[1]);
+            }
+            previous = waypoint;
+        }
+        return previous[1];
+    }
+
+    /**
+     * The record method adds a trip to the plan of a car, and forgets the
+     * waypoints no car can be checked against anymore.
+     *
+     * @param k    The index of the car.
+     * @param trip The waypoints of the trip.
+     */
+    private void record(int k, double[][] trip) {
+        ArrayList<double[]> plan = plans.get(k);
+        double last = plan.get(plan.size() - 1)[0];
+        if (trip[0][0] > last) {
+            plan.add(trip[0]);
+        }
+        plan.add(trip[1]);
+        // No car leaves before the earliest clock of the shaft.
+        double horizon = Double.POSITIVE_INFINITY;
+        for (Elevator car : cars) {
+            horizon = Math.min(horizon, car.getTime());
+        }
+        for (ArrayList<double[]> p : plans) {
+            while (p.size() > 1 && p.get(1)[0] <= horizon) {
+                p.remove(0);
+            }
+        }
+    }
+
+    /**
+     * The finalHeight method returns where a car stands once its plan is over.
+     *
+     * @param k The index of the car.
+     * @return The height of the car (in millimeters).
+     */
+    private double finalHeight(int k) {
+        ArrayList<double[]> plan = plans.get(k);
+        return plan.get(plan.size() - 1)[1];
+    }
+
+    /**
+     * The above method returns the lowest floor at or above a height.
+     *
+     * @param height The height (in millimeters).
+     * @return The floor, null if there is none.
+     */
+    private Floor above(double height) {
+        for (Floor floor : floors) {
+            if (floor.getDistance() >= height) {
+                return floor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The below method returns the highest floor at or below a height.
+     *
+     * @param height The height (in millimeters).
+     * @return The floor, null if there is none.
+     */
+    private Floor below(double height) {
+        for (int i = floors.size() - 1; i >= 0; i--) {
+            if (floors.get(i).getDistance() <= height) {
+                return floors.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The first method returns the lowest floor of the shaft.
+     *
+     * @return The lowest floor, null if there are no floors.
+     */
+    private Floor first() {
+        return floors.isEmpty() ? null : floors.get(0);
+    }
+
+    /**
+     * The last method returns the highest floor of the shaft.
+     *
+     * @return The highest floor, null if there are no floors.
+     */
+    private Floor last() {
+        return floors.isEmpty() ? null : floors.get(floors.size() - 1);
+    }
+
+    /**
+     * The closestReachable method returns the floor a car can reach closest to a
+     * given floor.
+     *
+     * @param car   The car.
+     * @param floor The floor.
+     * @return The floor itself if the car reaches it, otherwise the end of the
+     *         reach of the car on its side.
+     * @throws IllegalArgumentException If the car is not in the shaft.
+     */
+    Floor closestReachable(Elevator car, Floor floor) throws IllegalArgumentException {
+        int k = cars.indexOf(car);
+        if (k < 0) {
+            throw new IllegalArgumentException("The car is not in the shaft.");
+        }
+        if (floor == null) {
+            return null;
+        }
+        if (floor.getDistance() < lowest[k].getDistance()) {
+            return lowest[k];
+        }
+        return (floor.getDistance() > highest[k].getDistance()) ? highest[k] : floor;
+    }
+
+    /**
+     * The getCars method returns the cars of the shaft.
+     *
+     * @return The cars, from the bottom up.
+     */
+    public List<Elevator> getCars() {
+        return Collections.unmodifiableList(cars);
+    }
+
+    /**
+     * Separation getter.
+     *
+     * @return The minimum separation between two cars (in millimeters).
+     */
+    public int getSeparation() {
+        return separation;
+    }
+
+    /**
+     * The getLowestFloor method returns the lowest floor a car can reach.
+     *
+     * @param car The car.
+     * @return The lowest floor of its reach, null if the car is not in the shaft.
+     */
+    public Floor getLowestFloor(Elevator car) {
+        int k = cars.indexOf(car);
+        return (k < 0) ? null : lowest[k];
+    }
+
+    /**
+     * The getHighestFloor method returns the highest floor a car can reach.
+     *
+     * @param car The car.
+     * @return The highest floor of its reach, null if the car is not in the
+     *         shaft.
+     */
+    public Floor getHighestFloor(Elevator car) {
+        int k = cars.indexOf(car);
+        return (k < 0) ? null : highest[k];
+    }
+
+    /**
+     * Delays getter.
+     *
+     * @return The number of trips which had to wait for a neighbour.
+     */
+    public long getDelays() {
+        return delays;
+    }
+
+    /**
+     * Delay time getter.
+     *
+     * @return The total time trips waited for a neighbour (in seconds).
+     */
+    public double getDelayTime() {
+        return delayTime;
+    }
+
+    /**
+     * Moves getter.
+     *
+     * @return The number of times a car was moved out of the way.
+     */
+    public long getMoves() {
+        return moves;
+    }
+}
@@ -1,9 +1,17 @@
 package com.gioviok;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Simulator class is the main class of the simulator.
@@ -49,6 +57,12 @@ public class Simulator {
      * It is used for the prototype design pattern.
      */
     private ArrayList<Person> people = new ArrayList<Person>();
+
+    /**
+     * The file the demand forecaster of the building is saved to when quitting,
+     * null if it is not saved.
+     */
+    private File forecastFile;
     /**
      * The internal entryPoint timer
      */
@@ -107,6 +121,21 @@ public class Simulator {
     /** The ANSI code to write with a brown background */
     private static String ANSI_BACKGROUND_BROWN = "\u001B[101m";
 
+    /** The number of passengers per hour of the traffic report */
+    private static final int TRAFFIC_PASSENGERS_PER_HOUR = 120;
+    /** The batch window of the traffic report (in seconds) */
+    private static final double TRAFFIC_BATCH_WINDOW = 5;
+    /** The seed of the trips of the traffic report, so that reports can be compared */
+    private static final long TRAFFIC_SEED = 42;
+    /** The energy weight of the energy-aware run of the traffic report (in seconds per kWh) */
+    private static final double TRAFFIC_ENERGY_WEIGHT = 2000;
+    /** The number of passengers per hour of the up-peak which saturates the elevators of the traffic report */
+    private static final int TRAFFIC_SATURATION_PER_HOUR = 3000;
+    /** The minimum separation of the cars sharing a shaft in the traffic report (in millimeters) */
+    private static final int TRAFFIC_SHAFT_SEPARATION = 3000;
+    /** The number of candidates the look-ahead dispatcher simulates for a call in the traffic report */
+    private static final int TRAFFIC_LOOK_AHEAD_ROLLOUTS = 8;
+
     /**
      * The ansiSwitchOff is used to switch off the ANSI codes, in case they are not
      * supported by the terminal.
@@ -310,9 +339,9 @@ public class Simulator {
                     ok = simulationStatus();
                     break;
                 case "8":
-                    // Run elevator step.
+                    // Run a step of every elevator of the group.
                     try {
-                        ok = building.getElevator().run();
+                        ok = building.runElevators();
                     } catch (Exception e) {
                         System.out.println(ANSI_RED + "Error: " + e.getMessage() + ANSI_RESET);
                         ok = false;
@@ -323,8 +352,14 @@ public class Simulator {
                     // Open the action editor.
                     ok = actionEditor();
                     break;
+                case "11":
+                    // Print the traffic report.
+                    ok = trafficReport();
+                    break;
                 case "10":
-                    // Quit the simulator.
+                    // Quit the simulator, keeping what the forecaster learned and the audit.
+                    saveForecaster();
+                    closeAccessAudit();
                     scanner.close();
                     System.exit(0);
                 default:
@@ -421,6 +456,11 @@ public class Simulator {
      * fancy.
      */
     private void printGraphicalView() {
+        // We read the state of every elevator once, as a whole, so the view is never torn.
+        ArrayList<ElevatorSnapshot> cars = new ArrayList<ElevatorSnapshot>();
+        for (Elevator e : building.getElevators()) {
+            cars.add(e.getSnapshot());
+        }
         // First, we setup some variables.
         // We also account for the X people lenght text, since it may be longer than
         // floor names.
@@ -435,6 +475,7 @@ public class Simulator {
             }
         });
         ArrayList<Integer> floorPeopleCount = new ArrayList<Integer>();
+        ArrayList<Integer> carPeopleCount = new ArrayList<Integer>();
         for (Floor floor : floors) {
             // Compare the floor name length to the largest one.
             if (floor.getName().length() > largestFloorNameLength) {
@@ -453,6 +494,14 @@ public class Simulator {
                 largestFloorNameLength = peopleLength;
             }
             floorPeopleCount.add(count);
+            // Count the people in the elevators on the floor, -1 if there is none.
+            int inCars = -1;
+            for (ElevatorSnapshot car : cars) {
+                if (car.getFloor() == floor) {
+                    inCars = Math.max(inCars, 0) + car.getPeople();
+                }
+            }
+            carPeopleCount.add(inCars);
         }
 
         // Print the building name.
@@ -482,7 +531,7 @@ public class Simulator {
                         // Print wall
                         System.out.print(ANSI_BACKGROUND_GRAY + " " + ANSI_RESET);
                         // If elevator is on this floor, print the elevator.
-                        System.out.print((elevator.getCurrentFloor() == floor ? ANSI_BACKGROUND_YELLOW : ANSI_RESET)
+                        System.out.print((carPeopleCount.get(j) >= 0 ? ANSI_BACKGROUND_YELLOW : ANSI_RESET)
                                 + "   " + ANSI_RESET);
                         // Print long enough space
                         System.out.print(
@@ -496,7 +545,7 @@ public class Simulator {
                         // Print wall
                         System.out.print(ANSI_BACKGROUND_GRAY + " " + ANSI_RESET);
                         // If elevator is on this floor, print the elevator.
-                        System.out.print((elevator.getCurrentFloor() == floor ? ANSI_BACKGROUND_YELLOW : ANSI_RESET)
+                        System.out.print((carPeopleCount.get(j) >= 0 ? ANSI_BACKGROUND_YELLOW : ANSI_RESET)
                                 + "   " + ANSI_RESET);
                         // Print space
                         System.out.print(" ");
@@ -521,9 +570,9 @@ public class Simulator {
                         // Print wall
                         System.out.print(ANSI_BACKGROUND_GRAY + " " + ANSI_RESET);
                         // If elevator is on this floor, print the elevator.
-                        if (elevator.getCurrentFloor() == floor) {
+                        if (carPeopleCount.get(j) >= 0) {
                             // Init string to print
-                            String stringToPrint2 = Integer.toString(elevator.numberOfPeople());
+                            String stringToPrint2 = Integer.toString(carPeopleCount.get(j));
                             // Initialize the string builder.
                             StringBuilder stringBuilder = new StringBuilder();
                             // We calculate how many whitespaces we need to print. // We assume that the
@@ -545,7 +594,7 @@ public class Simulator {
                         System.out.print(" ");
                         // Init string to print.
                         String text = floorPeopleCount.get(j)
-                                - (elevator.getCurrentFloor() == floor ? elevator.numberOfPeople() : 0) + " people";
+                                - Math.max(carPeopleCount.get(j), 0) + " people";
                         // Init stringBuilder to print.
                         StringBuilder stringBuilder = new StringBuilder();
                         // We calculate how many whitespaces we need to print.
@@ -785,7 +834,15 @@ public class Simulator {
                                 case 1:
                                     // Board elevator.
                                     try {
-                                        building.getElevator().board(person);
+                                        // If the elevator is full, the person is queued at the floor.
+                                        if (!building.getElevator().board(person)) {
+                                            printEditorHeader("Action editor");
+                                            System.out.println(ANSI_YELLOW + "The elevator is full. "
+                                                    + person.getName() + " will board on the next visit."
+                                                    + ANSI_RESET);
+                                            // We wait for the user to press enter.
+                                            scanner.nextLine();
+                                        }
                                     } catch (Exception e) {
                                         // Print the header.
                                         printEditorHeader("Action editor");
@@ -1029,14 +1086,23 @@ public class Simulator {
                 + ANSI_RESET + ANSI_BLUE + " floors and " + ANSI_RESET
                 + ((building.numberOfPeople() == 0) ? ANSI_RED : ANSI_GREEN) + building.numberOfPeople() + ANSI_RESET
                 + ANSI_BLUE + " people inside." + ANSI_RESET);
-        // Print the elevator infos.
-        System.out.println(ANSI_BLUE + "The elevator is currently on floor " + ANSI_RESET
-                + ((elevator.getCurrentFloor() == null) ? ANSI_RED : ANSI_GREEN) + elevator.getCurrentFloor()
-                + ANSI_RESET + ANSI_BLUE + ", has " + ANSI_RESET
-                + ((elevator.numberOfPeople() == 0) ? ANSI_RED : ANSI_GREEN) + elevator.numberOfPeople() + ANSI_RESET
-                + ANSI_BLUE + " people inside,"
-                + ANSI_RESET + ANSI_BLUE + " and it is " + ANSI_RESET + ANSI_PURPLE
-                + elevator.getCurrentMovingDirection().toString() + ANSI_BLUE + "." + ANSI_RESET);
+        // Print the infos of every elevator, each from a single snapshot of its state.
+        for (int i = 0; i < building.getElevators().size(); i++) {
+            Elevator e = building.getElevators().get(i);
+            ElevatorSnapshot car = e.getSnapshot();
+            System.out.println(ANSI_BLUE + "The elevator " + ANSI_RESET + ANSI_PURPLE + (i + 1) + ANSI_RESET
+                    + ANSI_BLUE + " is currently on floor " + ANSI_RESET
+                    + ((car.getFloor() == null) ? ANSI_RED : ANSI_GREEN) + car.getFloor()
+                    + ANSI_RESET + ANSI_BLUE + ", has " + ANSI_RESET
+                    + ((car.getPeople() == 0) ? ANSI_RED : ANSI_GREEN) + car.getPeople() + ANSI_RESET
+                    + ANSI_BLUE + " people inside (" + String.format("%.0f", car.getLoad()) + "kg),"
+                    + ANSI_RESET + ANSI_BLUE + " and it is " + ANSI_RESET + ANSI_PURPLE
+                    + car.getDirection().toString() + ANSI_BLUE + "." + ANSI_RESET);
+            // Print the run metrics of the elevator.
+            System.out.println(ANSI_BLUE + "Elevator metrics at " + ANSI_RESET + ANSI_GREEN
+                    + String.format("%.1f", car.getTime()) + "s" + ANSI_RESET + ANSI_BLUE + ": " + ANSI_RESET
+                    + ANSI_GREEN + e.getMetrics().toString() + ANSI_RESET);
+        }
         // Print key infos.
         System.out.println(ANSI_BLUE + "Currently, there are " + ANSI_RESET + ANSI_GREEN + building.numberOfKeys()
                 + ANSI_RESET + ANSI_BLUE + " keys registered to the building." + ANSI_RESET);
@@ -1046,6 +1112,183 @@ public class Simulator {
         return true;
     }
 
+    /**
+     * The trafficReport method simulates an hour of traffic for every traffic
+     * profile on copies of the building, first with every elevator in service and
+     * then with the main elevator in maintenance for the middle third of the hour,
+     * and prints how much the service degrades. It also compares the assignment of
+     * hall calls one at a time with their assignment in batches, and with the
+     * look-ahead dispatcher, and leaving idle elevators where they stopped with
+     * parking them where calls are expected, and dispatching for the wait alone
+     * with dispatching for the wait and the energy. With several elevators, it
+     * also splits them into two zones around the best sky lobby for the traffic,
+     * and stacks them two by two in shared shafts to show what saving hoistways
+     * costs.
+     * Under an up-peak heavy enough to saturate the elevators, it compares how
+     * many passengers per hour single-deck and double-deck elevators carry, each
+     * deck of the latter being a full cabin. Every run shows the energy the elevators would use in a day of such
+     * traffic. Finally, it compares the wait of a single elevator with a lower
+     * bound of the best wait it could achieve.
+     *
+     * @return True if the operation was successful, false otherwise.
+     * @see TrafficSimulation
+     */
+    private boolean trafficReport() {
+        // Clear the screen.
+        clearScreen();
+        System.out.println(ANSI_PURPLE + "== Traffic report ==" + ANSI_RESET);
+        System.out.println(ANSI_BLUE + "Elevators: " + ANSI_RESET + ANSI_GREEN + building.getElevators().size()
+                + ANSI_RESET + ANSI_BLUE + " - Passengers per hour: " + ANSI_RESET + ANSI_GREEN
+                + TRAFFIC_PASSENGERS_PER_HOUR + ANSI_RESET);
+        // The searches share one pool, shut down with the report. The look-ahead has
+        // a number of rollouts as budget, so that the report doesn't depend on the
+        // speed of the machine.
+        ForkJoinPool pool = new ForkJoinPool();
+        LookAheadDispatcher lookAhead = new LookAheadDispatcher(pool).setRollouts(TRAFFIC_LOOK_AHEAD_ROLLOUTS);
+        ZoningOptimizer zoning = new ZoningOptimizer(pool);
+        try {
+            for (TrafficSimulation.Profile profile : TrafficSimulation.Profile.values()) {
+                // We replay the same trips in both runs.
+                ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, profile,
+                        TRAFFIC_PASSENGERS_PER_HOUR, 3600, TRAFFIC_SEED);
+                TrafficSimulation baseline = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+                TrafficSimulation degraded = new TrafficSimulation(TrafficSimulation.replicate(building))
+                        .addServiceChange(1200, 0, Elevator.ServiceMode.MAINTENANCE)
+                        .addServiceChange(2400, 0, Elevator.ServiceMode.NORMAL)
+                        .run(trips);
+                Building batched = TrafficSimulation.replicate(building);
+                batched.setBatchWindow(TRAFFIC_BATCH_WINDOW);
+                TrafficSimulation batch = new TrafficSimulation(batched).run(trips);
+                Building searched = TrafficSimulation.replicate(building);
+                searched.setLookAhead(lookAhead);
+                TrafficSimulation search = new TrafficSimulation(searched).run(trips);
+                Building parked = TrafficSimulation.replicate(building);
+                ParkingPolicy parking = new ParkingPolicy();
+                parked.setParkingPolicy(parking);
+                TrafficSimulation park = new TrafficSimulation(parked).run(trips);
+                Building saving = TrafficSimulation.replicate(building);
+                saving.setEnergyWeight(TRAFFIC_ENERGY_WEIGHT);
+                TrafficSimulation energy = new TrafficSimulation(saving).run(trips);
+                System.out.println(ANSI_YELLOW + profile + ANSI_RESET);
+                System.out.println(ANSI_BLUE + "  In service:  " + ANSI_RESET + ANSI_GREEN + baseline + ANSI_RESET);
+                System.out.println(ANSI_BLUE + "  Maintenance: " + ANSI_RESET + ANSI_GREEN + degraded + ANSI_RESET);
+                if (baseline.getAverageWait() > 0) {
+                    System.out.println(ANSI_BLUE + "  Average wait degradation: " + ANSI_RESET + ANSI_RED
+                            + String.format("%+.1f%%",
+                                    100 * (degraded.getAverageWait() / baseline.getAverageWait() - 1))
+                            + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Batch (" + TRAFFIC_BATCH_WINDOW + "s):  " + ANSI_RESET
+                            + ANSI_GREEN + batch + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Average wait with batch assignment: " + ANSI_RESET + ANSI_YELLOW
+                            + String.format("%+.1f%%", 100 * (batch.getAverageWait() / baseline.getAverageWait() - 1))
+                            + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Look-ahead:  " + ANSI_RESET + ANSI_GREEN + search + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Average wait with look-ahead dispatch: " + ANSI_RESET
+                            + ANSI_YELLOW
+                            + String.format("%+.1f%%", 100 * (search.getAverageWait() / baseline.getAverageWait() - 1))
+                            + ANSI_RESET + ANSI_BLUE + " (states reused: " + ANSI_RESET + ANSI_GREEN
+                            + lookAhead.getTranspositionTable().getHits() + ANSI_RESET + ANSI_BLUE + "/"
+                            + (lookAhead.getTranspositionTable().getHits()
+                                    + lookAhead.getTranspositionTable().getMisses())
+                            + ")" + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Parking:     " + ANSI_RESET + ANSI_GREEN + park + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Average wait with idle parking: " + ANSI_RESET + ANSI_YELLOW
+                            + String.format("%+.1f%%", 100 * (park.getAverageWait() / baseline.getAverageWait() - 1))
+                            + ANSI_RESET + ANSI_BLUE + " (moves: " + ANSI_RESET + ANSI_GREEN + parking.getMoves()
+                            + ANSI_RESET + ANSI_BLUE + ")" + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Energy-aware (" + TRAFFIC_ENERGY_WEIGHT + "s/kWh): " + ANSI_RESET
+                            + ANSI_GREEN + energy + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Average wait with energy-aware dispatch: " + ANSI_RESET
+                            + ANSI_YELLOW
+                            + String.format("%+.1f%%", 100 * (energy.getAverageWait() / baseline.getAverageWait() - 1))
+                            + ANSI_RESET + ANSI_BLUE + " - Energy: " + ANSI_RESET + ANSI_YELLOW
+                            + String.format("%+.1f%%", 100 * (energy.getEnergy() / baseline.getEnergy() - 1))
+                            + ANSI_RESET);
+                }
+                // We split the elevators around the sky lobby which suits this traffic best.
+                if (building.getElevators().size() >= 2 && building.numberOfFloors() >= 3
+                        && building.getShafts().isEmpty()) {
+                    Floor[] lobbies = zoning.optimize(building, trips);
+                    Building zoned = TrafficSimulation.replicate(building);
+                    zoned.setSkyLobbies(lobbies);
+                    TrafficSimulation zones = new TrafficSimulation(zoned).run(trips);
+                    System.out.println(ANSI_BLUE + "  Zoned (" + lobbies[0].getName() + "): " + ANSI_RESET
+                            + ANSI_GREEN + zones + ANSI_RESET + ANSI_BLUE + " (transfers: " + ANSI_RESET + ANSI_GREEN
+                            + zones.getTransfers() + ANSI_RESET + ANSI_BLUE + ")" + ANSI_RESET);
+                }
+                // We stack the elevators two by two, to see what saving hoistways costs.
+                if (building.getElevators().size() >= 2 && building.getShafts().isEmpty()) {
+                    Building stacked = TrafficSimulation.replicate(building);
+                    List<Elevator> cars = stacked.getElevators();
+                    try {
+                        for (int i = 0; i + 1 < cars.size(); i += 2) {
+                            stacked.addShaft(TRAFFIC_SHAFT_SEPARATION, cars.get(i), cars.get(i + 1));
+                        }
+                        TrafficSimulation shared = new TrafficSimulation(stacked).run(trips);
+                        System.out.println(ANSI_BLUE + "  Shared shafts (" + stacked.numberOfHoistways() + "/"
+                                + building.numberOfHoistways() + " hoistways): " + ANSI_RESET + ANSI_GREEN + shared
+                                + ANSI_RESET);
+                    } catch (IllegalArgumentException e) {
+                        // The building is too short for two cars in a shaft.
+                    }
+                }
+                // We compare the handling capacity of double-deck elevators with single-deck ones.
+                if (profile == TrafficSimulation.Profile.UP_PEAK && building.numberOfFloors() >= 3) {
+                    ArrayList<Trip> rush = TrafficSimulation.generateTrips(building, profile,
+                            TRAFFIC_SATURATION_PER_HOUR, 3600, TRAFFIC_SEED);
+                    TrafficSimulation singleDeck = new TrafficSimulation(TrafficSimulation.replicate(building))
+                            .run(rush);
+                    Building decked = TrafficSimulation.replicate(building);
+                    for (Elevator e : decked.getElevators()) {
+                        decked.setDecks(e, 2);
+                        e.setMaxLoad(e.getWeight() + 2 * (e.getMaxLoad() - e.getWeight()));
+                        e.setMaxPersons(2 * e.getMaxPersons());
+                    }
+                    TrafficSimulation doubleDeck = new TrafficSimulation(decked).run(rush);
+                    System.out.println(ANSI_BLUE + "  Double-deck: " + ANSI_RESET + ANSI_GREEN + doubleDeck
+                            + ANSI_RESET);
+                    System.out.println(ANSI_BLUE + "  Up-peak throughput (" + TRAFFIC_SATURATION_PER_HOUR
+                            + "/h): " + ANSI_RESET + ANSI_GREEN
+                            + String.format("%.0f", singleDeck.getThroughput()) + "/h" + ANSI_RESET + ANSI_BLUE
+                            + " single-deck, " + ANSI_RESET + ANSI_GREEN
+                            + String.format("%.0f", doubleDeck.getThroughput()) + "/h" + ANSI_RESET + ANSI_BLUE
+                            + " double-deck" + ANSI_RESET
+                            + ((singleDeck.getThroughput() > 0) ? ANSI_BLUE + " (" + ANSI_RESET + ANSI_YELLOW
+                                    + String.format("%+.1f%%",
+                                            100 * (doubleDeck.getThroughput() / singleDeck.getThroughput() - 1))
+                                    + ANSI_RESET + ANSI_BLUE + ")" + ANSI_RESET : ""));
+                }
+                // We compare a single elevator with the best it could do knowing every trip.
+                Building single = TrafficSimulation.replicate(building);
+                for (Elevator other : new ArrayList<Elevator>(single.getElevators())) {
+                    if (other != single.getElevator()) {
+                        single.removeElevator(other);
+                    }
+                }
+                TrafficSimulation alone = new TrafficSimulation(single).run(trips);
+                OfflineScheduleSolver solver = new OfflineScheduleSolver(single.getElevator());
+                double totalBound = solver.lowerBound(trips, OfflineScheduleSolver.Objective.TOTAL_WAIT);
+                double maxBound = solver.lowerBound(trips, OfflineScheduleSolver.Objective.MAX_WAIT);
+                System.out.println(ANSI_BLUE + "  Single car:  " + ANSI_RESET + ANSI_GREEN + alone + ANSI_RESET);
+                System.out.println(ANSI_BLUE + "  Total wait: " + ANSI_RESET + ANSI_GREEN
+                        + String.format("%.1f", alone.getTotalWait()) + "s" + ANSI_RESET + ANSI_BLUE
+                        + " (lower bound " + ANSI_RESET + ANSI_GREEN + String.format("%.1f", totalBound) + "s"
+                        + ANSI_RESET + ANSI_BLUE + ", gap " + ANSI_RESET + ANSI_YELLOW
+                        + String.format("%.1fs", alone.getTotalWait() - totalBound) + ANSI_RESET + ANSI_BLUE
+                        + ") - Max wait: " + ANSI_RESET + ANSI_GREEN + String.format("%.1f", alone.getMaxWait())
+                        + "s" + ANSI_RESET + ANSI_BLUE + " (lower bound " + ANSI_RESET + ANSI_GREEN
+                        + String.format("%.1f", maxBound) + "s" + ANSI_RESET + ANSI_BLUE + ")" + ANSI_RESET);
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(ANSI_RED + "Error: " + e.getMessage() + ANSI_RESET);
+            return false;
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(ANSI_PURPLE + "== End of traffic report ==" + ANSI_RESET);
+        return true;
+    }
+
     /**
      * The elevator editor is used to edit some parameters of the elevator of the
      * internal building class.
@@ -1082,12 +1325,29 @@ public class Simulator {
             System.out.println(ANSI_BLUE + "Currently, there are " + ANSI_RESET
                     + ((elevator.numberOfPeople() == 0) ? ANSI_RED : ANSI_GREEN) + elevator.numberOfPeople()
                     + ANSI_RESET + ANSI_BLUE + " people in the elevator." + ANSI_RESET);
+            System.out.println(ANSI_BLUE + "Cabin Person Limit: " + ANSI_RESET
+                    + (cursor == 2 ? ANSI_BLINK + ANSI_YELLOW : ANSI_GREEN)
+                    + (elevator.getMaxPersons() == 0 ? "none" : Integer.toString(elevator.getMaxPersons()))
+                    + ANSI_RESET);
+            System.out.println(ANSI_BLUE + "People waiting for a place: " + ANSI_RESET + ANSI_GREEN
+                    + elevator.numberOfWaitingPeople() + ANSI_RESET);
+            System.out.println(ANSI_BLUE + "Full-load bypass above: " + ANSI_RESET
+                    + (cursor == 3 ? ANSI_BLINK + ANSI_YELLOW : ANSI_GREEN)
+                    + (elevator.getBypassLoadFraction() <= 0 ? "disabled"
+                            : (elevator.getBypassLoadFraction() * 100) + "% of the rated load")
+                    + ANSI_RESET);
+            System.out.println(ANSI_BLUE + "Maximum wait: " + ANSI_RESET
+                    + (cursor == 4 ? ANSI_BLINK + ANSI_YELLOW : ANSI_GREEN)
+                    + (elevator.getMaxWait() <= 0 ? "disabled" : elevator.getMaxWait() + "s") + ANSI_RESET);
             System.out.println();
             // Print the options if user has yet to choose what to modify.
             if (cursor == -1) {
                 System.out.println(ANSI_GREEN + "0. Change cabin weight" + ANSI_RESET);
                 System.out.println(ANSI_GREEN + "1. Change cabin load limit" + ANSI_RESET);
-                System.out.println(ANSI_RED + "2. Done" + ANSI_RESET);
+                System.out.println(ANSI_GREEN + "2. Change cabin person limit (0 for none)" + ANSI_RESET);
+                System.out.println(ANSI_GREEN + "3. Change full-load bypass fraction (0 to disable)" + ANSI_RESET);
+                System.out.println(ANSI_GREEN + "4. Change maximum wait (0 to disable)" + ANSI_RESET);
+                System.out.println(ANSI_RED + "5. Done" + ANSI_RESET);
             } else {
                 if (invalidValue)
                     System.out.println(ANSI_RED + "Invalid input. Try again: " + ANSI_RESET);
@@ -1100,21 +1360,22 @@ public class Simulator {
             // If cursor is -1, we ask to choose an option.
             if (cursor == -1) {
                 input = scanner.nextLine();
-                if (!input.matches("[0-2]")) {
+                if (!input.matches("[0-5]")) {
                     invalidValue = true;
                     continue;
                 }
                 // Set cursor.
                 cursor = Integer.parseInt(input);
-                if (cursor == 2) {
+                if (cursor == 5) {
                     return true;
                 }
             }
             // Else, we are asking for a input.
             else {
-                // Get input. It must be a number.
+                // Get input. It must be a number (a non negative integer for the person limit).
                 input = scanner.nextLine();
-                if (!Simulator.isDouble(input)) {
+                if (!Simulator.isDouble(input) || (cursor == 2 && !input.matches("[0-9]+"))
+                        || (cursor == 3 && Double.parseDouble(input) > 1)) {
                     invalidValue = true;
                     continue;
                 }
@@ -1126,6 +1387,15 @@ public class Simulator {
                     case 1:
                         elevator.setMaxLoad(Double.parseDouble(input));
                         break;
+                    case 2:
+                        elevator.setMaxPersons(Integer.parseInt(input));
+                        break;
+                    case 3:
+                        elevator.setBypassLoadFraction(Double.parseDouble(input));
+                        break;
+                    case 4:
+                        elevator.setMaxWait(Double.parseDouble(input));
+                        break;
                     default:
                         // We should never get here.
                         throw new Error("Invalid cursor value.");
@@ -1753,6 +2023,8 @@ public class Simulator {
                 + " Run an action, like adding a person, boarding, unboarding or calling a ride." + ANSI_RESET);
         System.out.println(ANSI_YELLOW + "10. Close the program.   " + ANSI_RESET + ANSI_BLINK + "->" + ANSI_GREEN
                 + " Stop the simulation and close the program." + ANSI_RESET);
+        System.out.println(ANSI_YELLOW + "11. Traffic report.      " + ANSI_RESET + ANSI_BLINK + "->" + ANSI_GREEN
+                + " Simulate an hour of traffic, with and without an elevator out of service." + ANSI_RESET);
         System.out.println(ANSI_BLUE + "== End of help menu ==   " + ANSI_RESET);
     }
 
@@ -2047,6 +2319,247 @@ public class Simulator {
         return this;
     }
 
+    /**
+     * The addAccessWindow function is the facade method to limit the access of a
+     * role to a floor to a window of the day. The role opens the floor within any
+     * of its windows, and no longer at any time.
+     *
+     * @param keyName The name of the key.
+     * @param floor   The name of the floor.
+     * @param from    The start of the window (in seconds of the day).
+     * @param to      The end of the window (in seconds of the day), before the
+     *                start for a window spanning midnight.
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the key or the floor doesn't exist, the
+     *                                  key doesn't open the floor, or the window is
+     *                                  not valid.
+     * @see Key#addAccessWindow(int, double, double)
+     */
+    public Simulator addAccessWindow(String keyName, String floor, double from, double to)
+            throws IllegalArgumentException {
+        Key key = building.getKeyNamed(keyName);
+        if (key == null) {
+            throw new IllegalArgumentException("Key " + keyName + " is not one of our keys.");
+        }
+        Floor _floor = building.getFloorNamed(floor);
+        if (_floor == null) {
+            throw new IllegalArgumentException("Floor " + floor + " is not in the building.");
+        }
+        if (!_floor.hasKey()) {
+            throw new IllegalArgumentException("Floor " + floor + " is open to everyone.");
+        }
+        key.addAccessWindow(_floor.getKey(), from, to);
+        return this;
+    }
+
+    /**
+     * The setupElevator method is the facade method to set the weight and the load
+     * limit of the main elevator.
+     *
+     * @param weight    The weight of the elevator cabin.
+     * @param maxWeight The maximum weight the elevator can carry (including the
+     *                  cabin weight).
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the load limit is not above the weight.
+     */
+    public Simulator setupElevator(double weight, double maxWeight) throws IllegalArgumentException {
+        if (maxWeight <= weight) {
+            throw new IllegalArgumentException("The load limit must be above the weight of the cabin.");
+        }
+        building.setupElevator(elevator.getCurrentFloor(), elevator.getCurrentMovingDirection(), weight, maxWeight);
+        return this;
+    }
+
+    /**
+     * The addNewElevator method is the facade method to add an elevator to the
+     * group of the building. The elevator starts on the entrance floor.
+     *
+     * @param weight    The weight of the elevator cabin.
+     * @param maxWeight The maximum weight the elevator can carry (including the
+     *                  cabin weight).
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the load limit is not above the weight.
+     */
+    public Simulator addNewElevator(double weight, double maxWeight) throws IllegalArgumentException {
+        if (maxWeight <= weight) {
+            throw new IllegalArgumentException("The load limit must be above the weight of the cabin.");
+        }
+        building.addElevator(new Elevator(building.getEntranceFloor(), Elevator.MovingDirection.STATIONARY, weight,
+                maxWeight));
+        return this;
+    }
+
+    /**
+     * The restrictElevator method is the facade method to limit an elevator of
+     * the group to the listed floors, for an express shuttle or a restricted car.
+     *
+     * @param index  The index of the elevator in the group (0 for the main one).
+     * @param floors The floors the elevator stops at. None to serve every floor.
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the index is not valid, or any of the
+     *                                  floors is not in the building.
+     * @see Elevator#setServedFloors(Floor...)
+     */
+    public Simulator restrictElevator(int index, String... floors) throws IllegalArgumentException {
+        if (index < 0 || index >= building.getElevators().size()) {
+            throw new IllegalArgumentException("Elevator " + index + " is not in the building.");
+        }
+        Floor[] served = new Floor[floors.length];
+        for (int i = 0; i < floors.length; i++) {
+            served[i] = building.getFloorNamed(floors[i]);
+            if (served[i] == null) {
+                throw new IllegalArgumentException("Floor " + floors[i] + " is not in the building.");
+            }
+        }
+        Elevator restricted = building.getElevators().get(index);
+        if (served.length == 0) {
+            restricted.serveAllFloors();
+        } else {
+            restricted.setServedFloors(served);
+        }
+        return this;
+    }
+
+    /**
+     * The shareShaft method is the facade method to put several elevators of the
+     * group in one shaft, one above the other.
+     *
+     * @param separation The minimum separation between two cars (in
+     *                   millimeters).
+     * @param indexes    The indexes of the elevators in the group (0 for the main
+     *                   one).
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If an index is not valid, an elevator
+     *                                  already shares a shaft, or the floors can't
+     *                                  hold the elevators apart.
+     * @throws IllegalStateException    If an elevator is busy or carries people.
+     * @see Building#addShaft(int, Elevator...)
+     */
+    public Simulator shareShaft(int separation, int... indexes)
+            throws IllegalArgumentException, IllegalStateException {
+        Elevator[] cars = new Elevator[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < 0 || indexes[i] >= building.getElevators().size()) {
+                throw new IllegalArgumentException("Elevator " + indexes[i] + " is not in the building.");
+            }
+            cars[i] = building.getElevators().get(indexes[i]);
+        }
+        building.addShaft(separation, cars);
+        return this;
+    }
+
+    /**
+     * The useForecaster method is the facade method to forecast the demand of the
+     * building. The forecaster is loaded from the file if it exists, and saved to
+     * it when quitting, so that it keeps learning across runs.
+     *
+     * @param path The file of the forecaster.
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the path is null, or the file can't be
+     *                                  read as a forecaster.
+     * @see DemandForecaster
+     */
+    public Simulator useForecaster(String path) throws IllegalArgumentException {
+        if (path == null) {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+        File file = new File(path);
+        DemandForecaster forecaster = new DemandForecaster();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                forecaster = DemandForecaster.load(in);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot read the forecaster: " + e.getMessage());
+            }
+        }
+        building.setForecaster(forecaster);
+        forecastFile = file;
+        return this;
+    }
+
+    /**
+     * The saveForecaster method saves the forecaster of the building to its file,
+     * if it has one.
+     *
+     * @return True if the forecaster was saved, false otherwise.
+     */
+    public boolean saveForecaster() {
+        if (forecastFile == null || building.getForecaster() == null) {
+            return false;
+        }
+        try (OutputStream out = new FileOutputStream(forecastFile)) {
+            building.getForecaster().save(out);
+        } catch (IOException e) {
+            System.out.println(ANSI_RED + "Cannot save the forecaster: " + e.getMessage() + ANSI_RESET);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The auditAccess method is the facade method to record every access decision
+     * of the elevators (granted or denied) to a file. A previous audit of the
+     * simulator is closed first.
+     *
+     * @param path The file of the audit. It is overwritten.
+     * @return this to allow chaining.
+     * @throws IllegalArgumentException If the path is null, or the file can't be
+     *                                  written.
+     * @see AccessAudit
+     */
+    public Simulator auditAccess(String path) throws IllegalArgumentException {
+        if (path == null) {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+        closeAccessAudit();
+        try {
+            building.setAccessAudit(new AccessAudit(new FileOutputStream(path)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot write the audit: " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * The closeAccessAudit method writes what is left of the access audit of the
+     * building, and stops recording.
+     *
+     * @return True if an audit was closed, false otherwise.
+     */
+    public boolean closeAccessAudit() {
+        AccessAudit audit = building.getAccessAudit();
+        if (audit == null) {
+            return false;
+        }
+        building.setAccessAudit(null);
+        try {
+            audit.close();
+        } catch (IOException e) {
+            System.out.println(ANSI_RED + "Cannot write the audit: " + e.getMessage() + ANSI_RESET);
+        }
+        return true;
+    }
+
+    /**
+     * The setRolePriority function is the facade method to set the priority class
+     * of the requests made with a key.
+     *
+     * @param keyName  The name of the key.
+     * @param priority The priority class to set.
+     * @throws IllegalArgumentException If the key is not in the building.
+     * @throws IllegalArgumentException If the priority is null.
+     * @return this to allow chaining.
+     * @see Key.Priority
+     */
+    public Simulator setRolePriority(String keyName, Key.Priority priority) {
+        Key key = building.getKeyNamed(keyName);
+        if (key == null) {
+            throw new IllegalArgumentException("Key " + keyName + " is not in the building.");
+        }
+        key.setPriority(priority);
+        return this;
+    }
+
     /**
      * The addModelPerson function is the facede method to add a person to the
      * catalog.
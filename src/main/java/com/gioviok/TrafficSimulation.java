@@ -0,0 +1,758 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The TrafficSimulation class runs a batch of trips through the elevators of a
+ * building, without any user interaction.
+ * Passengers show up at their origin floor, call an elevator, board it, choose
+ * their destination and leave the elevator there. In a zoned building, they
+ * plan their journey first, and change elevator at the sky lobbies on the way.
+ * With double-deck elevators, they walk to the other level of a stop when the
+ * other deck goes where they want.
+ * The elevators run on their
+ * own simulated clocks: the simulation always handles the earliest event, be it
+ * a passenger showing up, an elevator reaching its next stop or a scheduled
+ * change of service mode.
+ * The simulation collects the waiting and journey times of the passengers.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Trip
+ * @see Building
+ * @see Elevator
+ */
+public class TrafficSimulation {
+
+    /**
+     * The enum of the traffic profiles the trips can be generated with.
+     *
+     * @see TrafficSimulation#generateTrips(Building, Profile, double, double, long)
+     * @author Gioviok
+     */
+    public enum Profile {
+        /** Everyone goes from the entrance floor to the other floors. */
+        UP_PEAK,
+        /** Everyone goes from the other floors to the entrance floor. */
+        DOWN_PEAK,
+        /** Trips between random floors. */
+        INTERFLOOR
+    }
+
+    /**
+     * The internal representation of a passenger during the simulation.
+     */
+    private static class Passenger {
+        /** The trip of the passenger. */
+        private Trip trip;
+        /** The person representing the passenger in the building. */
+        private Person person;
+        /** The elevator the passenger is in. Null if waiting. */
+        private Elevator elevator;
+        /** The time the passenger started waiting for the current leg (in seconds). */
+        private double since;
+    }
+
+    /**
+     * The internal representation of a scheduled change of service mode.
+     */
+    private static class ServiceChange {
+        /** The time of the change (in seconds). */
+        private double time;
+        /** The index of the elevator in the building. */
+        private int elevator;
+        /** The service mode to set. */
+        private Elevator.ServiceMode mode;
+    }
+
+    /**
+     * The building the simulation runs in.
+     */
+    private Building building;
+
+    /**
+     * The scheduled changes of service mode, sorted by time.
+     */
+    private ArrayList<ServiceChange> serviceChanges = new ArrayList<ServiceChange>();
+
+    /**
+     * The passengers waiting for an elevator.
+     */
+    private ArrayList<Passenger> waiting = new ArrayList<Passenger>();
+
+    /**
+     * The passengers riding an elevator.
+     */
+    private ArrayList<Passenger> riding = new ArrayList<Passenger>();
+
+    /**
+     * The number of passengers who showed up.
+     */
+    private int arrived;
+
+    /**
+     * The number of passengers who reached their destination.
+     */
+    private int served;
+
+    /**
+     * The number of passengers who boarded an elevator.
+     */
+    private int boarded;
+
+    /**
+     * The number of passengers turned away because their key didn't open the
+     * floor they were going to at the time.
+     */
+    private int denied;
+
+    /**
+     * The number of times a passenger changed elevator on the way.
+     */
+    private int transfers;
+
+    /**
+     * The total time passengers waited before boarding (in seconds).
+     */
+    private double totalWait;
+
+    /**
+     * The longest time a passenger waited before boarding (in seconds).
+     */
+    private double maxWait;
+
+    /**
+     * The total time from showing up to reaching the destination (in seconds).
+     */
+    private double totalJourney;
+
+    /**
+     * The time the last passenger reached their destination (in seconds).
+     */
+    private double endTime;
+
+    /**
+     * The constructor of the simulation. The simulation runs in the given
+     * building, and changes its state: use replicate to keep the original
+     * untouched.
+     *
+     * @param building The building to run the simulation in.
+     * @throws IllegalArgumentException If the building is null or has no floors.
+     * @throws IllegalStateException    If an elevator has no load limit above the
+     *                                  weight of its cabin.
+     * @see TrafficSimulation#replicate(Building)
+     */
+    public TrafficSimulation(Building building) throws IllegalArgumentException, IllegalStateException {
+        if (building == null || building.numberOfFloors() == 0) {
+            throw new IllegalArgumentException("The building must have floors.");
+        }
+        for (Elevator elevator : building.getElevators()) {
+            if (elevator.getMaxLoad() <= elevator.getWeight()) {
+                throw new IllegalStateException("The load limit of every elevator must be set.");
+            }
+        }
+        this.building = building;
+    }
+
+    /**
+     * The replicate method creates a copy of a building, with the same floors,
+     * keys, elevator settings and shared shafts, but no people and no pending
+     * requests. Floors
+     * and keys are shared with the original building.
+     *
+     * @param building The building to copy.
+     * @return The copy of the building.
+     */
+    public static Building replicate(Building building) {
+        Building copy = new Building(building.getName());
+        for (Floor floor : building.getFloors()) {
+            copy.addFloor(floor);
+        }
+        if (building.getEntranceFloor() != null) {
+            copy.setEntranceFloorNamed(building.getEntranceFloor().getName());
+        }
+        for (Key key : building.getKeys()) {
+            copy.registerKey(key);
+        }
+        copy.setBatchWindow(building.getBatchWindow());
+        copy.setEnergyWeight(building.getEnergyWeight());
+        for (Elevator elevator : building.getElevators()) {
+            Elevator elevatorCopy = elevator.copySettings();
+            if (elevator == building.getElevator()) {
+                copy.setElevator(elevatorCopy);
+            } else {
+                copy.addElevator(elevatorCopy);
+            }
+        }
+        if (!building.getSkyLobbies().isEmpty()) {
+            copy.setSkyLobbies(building.getSkyLobbies().toArray(new Floor[0]));
+        }
+        for (Shaft shaft : building.getShafts()) {
+            Elevator[] cars = new Elevator[shaft.getCars().size()];
+            for (int i = 0; i < cars.length; i++) {
+                cars[i] = copy.getElevators().get(building.getElevators().indexOf(shaft.getCars().get(i)));
+            }
+            copy.addShaft(shaft.getSeparation(), cars);
+        }
+        return copy;
+    }
+
+    /**
+     * The generateTrips method generates random trips, with exponentially
+     * distributed times between them. Every passenger gets one of the keys of the
+     * building (or no key if there are none), and only goes to floors the key
+     * gives access to.
+     *
+     * @param building           The building.
+     * @param profile            The traffic profile.
+     * @param passengersPerHour  The average number of passengers per hour.
+     * @param duration           The duration of the traffic (in seconds).
+     * @param seed               The seed of the random generator.
+     * @return The trips, sorted by time.
+     * @throws IllegalArgumentException If the rate is not positive.
+     * @throws IllegalStateException    If no key gives access to two floors.
+     * @see Profile
+     */
+    public static ArrayList<Trip> generateTrips(Building building, Profile profile, double passengersPerHour,
+            double duration, long seed) throws IllegalArgumentException, IllegalStateException {
+        if (passengersPerHour <= 0) {
+            throw new IllegalArgumentException("The number of passengers per hour must be positive.");
+        }
+        Random random = new Random(seed);
+        // For every key, the floors it gives access to.
+        ArrayList<Key> keys = new ArrayList<Key>();
+        ArrayList<ArrayList<Floor>> accessible = new ArrayList<ArrayList<Floor>>();
+        ArrayList<Key> candidates = new ArrayList<Key>(building.getKeys());
+        if (candidates.isEmpty()) {
+            candidates.add(null);
+        }
+        Floor entrance = building.getEntranceFloor();
+        for (Key key : candidates) {
+            ArrayList<Floor> floors = new ArrayList<Floor>();
+            for (Floor floor : building.getFloors()) {
+                if (floor.requestAccess(key)) {
+                    floors.add(floor);
+                }
+            }
+            // The key must give access to two floors, one of them the entrance for peaks.
+            if (floors.size() < 2 || (profile != Profile.INTERFLOOR && !floors.contains(entrance))) {
+                continue;
+            }
+            keys.add(key);
+            accessible.add(floors);
+        }
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("No key gives access to two floors.");
+        }
+        ArrayList<Trip> trips = new ArrayList<Trip>();
+        double time = 0;
+        while (true) {
+            time += -Math.log(1 - random.nextDouble()) * 3600 / passengersPerHour;
+            if (time >= duration) {
+                break;
+            }
+            int k = random.nextInt(keys.size());
+            ArrayList<Floor> floors = accessible.get(k);
+            Floor origin;
+            Floor destination;
+            switch (profile) {
+                case UP_PEAK:
+                    origin = entrance;
+                    destination = randomFloorExcept(floors, entrance, random);
+                    break;
+                case DOWN_PEAK:
+                    origin = randomFloorExcept(floors, entrance, random);
+                    destination = entrance;
+                    break;
+                default:
+                    origin = floors.get(random.nextInt(floors.size()));
+                    destination = randomFloorExcept(floors, origin, random);
+                    break;
+            }
+            trips.add(new Trip(time, origin, destination, 50 + random.nextInt(51), keys.get(k)));
+        }
+        return trips;
+    }
+
+    /**
+     * The randomFloorExcept method picks a random floor of a list, different from
+     * the given one.
+     *
+     * @param floors The floors to pick from (at least two).
+     * @param except The floor not to pick.
+     * @param random The random generator.
+     * @return The picked floor.
+     */
+    private static Floor randomFloorExcept(ArrayList<Floor> floors, Floor except, Random random) {
+        Floor floor;
+        do {
+            floor = floors.get(random.nextInt(floors.size()));
+        } while (floor == except);
+        return floor;
+    }
+
+    /**
+     * The addServiceChange method schedules a change of service mode of an
+     * elevator during the simulation.
+     *
+     * @param time     The time of the change (in seconds).
+     * @param elevator The index of the elevator in the building.
+     * @param mode     The service mode to set.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the elevator index is not valid or the
+     *                                  mode is null.
+     * @see Building#setServiceMode(Elevator, Elevator.ServiceMode)
+     */
+    public TrafficSimulation addServiceChange(double time, int elevator, Elevator.ServiceMode mode)
+            throws IllegalArgumentException {
+        if (elevator < 0 || elevator >= building.getElevators().size()) {
+            throw new IllegalArgumentException("Elevator " + elevator + " is not in the building.");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("The service mode cannot be null.");
+        }
+        ServiceChange change = new ServiceChange();
+        change.time = time;
+        change.elevator = elevator;
+        change.mode = mode;
+        // We keep the changes sorted by time.
+        int index = serviceChanges.size();
+        while (index > 0 && serviceChanges.get(index - 1).time > time) {
+            index--;
+        }
+        serviceChanges.add(index, change);
+        return this;
+    }
+
+    /**
+     * The run method runs the trips through the building, until every passenger
+     * reached their destination or nothing can happen anymore (for instance, if
+     * no elevator is left in service). If the building assigns hall calls in
+     * batches, the end of each batch window is an event too.
+     *
+     * @param trips The trips, sorted by time.
+     * @return this, to allow concatenation.
+     */
+    public TrafficSimulation run(List<Trip> trips) {
+        int nextTrip = 0;
+        int nextChange = 0;
+        while (true) {
+            // We look for the earliest event.
+            Elevator elevator = nextElevator();
+            double tripTime = (nextTrip < trips.size()) ? trips.get(nextTrip).getTime() : Double.POSITIVE_INFINITY;
+            double changeTime = (nextChange < serviceChanges.size()) ? serviceChanges.get(nextChange).time
+                    : Double.POSITIVE_INFINITY;
+            double elevatorTime = (elevator == null) ? Double.POSITIVE_INFINITY : elevator.getTime();
+            double batchTime = building.getBatchDeadline();
+            if (tripTime == Double.POSITIVE_INFINITY && changeTime == Double.POSITIVE_INFINITY
+                    && elevatorTime == Double.POSITIVE_INFINITY && batchTime == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            if (batchTime <= tripTime && batchTime <= changeTime && batchTime <= elevatorTime) {
+                advanceIdleElevators(batchTime);
+                building.flushCalls();
+            } else if (tripTime <= elevatorTime && tripTime <= changeTime) {
+                advanceIdleElevators(tripTime);
+                arrive(trips.get(nextTrip++));
+            } else if (changeTime <= elevatorTime) {
+                advanceIdleElevators(changeTime);
+                applyServiceChange(serviceChanges.get(nextChange++));
+            } else {
+                elevator.run();
+                stop(elevator);
+                // An elevator with nothing left to do goes where it will be needed.
+                if (!elevator.isBusy()) {
+                    building.parkIdleElevators(elevator.getTime());
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The nextElevator method returns the busy elevator with the earliest clock.
+     *
+     * @return The next elevator to run, null if no elevator is busy.
+     */
+    private Elevator nextElevator() {
+        Elevator next = null;
+        for (Elevator elevator : building.getElevators()) {
+            if (elevator.isBusy() && (next == null || elevator.getTime() < next.getTime())) {
+                next = elevator;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The advanceIdleElevators method brings the clock of the idle elevators to
+     * the given time.
+     *
+     * @param time The current time (in seconds).
+     */
+    private void advanceIdleElevators(double time) {
+        for (Elevator elevator : building.getElevators()) {
+            if (!elevator.isBusy()) {
+                elevator.advanceTime(time);
+            }
+        }
+    }
+
+    /**
+     * The arrive method makes a passenger show up at the origin floor of the trip,
+     * plan the journey and call an elevator. A passenger no elevator can take to
+     * the destination waits forever.
+     *
+     * @param trip The trip of the passenger.
+     */
+    private void arrive(Trip trip) {
+        Passenger passenger = new Passenger();
+        passenger.trip = trip;
+        passenger.since = trip.getTime();
+        passenger.person = new Person("Passenger #" + (arrived++), trip.getWeight());
+        building.registerPerson(passenger.person, null, trip.getOrigin());
+        passenger.person.setKey(trip.getKey());
+        waiting.add(passenger);
+        if (!passenger.person.planJourney(trip.getDestination()) || !walk(passenger, trip.getTime())) {
+            return;
+        }
+        // The passenger calls even if an elevator is already there: the building
+        // learns the demand from every call.
+        passenger.person.callElevatorRide();
+        Elevator here = building.getElevatorAt(trip.getOrigin(), passenger.person.getNextLeg());
+        if (here != null) {
+            board(here);
+        }
+    }
+
+    /**
+     * The getOff method makes a passenger get off an elevator and wait on the
+     * floor for the next one, planning the rest of the journey from there.
+     *
+     * @param passenger The passenger.
+     * @param floor     The floor the passenger gets off on.
+     * @param time      The current time (in seconds).
+     */
+    private void getOff(Passenger passenger, Floor floor, double time) {
+        Elevator previous = passenger.elevator;
+        previous.disembark(passenger.person);
+        passenger.person.setCurrentFloor(floor);
+        passenger.elevator = null;
+        passenger.since = time;
+        waiting.add(passenger);
+        if (!passenger.person.planJourney(passenger.trip.getDestination()) || !walk(passenger, time)) {
+            return;
+        }
+        passenger.person.callElevatorRide();
+        // An elevator of the next zone may already wait on the floor.
+        Elevator here = building.getElevatorAt(passenger.person.getCurrentFloor(), passenger.person.getNextLeg());
+        if (here != null && here != previous) {
+            board(here);
+        }
+    }
+
+    /**
+     * The walk method makes a waiting passenger walk to the other level of a
+     * double-deck stop, as long as the next leg of their journey is such a walk.
+     * Walking takes no time.
+     *
+     * @param passenger The waiting passenger, with a journey planned.
+     * @param time      The current time (in seconds).
+     * @return True if the passenger still needs an elevator, false if the walk
+     *         took them to their destination.
+     * @see Building#linksLevels(Floor, Floor)
+     */
+    private boolean walk(Passenger passenger, double time) {
+        Floor leg = passenger.person.getNextLeg();
+        while (leg != null && building.linksLevels(passenger.person.getCurrentFloor(), leg)) {
+            passenger.person.setCurrentFloor(leg);
+            if (leg == passenger.trip.getDestination()) {
+                waiting.remove(passenger);
+                finish(passenger, time);
+                return false;
+            }
+            passenger.person.planJourney(passenger.trip.getDestination());
+            leg = passenger.person.getNextLeg();
+        }
+        return true;
+    }
+
+    /**
+     * The finish method counts a passenger who reached their destination, and
+     * lets them leave the building.
+     *
+     * @param passenger The passenger.
+     * @param time      The current time (in seconds).
+     */
+    private void finish(Passenger passenger, double time) {
+        building.removePerson(passenger.person.getName());
+        served++;
+        totalJourney += time - passenger.trip.getTime();
+        endTime = Math.max(endTime, time);
+    }
+
+    /**
+     * The applyServiceChange method changes the service mode of an elevator.
+     *
+     * @param change The change to apply.
+     */
+    private void applyServiceChange(ServiceChange change) {
+        Elevator elevator = building.getElevators().get(change.elevator);
+        building.setServiceMode(elevator, change.mode);
+        // An idle elevator can take the people waiting where it stands.
+        if (!elevator.isBusy()) {
+            stop(elevator);
+        }
+    }
+
+    /**
+     * The stop method lets the passengers get off and on an elevator which reached
+     * a floor. On a double-deck elevator, every passenger is on the floor of their
+     * deck.
+     *
+     * @param elevator The elevator.
+     */
+    private void stop(Elevator elevator) {
+        double time = elevator.getTime();
+        for (int i = 0; i < riding.size();) {
+            Passenger passenger = riding.get(i);
+            if (passenger.elevator != elevator) {
+                i++;
+                continue;
+            }
+            Floor floor = passenger.person.getCurrentFloor();
+            if (passenger.trip.getDestination() == floor) {
+                // The passenger arrived.
+                elevator.disembark(passenger.person);
+                riding.remove(i);
+                finish(passenger, time);
+            } else if (passenger.person.getNextLeg() == floor) {
+                // A sky lobby: the passenger changes elevator.
+                riding.remove(i);
+                transfers++;
+                getOff(passenger, floor, time);
+            } else if (elevator.getServiceMode() == Elevator.ServiceMode.FIRE_RECALL && !elevator.isBusy()) {
+                // Fire recall: everyone gets off, and waits for another elevator.
+                riding.remove(i);
+                getOff(passenger, floor, time);
+            } else {
+                i++;
+            }
+        }
+        board(elevator);
+    }
+
+    /**
+     * The board method lets the passengers waiting on the floor of an elevator get
+     * on, in arrival order, as long as they fit and the elevator goes to the end
+     * of their next leg.
+     *
+     * @param elevator The elevator.
+     */
+    private void board(Elevator elevator) {
+        if (!elevator.isInGroupService()) {
+            return;
+        }
+        // The doors opened when the elevator reached the floor.
+        double doorTime = elevator.getArrivalTime();
+        boolean someoneLeft = false;
+        for (int i = 0; i < waiting.size();) {
+            Passenger passenger = waiting.get(i);
+            Floor floor = passenger.person.getCurrentFloor();
+            if (!elevator.isAt(floor)) {
+                i++;
+                continue;
+            }
+            // People going elsewhere wait for an elevator of their zone, or of their deck.
+            Floor leg = passenger.person.getNextLeg();
+            if (leg == null || !elevator.connects(floor, leg)) {
+                someoneLeft = true;
+                i++;
+                continue;
+            }
+            // A key limited in time may not open the floor now: the passenger gives up and leaves.
+            if (!leg.requestAccess(passenger.person.getKey(), elevator.getTime())) {
+                if (building.getAccessAudit() != null) {
+                    building.getAccessAudit().record(elevator.getTime(), passenger.person,
+                            passenger.person.getKey(), leg, false);
+                }
+                waiting.remove(i);
+                building.removePerson(passenger.person.getName());
+                denied++;
+                continue;
+            }
+            // People queued by the elevator may have boarded already.
+            if (!elevator.hasPerson(passenger.person) && !elevator.board(passenger.person)) {
+                someoneLeft = true;
+                i++;
+                continue;
+            }
+            building.cancelWaiting(passenger.person);
+            waiting.remove(i);
+            riding.add(passenger);
+            passenger.elevator = elevator;
+            double wait = Math.max(0, doorTime - passenger.since);
+            boarded++;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+            passenger.person.chooseFloor(leg);
+        }
+        // Nobody else has to come here, on any level of the stop.
+        if (!someoneLeft) {
+            for (Floor floor : elevator.getDeckFloors()) {
+                if (floor != null) {
+                    building.cancelHallCalls(floor);
+                }
+            }
+        }
+    }
+
+    /**
+     * The getServed method returns the number of passengers who reached their
+     * destination.
+     *
+     * @return The number of served passengers.
+     */
+    public int getServed() {
+        return served;
+    }
+
+    /**
+     * The getUnserved method returns the number of passengers who didn't reach
+     * their destination.
+     *
+     * @return The number of passengers still waiting or riding.
+     */
+    public int getUnserved() {
+        return waiting.size() + riding.size();
+    }
+
+    /**
+     * The getDenied method returns the number of passengers turned away because
+     * their key didn't open the floor they were going to at the time.
+     *
+     * @return The number of denied passengers.
+     * @see Key#addAccessWindow(int, double, double)
+     */
+    public int getDenied() {
+        return denied;
+    }
+
+    /**
+     * The getTransfers method returns the number of times a passenger changed
+     * elevator at a sky lobby.
+     *
+     * @return The number of transfers.
+     */
+    public int getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * The getAverageWait method returns the average time passengers waited before
+     * boarding.
+     *
+     * @return The average wait (in seconds), 0 if nobody boarded.
+     */
+    public double getAverageWait() {
+        return boarded == 0 ? 0 : totalWait / boarded;
+    }
+
+    /**
+     * The getTotalWait method returns the total time passengers waited before
+     * boarding.
+     *
+     * @return The total wait (in seconds).
+     */
+    public double getTotalWait() {
+        return totalWait;
+    }
+
+    /**
+     * The getEnergy method returns the net energy the elevators used so far.
+     *
+     * @return The net energy (in kilowatt-hours).
+     * @see RunMetrics#getEnergy()
+     */
+    public double getEnergy() {
+        double energy = 0;
+        for (Elevator elevator : building.getElevators()) {
+            energy += elevator.getMetrics().getEnergy();
+        }
+        return energy;
+    }
+
+    /**
+     * The getEnergyPerDay method returns the net energy the elevators would use in
+     * a day of the simulated traffic.
+     *
+     * @return The net energy per day (in kilowatt-hours), 0 if nobody was served.
+     */
+    public double getEnergyPerDay() {
+        return (endTime <= 0) ? 0 : getEnergy() * ParkingPolicy.DAY / endTime;
+    }
+
+    /**
+     * The getMaxWait method returns the longest time a passenger waited before
+     * boarding.
+     *
+     * @return The longest wait (in seconds).
+     */
+    public double getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * The getAverageJourney method returns the average time from showing up to
+     * reaching the destination.
+     *
+     * @return The average journey time (in seconds), 0 if nobody was served.
+     */
+    public double getAverageJourney() {
+        return served == 0 ? 0 : totalJourney / served;
+    }
+
+    /**
+     * The getThroughput method returns the rate at which passengers reached their
+     * destination, from the start of the simulation to the last arrival.
+     *
+     * @return The throughput (in passengers per hour), 0 if nobody was served.
+     */
+    public double getThroughput() {
+        return (endTime <= 0) ? 0 : served * 3600 / endTime;
+    }
+
+    /**
+     * The getEndTime method returns the time the last passenger reached their
+     * destination.
+     *
+     * @return The end time (in seconds).
+     */
+    public double getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * The getBuilding method returns the building the simulation runs in.
+     *
+     * @return The building.
+     */
+    public Building getBuilding() {
+        return building;
+    }
+
+    /**
+     * The toString method returns a report of the simulation.
+     *
+     * @return A string representation of the results.
+     */
+    public String toString() {
+        return "Served: " + served + " (unserved " + getUnserved() + ", denied " + denied + ") - Wait: avg "
+                + String.format("%.1f", getAverageWait()) + "s, max " + String.format("%.1f", maxWait)
+                + "s - Journey: avg " + String.format("%.1f", getAverageJourney()) + "s - Energy: "
+                + String.format("%.2f", getEnergyPerDay()) + "kWh/day";
+    }
+}
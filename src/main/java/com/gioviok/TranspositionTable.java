@@ -0,0 +1,154 @@
+package com.gioviok;
+
+import java.util.Arrays;
+
+/**
+ * The TranspositionTable class remembers the cost of the states evaluated by
+ * the look-ahead dispatcher, so that a state reached again is not simulated
+ * again. States are identified by their Zobrist hash.
+ * The table has a fixed number of slots. When two states fall in the same slot,
+ * the one simulated for more steps is kept: it took more work to compute.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see LookAheadDispatcher
+ * @see Zobrist
+ */
+public class TranspositionTable {
+    /**
+     * The hashes of the states in the slots.
+     */
+    private final long[] keys;
+
+    /**
+     * The costs of the states in the slots.
+     */
+    private final double[] costs;
+
+    /**
+     * The number of steps the states were simulated for. 0 means the slot is
+     * empty.
+     */
+    private final int[] depths;
+
+    /**
+     * The mask giving the slot of a hash.
+     */
+    private final int mask;
+
+    /**
+     * The number of lookups which found their state.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups which didn't find their state.
+     */
+    private long misses;
+
+    /**
+     * The constructor of the table.
+     *
+     * @param capacity The number of slots. It is rounded up to a power of two.
+     * @throws IllegalArgumentException If the capacity is not positive or too
+     *                                  large.
+     */
+    public TranspositionTable(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        keys = new long[size];
+        costs = new double[size];
+        depths = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * The slot method returns the slot of a hash.
+     *
+     * @param key The hash of the state.
+     * @return The index of the slot.
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * The get method returns the cost of a state simulated for a given number of
+     * steps.
+     *
+     * @param key   The hash of the state.
+     * @param depth The number of steps.
+     * @return The cost of the state, NaN if it is not in the table.
+     */
+    public double get(long key, int depth) {
+        int slot = slot(key);
+        if (depths[slot] == depth && keys[slot] == key) {
+            hits++;
+            return costs[slot];
+        }
+        misses++;
+        return Double.NaN;
+    }
+
+    /**
+     * The put method stores the cost of a state. It replaces the state in the
+     * slot, unless that one was simulated for more steps.
+     *
+     * @param key   The hash of the state.
+     * @param depth The number of steps the state was simulated for.
+     * @param cost  The cost of the state.
+     * @throws IllegalArgumentException If the depth is not positive.
+     */
+    public void put(long key, int depth, double cost) throws IllegalArgumentException {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("The depth must be positive.");
+        }
+        int slot = slot(key);
+        if (depths[slot] > depth && keys[slot] != key) {
+            return;
+        }
+        keys[slot] = key;
+        depths[slot] = depth;
+        costs[slot] = cost;
+    }
+
+    /**
+     * The clear method empties the table.
+     */
+    public void clear() {
+        Arrays.fill(depths, 0);
+    }
+
+    /**
+     * The capacity method returns the number of slots of the table.
+     *
+     * @return The number of slots.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Hits getter.
+     *
+     * @return The number of lookups which found their state.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Misses getter.
+     *
+     * @return The number of lookups which didn't find their state.
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,124 @@
+package com.gioviok;
+
+/**
+ * The Trip class contains the information about the journey of a passenger in
+ * a traffic simulation: when the passenger shows up, where from and where to,
+ * how much they weigh and which key they use.
+ * Trips are immutable, so that the same trace can be replayed with different
+ * settings.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see TrafficSimulation
+ * @see Floor
+ * @see Key
+ */
+public class Trip {
+    /**
+     * The time the passenger shows up at the origin floor (in seconds).
+     */
+    private final double time;
+
+    /**
+     * The floor the passenger starts from.
+     */
+    private final Floor origin;
+
+    /**
+     * The floor the passenger wants to go to.
+     */
+    private final Floor destination;
+
+    /**
+     * The weight of the passenger.
+     */
+    private final int weight;
+
+    /**
+     * The key of the passenger. Can be null.
+     */
+    private final Key key;
+
+    /**
+     * The constructor of the trip.
+     *
+     * @param time        The time the passenger shows up (in seconds).
+     * @param origin      The floor the passenger starts from.
+     * @param destination The floor the passenger wants to go to.
+     * @param weight      The weight of the passenger.
+     * @param key         The key of the passenger (can be null).
+     * @throws IllegalArgumentException If a floor is null, the floors are the
+     *                                  same or the weight is not positive.
+     */
+    public Trip(double time, Floor origin, Floor destination, int weight, Key key) throws IllegalArgumentException {
+        if (origin == null || destination == null) {
+            throw new IllegalArgumentException("The floors of a trip cannot be null.");
+        }
+        if (origin == destination) {
+            throw new IllegalArgumentException("The origin and the destination of a trip must be different.");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("The weight of the passenger must be positive.");
+        }
+        this.time = time;
+        this.origin = origin;
+        this.destination = destination;
+        this.weight = weight;
+        this.key = key;
+    }
+
+    /**
+     * Time getter.
+     *
+     * @return The time the passenger shows up (in seconds).
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Origin getter.
+     *
+     * @return The floor the passenger starts from.
+     */
+    public Floor getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Destination getter.
+     *
+     * @return The floor the passenger wants to go to.
+     */
+    public Floor getDestination() {
+        return destination;
+    }
+
+    /**
+     * Weight getter.
+     *
+     * @return The weight of the passenger.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Key getter.
+     *
+     * @return The key of the passenger, null if none.
+     */
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * The toString method returns a string representation of the trip.
+     *
+     * @return A string representation of the trip.
+     */
+    public String toString() {
+        return "Trip: " + origin + " -> " + destination + " - Time: " + time + "s";
+    }
+}
@@ -0,0 +1,90 @@
+package com.gioviok;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Zobrist class gives the random keys used to hash the dispatch state of
+ * the elevators. Every floor gets its own key when it is created; the key of a
+ * floor in a given role (stop, car call, position) is derived from it. A state
+ * is hashed by XOR-ing the keys of its parts, so that adding or removing a part
+ * updates the hash in constant time. The scalar parts of a state (direction,
+ * mode, occupancy...) each have their own domain, the value being added to it
+ * before mixing, so that two different parts never give the same key.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Elevator#getStateHash()
+ * @see TranspositionTable
+ */
+final class Zobrist {
+    /** The role of a floor the elevator has to stop at. */
+    static final long STOP = 0x5851F42D4C957F2DL;
+    /** The role of a floor chosen from inside the elevator. */
+    static final long CAR_CALL = 0x14057B7EF767814FL;
+    /** The role of the floor the elevator is on. */
+    static final long POSITION = 0x2545F4914F6CDD1DL;
+    /** The role of a floor with a request of a given priority class (add the class). */
+    static final long PRIORITY = 0x3C6EF372FE94F82BL;
+    /** The role of a floor with a request of a given age (add the age bucket). */
+    static final long AGE = 0xA54FF53A5F1D36F1L;
+    /** The domain of the moving direction of the elevator (add the direction). */
+    static final long DIRECTION = 0x510E527FADE682D1L;
+    /** The domain of the service mode of the elevator (add the mode). */
+    static final long MODE = 0x9B05688C2B3E6C1FL;
+    /** The domain of the number of people on board (add the number). */
+    static final long OCCUPANCY = 0x1F83D9ABFB41BD6BL;
+    /** The domain of the load of the elevator (add the load in kilograms). */
+    static final long LOAD = 0x5BE0CD19137E2179L;
+    /** The domain of the number of consecutive preemptions (add the number). */
+    static final long PREEMPTIONS = 0xCBBB9D5DC1059ED8L;
+
+    /**
+     * The golden ratio increment of the key sequence.
+     */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The last key given out.
+     */
+    private static final AtomicLong SEED = new AtomicLong();
+
+    /**
+     * The constructor is private: the class only has static methods.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * The nextKey method returns a new random key.
+     *
+     * @return A new key.
+     */
+    static long nextKey() {
+        return mix(SEED.addAndGet(GAMMA));
+    }
+
+    /**
+     * The mix method scrambles the bits of a value (the SplitMix64 finalizer).
+     *
+     * @param value The value to scramble.
+     * @return The scrambled value.
+     */
+    static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The hash method returns the key of a floor in a given role.
+     *
+     * @param floor The floor (can be null).
+     * @param role  The role of the floor.
+     * @return The key of the floor in the role, 0 if the floor is null.
+     */
+    static long hash(Floor floor, long role) {
+        return (floor == null) ? 0 : mix(floor.getZobristKey() ^ role);
+    }
+}
@@ -0,0 +1,328 @@
+package com.gioviok;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The ZoningOptimizer class chooses the sky lobbies of a building, that is the
+ * boundaries of the zones of its elevators, for a given traffic. Every zoning
+ * is scored by running the trips through a replica of the building, zoned by
+ * the candidate lobbies: the score is the average journey time, with every
+ * passenger left unserved counted as a penalty.
+ * The search is a coordinate descent. It starts from zones with the same number
+ * of floors, then moves one lobby at a time to the best floor between its
+ * neighbours, the others staying where they are, until no move improves the
+ * score. All the floors a lobby can move to are evaluated in parallel on a
+ * ForkJoinPool.
+ *
+ * @author gioviok
+ * @version 1.0
+ * @since 1.0
+ * @see Building#setSkyLobbies(Floor...)
+ * @see TrafficSimulation
+ */
+public class ZoningOptimizer {
+    /**
+     * The pool the zonings are evaluated on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of zones to split the elevators into.
+     */
+    private int zones = 2;
+
+    /**
+     * The largest number of times every lobby is moved.
+     */
+    private int rounds = 4;
+
+    /**
+     * The journey time counted for a passenger left unserved (in seconds).
+     */
+    private double unservedPenalty = 3600;
+
+    /**
+     * The number of zonings evaluated.
+     */
+    private long evaluations;
+
+    /**
+     * The score of the last zoning chosen (in seconds), NaN if none was.
+     */
+    private double bestScore = Double.NaN;
+
+    /**
+     * The constructor of the optimizer. It evaluates the zonings on its own pool,
+     * with as many threads as processors.
+     */
+    public ZoningOptimizer() {
+        this(new ForkJoinPool());
+    }
+
+    /**
+     * The constructor of the optimizer.
+     *
+     * @param pool The pool to evaluate the zonings on.
+     * @throws IllegalArgumentException If the pool is null.
+     */
+    public ZoningOptimizer(ForkJoinPool pool) throws IllegalArgumentException {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool cannot be null.");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * The optimize method chooses the sky lobbies of a building for random trips
+     * of a traffic profile.
+     *
+     * @param building          The building. It is not changed.
+     * @param profile           The traffic profile.
+     * @param passengersPerHour The average number of passengers per hour.
+     * @param duration          The duration of the traffic (in seconds).
+     * @param seed              The seed of the random generator.
+     * @return The sky lobbies, from bottom to top.
+     * @throws IllegalArgumentException If the building has too few floors or
+     *                                  elevators for the zones, or the rate is not
+     *                                  positive.
+     * @throws IllegalStateException    If no key gives access to two floors.
+     * @see TrafficSimulation#generateTrips(Building, TrafficSimulation.Profile,
+     *      double, double, long)
+     */
+    public Floor[] optimize(Building building, TrafficSimulation.Profile profile, double passengersPerHour,
+            double duration, long seed) throws IllegalArgumentException, IllegalStateException {
+        return optimize(building,
+                TrafficSimulation.generateTrips(building, profile, passengersPerHour, duration, seed));
+    }
+
+    /**
+     * The optimize method chooses the sky lobbies of a building for the given
+     * trips.
+     *
+     * @param building The building. It is not changed.
+     * @param trips    The trips, sorted by time.
+     * @return The sky lobbies, from bottom to top.
+     * @throws IllegalArgumentException If the building has too few floors or
+     *                                  elevators for the zones.
+     */
+    public Floor[] optimize(Building building, List<Trip> trips) throws IllegalArgumentException {
+        List<Floor> floors = building.getFloors();
+        if (floors.size() < zones + 1) {
+            throw new IllegalArgumentException("The building needs " + (zones + 1) + " floors for " + zones
+                    + " zones.");
+        }
+        if (building.getElevators().size() < zones) {
+            throw new IllegalArgumentException("The building needs " + zones + " elevators for " + zones
+                    + " zones.");
+        }
+        // The lobbies are kept as indexes in the floors, sorted by height.
+        int[] lobbies = new int[zones - 1];
+        for (int j = 0; j < lobbies.length; j++) {
+            lobbies[j] = (j + 1) * (floors.size() - 1) / zones;
+        }
+        ArrayList<int[]> start = new ArrayList<int[]>();
+        start.add(lobbies.clone());
+        double best = evaluate(building, trips, start)[0];
+        for (int round = 0; round < rounds; round++) {
+            boolean improved = false;
+            for (int j = 0; j < lobbies.length; j++) {
+                // The lobby moves between its neighbours, never onto the lowest or highest floor.
+                int lowest = (j == 0) ? 1 : lobbies[j - 1] + 1;
+                int highest = (j == lobbies.length - 1) ? floors.size() - 2 : lobbies[j + 1] - 1;
+                ArrayList<int[]> candidates = new ArrayList<int[]>();
+                for (int index = lowest; index <= highest; index++) {
+                    if (index != lobbies[j]) {
+                        int[] candidate = lobbies.clone();
+                        candidate[j] = index;
+                        candidates.add(candidate);
+                    }
+                }
+                double[] scores = evaluate(building, trips, candidates);
+                for (int c = 0; c < scores.length; c++) {
+                    if (scores[c] < best) {
+                        best = scores[c];
+                        lobbies[j] = candidates.get(c)[j];
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        bestScore = best;
+        return toFloors(floors, lobbies);
+    }
+
+    /**
+     * The score method runs trips through a replica of a building zoned by the
+     * given sky lobbies.
+     *
+     * @param building The building. It is not changed.
+     * @param trips    The trips, sorted by time.
+     * @param lobbies  The sky lobbies, none for no zones.
+     * @return The average journey time, with the passengers left unserved counted
+     *         as the penalty (in seconds), 0 if there are no trips.
+     * @throws IllegalArgumentException If the lobbies are not valid for the
+     *                                  building.
+     */
+    public double score(Building building, List<Trip> trips, Floor... lobbies) throws IllegalArgumentException {
+        Building replica = TrafficSimulation.replicate(building);
+        replica.setSkyLobbies(lobbies);
+        TrafficSimulation simulation = new TrafficSimulation(replica).run(trips);
+        int passengers = simulation.getServed() + simulation.getUnserved();
+        if (passengers == 0) {
+            return 0;
+        }
+        return (simulation.getAverageJourney() * simulation.getServed()
+                + unservedPenalty * simulation.getUnserved()) / passengers;
+    }
+
+    /**
+     * The evaluate method scores zonings in parallel.
+     *
+     * @param building   The building.
+     * @param trips      The trips, sorted by time.
+     * @param candidates The zonings, as indexes of the lobbies in the floors.
+     * @return The score of every zoning, infinite if it could not be evaluated.
+     */
+    private double[] evaluate(final Building building, final List<Trip> trips, List<int[]> candidates) {
+        double[] scores = new double[candidates.size()];
+        ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>(candidates.size());
+        for (int[] candidate : candidates) {
+            final Floor[] lobbies = toFloors(building.getFloors(), candidate);
+            tasks.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return score(building, trips, lobbies);
+                }
+            });
+        }
+        evaluations += tasks.size();
+        List<Future<Double>> results = pool.invokeAll(tasks);
+        for (int c = 0; c < scores.length; c++) {
+            try {
+                scores[c] = results.get(c).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                scores[c] = Double.POSITIVE_INFINITY;
+            } catch (ExecutionException e) {
+                // A zoning the simulation can't run is never chosen.
+                scores[c] = Double.POSITIVE_INFINITY;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * The toFloors method turns indexes in the floors into floors.
+     *
+     * @param floors  The floors, sorted by height.
+     * @param indexes The indexes.
+     * @return The floors at the indexes.
+     */
+    private static Floor[] toFloors(List<Floor> floors, int[] indexes) {
+        Floor[] result = new Floor[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            result[i] = floors.get(indexes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Zones getter.
+     *
+     * @return The number of zones to split the elevators into.
+     */
+    public int getZones() {
+        return zones;
+    }
+
+    /**
+     * Zones setter.
+     *
+     * @param zones The number of zones to split the elevators into.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If there are fewer than two zones.
+     */
+    public ZoningOptimizer setZones(int zones) throws IllegalArgumentException {
+        if (zones < 2) {
+            throw new IllegalArgumentException("There must be at least two zones.");
+        }
+        this.zones = zones;
+        return this;
+    }
+
+    /**
+     * Rounds getter.
+     *
+     * @return The largest number of times every lobby is moved.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Rounds setter.
+     *
+     * @param rounds The largest number of times every lobby is moved.
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the number of rounds is not positive.
+     */
+    public ZoningOptimizer setRounds(int rounds) throws IllegalArgumentException {
+        if (rounds <= 0) {
+            throw new IllegalArgumentException("The number of rounds must be positive.");
+        }
+        this.rounds = rounds;
+        return this;
+    }
+
+    /**
+     * Unserved penalty getter.
+     *
+     * @return The journey time counted for a passenger left unserved (in
+     *         seconds).
+     */
+    public double getUnservedPenalty() {
+        return unservedPenalty;
+    }
+
+    /**
+     * Unserved penalty setter.
+     *
+     * @param unservedPenalty The journey time counted for a passenger left
+     *                        unserved (in seconds).
+     * @return this, to allow concatenation.
+     * @throws IllegalArgumentException If the penalty is negative.
+     */
+    public ZoningOptimizer setUnservedPenalty(double unservedPenalty) throws IllegalArgumentException {
+        if (unservedPenalty < 0) {
+            throw new IllegalArgumentException("The penalty cannot be negative.");
+        }
+        this.unservedPenalty = unservedPenalty;
+        return this;
+    }
+
+    /**
+     * Evaluations getter.
+     *
+     * @return The number of zonings evaluated so far.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Best score getter.
+     *
+     * @return The score of the last zoning chosen (in seconds), NaN if none was.
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+}
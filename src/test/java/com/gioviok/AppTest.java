@@ -8,8 +8,14 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -241,6 +247,15 @@ public class AppTest {
         assertTrue(building.getElevator() != null);
         // The current floor should be the entrance floor.
         assertTrue(building.getElevator().getCurrentFloor().getName().equals(building.getEntranceFloor().getName()));
+        // The new elevator is the only one of the group, wired to the building like any other.
+        assertEquals(Arrays.asList(building.getElevator()), building.getElevators());
+        assertTrue(building.getElevator().serves(building.getFloorNamed("First floor")));
+        building.getElevator().setServedFloors(building.getEntranceFloor(), building.getFloorNamed("First floor"));
+        assertFalse(building.getElevator().serves(building.getFloorNamed("Second floor")));
+        building.getElevator().serveAllFloors();
+        assertTrue(building.callElevator(building.getFloorNamed("First floor")));
+        building.runElevators();
+        assertEquals(building.getFloorNamed("First floor"), building.getElevator().getCurrentFloor());
         // Finally we try to reSetup the elevator
         building.setupElevator(building.getFloorNamed("First floor"), Elevator.MovingDirection.DOWN, 100, 500);
         assertTrue(building.getElevator() != null);
@@ -304,10 +319,20 @@ public class AppTest {
 
         assertTrue(elevator.hasPerson(person));
         assertTrue(elevator.getCurrentLoad() == 80);
-        assertTrue(elevator.isOverloaded() == true);
+        // No maximum weight is set: the elevator takes anyone.
+        assertFalse(elevator.isOverloaded());
         assertTrue(elevator.numberOfPeople() == 1);
         assertTrue(elevator.disembark(person));
         assertTrue(elevator.getCurrentLoad() == 0);
+        // And it carries them without complaining about the load.
+        Person rider = simulator.getBuilding().registerPerson(new Person("Rider", 80), "Customer",
+                elevator.getCurrentFloor());
+        Floor first = simulator.getBuilding().getFloorNamed("First floor");
+        assertTrue(elevator.board(rider));
+        assertTrue(elevator.requestRide(first, rider.getKey(), rider));
+        elevator.run();
+        assertEquals(first, elevator.getCurrentFloor());
+        assertEquals(first, rider.getCurrentFloor());
     }
 
     /**
@@ -724,8 +749,11 @@ public class AppTest {
         building.registerPerson(person, "Security");
         // Reset elevator to entrance.
         elevator.setCurrentFloor(building.getEntranceFloor());
-        // board passenger
+        // board passenger: the elevator has no maximum weight yet, so it fits.
         elevator.board(person);
+        assertTrue(elevator.hasPerson(person));
+        // The maximum weight is lowered under the load.
+        elevator.setMaxLoad(1000);
         // Try calling run with a floor to go. We expect illegal state exception.
         try {
             elevator.run();
@@ -766,6 +794,1745 @@ public class AppTest {
         } catch (IllegalArgumentException e) { /* Success! */ } // This should throw an IllegalArgumentException.
     }
 
+    /**
+     * Test the admission control of Elevator.board(Person).
+     * People who don't fit are queued at the floor and board on the next visit.
+     */
+    @Test
+    public void testElevatorAdmission(){
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        elevator.setup(building.getEntranceFloor(), MovingDirection.STATIONARY, 100, 250);
+        Person a = building.registerPerson(new Person("A", 80), "Manager");
+        Person b = building.registerPerson(new Person("B", 90), "Manager");
+        // A fits, B doesn't: B is queued, and no exception is thrown.
+        assertTrue(elevator.canBoard(a));
+        assertTrue(elevator.board(a));
+        assertFalse(elevator.canBoard(b));
+        assertFalse(elevator.board(b));
+        assertEquals(1, elevator.numberOfWaitingPeople());
+        // Queueing again doesn't duplicate the person.
+        assertFalse(elevator.board(b));
+        assertEquals(1, elevator.numberOfWaitingPeople());
+        // The elevator leaves with A, and comes back for B.
+        assertTrue(a.chooseFloor(building.getFloorNamed("First floor")));
+        assertFalse(elevator.run());
+        assertTrue(a.disembark());
+        // B boards as soon as the elevator is back at the entrance.
+        assertTrue(elevator.run());
+        assertEquals(building.getEntranceFloor(), elevator.getCurrentFloor());
+        assertTrue(elevator.hasPerson(b));
+        assertEquals(0, elevator.numberOfWaitingPeople());
+        // The person limit is checked as well.
+        elevator.setMaxPersons(1);
+        Person c = building.registerPerson(new Person("C", 10), null);
+        assertFalse(elevator.board(c));
+        // Removing the person from the building removes it from the queue.
+        building.removePerson("C");
+        assertEquals(0, elevator.numberOfWaitingPeople());
+        try {
+            elevator.setMaxPersons(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Overloading keeps the pending requests.
+        assertTrue(b.chooseFloor(building.getFloorNamed("Second floor")));
+        elevator.setMaxLoad(150);
+        try {
+            elevator.run();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) { /* Success! */ }
+        elevator.setMaxLoad(250);
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("Second floor"), elevator.getCurrentFloor());
+    }
+
+    /**
+     * Test the full-load bypass: a loaded elevator only stops for car calls, and
+     * serves the skipped hall calls afterwards.
+     */
+    @Test
+    public void testElevatorBypass(){
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        elevator.setup(building.getEntranceFloor(), MovingDirection.STATIONARY, 100, 300);
+        Person a = building.registerPerson(new Person("A", 90), "Manager");
+        Person b = building.registerPerson(new Person("B", 80), "Manager");
+        assertTrue(a.board());
+        assertFalse(elevator.isBypassing());
+        assertTrue(b.board());
+        // 170kg out of 200kg is above 80% of the rated load.
+        assertTrue(elevator.isBypassing());
+        assertTrue(a.chooseFloor(building.getFloorNamed("Third floor")));
+        assertTrue(building.callElevator(building.getFloorNamed("First floor")));
+        // The elevator skips the hall call on the first floor.
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Third floor"), elevator.getCurrentFloor());
+        assertEquals(1, elevator.getMetrics().getBypasses());
+        // Once unloaded, it serves the hall call.
+        assertTrue(a.disembark());
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("First floor"), elevator.getCurrentFloor());
+        assertEquals(2, elevator.getMetrics().getStops());
+        assertEquals(9000 + 6000, elevator.getMetrics().getDistance());
+        assertEquals(1, elevator.getMetrics().getRoundTrips());
+        assertEquals(15000 / elevator.getSpeed() + 2 * elevator.getStopTime(), elevator.getTime(), 1e-9);
+        // Disabling the bypass.
+        elevator.setBypassLoadFraction(0);
+        assertFalse(elevator.isBypassing());
+        try {
+            elevator.setBypassLoadFraction(1.5);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the aging of requests: an overdue request is served before closer ones.
+     */
+    @Test
+    public void testElevatorAging(){
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        elevator.setCurrentFloor(building.getEntranceFloor());
+        assertTrue(elevator.requestHere(building.getFloorNamed("Vault")));
+        assertTrue(elevator.requestHere(building.getFloorNamed("First floor")));
+        assertTrue(elevator.requestHere(building.getFloorNamed("Second floor")));
+        elevator.setup(building.getEntranceFloor(), MovingDirection.UP, 100, 500);
+        // Without aging, the elevator keeps going up.
+        elevator.setMaxWait(0);
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("First floor"), elevator.getCurrentFloor());
+        assertEquals(0, elevator.getMetrics().getAgingPromotions());
+        // The vault has now waited more than the maximum wait: it is served first.
+        elevator.setMaxWait(elevator.getTime());
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Vault"), elevator.getCurrentFloor());
+        assertEquals(MovingDirection.DOWN, elevator.getCurrentMovingDirection());
+        assertEquals(1, elevator.getMetrics().getAgingPromotions());
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("Second floor"), elevator.getCurrentFloor());
+        // Every request was served, and the longest wait is the one of the second floor.
+        assertEquals(3, elevator.getMetrics().getServedRequests());
+        assertEquals(elevator.getTime(), elevator.getMetrics().getMaxWait(), 1e-9);
+    }
+
+    /**
+     * Test the priority classes of the requests, given by the keys.
+     */
+    @Test
+    public void testElevatorPriorities(){
+        simulator.setRolePriority("Security", Key.Priority.SECURITY)
+                .setRolePriority("Manager", Key.Priority.VIP);
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        elevator.setup(building.getEntranceFloor(), MovingDirection.UP, 100, 500);
+        building.getKeyNamed("Customer").setPriority(Key.Priority.FREIGHT);
+        assertEquals(Key.Priority.FREIGHT, building.getKeyNamed("Customer").getPriority());
+        assertEquals(Key.Priority.STANDARD, building.getKeyNamed("Employee").getPriority());
+        try {
+            simulator.setRolePriority("Nobody", Key.Priority.VIP);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        Person security = building.registerPerson(new Person("S", 80), "Security", building.getFloorNamed("Vault"));
+        Person manager = building.registerPerson(new Person("M", 80), "Manager",
+                building.getFloorNamed("Fourth floor"));
+        Person employee = building.registerPerson(new Person("E", 80), "Employee",
+                building.getFloorNamed("Second floor"));
+        Person customer = building.registerPerson(new Person("C", 80), "Customer",
+                building.getFloorNamed("First floor"));
+        assertTrue(customer.callElevatorRide());
+        assertTrue(employee.callElevatorRide());
+        assertTrue(manager.callElevatorRide());
+        assertTrue(security.callElevatorRide());
+        // Security first, then the manager, whatever the direction.
+        elevator.setStarvationLimit(0);
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Vault"), elevator.getCurrentFloor());
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Fourth floor"), elevator.getCurrentFloor());
+        assertEquals(2, elevator.getMetrics().getPreemptions());
+        // The freight call waits for the employee, even if it is on the way.
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Second floor"), elevator.getCurrentFloor());
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("First floor"), elevator.getCurrentFloor());
+        // With a starvation limit of 1, the employee gets a turn after the security.
+        elevator.setStarvationLimit(1);
+        assertTrue(employee.callElevatorRide());
+        assertTrue(manager.callElevatorRide());
+        assertTrue(security.callElevatorRide());
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Vault"), elevator.getCurrentFloor());
+        assertFalse(elevator.run());
+        assertEquals(building.getFloorNamed("Second floor"), elevator.getCurrentFloor());
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("Fourth floor"), elevator.getCurrentFloor());
+        // A higher class upgrades a pending request, which doesn't count as a new one.
+        elevator.setPreemptivePriority(null);
+        assertTrue(building.callElevator(building.getFloorNamed("First floor")));
+        assertFalse(building.callElevator(building.getFloorNamed("First floor"), building.getKeyNamed("Manager")));
+        assertTrue(elevator.run());
+        assertEquals(building.getFloorNamed("First floor"), elevator.getCurrentFloor());
+        // The priority is copied by clone, and checked by equals.
+        Key key = building.getKeyNamed("Manager").clone();
+        assertEquals(Key.Priority.VIP, key.getPriority());
+        assertFalse(key.equals(key.clone().setPriority(Key.Priority.STANDARD)));
+        try {
+            key.setPriority(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the service modes of the elevators of a group.
+     */
+    @Test
+    public void testElevatorServiceModes(){
+        simulator.setupElevator(100, 500).addNewElevator(100, 500);
+        Building building = simulator.getBuilding();
+        assertEquals(2, building.getElevators().size());
+        Floor ground = building.getEntranceFloor();
+        Floor first = building.getFloorNamed("First floor");
+        Floor third = building.getFloorNamed("Third floor");
+        try {
+            simulator.addNewElevator(100, 100);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // A car on the floor answers the call right away.
+        assertFalse(building.callElevator(ground));
+        assertTrue(building.callElevator(third));
+        Elevator owner = building.getElevator().hasRequest(third) ? building.getElevator()
+                : building.getElevators().get(1);
+        Elevator spare = (owner == building.getElevator()) ? building.getElevators().get(1) : building.getElevator();
+        // Maintenance gives the hall calls to the other car, and doesn't move.
+        building.setServiceMode(owner, Elevator.ServiceMode.MAINTENANCE);
+        assertFalse(owner.hasRequest(third));
+        assertTrue(spare.hasRequest(third));
+        assertFalse(owner.isBusy());
+        assertTrue(owner.run());
+        assertEquals(ground, owner.getCurrentFloor());
+        // With no car in service, the call is kept by the building.
+        building.setServiceMode(spare, Elevator.ServiceMode.MAINTENANCE);
+        assertEquals(1, building.numberOfPendingCalls());
+        building.setServiceMode(owner, Elevator.ServiceMode.NORMAL);
+        assertEquals(0, building.numberOfPendingCalls());
+        assertTrue(owner.hasRequest(third));
+        assertTrue(owner.run());
+        assertEquals(third, owner.getCurrentFloor());
+        // Fire recall goes to the entrance, and keeps the car calls.
+        Person person = building.registerPerson(new Person("P", 80), "Employee", third);
+        assertTrue(person.board());
+        assertEquals(owner, building.getElevatorOf(person));
+        assertTrue(person.chooseFloor(first));
+        building.setServiceMode(owner, Elevator.ServiceMode.FIRE_RECALL);
+        assertTrue(owner.isBusy());
+        assertTrue(owner.run());
+        assertEquals(ground, owner.getCurrentFloor());
+        assertFalse(owner.isBusy());
+        assertTrue(owner.hasRequest(first));
+        building.setServiceMode(owner, Elevator.ServiceMode.NORMAL);
+        assertTrue(owner.run());
+        assertEquals(first, owner.getCurrentFloor());
+        try {
+            building.setServiceMode(new Elevator(), Elevator.ServiceMode.NORMAL);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the arrival time estimates, and the dispatch of hall calls with them.
+     */
+    @Test
+    public void testElevatorEta(){
+        simulator.setupElevator(100, 500).addNewElevator(100, 500);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor third = building.getFloorNamed("Third floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        Floor vault = building.getFloorNamed("Vault");
+        main.setCurrentFloor(second);
+        other.setCurrentFloor(vault);
+        assertEquals(2.0, main.getEta(first), 0.001);
+        // Going up to the fourth floor, the elevator comes back down after one stop.
+        assertTrue(main.requestRide(fourth, building.getKeyNamed("Manager")));
+        assertEquals(2.0, main.getEta(third), 0.001);
+        assertEquals(4.0, main.getEta(fourth), 0.001);
+        assertEquals(20.0, main.getEta(first), 0.001);
+        assertEquals(25000 / 1500.0 + 10, main.getEta(vault), 0.001);
+        assertTrue(main.requestRide(third, building.getKeyNamed("Manager")));
+        assertEquals(14.0, main.getEta(fourth), 0.001);
+        assertEquals(30.0, main.getEta(first), 0.001);
+        // The vault elevator is further away, but gets there first.
+        assertTrue(building.callElevator(first));
+        assertTrue(other.hasRequest(first));
+        assertFalse(main.hasRequest(first));
+        // Serving and clearing stops updates the estimates.
+        assertFalse(main.run());
+        assertEquals(third, main.getCurrentFloor());
+        assertEquals(2.0, main.getEta(fourth), 0.001);
+        assertEquals(18.0, main.getEta(first), 0.001);
+        main.halt();
+        assertEquals(4.0, main.getEta(first), 0.001);
+        try {
+            main.getEta(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            new Elevator().getEta(first);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the batch assignment of hall calls.
+     */
+    @Test
+    public void testBatchAssignment(){
+        HungarianSolver solver = new HungarianSolver();
+        double[][] cost = solver.getMatrix(3);
+        double[][] values = { { 4, 1, 3 }, { 2, 0, 5 }, { 3, 2, 2 } };
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(values[i], 0, cost[i], 0, 3);
+        }
+        int[] assignment = solver.solve(3);
+        assertEquals(1, assignment[0]);
+        assertEquals(0, assignment[1]);
+        assertEquals(2, assignment[2]);
+        // The matrix is reused.
+        assertTrue(cost == solver.getMatrix(2));
+        simulator.setupElevator(100, 500).addNewElevator(100, 500);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor ground = building.getEntranceFloor();
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        main.setCurrentFloor(first);
+        other.setCurrentFloor(fourth);
+        // One at a time, the second floor goes to the closest elevator, and the
+        // ground floor has to wait for the other one.
+        assertTrue(building.callElevator(second));
+        assertTrue(building.callElevator(ground));
+        assertTrue(main.hasRequest(second));
+        assertTrue(other.hasRequest(ground));
+        main.halt();
+        other.halt();
+        // In a batch, the calls are swapped, and both are reached sooner.
+        building.setBatchWindow(10);
+        assertTrue(building.callElevator(second));
+        assertFalse(building.callElevator(second));
+        assertTrue(building.callElevator(ground));
+        assertEquals(2, building.numberOfBatchedCalls());
+        assertEquals(10.0, building.getBatchDeadline(), 0.001);
+        assertFalse(main.hasRequest(second));
+        building.flushCalls();
+        assertEquals(0, building.numberOfBatchedCalls());
+        assertEquals(Double.POSITIVE_INFINITY, building.getBatchDeadline(), 0.001);
+        assertTrue(main.hasRequest(ground));
+        assertTrue(other.hasRequest(second));
+        // Cancelled calls leave the batch, and no window flushes it.
+        main.halt();
+        other.halt();
+        assertTrue(building.callElevator(second));
+        building.cancelHallCalls(second);
+        assertEquals(0, building.numberOfBatchedCalls());
+        assertTrue(building.callElevator(second));
+        building.setBatchWindow(0);
+        assertEquals(0, building.numberOfBatchedCalls());
+        assertTrue(main.hasRequest(second));
+        try {
+            building.setBatchWindow(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the clones of the elevators, and the look-ahead dispatcher.
+     */
+    @Test
+    public void testLookAheadDispatch(){
+        simulator.setupElevator(100, 500).addNewElevator(100, 500);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor ground = building.getEntranceFloor();
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        // A clone runs without moving the elevator or the people in it.
+        Person person = building.registerPerson(new Person("P", 80), "Employee", ground);
+        assertTrue(person.board());
+        assertTrue(person.chooseFloor(second));
+        assertTrue(building.callElevator(first));
+        Elevator clone = main.clone();
+        assertTrue(clone.hasRequest(second));
+        assertFalse(clone.hasPerson(person));
+        assertEquals(1, clone.numberOfPeople());
+        assertFalse(clone.run());
+        assertEquals(first, clone.getCurrentFloor());
+        assertTrue(clone.run());
+        assertEquals(second, clone.getCurrentFloor());
+        assertEquals(2, clone.getMetrics().getServedRequests());
+        assertEquals(ground, main.getCurrentFloor());
+        assertEquals(ground, person.getCurrentFloor());
+        assertTrue(main.hasRequest(first));
+        assertEquals(0, main.getMetrics().getServedRequests());
+        assertEquals(0.0, main.getTime(), 0.001);
+        assertTrue(person.disembark());
+        main.halt();
+        // The dispatcher gives every call to one elevator.
+        LookAheadDispatcher lookAhead = new LookAheadDispatcher().setSteps(8).setBudget(1000);
+        building.setLookAhead(lookAhead);
+        assertEquals(lookAhead, building.getLookAhead());
+        main.setCurrentFloor(first);
+        other.setCurrentFloor(fourth);
+        assertTrue(building.callElevator(second));
+        assertTrue(building.callElevator(ground));
+        assertTrue(main.hasRequest(second) ^ other.hasRequest(second));
+        assertTrue(main.hasRequest(ground) ^ other.hasRequest(ground));
+        assertEquals(2, lookAhead.getDecisions());
+        assertEquals(0, lookAhead.getFallbacks());
+        // With a single elevator in service, there is nothing to search.
+        building.setServiceMode(other, Elevator.ServiceMode.MAINTENANCE);
+        assertTrue(main.hasRequest(second) && main.hasRequest(ground));
+        assertEquals(3, lookAhead.getDecisions());
+        try {
+            lookAhead.setSteps(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            lookAhead.setBudget(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            lookAhead.setRollouts(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // With a rollout budget, the same calls lead to the same decisions.
+        building.setServiceMode(other, Elevator.ServiceMode.NORMAL);
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 600,
+                900, 3);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            String[] runs = new String[2];
+            for (int i = 0; i < runs.length; i++) {
+                Building replica = TrafficSimulation.replicate(building);
+                replica.setLookAhead(new LookAheadDispatcher(pool).setRollouts(1));
+                runs[i] = new TrafficSimulation(replica).run(trips).toString();
+                assertEquals(0, replica.getLookAhead().getTimeouts() + replica.getLookAhead().getFallbacks());
+            }
+            assertEquals(runs[0], runs[1]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test the state hashes and the transposition table of the look-ahead
+     * dispatcher.
+     */
+    @Test
+    public void testStateHashing(){
+        simulator.setupElevator(100, 500).addNewElevator(100, 500);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        // Same state, same hash; the hash follows the requests both ways.
+        long idle = main.getStateHash();
+        assertEquals(idle, other.getStateHash());
+        assertTrue(building.callElevator(first));
+        long called = main.getStateHash();
+        assertNotEquals(idle, called);
+        assertEquals(called, main.clone().getStateHash());
+        assertTrue(main.requestRide(second, building.getKeyNamed("Employee")));
+        assertNotEquals(called, main.getStateHash());
+        main.halt();
+        assertEquals(idle, main.getStateHash());
+        // The priority classes and the ages of the requests, and the load, are part of the state.
+        assertTrue(main.requestHere(first, Key.Priority.SECURITY));
+        assertTrue(other.requestHere(first));
+        assertNotEquals(main.getStateHash(), other.getStateHash());
+        main.halt();
+        assertTrue(main.requestHere(first));
+        assertEquals(main.getStateHash(), other.getStateHash());
+        main.advanceTime(main.getMaxWait() / 2);
+        other.advanceTime(other.getMaxWait() / 2);
+        assertEquals(main.getStateHash(), other.getStateHash());
+        main.halt();
+        assertTrue(main.requestHere(first));
+        assertNotEquals(main.getStateHash(), other.getStateHash());
+        main.setMaxWait(0);
+        other.setMaxWait(0);
+        assertEquals(main.getStateHash(), other.getStateHash());
+        main.setMaxWait(180);
+        other.setMaxWait(180);
+        main.halt();
+        other.halt();
+        Person rider = new Person("Rider", 80);
+        building.registerPerson(rider, "Customer");
+        long empty = other.getStateHash();
+        assertTrue(other.board(rider));
+        assertNotEquals(empty, other.getStateHash());
+        Person heavier = new Person("Heavier rider", 90);
+        building.registerPerson(heavier, "Customer");
+        assertTrue(main.board(heavier));
+        assertNotEquals(main.getStateHash(), other.getStateHash());
+        // The number of people and the load don't cancel out.
+        Elevator bare = new Elevator(building.getEntranceFloor(), Elevator.MovingDirection.STATIONARY, 0, 0);
+        long nobody = bare.getStateHash();
+        assertTrue(bare.board(building.registerPerson(new Person("Feather", 3), "Customer",
+                building.getEntranceFloor())));
+        assertNotEquals(nobody, bare.getStateHash());
+        // The deepest state is kept in a slot.
+        TranspositionTable table = new TranspositionTable(3);
+        assertEquals(4, table.capacity());
+        assertTrue(Double.isNaN(table.get(1, 8)));
+        table.put(1, 8, 42);
+        assertEquals(42.0, table.get(1, 8), 0.001);
+        assertTrue(Double.isNaN(table.get(1, 4)));
+        table.put(5, 4, 7);
+        assertEquals(42.0, table.get(1, 8), 0.001);
+        table.put(5, 8, 7);
+        assertEquals(7.0, table.get(5, 8), 0.001);
+        assertTrue(Double.isNaN(table.get(1, 8)));
+        assertEquals(3, table.getHits());
+        assertEquals(3, table.getMisses());
+        table.clear();
+        assertTrue(Double.isNaN(table.get(5, 8)));
+        try {
+            new TranspositionTable(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // The same decision is taken again without simulating it.
+        LookAheadDispatcher lookAhead = new LookAheadDispatcher().setBudget(1000);
+        building.setLookAhead(lookAhead);
+        assertTrue(building.callElevator(second));
+        long misses = lookAhead.getTranspositionTable().getMisses();
+        assertEquals(0, lookAhead.getTranspositionTable().getHits());
+        main.halt();
+        other.halt();
+        assertTrue(building.callElevator(second));
+        assertEquals(misses, lookAhead.getTranspositionTable().getMisses());
+        assertEquals(2, lookAhead.getTranspositionTable().getHits());
+    }
+
+    /**
+     * Test the traffic simulation.
+     */
+    @Test
+    public void testTrafficSimulation(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 120,
+                3600, 1);
+        assertFalse(trips.isEmpty());
+        assertEquals(trips.toString(), TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR,
+                120, 3600, 1).toString());
+        for (int i = 1; i < trips.size(); i++) {
+            assertTrue(trips.get(i - 1).getTime() <= trips.get(i).getTime());
+            assertTrue(trips.get(i).getOrigin().requestAccess(trips.get(i).getKey()));
+            assertTrue(trips.get(i).getDestination().requestAccess(trips.get(i).getKey()));
+        }
+        try {
+            new Trip(0, building.getEntranceFloor(), building.getEntranceFloor(), 80, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Everyone gets served, and the original building is untouched.
+        TrafficSimulation baseline = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        assertEquals(trips.size(), baseline.getServed());
+        assertEquals(0, baseline.getUnserved());
+        assertTrue(baseline.getAverageWait() <= baseline.getMaxWait());
+        assertTrue(baseline.getAverageJourney() > baseline.getAverageWait());
+        assertEquals(0, building.numberOfPeople());
+        assertEquals(0.0, building.getTime(), 0.001);
+        // In batches, everyone is served too.
+        Building batched = TrafficSimulation.replicate(building);
+        batched.setBatchWindow(5);
+        assertEquals(trips.size(), new TrafficSimulation(batched).run(trips).getServed());
+        // With the look-ahead dispatcher, everyone is served too.
+        Building searched = TrafficSimulation.replicate(building);
+        searched.setLookAhead(new LookAheadDispatcher());
+        assertEquals(trips.size(), new TrafficSimulation(searched).run(trips).getServed());
+        // With a car out of service, everyone is still served, but later.
+        TrafficSimulation degraded = new TrafficSimulation(TrafficSimulation.replicate(building))
+                .addServiceChange(2400, 0, Elevator.ServiceMode.NORMAL)
+                .addServiceChange(1200, 0, Elevator.ServiceMode.MAINTENANCE)
+                .run(trips);
+        assertEquals(trips.size(), degraded.getServed());
+        assertTrue(degraded.getAverageWait() >= baseline.getAverageWait());
+        // A fire recall of every car for the rest of the hour leaves people waiting.
+        TrafficSimulation recall = new TrafficSimulation(TrafficSimulation.replicate(building))
+                .addServiceChange(1800, 0, Elevator.ServiceMode.FIRE_RECALL)
+                .addServiceChange(1800, 1, Elevator.ServiceMode.FIRE_RECALL)
+                .run(trips);
+        assertTrue(recall.getUnserved() > 0);
+        assertEquals(trips.size(), recall.getServed() + recall.getUnserved());
+        // The load limit of the cars must be set.
+        try {
+            new TrafficSimulation(new Simulator().init().addNewFloor("Ground floor", 0, 0).getBuilding());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) { /* Success! */ }
+    }
+
+    /**
+     * Test the parking of idle elevators where calls are expected.
+     */
+    @Test
+    public void testIdleParking(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        main.setCurrentFloor(ground);
+        other.setCurrentFloor(ground);
+        ParkingPolicy policy = new ParkingPolicy(900);
+        try {
+            new ParkingPolicy(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            policy.setDecay(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Nothing was learned yet: nobody moves.
+        assertEquals(0, policy.park(building.getElevators(), building.getFloors(), 0));
+        // Calls are counted by time of day, and fade from one day to the next.
+        policy.recordCall(fourth, 100);
+        policy.recordCall(fourth, 200);
+        policy.recordCall(second, 300);
+        assertEquals(2.0, policy.getDemand(fourth, 500), 0.001);
+        assertEquals(0.0, policy.getDemand(fourth, 1000), 0.001);
+        assertEquals(1.0, policy.getDemand(fourth, ParkingPolicy.DAY + 500), 0.001);
+        assertEquals(0.0, policy.getDemand(ground, 500), 0.001);
+        // Each idle elevator waits in its own zone of demand, leaving when asked.
+        assertEquals(2, policy.park(building.getElevators(), building.getFloors(), 600));
+        assertEquals(2, policy.getMoves());
+        assertTrue(main.getCurrentFloor() == second || other.getCurrentFloor() == second);
+        assertTrue(main.getCurrentFloor() == fourth || other.getCurrentFloor() == fourth);
+        Elevator high = (main.getCurrentFloor() == fourth) ? main : other;
+        assertEquals(600 + 12000 / high.getSpeed(), high.getArrivalTime(), 0.001);
+        assertEquals(1, high.getMetrics().getParkings());
+        assertEquals(0, policy.park(building.getElevators(), building.getFloors(), 700));
+        // A busy elevator doesn't park.
+        assertTrue(high.requestRide(ground, building.getKeyNamed("Manager")));
+        assertFalse(high.park(second));
+        // The building parks its idle elevators after running them, and learns from calls.
+        building.setParkingPolicy(new ParkingPolicy());
+        Floor first = building.getFloorNamed("First floor");
+        assertTrue(building.callElevator(first));
+        while (!building.runElevators()) {
+        }
+        assertTrue(main.getCurrentFloor() == first || other.getCurrentFloor() == first);
+        assertEquals(0, building.parkIdleElevators());
+        // Under light up-peak traffic, idle elevators wait at the lobby, and passengers wait less.
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.UP_PEAK, 60,
+                3600, 42);
+        TrafficSimulation baseline = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        Building parked = TrafficSimulation.replicate(building);
+        parked.setParkingPolicy(new ParkingPolicy());
+        TrafficSimulation parking = new TrafficSimulation(parked).run(trips);
+        assertEquals(trips.size(), parking.getServed());
+        assertTrue(parking.getAverageWait() < baseline.getAverageWait());
+    }
+
+    /**
+     * Test the forecast of the demand, and its persistence.
+     */
+    @Test
+    public void testDemandForecaster() throws IOException {
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor vault = building.getFloorNamed("Vault");
+        DemandForecaster forecaster = new DemandForecaster(300);
+        try {
+            new DemandForecaster(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            forecaster.setSmoothing(0.5, 0, 0.5);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        assertEquals(0.0, forecaster.forecast(ground, null, 0), 0.001);
+        // Two calls every five minutes for two hours: 24 calls per hour.
+        for (int minute = 0; minute < 120; minute += 5) {
+            forecaster.recordHallCall(ground, minute * 60 + 10);
+            forecaster.recordHallCall(ground, minute * 60 + 20);
+            forecaster.recordCarCall(ground, second, minute * 60 + 20);
+        }
+        forecaster.recordHallCall(second, 7200);
+        assertEquals(24.0, forecaster.forecast(ground, null, 7200), 2.0);
+        assertEquals(12.0, forecaster.forecast(ground, Elevator.MovingDirection.UP, 7200), 1.0);
+        assertEquals(0.0, forecaster.forecast(ground, Elevator.MovingDirection.DOWN, 7200), 0.001);
+        assertEquals(0.0, forecaster.forecast(vault, null, 7200), 0.001);
+        assertEquals(2, forecaster.numberOfFloors());
+        // A saved forecaster forecasts the same once loaded again, for the time of
+        // day its last bucket covers: the buckets in progress are not saved.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        forecaster.save(out);
+        DemandForecaster loaded = DemandForecaster.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(forecaster.forecast(ground, null, 7100), loaded.forecast(ground, null, 7100), 0.000001);
+        assertEquals(forecaster.forecast(ground, Elevator.MovingDirection.UP, 7100),
+                loaded.forecast(ground, Elevator.MovingDirection.UP, 7100), 0.000001);
+        assertEquals(2, loaded.numberOfFloors());
+        // The clock of the next run starts again: its calls are learned at once.
+        for (int minute = 0; minute < 120; minute++) {
+            loaded.recordHallCall(ground, minute * 60 + 10);
+            loaded.recordHallCall(ground, minute * 60 + 40);
+        }
+        loaded.recordHallCall(ground, 7200);
+        assertEquals(120.0, loaded.forecast(ground, null, 7200), 10.0);
+        try {
+            DemandForecaster.load(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+            fail("Expected IOException");
+        } catch (IOException e) { /* Success! */ }
+        // The building feeds its forecaster with hall calls, and its elevators with car calls.
+        DemandForecaster fed = new DemandForecaster();
+        building.setForecaster(fed);
+        elevator.setCurrentFloor(ground);
+        assertTrue(building.callElevator(second));
+        assertEquals(1, fed.numberOfFloors());
+        assertTrue(elevator.requestRide(vault, building.getKeyNamed("Manager")));
+        assertEquals(2, fed.numberOfFloors());
+        // Clones don't.
+        elevator.clone().requestRide(building.getFloorNamed("Third floor"), building.getKeyNamed("Manager"));
+        assertEquals(2, fed.numberOfFloors());
+    }
+
+    /**
+     * Test the energy model, and the energy-aware dispatch.
+     */
+    @Test
+    public void testEnergyModel(){
+        EnergyModel model = new EnergyModel();
+        assertEquals(1100.0, model.counterweight(600, 1600), 0.001);
+        // An empty car going up gives energy back, a full one draws it.
+        assertEquals(-500 * EnergyModel.GRAVITY * 3 * 0.6 + 900, model.travelEnergy(600, 1100, 3000), 0.001);
+        assertEquals(500 * EnergyModel.GRAVITY * 3 / 0.8 + 900, model.travelEnergy(1600, 1100, 3000), 0.001);
+        assertEquals(model.travelEnergy(600, 1100, 3000), model.travelEnergy(1600, 1100, -3000), 0.001);
+        try {
+            model.setCounterweightRatio(2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            model.setMotorEfficiency(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor third = building.getFloorNamed("Third floor");
+        try {
+            main.setEnergyModel(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Every trip and every stop is metered.
+        main.setCurrentFloor(ground);
+        assertTrue(main.requestRide(first, building.getKeyNamed("Manager")));
+        main.run();
+        double travel = model.travelEnergy(600, 1100, 3000);
+        assertEquals(model.getStopEnergy() / EnergyModel.JOULES_PER_KWH, main.getMetrics().getConsumedEnergy(),
+                0.000001);
+        assertEquals(-travel / EnergyModel.JOULES_PER_KWH, main.getMetrics().getRegeneratedEnergy(), 0.000001);
+        assertEquals((travel + model.getStopEnergy()) / EnergyModel.JOULES_PER_KWH, main.getMetrics().getEnergy(),
+                0.000001);
+        // Going up empty to a call is cheaper than going down.
+        main.setCurrentFloor(third);
+        other.setCurrentFloor(first);
+        assertEquals((travel + model.getStopEnergy()) / EnergyModel.JOULES_PER_KWH, other.getEnergyCost(second),
+                0.000001);
+        assertTrue(main.getEnergyCost(second) > other.getEnergyCost(second));
+        assertEquals(0.0, main.getEnergyCost(third), 0.000001);
+        // Both elevators are as close: the wait alone picks the main one, the energy the other one.
+        assertTrue(building.callElevator(second));
+        assertTrue(main.hasRequest(second));
+        building.cancelHallCalls(second);
+        try {
+            building.setEnergyWeight(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        building.setEnergyWeight(2000);
+        assertTrue(building.callElevator(second));
+        assertTrue(other.hasRequest(second));
+        assertFalse(main.hasRequest(second));
+        // The traffic simulation reports the energy of a day.
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 120,
+                1800, 3);
+        TrafficSimulation simulation = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        assertEquals(trips.size(), simulation.getServed());
+        assertTrue(simulation.getEnergy() > 0);
+        assertEquals(simulation.getEnergy() * 86400 / simulation.getEndTime(), simulation.getEnergyPerDay(), 0.001);
+    }
+
+    /**
+     * Test the zones of the elevators around sky lobbies, the journeys with a
+     * change of elevator, and the search of the best sky lobby.
+     */
+    @Test
+    public void testZoning(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator other = building.getElevators().get(1);
+        Floor vault = building.getFloorNamed("Vault");
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor third = building.getFloorNamed("Third floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        Key manager = building.getKeyNamed("Manager");
+        try {
+            building.setSkyLobbies(vault);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            building.setSkyLobbies(second, second);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            building.setSkyLobbies(first, second);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // The main elevator serves the low zone, the other one the high zone, and both the lobby.
+        building.setSkyLobbies(second);
+        assertEquals(Arrays.asList(second), building.getSkyLobbies());
+        assertTrue(main.serves(vault) && main.serves(second) && !main.serves(third));
+        assertTrue(other.serves(second) && other.serves(fourth) && !other.serves(first));
+        assertTrue(other.getCurrentFloor() == second);
+        try {
+            main.requestRide(fourth, manager);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Journeys change elevator at the lobby, if the key opens it.
+        assertEquals(Arrays.asList(first), building.planJourney(ground, first, manager));
+        assertEquals(Arrays.asList(second, fourth), building.planJourney(ground, fourth, manager));
+        assertEquals(Arrays.asList(second, third), building.planJourney(first, third, building.getKeyNamed("Employee")));
+        assertNull(building.planJourney(ground, third, building.getKeyNamed("Customer")));
+        Person person = building.registerPerson(new Person("Mario Rossi", 70), "Manager", ground);
+        assertTrue(person.planJourney(fourth));
+        assertTrue(person.getNextLeg() == second);
+        // Hall calls go to an elevator serving the floor and the next leg.
+        assertTrue(building.callElevator(third));
+        assertTrue(other.hasRequest(third));
+        assertFalse(main.hasRequest(third));
+        assertFalse(building.callElevator(second, manager, fourth));
+        assertTrue(building.callElevator(second, manager, ground));
+        assertTrue(main.hasRequest(second));
+        // Every passenger gets there, some of them through the lobby.
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 120,
+                1800, 5);
+        TrafficSimulation simulation = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        assertEquals(trips.size(), simulation.getServed());
+        assertTrue(simulation.getTransfers() > 0);
+        // The optimizer moves the lobby to the floor with the shortest journeys.
+        ZoningOptimizer optimizer = new ZoningOptimizer();
+        try {
+            optimizer.setZones(1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        Floor[] lobbies = optimizer.optimize(building, trips);
+        assertEquals(1, lobbies.length);
+        assertTrue(lobbies[0] != vault && lobbies[0] != fourth);
+        assertTrue(optimizer.getEvaluations() >= building.numberOfFloors() - 2);
+        assertEquals(optimizer.score(building, trips, lobbies), optimizer.getBestScore(), 0.001);
+        assertTrue(optimizer.getBestScore() <= optimizer.score(building, trips, first));
+        // Without lobbies, every elevator serves every floor again.
+        building.cancelHallCalls(third);
+        building.cancelHallCalls(second);
+        building.setSkyLobbies();
+        assertTrue(main.serves(fourth) && other.serves(vault));
+        assertTrue(building.getSkyLobbies().isEmpty());
+    }
+
+    /**
+     * Test the elevators serving a subset of the floors.
+     */
+    @Test
+    public void testServedFloors(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator vaultCar = building.getElevators().get(1);
+        Floor vault = building.getFloorNamed("Vault");
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor third = building.getFloorNamed("Third floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        Key security = building.getKeyNamed("Security");
+        try {
+            main.setServedFloors();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            simulator.restrictElevator(2, "Vault");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // A shuttle between the entrance and the vault, and a car which never goes down there.
+        simulator.restrictElevator(1, "Ground floor", "Vault");
+        main.setServedFloors(ground, first, second, third, fourth);
+        assertTrue(vaultCar.serves(vault) && vaultCar.serves(ground) && !vaultCar.serves(first));
+        // A copy of a floor is the same floor of the building.
+        assertTrue(vaultCar.serves(vault.clone()));
+        assertFalse(vaultCar.serves(new Floor("Roof", 0, 100000)));
+        try {
+            vaultCar.setServedFloors(new Floor("Roof", 0, 100000));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        assertFalse(main.serves(vault) || main.servesAllFloors());
+        // A new floor moves the others up in the list, but the cars keep their floors.
+        Floor mezzanine = new Floor("Mezzanine", 0, (ground.getDistance() + first.getDistance()) / 2);
+        building.addFloor(mezzanine);
+        assertTrue(vaultCar.serves(vault) && vaultCar.serves(ground) && !vaultCar.serves(mezzanine));
+        assertEquals(Arrays.asList(vault, ground), vaultCar.getServedFloors());
+        assertTrue(building.removeFloor(mezzanine));
+        assertEquals(Arrays.asList(ground, first, second, third, fourth), main.getServedFloors());
+        try {
+            vaultCar.requestRide(first, security);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        assertFalse(vaultCar.requestHere(first));
+        // Hall calls only go to an elevator serving the floor and the destination.
+        assertTrue(building.callElevator(vault));
+        assertTrue(vaultCar.hasRequest(vault));
+        assertTrue(building.callElevator(second, security, ground));
+        assertTrue(main.hasRequest(second));
+        assertTrue(building.callElevator(first, security, vault));
+        assertEquals(1, building.numberOfPendingCalls());
+        assertEquals(Arrays.asList(ground, vault), building.planJourney(first, vault, security));
+        // Copies keep the served floors.
+        Building replica = TrafficSimulation.replicate(building);
+        assertFalse(replica.getElevators().get(1).serves(first));
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 120,
+                1800, 11);
+        TrafficSimulation simulation = new TrafficSimulation(replica).run(trips);
+        assertEquals(trips.size(), simulation.getServed());
+        simulator.restrictElevator(1);
+        assertTrue(vaultCar.servesAllFloors() && vaultCar.serves(fourth));
+        // A zone is the band of floors between two heights.
+        vaultCar.setZone(first.getDistance(), third.getDistance());
+        assertEquals(Arrays.asList(first, second, third), vaultCar.getServedFloors());
+        assertEquals(first.getDistance(), vaultCar.getZoneLowest());
+        assertEquals(third.getDistance(), vaultCar.getZoneHighest());
+        try {
+            vaultCar.setZone(third.getDistance() + 1, fourth.getDistance() - 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        vaultCar.clearZone();
+        assertEquals(Integer.MIN_VALUE, vaultCar.getZoneLowest());
+        assertTrue(vaultCar.servesAllFloors());
+    }
+
+    /**
+     * Test double-deck elevators: paired floors, deck rosters and journeys.
+     */
+    @Test
+    public void testDoubleDeck(){
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Floor vault = building.getFloorNamed("Vault");
+        Floor ground = building.getFloorNamed("Ground floor");
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        Key manager = building.getKeyNamed("Manager");
+        Key customer = building.getKeyNamed("Customer");
+        try {
+            building.setDecks(main, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // The floors are paired from the bottom: the cabin stops at the vault to serve the entrance.
+        building.setDecks(main, 2);
+        assertEquals(2, main.getDecks());
+        assertTrue(main.getCurrentFloor() == vault);
+        assertTrue(main.isAt(ground) && main.isAt(vault) && !main.isAt(first));
+        assertTrue(Arrays.equals(new Floor[] { vault, ground }, main.getDeckFloors()));
+        assertTrue(main.connects(ground, second) && !main.connects(ground, first) && !main.connects(first, second));
+        assertTrue(building.linksLevels(vault, ground) && !building.linksLevels(ground, first));
+        // The calls from both floors of a pair are a single stop.
+        building.callElevator(first);
+        building.callElevator(second);
+        assertTrue(main.hasRequest(first) && main.hasRequest(second));
+        assertEquals(1, main.numberOfRequests());
+        // People walk to the other level when only the other deck goes where they want.
+        assertEquals(Arrays.asList(vault, first), building.planJourney(ground, first, manager));
+        assertNull(building.planJourney(ground, first, customer));
+        // Every deck has its own roster, and its share of the cabin.
+        main.setMaxPersons(2);
+        Person upper = building.registerPerson(new Person("Upper", 70), "Manager", ground);
+        Person lower = building.registerPerson(new Person("Lower", 80), "Manager", vault);
+        Person late = building.registerPerson(new Person("Late", 60), "Manager", ground);
+        assertTrue(main.board(upper) && main.board(lower));
+        assertFalse(main.canBoard(late));
+        assertEquals(Arrays.asList(upper), main.getDeckRoster(1));
+        assertEquals(80, main.getDeckLoad(0), 0.001);
+        main.requestRide(second, manager);
+        main.run();
+        assertTrue(upper.getCurrentFloor() == second && lower.getCurrentFloor() == first);
+        assertEquals(1, main.clone().getDeckRoster(1).size());
+        // Copies keep the decks, and carry everyone.
+        main.setMaxPersons(0);
+        Building replica = TrafficSimulation.replicate(building);
+        assertEquals(2, replica.getElevator().getDecks());
+        ArrayList<Trip> trips = new ArrayList<Trip>();
+        trips.add(new Trip(0, ground, fourth, 80, manager));
+        trips.add(new Trip(0, ground, first, 70, manager));
+        trips.add(new Trip(5, vault, second, 75, manager));
+        trips.add(new Trip(10, fourth, ground, 60, manager));
+        trips.add(new Trip(20, first, vault, 90, manager));
+        TrafficSimulation simulation = new TrafficSimulation(replica).run(trips);
+        assertEquals(trips.size(), simulation.getServed());
+        assertTrue(simulation.getThroughput() > 0);
+    }
+
+    /**
+     * Test elevators sharing a shaft: reach, separation and moves out of the way.
+     */
+    @Test
+    public void testSharedShaft(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Elevator upper = building.getElevators().get(1);
+        Floor vault = building.getFloorNamed("Vault");
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Floor third = building.getFloorNamed("Third floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        Key manager = building.getKeyNamed("Manager");
+        try {
+            building.addShaft(3000, main, new Elevator(first, MovingDirection.STATIONARY, 600, 1600));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            simulator.shareShaft(20000, 0, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // The cars start apart, and never reach the far end of the shaft.
+        simulator.shareShaft(3000, 0, 1);
+        Shaft shaft = main.getShaft();
+        assertTrue(shaft != null && shaft == upper.getShaft());
+        assertEquals(1, building.numberOfHoistways());
+        assertTrue(upper.getCurrentFloor() == first);
+        assertTrue(main.serves(vault) && main.serves(third) && !main.serves(fourth));
+        assertTrue(upper.serves(fourth) && !upper.serves(vault));
+        assertTrue(shaft.getHighestFloor(main) == third && shaft.getLowestFloor(upper) == building.getEntranceFloor());
+        assertFalse(building.removeElevator(upper));
+        try {
+            building.setSkyLobbies(second);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) { /* Success! */ }
+        // An idle car in the way moves ahead of the other.
+        main.requestRide(third, manager);
+        main.run();
+        assertTrue(main.getCurrentFloor() == third && upper.getCurrentFloor() == fourth);
+        assertEquals(1, shaft.getMoves());
+        assertEquals(1, upper.getMetrics().getShaftMoves());
+        upper.requestRide(second, manager);
+        upper.run();
+        assertTrue(upper.getCurrentFloor() == second && main.getCurrentFloor() == first);
+        // Copies keep the shaft, and the cars stay apart.
+        Building replica = TrafficSimulation.replicate(building);
+        assertEquals(1, replica.getShafts().size());
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 240,
+                1800, 5);
+        TrafficSimulation simulation = new TrafficSimulation(replica).run(trips);
+        assertEquals(trips.size(), simulation.getServed());
+        assertTrue(replica.getElevators().get(1).getCurrentFloor().getDistance()
+                - replica.getElevators().get(0).getCurrentFloor().getDistance() >= 3000);
+    }
+
+    /**
+     * Test access windows: keys opening floors at some times of the day only.
+     */
+    @Test
+    public void testAccessWindows(){
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Floor ground = building.getEntranceFloor();
+        Floor first = building.getFloorNamed("First floor");
+        Key customer = building.getKeyNamed("Customer");
+        try {
+            simulator.addAccessWindow("Customer", "Vault", 8 * 3600, 18 * 3600);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            simulator.addAccessWindow("Customer", "First floor", 8 * 3600, 8 * 3600);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Customers reach the first floor during office hours only, on any day.
+        assertTrue(first.requestAccess(customer, 3 * 3600));
+        simulator.addAccessWindow("Customer", "First floor", 8 * 3600, 18 * 3600);
+        assertTrue(customer.hasAccessWindows(3000) && !customer.hasAccessWindows(0));
+        assertFalse(first.requestAccess(customer, 3 * 3600));
+        assertTrue(first.requestAccess(customer, 8 * 3600));
+        assertFalse(first.requestAccess(customer, 18 * 3600));
+        assertTrue(first.requestAccess(customer, Key.DAY + 12 * 3600));
+        assertTrue(ground.requestAccess(customer, 3 * 3600));
+        assertTrue(first.requestAccess(customer));
+        // Windows merge, and may span midnight.
+        customer.addAccessWindow(3000, 17 * 3600, 2 * 3600);
+        assertTrue(first.requestAccess(customer, 20 * 3600) && first.requestAccess(customer, 3600));
+        assertFalse(first.requestAccess(customer, 3 * 3600));
+        Key copy = customer.clone();
+        assertTrue(copy.equals(customer));
+        copy.clearAccessWindows(3000);
+        assertFalse(copy.equals(customer));
+        assertTrue(first.requestAccess(copy, 3 * 3600));
+        // Values added later are checked too.
+        customer.addKeyValue(123);
+        assertTrue(customer.checkAccess(123, 3 * 3600));
+        customer.removeKeyValue(123);
+        assertFalse(customer.checkAccess(123, 12 * 3600));
+        // The elevator checks the key at its own time.
+        main.advanceTime(3 * 3600);
+        try {
+            main.requestRide(first, customer);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        main.advanceTime(9 * 3600);
+        assertTrue(main.requestRide(first, customer));
+        // Passengers turned away leave the building.
+        ArrayList<Trip> trips = new ArrayList<Trip>();
+        trips.add(new Trip(3 * 3600, ground, first, 80, customer));
+        trips.add(new Trip(9 * 3600, ground, first, 70, customer));
+        TrafficSimulation simulation = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        assertEquals(1, simulation.getServed());
+        assertEquals(1, simulation.getDenied());
+        assertEquals(0, simulation.getUnserved());
+    }
+
+    /**
+     * Test the access audit: every decision on a car call is written, and read
+     * back in order.
+     */
+    @Test
+    public void testAccessAudit() throws IOException {
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Floor first = building.getFloorNamed("First floor");
+        Floor vault = building.getFloorNamed("Vault");
+        try {
+            new AccessAudit(new ByteArrayOutputStream(), 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AccessAudit audit = new AccessAudit(bytes, 3);
+        assertEquals(4, audit.getCapacity());
+        building.setAccessAudit(audit);
+        Person person = building.registerPerson(new Person("Audited", 70), "Customer");
+        try {
+            person.chooseFloor(vault);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        assertTrue(person.chooseFloor(first));
+        // More requests than slots: the writer frees them on the way.
+        for (int i = 0; i < 10; i++) {
+            main.requestRide(vault, building.getKeyNamed("Manager"));
+        }
+        // Clones don't record.
+        main.clone().requestRide(first, building.getKeyNamed("Manager"));
+        audit.close();
+        assertEquals(12, audit.getWritten());
+        assertFalse(audit.record(0, person, null, first, true));
+        assertEquals(1, audit.getLost());
+        java.util.List<AccessAudit.Event> events = AccessAudit.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(12, events.size());
+        assertEquals("Audited", events.get(0).getPerson());
+        assertEquals("Customer", events.get(0).getKey());
+        assertEquals("Vault", events.get(0).getFloor());
+        assertFalse(events.get(0).isGranted());
+        assertTrue(events.get(1).isGranted() && events.get(1).getFloor().equals("First floor"));
+        assertNull(events.get(11).getPerson());
+        assertEquals("Manager", events.get(11).getKey());
+        try {
+            AccessAudit.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+            fail("Expected IOException");
+        } catch (IOException e) { /* Success! */ }
+        // Producers racing the close: every event reported as recorded is written,
+        // and an unknown floor doesn't stall the writer.
+        ByteArrayOutputStream raced = new ByteArrayOutputStream();
+        final AccessAudit racing = new AccessAudit(raced, 4);
+        final Floor asked = simulator.getBuilding().getFloorNamed("Vault");
+        final java.util.concurrent.atomic.AtomicLong accepted = new java.util.concurrent.atomic.AtomicLong();
+        Thread[] producers = new Thread[3];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        if (racing.record(i, null, null, (i % 7 == 0) ? null : asked, false)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        Thread.yield();
+        racing.close();
+        for (Thread producer : producers) {
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+        List<AccessAudit.Event> written = AccessAudit.read(new ByteArrayInputStream(raced.toByteArray()));
+        assertEquals(accepted.get(), written.size());
+        assertEquals(racing.getRecorded(), written.size());
+        assertEquals(3 * 20000, accepted.get() + racing.getLost());
+    }
+
+    /**
+     * Test the request intake: many threads submit requests, and the elevator
+     * applies them in batches when it runs.
+     */
+    @Test
+    public void testRequestIntake() throws InterruptedException {
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        final Elevator main = building.getElevator();
+        final Floor first = building.getFloorNamed("First floor");
+        final Floor vault = building.getFloorNamed("Vault");
+        final Floor third = building.getFloorNamed("Third floor");
+        final Key customer = building.getKeyNamed("Customer");
+        final RequestIntake intake = main.getIntake().setBatchSize(100);
+        try {
+            intake.submitStop(null, Key.Priority.STANDARD);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // Nothing happens until the elevator runs.
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 250; i++) {
+                        intake.submitRide(first, customer, null).submitRide(vault, customer, null)
+                                .submitStop(third, Key.Priority.STANDARD);
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(0, intake.getApplied() + intake.getRejected());
+        assertFalse(main.hasRequest(first));
+        main.run();
+        assertEquals(100, intake.getApplied() + intake.getRejected());
+        while (intake.getApplied() + intake.getRejected() < 3000) {
+            main.run();
+        }
+        // The customer key doesn't open the vault.
+        assertEquals(1000, intake.getRejected());
+        assertEquals(2000, intake.getApplied());
+        // A person boards and rides in the order of the submissions.
+        Person person = building.registerPerson(new Person("Queued", 70), "Customer", main.getCurrentFloor());
+        Floor back = (main.getCurrentFloor() == first) ? building.getEntranceFloor() : first;
+        intake.submitBoard(person).submitRide(back, person.getKey(), person);
+        main.run();
+        assertTrue(main.getCurrentFloor() == back && person.getCurrentFloor() == back);
+        intake.submitDisembark(person);
+        main.run();
+        assertEquals(0, main.numberOfPeople());
+        // A refused request, whatever the exception, doesn't hold back the next ones.
+        long rejected = intake.getRejected();
+        Floor stop = (main.getCurrentFloor() == third) ? first : third;
+        intake.submitBoard(new Person("Nowhere", 70)).submitStop(stop, Key.Priority.STANDARD);
+        main.run();
+        assertEquals(rejected + 1, intake.getRejected());
+        assertFalse(intake.hasPending());
+        assertTrue(main.getCurrentFloor() == stop);
+        assertEquals(0, main.clone().getIntake().getApplied());
+    }
+
+    /**
+     * Test the agent-based simulation: every passenger acts on their own, the
+     * same way whatever the number of threads.
+     */
+    @Test
+    public void testAgentSimulation(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 600,
+                1800, 11);
+        try {
+            new AgentSimulation(building, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        AgentSimulation single = new AgentSimulation(TrafficSimulation.replicate(building),
+                new java.util.concurrent.ForkJoinPool(1)).run(trips);
+        AgentSimulation several = new AgentSimulation(TrafficSimulation.replicate(building)).run(trips);
+        assertEquals(trips.size(), single.getServed());
+        assertEquals(0, single.getUnserved());
+        assertEquals(single.toString(), several.toString());
+        assertTrue(single.getAverageJourney() > single.getAverageWait() && single.getAverageWait() > 0);
+        // Parked agents cost nothing: only a few are awake at a time.
+        assertTrue(single.getPeakAwake() < trips.size() / 10);
+        assertTrue(single.getSteps() >= 3 * trips.size());
+        // Impatient agents leave, and every agent is accounted for.
+        AgentSimulation impatient = new AgentSimulation(TrafficSimulation.replicate(building)).setPatience(1)
+                .run(trips);
+        assertTrue(impatient.getBalked() > 0);
+        assertEquals(trips.size(), impatient.getServed() + impatient.getBalked() + impatient.getUnserved());
+        // Keys closed at the time turn agents away.
+        simulator.addAccessWindow("Customer", "First floor", 8 * 3600, 18 * 3600);
+        ArrayList<Trip> night = new ArrayList<Trip>();
+        night.add(new Trip(0, building.getEntranceFloor(), building.getFloorNamed("First floor"), 70,
+                building.getKeyNamed("Customer")));
+        AgentSimulation closed = new AgentSimulation(TrafficSimulation.replicate(building)).run(night);
+        assertEquals(1, closed.getDenied());
+        assertEquals(0, closed.getServed());
+    }
+
+    /**
+     * Test the elevators run as actors: the mailboxes are bounded, and the
+     * dispatcher talks to the cars only by message.
+     */
+    @Test
+    public void testElevatorActors(){
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Floor first = building.getFloorNamed("First floor");
+        Floor third = building.getFloorNamed("Third floor");
+        // An executor run by hand, to see what is queued.
+        final ArrayList<Runnable> queued = new ArrayList<Runnable>();
+        Executor manual = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                queued.add(task);
+            }
+        };
+        ElevatorActor actor = new ElevatorActor(main, manual, 3).setThroughput(2);
+        assertEquals(4, actor.getCapacity());
+        try {
+            new ElevatorActor(main, null, 4);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(actor.offerCall((i % 2 == 0) ? first : third, Key.Priority.STANDARD));
+        }
+        // The mailbox is full: the sender is pushed back.
+        assertFalse(actor.offerTick());
+        assertEquals(1, actor.getRefused());
+        assertEquals(1, queued.size());
+        assertFalse(main.hasRequest(first));
+        queued.remove(0).run();
+        assertEquals(2, actor.getHandled());
+        assertTrue(main.hasRequest(first) && main.hasRequest(third));
+        assertTrue(actor.getStatus().isBusy());
+        assertTrue(actor.offerTick());
+        // The actor scheduled itself again for the mail left.
+        assertEquals(1, queued.size());
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+        assertTrue(actor.isIdle());
+        assertEquals(5, actor.getHandled());
+        assertEquals(main.getCurrentFloor(), actor.getStatus().getFloor());
+        // A command failing in any way is dropped, and the actor keeps going.
+        actor.sendBoard(new Person("Nowhere", 70));
+        assertTrue(actor.offerTick());
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+        assertEquals(1, actor.getRejected());
+        assertTrue(actor.isIdle());
+        assertTrue(actor.offerTick());
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+
+        // Many calls dispatched to both cars, on a pool of threads.
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ActorDispatcher dispatcher = new ActorDispatcher(building, pool, 8);
+            Floor[] floors = building.getFloors().toArray(new Floor[0]);
+            Key manager = building.getKeyNamed("Manager");
+            for (int i = 0; i < 200; i++) {
+                assertNotNull(dispatcher.call(floors[(i * 7) % floors.length], manager));
+                if (i % 10 == 0) {
+                    dispatcher.tick();
+                }
+            }
+            assertEquals(200, dispatcher.getCalls());
+            int ticks = 0;
+            while (dispatcher.awaitIdle(10000) && dispatcher.isBusy() && ticks < 10000) {
+                dispatcher.tick();
+                ticks++;
+            }
+            assertTrue(dispatcher.awaitIdle(10000));
+            assertFalse(dispatcher.isBusy());
+            long handled = 0;
+            for (ElevatorActor car : dispatcher.getActors()) {
+                assertFalse(car.getElevator().isBusy());
+                assertEquals(0, car.getRejected());
+                handled += car.getHandled();
+            }
+            assertTrue(handled >= 200);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test the events of an elevator: subscribers get what they requested, in
+     * order, and a slow one only loses its own events.
+     */
+    @Test
+    public void testElevatorEvents(){
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator main = building.getElevator();
+        Floor first = building.getFloorNamed("First floor");
+        Floor second = building.getFloorNamed("Second floor");
+        Key manager = building.getKeyNamed("Manager");
+        final ArrayList<ElevatorEvent> received = new ArrayList<ElevatorEvent>();
+        final ElevatorEvents.Subscription[] handle = new ElevatorEvents.Subscription[1];
+        final int[] ends = new int[2];
+        ElevatorEvents.Subscriber subscriber = new ElevatorEvents.Subscriber() {
+            @Override
+            public void onSubscribe(ElevatorEvents.Subscription subscription) {
+                handle[0] = subscription;
+            }
+
+            @Override
+            public void onNext(ElevatorEvent event) {
+                received.add(event);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                ends[0]++;
+            }
+
+            @Override
+            public void onComplete() {
+                ends[1]++;
+            }
+        };
+        // Nobody listens: nothing is made.
+        main.requestRide(first, manager);
+        main.run();
+        ElevatorEvents events = main.getEvents().setBufferSize(4);
+        assertEquals(0, events.getSubscriberCount());
+        events.subscribe(subscriber);
+        assertNotNull(handle[0]);
+        // Subscribing twice is an error, the first subscription goes on.
+        ElevatorEvents.Subscription subscription = handle[0];
+        events.subscribe(subscriber);
+        handle[0] = subscription;
+        assertEquals(1, ends[0]);
+        assertEquals(1, events.getSubscriberCount());
+
+        Person person = building.registerPerson(new Person("Observed", 70), "Manager", first);
+        main.board(person);
+        main.requestRide(second, manager);
+        main.run();
+        // Nothing was requested yet: the events wait in the buffer.
+        assertTrue(received.isEmpty());
+        handle[0].request(2);
+        assertEquals(2, received.size());
+        assertEquals(ElevatorEvent.Type.BOARDED, received.get(0).getType());
+        assertEquals(person, received.get(0).getPerson());
+        assertEquals(ElevatorEvent.Type.DIRECTION_CHANGED, received.get(1).getType());
+        assertEquals(MovingDirection.UP, received.get(1).getDirection());
+        handle[0].request(Long.MAX_VALUE);
+        assertEquals(ElevatorEvent.Type.FLOOR_REACHED, received.get(2).getType());
+        assertEquals(second, received.get(2).getFloor());
+        assertEquals(ElevatorEvent.Type.DOORS_OPENED, received.get(3).getType());
+        // The last event didn't fit in the buffer.
+        assertEquals(4, received.size());
+        assertEquals(1, events.getDropped(subscriber));
+        // With no limit, events are delivered on the spot.
+        main.disembark(person);
+        assertEquals(ElevatorEvent.Type.ALIGHTED, received.get(4).getType());
+        assertEquals(second, received.get(4).getFloor());
+
+        // Cancelling stops the delivery, and costs the elevator nothing.
+        handle[0].cancel();
+        assertEquals(0, events.getSubscriberCount());
+        main.requestRide(first, manager);
+        main.run();
+        assertEquals(5, received.size());
+
+        // A non positive request ends the subscription with an error.
+        events.subscribe(subscriber);
+        handle[0].request(0);
+        assertEquals(2, ends[0]);
+        assertEquals(0, events.getSubscriberCount());
+        // Closing completes once the buffered events are delivered.
+        events.subscribe(subscriber);
+        main.requestRide(second, manager);
+        main.run();
+        events.close();
+        assertEquals(0, ends[1]);
+        handle[0].request(10);
+        assertEquals(1, ends[1]);
+        // The elevator stopped after its last floor.
+        assertEquals(ElevatorEvent.Type.DIRECTION_CHANGED, received.get(received.size() - 1).getType());
+        assertEquals(MovingDirection.STATIONARY, received.get(received.size() - 1).getDirection());
+        assertEquals(0, main.clone().getEvents().getSubscriberCount());
+    }
+
+    /**
+     * Test the event bus: every consumer sees every event of a run, in order and
+     * in batches, and a consumer following another sees what it is done with.
+     */
+    @Test
+    public void testEventBus() throws InterruptedException {
+        simulator.setupElevator(600, 1600).addNewElevator(600, 1600);
+        Building building = TrafficSimulation.replicate(simulator.getBuilding());
+        ArrayList<Trip> trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 300,
+                1800, 5);
+        try {
+            new EventBus(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // A small ring, so that the producer laps the consumers.
+        EventBus bus = new EventBus(12);
+        assertEquals(16, bus.getCapacity());
+        final long[] counts = new long[ElevatorEvent.Type.values().length];
+        final long[] seen = { -1, 0 };
+        final EventBus.Consumer stats = bus.addConsumer("stats", new EventBus.Handler() {
+            @Override
+            public void onEvent(EventBus.Slot slot, long sequence, boolean endOfBatch) {
+                counts[slot.getType().ordinal()]++;
+            }
+        });
+        EventBus.Consumer trace = bus.addConsumer("trace", new EventBus.Handler() {
+            @Override
+            public void onEvent(EventBus.Slot slot, long sequence, boolean endOfBatch) {
+                // Events come in order, and the statistics are done with them.
+                if (sequence != seen[0] + 1 || stats.getSequence() < sequence) {
+                    seen[1]++;
+                }
+                seen[0] = sequence;
+            }
+        }, stats);
+        bus.start();
+        try {
+            bus.addConsumer("late", new EventBus.Handler() {
+                @Override
+                public void onEvent(EventBus.Slot slot, long sequence, boolean endOfBatch) {
+                }
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) { /* Success! */ }
+        building.setEventBus(bus);
+        TrafficSimulation run = new TrafficSimulation(building).run(trips);
+        bus.close();
+        assertEquals(trips.size(), run.getServed());
+        long published = bus.getCursor() + 1;
+        assertTrue(published > 4 * trips.size());
+        assertEquals(bus.getCursor(), stats.getSequence());
+        assertEquals(bus.getCursor(), trace.getSequence());
+        assertEquals(bus.getCursor(), seen[0]);
+        assertEquals(0, seen[1]);
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        assertEquals(published, total);
+        assertTrue(counts[ElevatorEvent.Type.BOARDED.ordinal()] >= trips.size());
+        assertEquals(counts[ElevatorEvent.Type.BOARDED.ordinal()], counts[ElevatorEvent.Type.ALIGHTED.ordinal()]);
+        assertTrue(stats.getBatches() <= published);
+        assertEquals(0, stats.getFailures() + trace.getFailures());
+        // A closed bus is detached, and never holds an elevator back.
+        assertNull(building.getEventBus());
+        assertFalse(bus.isRunning());
+        EventBus idle = new EventBus(8);
+        idle.addConsumer("never started", new EventBus.Handler() {
+            @Override
+            public void onEvent(EventBus.Slot slot, long sequence, boolean endOfBatch) {
+            }
+        });
+        building.setEventBus(idle);
+        try {
+            new ElevatorActor(building.getElevator(), new java.util.concurrent.ForkJoinPool(1), 4);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        assertEquals(trips.size(), new TrafficSimulation(building).run(trips).getServed());
+        assertEquals(-1, idle.getCursor());
+        assertTrue(idle.getDropped() > 8);
+        // Only the first thread to publish may publish.
+        final EventBus owned = new EventBus(8).start();
+        final Elevator car = building.getElevator();
+        building.setEventBus(owned);
+        car.requestRide(building.getFloorNamed("First floor"), building.getKeyNamed("Manager"));
+        car.run();
+        final boolean[] refused = new boolean[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    owned.next();
+                } catch (IllegalStateException e) {
+                    refused[0] = true;
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(refused[0]);
+        owned.close();
+        assertNull(building.getEventBus());
+    }
+
+    /**
+     * Test the snapshots of an elevator: an observer on another thread always
+     * reads a whole state, never one torn by the running elevator.
+     */
+    @Test
+    public void testElevatorSnapshot() throws InterruptedException {
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        final Elevator main = building.getElevator();
+        Floor ground = building.getEntranceFloor();
+        Floor second = building.getFloorNamed("Second floor");
+        Key manager = building.getKeyNamed("Manager");
+        ElevatorSnapshot before = main.getSnapshot();
+        assertEquals(ground, before.getFloor());
+        assertEquals(0, before.getPeople());
+        assertEquals(600, before.getLoad(), 0);
+        Person person = building.registerPerson(new Person("Watched", 70), "Manager", ground);
+        main.board(person);
+        main.requestRide(second, manager);
+        ElevatorSnapshot boarded = main.getSnapshot();
+        assertTrue(boarded.getVersion() > before.getVersion());
+        assertEquals(1, boarded.getPeople());
+        assertEquals(MovingDirection.UP, boarded.getDirection());
+        assertTrue(boarded.isBusy());
+        // A snapshot doesn't change once taken.
+        main.run();
+        assertEquals(ground, boarded.getFloor());
+        assertEquals(second, main.getSnapshot().getFloor());
+        assertEquals(MovingDirection.STATIONARY, main.getSnapshot().getDirection());
+        assertEquals(main.getTime(), main.getSnapshot().getTime(), 0);
+        main.disembark(person);
+        assertEquals(0, main.getSnapshot().getPeople());
+
+        // People of the same weight get on and off while an observer watches.
+        final Person[] riders = new Person[4];
+        for (int i = 0; i < riders.length; i++) {
+            riders[i] = building.registerPerson(new Person("Rider " + i, 70), "Manager", main.getCurrentFloor());
+        }
+        final java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+        final long[] torn = new long[2];
+        Thread observer = new Thread() {
+            @Override
+            public void run() {
+                long version = 0;
+                while (!done.get()) {
+                    ElevatorSnapshot snapshot = main.getSnapshot();
+                    if (snapshot.getVersion() < version || snapshot.getLoad() != 600 + 70 * snapshot.getPeople()
+                            || (snapshot.getDirection() == MovingDirection.STATIONARY) == snapshot.isBusy()) {
+                        torn[0]++;
+                    }
+                    version = snapshot.getVersion();
+                    torn[1]++;
+                }
+            }
+        };
+        observer.start();
+        Floor[] stops = { ground, second, building.getFloorNamed("Third floor") };
+        try {
+            for (int round = 0; round < 20000; round++) {
+                for (Person rider : riders) {
+                    if (main.hasPerson(rider)) {
+                        main.disembark(rider);
+                    } else if (rider.getCurrentFloor() == main.getCurrentFloor()) {
+                        main.board(rider);
+                    }
+                }
+                main.requestRide(stops[round % stops.length], manager);
+                main.run();
+            }
+        } finally {
+            done.set(true);
+            observer.join();
+        }
+        assertEquals(0, torn[0]);
+        assertTrue(torn[1] > 0);
+        // A car changed by others shows it at once: clock, hall calls, moves in its shaft.
+        main.advanceTime(main.getTime() + 100);
+        assertEquals(main.getTime(), main.getSnapshot().getTime(), 0);
+        main.requestHere(ground);
+        assertTrue(main.getSnapshot().isBusy());
+        main.cancelHallCall(ground);
+        assertFalse(main.getSnapshot().isBusy());
+        main.makeWay(building.getFloorNamed("Third floor"), main.getTime());
+        assertEquals(building.getFloorNamed("Third floor"), main.getSnapshot().getFloor());
+    }
+
+    /**
+     * Test the offline lower bound of the wait of a single elevator.
+     */
+    @Test
+    public void testOfflineScheduleBound(){
+        simulator.setupElevator(600, 1600);
+        Building building = simulator.getBuilding();
+        Elevator elevator = building.getElevator();
+        Key manager = building.getKeyNamed("Manager");
+        Floor first = building.getFloorNamed("First floor");
+        Floor fourth = building.getFloorNamed("Fourth floor");
+        double travel = Math.abs(fourth.getDistance() - first.getDistance()) / elevator.getSpeed();
+        ArrayList<Trip> trips = new ArrayList<Trip>();
+        trips.add(new Trip(0, first, fourth, 80, manager));
+        trips.add(new Trip(0, fourth, first, 80, manager));
+        trips.add(new Trip(0, first, fourth, 80, manager));
+        OfflineScheduleSolver solver = new OfflineScheduleSolver(elevator);
+        // Both passengers on the first floor get on at once, then the elevator goes up.
+        assertEquals(travel + elevator.getStopTime(),
+                solver.lowerBound(trips, OfflineScheduleSolver.Objective.TOTAL_WAIT), 0.001);
+        assertEquals(travel + elevator.getStopTime(),
+                solver.lowerBound(trips, OfflineScheduleSolver.Objective.MAX_WAIT), 0.001);
+        assertTrue(solver.getNodes() > 0);
+        // Windows of a single trip know nothing.
+        assertEquals(0.0, solver.setWindow(1).lowerBound(trips, OfflineScheduleSolver.Objective.TOTAL_WAIT), 0.001);
+        try {
+            solver.setWindow(OfflineScheduleSolver.MAX_WINDOW + 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        try {
+            solver.lowerBound(trips, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        trips.add(0, new Trip(10, fourth, first, 80, manager));
+        try {
+            solver.lowerBound(trips, OfflineScheduleSolver.Objective.TOTAL_WAIT);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) { /* Success! */ }
+        // The simulated elevator never beats the bound, on a long trace too.
+        trips = TrafficSimulation.generateTrips(building, TrafficSimulation.Profile.INTERFLOOR, 600, 3600, 7);
+        TrafficSimulation simulation = new TrafficSimulation(TrafficSimulation.replicate(building)).run(trips);
+        solver.setWindow(8);
+        double total = solver.lowerBound(trips, OfflineScheduleSolver.Objective.TOTAL_WAIT);
+        assertTrue(total > 0);
+        assertTrue(total <= simulation.getTotalWait() + 0.001);
+        assertTrue(solver.lowerBound(trips, OfflineScheduleSolver.Objective.MAX_WAIT) <= simulation.getMaxWait() + 0.001);
+    }
+
     /**
      * Test Elevator.disembark(Person)
      */